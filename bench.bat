@@ -0,0 +1,25 @@
+@echo off
+rem Compiles the application together with src\library\bench and runs a benchmark main.
+rem   bench.bat                     service benchmarks at the default sizes
+rem   bench.bat 1000,50000          service benchmarks at the given catalog sizes
+rem   set BENCH_MAIN=library.bench.BorrowContentionBenchmark ^& bench.bat 1,8,32
+rem Benchmarks reset their database, so BENCH_DB_URL must name a scratch database (its name must contain "bench").
+set JDBC_JAR_PATH=src\lib\mysql-connector-j-9.3.0.jar
+if "%BENCH_MAIN%"=="" set BENCH_MAIN=library.bench.ServiceBenchmarks
+if "%BENCH_DB_URL%"=="" set "BENCH_DB_URL=jdbc:mysql://localhost/library_bench?createDatabaseIfNotExist=true"
+
+if not exist "%JDBC_JAR_PATH%" (
+    echo ERROR: JDBC Driver JAR not found at %JDBC_JAR_PATH%
+    exit /b 1
+)
+
+if not exist "bin" (
+    mkdir "bin"
+)
+javac -d "bin" -cp "%JDBC_JAR_PATH%" src\library\*.java src\library\frontend\*.java src\library\backend\*.java src\library\bench\*.java
+if %errorlevel% neq 0 (
+    echo ERROR: Compilation failed. See messages above.
+    exit /b %errorlevel%
+)
+
+java -Djava.awt.headless=true "-Dlibrary.db.url=%BENCH_DB_URL%" %BENCH_JAVA_OPTS% -cp "bin;%JDBC_JAR_PATH%" %BENCH_MAIN% %*
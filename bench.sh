@@ -0,0 +1,25 @@
+#!/bin/bash
+
+# Compiles the application together with src/library/bench and runs a benchmark main.
+#   ./bench.sh                                  service benchmarks at the default sizes
+#   ./bench.sh 1000,50000                       service benchmarks at the given catalog sizes
+#   BENCH_MAIN=library.bench.BorrowContentionBenchmark ./bench.sh 1,8,32
+# Benchmarks reset their database, so BENCH_DB_URL must name a scratch database (its name must contain "bench").
+
+JDBC_JAR_PATH="src/lib/mysql-connector-j-9.3.0.jar"
+BENCH_MAIN="${BENCH_MAIN:-library.bench.ServiceBenchmarks}"
+BENCH_DB_URL="${BENCH_DB_URL:-jdbc:mysql://localhost/library_bench?createDatabaseIfNotExist=true}"
+
+if [ ! -f "$JDBC_JAR_PATH" ]; then
+    echo "ERROR: JDBC Driver JAR not found at $JDBC_JAR_PATH"
+    exit 1
+fi
+
+mkdir -p bin
+javac -d bin -cp "$JDBC_JAR_PATH" src/library/*.java src/library/frontend/*.java src/library/backend/*.java src/library/bench/*.java
+if [ $? -ne 0 ]; then
+    echo "ERROR: Compilation failed. See messages above."
+    exit 1
+fi
+
+java -Djava.awt.headless=true -Dlibrary.db.url="$BENCH_DB_URL" $BENCH_JAVA_OPTS -cp "bin:$JDBC_JAR_PATH" "$BENCH_MAIN" "$@"
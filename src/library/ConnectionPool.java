@@ -0,0 +1,415 @@
+package library;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * A small bounded JDBC connection pool exposed as a {@link DataSource}.
+ * <p>
+ * Connections handed out by {@link #getConnection()} are logical handles: calling
+ * {@code close()} on them returns the physical connection to the pool instead of
+ * closing the socket. The pool keeps between {@code minSize} and {@code maxSize}
+ * physical connections, evicts connections that sit idle for too long, validates
+ * a connection before handing it out and reports connections that are held for
+ * longer than the leak threshold. Plain {@code prepareStatement(String)} calls are served
+ * from a per-connection {@link StatementCache}. Pool size gauges, borrow wait times and borrow
+ * timeouts are published to the {@link MetricsRegistry}.
+ */
+public class ConnectionPool implements DataSource {
+
+    /** Pool tuning knobs. Every value can be overridden with a {@code -Dlibrary.db.pool.*} system property. */
+    public static class PoolConfig {
+        public int minSize = 2;
+        public int maxSize = 10;
+        public long borrowTimeoutMillis = 5_000;
+        public long idleTimeoutMillis = 5 * 60_000;
+        public long validationIdleMillis = 500;      // Validate on borrow if the connection sat idle longer than this
+        public int validationTimeoutSeconds = 2;
+        public long leakThresholdMillis = 60_000;    // 0 disables leak detection
+        public long maintenanceIntervalMillis = 30_000;
+        public int statementCacheSize = 64;          // Prepared statements cached per connection; 0 disables
+
+        public static PoolConfig fromSystemProperties() {
+            PoolConfig config = new PoolConfig();
+            config.minSize = Integer.getInteger("library.db.pool.minSize", config.minSize);
+            config.maxSize = Integer.getInteger("library.db.pool.maxSize", config.maxSize);
+            config.borrowTimeoutMillis = Long.getLong("library.db.pool.borrowTimeoutMillis", config.borrowTimeoutMillis);
+            config.idleTimeoutMillis = Long.getLong("library.db.pool.idleTimeoutMillis", config.idleTimeoutMillis);
+            config.validationIdleMillis = Long.getLong("library.db.pool.validationIdleMillis", config.validationIdleMillis);
+            config.validationTimeoutSeconds = Integer.getInteger("library.db.pool.validationTimeoutSeconds", config.validationTimeoutSeconds);
+            config.leakThresholdMillis = Long.getLong("library.db.pool.leakThresholdMillis", config.leakThresholdMillis);
+            config.maintenanceIntervalMillis = Long.getLong("library.db.pool.maintenanceIntervalMillis", config.maintenanceIntervalMillis);
+            config.statementCacheSize = Integer.getInteger("library.db.pool.statementCacheSize", config.statementCacheSize);
+            if (config.maxSize < 1) { config.maxSize = 1; }
+            if (config.minSize < 0) { config.minSize = 0; }
+            if (config.minSize > config.maxSize) { config.minSize = config.maxSize; }
+            return config;
+        }
+    }
+
+    /** One physical connection owned by the pool. */
+    private static final class PooledEntry {
+        final Connection physical;
+        final StatementCache statements;
+        long lastReturnedAt = System.currentTimeMillis();
+        long borrowedAt;
+        Throwable borrowSite;        // Captured only when leak detection is enabled
+        boolean leakReported;
+
+        PooledEntry(Connection physical, int statementCacheSize) {
+            this.physical = physical;
+            this.statements = statementCacheSize > 0 ? new StatementCache(physical, statementCacheSize) : null;
+        }
+    }
+
+    private static final MetricsRegistry.Timer BORROW_WAIT = MetricsRegistry.getInstance().timer("pool.borrowWait");
+    private static final MetricsRegistry.Counter BORROW_TIMEOUTS = MetricsRegistry.getInstance().counter("pool.borrowTimeouts");
+    private static final MetricsRegistry.Counter OPENED = MetricsRegistry.getInstance().counter("pool.connectionsOpened");
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final PoolConfig config;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition connectionReturned = lock.newCondition();
+    private final Deque<PooledEntry> idle = new ArrayDeque<>();   // LIFO keeps hot connections hot
+    private final Set<PooledEntry> borrowed = ConcurrentHashMap.newKeySet();
+    private int totalConnections = 0;                              // idle + borrowed + being created
+    private volatile boolean shutdown = false;
+
+    private final ScheduledExecutorService maintenance;
+    private PrintWriter logWriter;
+    private int loginTimeout;
+
+    public ConnectionPool(String url, String user, String password, PoolConfig config) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.config = config;
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-maintenance");
+            t.setDaemon(true);
+            return t;
+        });
+        this.maintenance.scheduleWithFixedDelay(this::runMaintenance,
+                config.maintenanceIntervalMillis, config.maintenanceIntervalMillis, TimeUnit.MILLISECONDS);
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        metrics.gauge("pool.active", this::getActiveConnections);
+        metrics.gauge("pool.idle", this::getIdleConnections);
+        metrics.gauge("pool.total", this::getTotalConnections);
+        metrics.gauge("pool.maxSize", this::getMaxSize);
+    }
+
+    // --- DataSource ---
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long started = System.nanoTime();
+        PooledEntry entry = borrow();
+        BORROW_WAIT.recordSince(started);
+        return wrap(entry);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("The pool only serves connections for the configured user.");
+    }
+
+    @Override public PrintWriter getLogWriter() { return logWriter; }
+    @Override public void setLogWriter(PrintWriter out) { this.logWriter = out; }
+    @Override public void setLoginTimeout(int seconds) { this.loginTimeout = seconds; }
+    @Override public int getLoginTimeout() { return loginTimeout; }
+    @Override public Logger getParentLogger() throws SQLFeatureNotSupportedException { throw new SQLFeatureNotSupportedException(); }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) { return iface.cast(this); }
+        throw new SQLException("ConnectionPool does not wrap " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) { return iface.isInstance(this); }
+
+    // --- Pool statistics ---
+
+    public int getTotalConnections() { lock.lock(); try { return totalConnections; } finally { lock.unlock(); } }
+    public int getIdleConnections() { lock.lock(); try { return idle.size(); } finally { lock.unlock(); } }
+    public int getActiveConnections() { return borrowed.size(); }
+    public int getMaxSize() { return config.maxSize; }
+    public boolean isShutdown() { return shutdown; }
+
+    // --- Borrow / return ---
+
+    private PooledEntry borrow() throws SQLException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.borrowTimeoutMillis);
+        while (true) {
+            PooledEntry entry = null;
+            boolean mayCreate = false;
+            lock.lock();
+            try {
+                while (true) {
+                    if (shutdown) { throw new SQLException("Connection pool has been shut down.", "08003"); } // SQLState: no connection
+                    entry = idle.pollFirst();
+                    if (entry != null) { break; }
+                    if (totalConnections < config.maxSize) {
+                        totalConnections++; // Reserve the slot before connecting outside the lock
+                        mayCreate = true;
+                        break;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        BORROW_TIMEOUTS.increment();
+                        throw new SQLTimeoutException("Timed out after " + config.borrowTimeoutMillis
+                                + " ms waiting for a database connection (all " + config.maxSize + " in use).");
+                    }
+                    try {
+                        connectionReturned.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a database connection.", e);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (mayCreate) {
+                try {
+                    entry = new PooledEntry(openPhysical(), config.statementCacheSize);
+                } catch (SQLException e) {
+                    releaseSlot();
+                    throw e;
+                }
+            } else if (!validate(entry)) {
+                discard(entry);
+                continue; // Try the next idle connection (or open a new one)
+            }
+
+            markBorrowed(entry);
+            return entry;
+        }
+    }
+
+    private boolean validate(PooledEntry entry) {
+        if (System.currentTimeMillis() - entry.lastReturnedAt < config.validationIdleMillis) {
+            return true; // Recently used; skip the round trip
+        }
+        try {
+            return !entry.physical.isClosed() && entry.physical.isValid(config.validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void markBorrowed(PooledEntry entry) {
+        entry.borrowedAt = System.currentTimeMillis();
+        entry.leakReported = false;
+        entry.borrowSite = config.leakThresholdMillis > 0 ? new Throwable("Connection borrowed here") : null;
+        borrowed.add(entry);
+    }
+
+    private void giveBack(PooledEntry entry, boolean broken) {
+        borrowed.remove(entry);
+        entry.borrowSite = null;
+        if (broken || shutdown) {
+            discard(entry);
+            return;
+        }
+        entry.lastReturnedAt = System.currentTimeMillis();
+        lock.lock();
+        try {
+            idle.offerFirst(entry);
+            connectionReturned.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Connection openPhysical() throws SQLException {
+        Connection physical = DriverManager.getConnection(url, user, password);
+        OPENED.increment();
+        System.out.println("Database connection established successfully.");
+        return physical;
+    }
+
+    private void discard(PooledEntry entry) {
+        if (entry.statements != null) { entry.statements.closeAll(); }
+        try { entry.physical.close(); } catch (SQLException ignored) { /* Already broken */ }
+        releaseSlot();
+    }
+
+    private void releaseSlot() {
+        lock.lock();
+        try {
+            totalConnections--;
+            connectionReturned.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // --- Maintenance: idle eviction, minimum size and leak detection ---
+
+    private void runMaintenance() {
+        if (shutdown) { return; }
+        long now = System.currentTimeMillis();
+
+        List<PooledEntry> evicted = new ArrayList<>();
+        lock.lock();
+        try {
+            // Oldest idle connections sit at the tail of the deque
+            while (totalConnections - evicted.size() > config.minSize && !idle.isEmpty()
+                    && now - idle.peekLast().lastReturnedAt > config.idleTimeoutMillis) {
+                evicted.add(idle.pollLast());
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (PooledEntry entry : evicted) { discard(entry); }
+
+        while (!shutdown) {
+            lock.lock();
+            try {
+                if (totalConnections >= config.minSize) { break; }
+                totalConnections++;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                PooledEntry entry = new PooledEntry(openPhysical(), config.statementCacheSize);
+                lock.lock();
+                try { idle.offerLast(entry); connectionReturned.signal(); } finally { lock.unlock(); }
+            } catch (SQLException e) {
+                releaseSlot();
+                System.err.println("Connection pool could not top up to minimum size: " + e.getMessage());
+                break;
+            }
+        }
+
+        if (config.leakThresholdMillis > 0) {
+            for (PooledEntry entry : borrowed) {
+                if (!entry.leakReported && now - entry.borrowedAt > config.leakThresholdMillis) {
+                    entry.leakReported = true;
+                    System.err.println("Possible connection leak: connection held for " + (now - entry.borrowedAt) + " ms.");
+                    Throwable site = entry.borrowSite;
+                    if (site != null) { site.printStackTrace(); }
+                }
+            }
+        }
+    }
+
+    /** Closes every idle connection and stops handing out new ones. Borrowed connections are closed when returned. */
+    public void shutdown() {
+        shutdown = true;
+        maintenance.shutdownNow();
+        List<PooledEntry> toClose;
+        lock.lock();
+        try {
+            toClose = new ArrayList<>(idle);
+            idle.clear();
+            connectionReturned.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (PooledEntry entry : toClose) { discard(entry); }
+        System.out.println("Database connection pool shut down.");
+    }
+
+    // --- Logical connection handle ---
+
+    private Connection wrap(PooledEntry entry) {
+        return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new LogicalConnection(entry));
+    }
+
+    /**
+     * Forwards everything to the physical connection except {@code close()}, which resets the
+     * connection state, closes any statements the caller forgot about and returns it to the pool.
+     */
+    private final class LogicalConnection implements InvocationHandler {
+        private final PooledEntry entry;
+        private final List<Statement> openStatements = new ArrayList<>();
+        private boolean closed = false;
+
+        LogicalConnection(PooledEntry entry) { this.entry = entry; }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "close":
+                    closeLogical();
+                    return null;
+                case "isClosed":
+                    return closed || entry.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + entry.physical + (closed ? ", closed]" : "]");
+                case "unwrap":
+                    if (((Class<?>) args[0]).isInstance(proxy)) { return proxy; }
+                    break;
+                default:
+                    break;
+            }
+            if (closed) { throw new SQLException("Connection has already been returned to the pool."); }
+            if (entry.statements != null && "prepareStatement".equals(name) && args.length == 1) {
+                PreparedStatement cached = entry.statements.prepare((String) args[0], (Connection) proxy);
+                openStatements.add(cached);
+                return cached;
+            }
+            try {
+                Object result = method.invoke(entry.physical, args);
+                if (MetricsRegistry.SQL_ENABLED && "prepareStatement".equals(name)) {
+                    result = MetricsRegistry.getInstance().instrument((String) args[0], (PreparedStatement) result);
+                }
+                if (result instanceof Statement) { openStatements.add((Statement) result); }
+                return result;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private void closeLogical() {
+            if (closed) { return; }
+            closed = true;
+            boolean broken = false;
+            for (Statement statement : openStatements) {
+                try { statement.close(); } catch (SQLException ignored) { /* Statement already unusable */ }
+            }
+            openStatements.clear();
+            try {
+                if (entry.physical.isClosed()) {
+                    broken = true;
+                } else if (!entry.physical.getAutoCommit()) {
+                    entry.physical.rollback(); // Never hand an open transaction to the next borrower
+                    entry.physical.setAutoCommit(true);
+                }
+                if (!broken) { entry.physical.clearWarnings(); }
+            } catch (SQLException e) {
+                broken = true;
+            }
+            giveBack(entry, broken);
+        }
+    }
+}
@@ -3,41 +3,66 @@ import java.sql.*;
 import java.io.*;
 public class DatabaseConnection {
     public static final String DRIVER_CLASS = "com.mysql.cj.jdbc.Driver"; 
-    private static final String DB_URL = "jdbc:mysql://localhost/library_db"; // Replace 'library_db' with your DB name
-    private static final String DB_USER = "root";
-    private static final String DB_PASSWORD = "Abhishek@123";
+    private static final String DB_URL = System.getProperty("library.db.url", "jdbc:mysql://localhost/library_db"); // Replace 'library_db' with your DB name
+    private static final String DB_USER = System.getProperty("library.db.user", "root");
+    private static final String DB_PASSWORD = System.getProperty("library.db.password", "Abhishek@123");
+    // true = MySQL server-side prepared statements, false = client-side emulation (for comparing the statement cache win)
+    private static final boolean SERVER_PREPARED_STATEMENTS = Boolean.parseBoolean(System.getProperty("library.db.serverPrepStmts", "true"));
+    // Lets the driver send a JDBC batch of INSERTs as one multi-row INSERT instead of one round trip per row
+    private static final boolean REWRITE_BATCHED_STATEMENTS = Boolean.parseBoolean(System.getProperty("library.db.rewriteBatchedStatements", "true"));
+    // Statements given a fetch size (report exports) read their rows from a server-side cursor, that many at a time.
+    // The driver needs server-side prepared statements for it, so it follows serverPrepStmts unless set explicitly.
+    private static final boolean USE_CURSOR_FETCH = Boolean.parseBoolean(System.getProperty("library.db.useCursorFetch", String.valueOf(SERVER_PREPARED_STATEMENTS)));
 
-    private static Connection connection = null;
+    private static ConnectionPool pool = null;
     private DatabaseConnection() {}
+
+    /**
+     * Borrows a connection from the shared pool. Callers own the returned connection
+     * and must close it (or pass it to {@link #release(Connection)}) to hand it back.
+     * Statements prepared on it are timed, and slow ones are reported by {@link SlowQueryLog}.
+     */
     public static Connection getConnection() throws SQLException {
-        if (connection == null || connection.isClosed()) {
-            try {
-                connection = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
-                System.out.println("Database connection established successfully."); 
-            } catch (SQLException e) {
-                System.err.println("Error connecting to the database: " + e.getMessage());
-                e.printStackTrace(); 
-                throw e; 
-            }
+        try {
+            return getDataSource().getConnection();
+        } catch (SQLException e) {
+            System.err.println("Error connecting to the database: " + e.getMessage());
+            throw e; 
         }
-        return connection;
     }
 
-    public static void closeConnection() {
-        if (connection != null) {
+    /** Returns the pooled DataSource, creating it on first use. */
+    public static synchronized ConnectionPool getDataSource() {
+        if (pool == null || pool.isShutdown()) {
+            String url = DB_URL + (DB_URL.contains("?") ? "&" : "?") + "useServerPrepStmts=" + SERVER_PREPARED_STATEMENTS
+                    + "&rewriteBatchedStatements=" + REWRITE_BATCHED_STATEMENTS + "&useCursorFetch=" + USE_CURSOR_FETCH;
+            pool = new ConnectionPool(url, DB_USER, DB_PASSWORD, ConnectionPool.PoolConfig.fromSystemProperties());
+        }
+        return pool;
+    }
+
+    /** True if statements with a positive fetch size read through a server-side cursor. */
+    public static boolean usesCursorFetch() { return USE_CURSOR_FETCH; }
+
+    /** Returns a borrowed connection to the pool, ignoring nulls and errors. */
+    public static void release(Connection conn) {
+        if (conn != null) {
             try {
-                if (!connection.isClosed()) {
-                    connection.close();
-                    System.out.println("Database connection closed."); 
-                    connection = null; 
-                }
+                conn.close();
             } catch (SQLException e) {
-                System.err.println("Error closing the database connection: " + e.getMessage());
-                e.printStackTrace();
+                System.err.println("Error returning connection to the pool: " + e.getMessage());
             }
         }
     }
 
+    /** Shuts down the pool and closes every idle physical connection. */
+    public static synchronized void closeConnection() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
     /**
      * Main method for testing the connection.
      * This is not part of the library management system but can be used for quick testing.
@@ -69,6 +94,7 @@ public class DatabaseConnection {
                     System.err.println("Error reading schemas.sql: " + e.getMessage());
                 }
     
+                DatabaseConnection.release(conn);
                 DatabaseConnection.closeConnection();
             } else {
                 System.err.println("Test Connection Failed!");
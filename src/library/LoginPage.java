@@ -1,6 +1,13 @@
 package library; // Base package
 
 import javax.swing.*;
+import java.sql.SQLException;
+import library.backend.CatalogIndex;
+import library.backend.FineAccrualJob;
+import library.backend.FineLedger;
+import library.backend.HoldService;
+import library.backend.RatingService;
+import library.backend.SettingsRegistry;
 import library.frontend.LoginFrame;
 
 public class LoginPage {
@@ -17,6 +24,47 @@ public class LoginPage {
 
         JFrame.setDefaultLookAndFeelDecorated(true);
 
+        // Load Settings and the catalog index off the EDT; services read the in-memory copies
+        long settingsPollSeconds = Long.getLong("library.settings.pollSeconds", 60L);
+        long catalogPollSeconds = Long.getLong("library.catalog.pollSeconds", 15L);
+        long fineAccrualCheckMinutes = Long.getLong("library.fines.accrualCheckMinutes", 60L);
+        Thread startupLoader = new Thread(() -> {
+            MetricsRegistry.getInstance().start();
+            SlowQueryLog.getInstance().start();
+            if (Boolean.parseBoolean(System.getProperty("library.db.migrateOnStartup", "true"))) {
+                try {
+                    SchemaMigrator.migrate();
+                } catch (SQLException e) {
+                    System.err.println("Schema migrations not applied: " + e.getMessage());
+                }
+            }
+            SettingsRegistry.getInstance().start(settingsPollSeconds);
+            if (Boolean.getBoolean("library.ratings.rebuildTotals")) {
+                try {
+                    RatingService.rebuild();
+                } catch (SQLException e) {
+                    System.err.println("Rating totals not rebuilt: " + e.getMessage());
+                }
+            }
+            try {
+                CatalogIndex.getInstance().load();
+            } catch (SQLException e) {
+                System.err.println("Catalog index not loaded, searches will query the database: " + e.getMessage());
+            }
+            CatalogIndex.getInstance().startPolling(catalogPollSeconds); // Also retries a failed load
+            if (Boolean.getBoolean("library.fines.rebuildRollups")) {
+                try {
+                    FineLedger.rebuild();
+                } catch (SQLException e) {
+                    System.err.println("Fine rollups not rebuilt: " + e.getMessage());
+                }
+            }
+            FineAccrualJob.getInstance().start(fineAccrualCheckMinutes);
+            HoldService.getInstance().start();
+        }, "startup-loader");
+        startupLoader.setDaemon(true);
+        startupLoader.start();
+
         // Run the GUI creation on the Event Dispatch Thread (EDT)
         // This is crucial for Swing applications
         SwingUtilities.invokeLater(() -> {
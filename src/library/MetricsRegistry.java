@@ -0,0 +1,471 @@
+package library;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Process-wide counters, gauges and latency timers for the backend.
+ * <p>
+ * Metrics are created by name once (usually into a {@code static final} field) and recording into
+ * them afterwards is a {@link LongAdder} or {@link LatencyHistogram} update with no allocation or lock.
+ * What is collected:
+ * <ul>
+ *   <li>every SQL statement prepared through the pool: execution time and rows fetched, keyed by the SQL
+ *       text ({@link #sql(String)}), and the same time rolled up under {@code db.<Class.method>} for the
+ *       {@code library.*} method that first prepared that SQL;</li>
+ *   <li>pool gauges and the time spent waiting to borrow a connection ({@link ConnectionPool});</li>
+ *   <li>statement cache hit ratio, catalog index searches and every dashboard background task.</li>
+ * </ul>
+ * {@link #start()} publishes everything over JMX as {@code library:type=Metrics} and, every
+ * {@code library.metrics.logSeconds} seconds (default 60, 0 disables), prints what changed in the last
+ * interval with a {@code [metrics]} prefix, also appending it to {@code library.metrics.logFile} if set.
+ * The slowest SQL is logged by {@link SlowQueryLog}.
+ * <p>
+ * The statement and result set wrappers are {@link Proxy} instances, so unlike recording into a metric they
+ * are not free: every call through them allocates its argument array and boxes primitive arguments and
+ * results (a {@code setInt}, a {@code getLong}, each {@code next()}), and every query allocates one more
+ * proxy for its result set. {@code -Dlibrary.metrics.sql=false} turns off the statement wrappers, and with
+ * them the per-call cost and the slow query log.
+ */
+public final class MetricsRegistry {
+
+    public static final boolean SQL_ENABLED = Boolean.parseBoolean(System.getProperty("library.metrics.sql", "true"));
+    private static final int LOG_SECONDS = Integer.getInteger("library.metrics.logSeconds", 60);
+    private static final String LOG_FILE = System.getProperty("library.metrics.logFile");
+    private static final int TOP_SQL = 10;
+    private static final int SQL_TEXT_LIMIT = 120;
+
+    private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+    /** A monotonically increasing count. */
+    public static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void increment() { value.increment(); }
+        public void add(long n) { value.add(n); }
+        public long get() { return value.sum(); }
+    }
+
+    /** A latency histogram with a convenience for {@code System.nanoTime()} start stamps. */
+    public static final class Timer {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        /** Records the time since {@code startedNanos}, a value from {@link System#nanoTime()}. */
+        public void recordSince(long startedNanos) { histogram.recordNanos(System.nanoTime() - startedNanos); }
+        public void recordNanos(long nanos) { histogram.recordNanos(nanos); }
+        public LatencyHistogram histogram() { return histogram; }
+    }
+
+    /** Timings and row counts of one SQL text. */
+    public static final class SqlStats {
+        private final String sql;
+        private final String caller;
+        private final Timer timer = new Timer();
+        private final Counter rows = new Counter();
+        private final Timer method;
+        private final Counter totalRows;
+        private final SlowQueryLog.Shape shape;
+
+        private SqlStats(String sql, String caller, Timer method, Counter totalRows) {
+            this.sql = sql;
+            this.caller = caller;
+            this.method = method;
+            this.totalRows = totalRows;
+            this.shape = SlowQueryLog.getInstance().shape(sql);
+        }
+
+        public String getSql() { return sql; }
+        public String getCaller() { return caller; }
+        public Timer getTimer() { return timer; }
+        public long getRows() { return rows.get(); }
+
+        private void record(PreparedStatement statement, long nanos) {
+            timer.recordNanos(nanos);
+            method.recordNanos(nanos);
+            SlowQueryLog.getInstance().record(shape, caller, sql, statement, nanos);
+        }
+
+        void rowFetched() {
+            rows.increment();
+            totalRows.increment();
+        }
+
+        /**
+         * Forwards a statement call to {@code delegate}, timing the {@code execute*} methods (also into the
+         * {@link SlowQueryLog}) and counting the rows read from a query's result set. Used by the pool's
+         * statement handles. Each query's result set is wrapped in a new proxy, on top of the argument array
+         * and boxing every proxied call already costs.
+         */
+        Object invoke(PreparedStatement delegate, Method method, Object[] args) throws Throwable {
+            if (!method.getName().startsWith("execute")) { return forward(delegate, method, args); }
+            long started = System.nanoTime();
+            Object result;
+            try {
+                result = forward(delegate, method, args);
+            } finally {
+                record(delegate, System.nanoTime() - started);
+            }
+            if (result instanceof ResultSet) {
+                return Proxy.newProxyInstance(MetricsRegistry.class.getClassLoader(),
+                        new Class<?>[]{ResultSet.class}, new CountingResultSet((ResultSet) result, this));
+            }
+            return result;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Timer> timers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, DoubleSupplier> gauges = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, SqlStats> statements = new ConcurrentHashMap<>();
+    private final Counter rowsFetched;
+    private ScheduledExecutorService logger;
+
+    private MetricsRegistry() {
+        rowsFetched = counter("sql.rowsFetched");
+        gauge("statementCache.hitRatio", StatementCache::getHitRatio);
+        gauge("statementCache.hits", StatementCache::getHits);
+        gauge("statementCache.misses", StatementCache::getMisses);
+        gauge("statementCache.evictions", StatementCache::getEvictions);
+    }
+
+    public static MetricsRegistry getInstance() { return INSTANCE; }
+
+    public Counter counter(String name) { return counters.computeIfAbsent(name, n -> new Counter()); }
+
+    public Timer timer(String name) { return timers.computeIfAbsent(name, n -> new Timer()); }
+
+    /** Registers (or replaces) a value that is read whenever metrics are reported. */
+    public void gauge(String name, DoubleSupplier value) { gauges.put(name, value); }
+
+    /** The statistics of {@code sql}, created on first use. */
+    public SqlStats sql(String sql) {
+        SqlStats stats = statements.get(sql);
+        if (stats != null) { return stats; }
+        return statements.computeIfAbsent(sql, text -> {
+            String caller = callerOf();
+            return new SqlStats(text, caller, timer("db." + caller), rowsFetched);
+        });
+    }
+
+    /** Wraps a statement the pool did not cache so its executions are still counted. */
+    PreparedStatement instrument(String sql, PreparedStatement statement) {
+        SqlStats stats = sql(sql);
+        return (PreparedStatement) Proxy.newProxyInstance(MetricsRegistry.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> stats.invoke(statement, method, args));
+    }
+
+    /** Registers the JMX bean and starts the rolling log. Safe to call more than once. */
+    public synchronized void start() {
+        if (logger != null) { return; }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("library:type=Metrics");
+            if (!server.isRegistered(name)) { server.registerMBean(new MetricsBean(), name); }
+        } catch (JMException e) {
+            System.err.println("Could not register the metrics MBean: " + e.getMessage());
+        }
+        logger = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-log");
+            t.setDaemon(true);
+            return t;
+        });
+        if (LOG_SECONDS > 0) {
+            logger.scheduleAtFixedRate(new RollingLog(), LOG_SECONDS, LOG_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /** Everything recorded since startup, in the same layout as the rolling log. */
+    public String report() {
+        StringBuilder out = new StringBuilder();
+        appendGauges(out);
+        Map<String, Long> counts = new TreeMap<>();
+        counters.forEach((name, counter) -> counts.put(name, counter.get()));
+        appendCounters(out, counts, "");
+        Map<String, LatencyHistogram.Snapshot> snapshots = new TreeMap<>();
+        timers.forEach((name, timer) -> snapshots.put(name, timer.histogram.snapshot()));
+        appendTimers(out, snapshots);
+        List<SqlLine> lines = new ArrayList<>();
+        for (SqlStats stats : statements.values()) { lines.add(new SqlLine(stats, stats.timer.histogram.snapshot(), stats.getRows())); }
+        appendSql(out, lines);
+        return out.toString();
+    }
+
+    // --- Report formatting, shared by report() and the rolling log ---
+
+    private void appendGauges(StringBuilder out) {
+        StringBuilder line = new StringBuilder();
+        for (Map.Entry<String, DoubleSupplier> gauge : new TreeMap<>(gauges).entrySet()) {
+            line.append(' ').append(gauge.getKey()).append('=').append(format(readGauge(gauge.getValue())));
+        }
+        if (line.length() > 0) { out.append("gauges:").append(line).append('\n'); }
+    }
+
+    private static void appendCounters(StringBuilder out, Map<String, Long> counts, String sign) {
+        StringBuilder line = new StringBuilder();
+        counts.forEach((name, value) -> line.append(' ').append(name).append('=').append(sign).append(value));
+        if (line.length() > 0) { out.append("counters:").append(line).append('\n'); }
+    }
+
+    private static void appendTimers(StringBuilder out, Map<String, LatencyHistogram.Snapshot> snapshots) {
+        snapshots.forEach((name, s) -> {
+            if (s.count() > 0) { out.append(String.format(Locale.ROOT, "timer %s %s%n", name, summary(s))); }
+        });
+    }
+
+    private static void appendSql(StringBuilder out, List<SqlLine> lines) {
+        lines.removeIf(line -> line.latency.count() == 0);
+        lines.sort(Comparator.comparingLong((SqlLine line) -> line.latency.totalMicros()).reversed());
+        for (SqlLine line : lines.subList(0, Math.min(TOP_SQL, lines.size()))) {
+            out.append(String.format(Locale.ROOT, "sql %s rows=%d total=%dms [%s] %s%n", summary(line.latency), line.rows,
+                    line.latency.totalMicros() / 1_000, line.stats.caller, abbreviate(line.stats.sql)));
+        }
+    }
+
+    private static String summary(LatencyHistogram.Snapshot s) {
+        return String.format(Locale.ROOT, "n=%d mean=%.0fus p50=%dus p99=%dus p99.9=%dus max=%dus", s.count(), s.meanMicros(),
+                s.percentileMicros(0.50), s.percentileMicros(0.99), s.percentileMicros(0.999), s.maxMicros());
+    }
+
+    private static String abbreviate(String sql) {
+        String flat = sql.replaceAll("\\s+", " ").trim();
+        return flat.length() <= SQL_TEXT_LIMIT ? flat : flat.substring(0, SQL_TEXT_LIMIT - 3) + "...";
+    }
+
+    private static double readGauge(DoubleSupplier gauge) {
+        try {
+            return gauge.getAsDouble();
+        } catch (RuntimeException e) {
+            return Double.NaN; // A gauge must never break the report
+        }
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) && !Double.isInfinite(value) ? String.valueOf((long) value) : String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /** The first frame in the application that is not part of the pool or this class, as {@code Class.method}. */
+    private static String callerOf() {
+        return StackWalker.getInstance().walk(frames -> frames
+                .filter(frame -> frame.getClassName().startsWith("library.")
+                        && !frame.getClassName().startsWith("library.ConnectionPool")
+                        && !frame.getClassName().startsWith("library.StatementCache")
+                        && !frame.getClassName().startsWith("library.MetricsRegistry"))
+                .findFirst()
+                .map(frame -> {
+                    String type = frame.getClassName().substring(frame.getClassName().lastIndexOf('.') + 1);
+                    int nested = type.indexOf('$');
+                    String methodName = frame.getMethodName();
+                    if (methodName.startsWith("lambda$")) { methodName = methodName.split("\\$")[1]; } // lambda$load$3 -> load
+                    return (nested >= 0 ? type.substring(0, nested) : type) + "." + methodName;
+                })
+                .orElse("other"));
+    }
+
+    private static Object forward(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static final class SqlLine {
+        final SqlStats stats;
+        final LatencyHistogram.Snapshot latency;
+        final long rows;
+
+        SqlLine(SqlStats stats, LatencyHistogram.Snapshot latency, long rows) {
+            this.stats = stats;
+            this.latency = latency;
+            this.rows = rows;
+        }
+    }
+
+    /** Counts {@code next()} calls that land on a row. Every getter still goes through reflection and boxes. */
+    private static final class CountingResultSet implements InvocationHandler {
+        private final ResultSet delegate;
+        private final SqlStats stats;
+
+        CountingResultSet(ResultSet delegate, SqlStats stats) {
+            this.delegate = delegate;
+            this.stats = stats;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("next".equals(method.getName())) {
+                boolean more = delegate.next();
+                if (more) { stats.rowFetched(); }
+                return more;
+            }
+            return forward(delegate, method, args);
+        }
+    }
+
+    /** Prints what changed since the previous run. */
+    private final class RollingLog implements Runnable {
+        private final Map<String, Long> lastCounts = new HashMap<>();
+        private final Map<String, LatencyHistogram.Snapshot> lastLatency = new HashMap<>();
+
+        @Override
+        public void run() {
+            try {
+                StringBuilder out = new StringBuilder();
+                appendGauges(out);
+
+                Map<String, Long> counts = new TreeMap<>();
+                counters.forEach((name, counter) -> {
+                    long now = counter.get();
+                    Long before = lastCounts.put(name, now);
+                    long delta = now - (before == null ? 0 : before);
+                    if (delta != 0) { counts.put(name, delta); }
+                });
+                appendCounters(out, counts, "+");
+
+                Map<String, LatencyHistogram.Snapshot> intervals = new TreeMap<>();
+                timers.forEach((name, timer) -> intervals.put(name, interval(name, timer.histogram)));
+                appendTimers(out, intervals); // The worst SQL of the interval is reported by SlowQueryLog
+                write(out);
+            } catch (RuntimeException e) {
+                e.printStackTrace(); // Keep the schedule alive
+            }
+        }
+
+        private LatencyHistogram.Snapshot interval(String key, LatencyHistogram histogram) {
+            LatencyHistogram.Snapshot now = histogram.snapshot();
+            LatencyHistogram.Snapshot before = lastLatency.put(key, now);
+            return before == null ? now : now.minus(before);
+        }
+
+        private void write(StringBuilder report) {
+            String stamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+            StringBuilder text = new StringBuilder();
+            text.append("[metrics] ").append(stamp).append(", last ").append(LOG_SECONDS).append(" s\n");
+            for (String line : report.toString().split("\n")) {
+                if (!line.isEmpty()) { text.append("[metrics]   ").append(line).append('\n'); }
+            }
+            System.out.print(text);
+            if (LOG_FILE != null && !LOG_FILE.isEmpty()) {
+                try (PrintWriter file = new PrintWriter(new FileWriter(LOG_FILE, true))) {
+                    file.print(text);
+                } catch (IOException e) {
+                    System.err.println("Could not write metrics to " + LOG_FILE + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * JMX view: one read-only attribute per counter and gauge, six per timer ({@code .count},
+     * {@code .meanMicros}, {@code .p50Micros}, {@code .p99Micros}, {@code .p999Micros}, {@code .maxMicros})
+     * and a {@code report()} operation returning the full text report including the slowest SQL.
+     */
+    private final class MetricsBean implements DynamicMBean {
+        private final String[] timerFields = {"count", "meanMicros", "p50Micros", "p99Micros", "p999Micros", "maxMicros"};
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Counter counter = counters.get(attribute);
+            if (counter != null) { return counter.get(); }
+            DoubleSupplier gauge = gauges.get(attribute);
+            if (gauge != null) { return readGauge(gauge); }
+            int dot = attribute.lastIndexOf('.');
+            Timer timer = dot > 0 ? timers.get(attribute.substring(0, dot)) : null;
+            if (timer != null) {
+                LatencyHistogram h = timer.histogram;
+                switch (attribute.substring(dot + 1)) {
+                    case "count": return (double) h.count();
+                    case "meanMicros": return h.meanMicros();
+                    case "p50Micros": return (double) h.percentileMicros(0.50);
+                    case "p99Micros": return (double) h.percentileMicros(0.99);
+                    case "p999Micros": return (double) h.percentileMicros(0.999);
+                    case "maxMicros": return (double) h.maxMicros();
+                    default: break;
+                }
+            }
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    list.add(new Attribute(attribute, getAttribute(attribute)));
+                } catch (AttributeNotFoundException ignored) {
+                    // Metrics come and go; skip names that no longer resolve
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) { return new AttributeList(); }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            if ("report".equals(actionName)) { return report(); }
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (String name : new TreeMap<>(counters).keySet()) {
+                attributes.add(new MBeanAttributeInfo(name, "java.lang.Long", "Counter", true, false, false));
+            }
+            for (String name : new TreeMap<>(gauges).keySet()) {
+                attributes.add(new MBeanAttributeInfo(name, "java.lang.Double", "Gauge", true, false, false));
+            }
+            for (String name : new TreeMap<>(timers).keySet()) {
+                for (String field : timerFields) {
+                    attributes.add(new MBeanAttributeInfo(name + "." + field, "java.lang.Double", "Timer", true, false, false));
+                }
+            }
+            MBeanOperationInfo report = new MBeanOperationInfo("report", "Text report of every metric and the slowest SQL",
+                    new MBeanParameterInfo[0], "java.lang.String", MBeanOperationInfo.INFO);
+            return new MBeanInfo(MetricsRegistry.class.getName(), "Library backend metrics",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[]{report}, null);
+        }
+    }
+}
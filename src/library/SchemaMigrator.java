@@ -0,0 +1,324 @@
+package library;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Brings an existing database up to the current schema, one numbered migration at a time.
+ * <p>
+ * Applied versions are recorded in a {@code SchemaMigrations} table, so {@link #migrate()} can run at every
+ * start-up and only does work the first time. Each step checks whether its change is already there (a
+ * database created from the current {@code schemas.sql} has every index, for example), which makes a
+ * migration that was interrupted half-way safe to run again. Indexes are added with
+ * {@code ALGORITHM=INPLACE, LOCK=NONE}, so loans can still be issued and returned while they build. A
+ * MySQL named lock keeps two instances starting at the same time from migrating together.
+ */
+public final class SchemaMigrator {
+
+    private static final String LOCK_NAME = "library.schema_migrations";
+    private static final int LOCK_WAIT_SECONDS = Integer.getInteger("library.db.migrationLockSeconds", 600);
+    private static final int ER_DROP_INDEX_FK = 1553;
+
+    /** One idempotent change. */
+    public interface Step {
+        void apply(Connection conn) throws SQLException;
+        /** Undoes the change if it is there. Only the index benchmark uses this. */
+        void revert(Connection conn) throws SQLException;
+    }
+
+    public static final class Migration {
+        private final int version;
+        private final String description;
+        private final List<Step> steps;
+
+        Migration(int version, String description, Step... steps) {
+            this.version = version;
+            this.description = description;
+            this.steps = List.of(steps);
+        }
+
+        public int getVersion() { return version; }
+        public String getDescription() { return description; }
+    }
+
+    /** Every migration, oldest first. Never edit one that has shipped; add a new version instead. */
+    private static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "Indexes for the loan, fine and notification lookups of the three services",
+                    // getBorrowedBooks: WHERE student_id = ? ORDER BY status, due_date
+                    index("IssuedBooks", "idx_issued_student_status", "student_id, status, due_date"),
+                    // Librarian issue/return/reissue/fine checks: WHERE book_id = ? AND student_id = ? AND status IN (...)
+                    index("IssuedBooks", "idx_issued_book_student", "book_id, student_id, status"),
+                    // Fine reports and the unpaid list of one student, newest first
+                    index("Fines", "idx_fines_student_date", "student_id, fine_date"),
+                    // A user's notifications, newest first
+                    index("Notifications", "idx_notifications_user_created", "user_id, created_at")),
+            new Migration(2, "ID sequence table for book, librarian and student IDs",
+                    table("IdSequences", "name VARCHAR(30) PRIMARY KEY, next_value BIGINT NOT NULL")),
+            new Migration(3, "Running rating totals on Books, backfilled from RatingsReviews",
+                    column("Books", "rating_sum", "INT NOT NULL DEFAULT 0"),
+                    column("Books", "rating_count", "INT NOT NULL DEFAULT 0"),
+                    update("UPDATE Books b LEFT JOIN (SELECT book_id, SUM(rating) AS total, COUNT(*) AS reviews FROM RatingsReviews GROUP BY book_id) r " +
+                           "ON r.book_id = b.book_id " +
+                           "SET b.rating_sum = COALESCE(r.total, 0), b.rating_count = COALESCE(r.reviews, 0), " +
+                           "b.avg_rating = IF(r.reviews IS NULL, 0, ROUND(r.total / r.reviews, 2))")),
+            new Migration(4, "One fine per loan for the accrual job, and the monthly fine rollups",
+                    // Without the unique key the accrual upsert inserted a new fine on every run. Keep one per loan:
+                    // a paid one if there is one (money was taken for it), otherwise the newest.
+                    update("DELETE f FROM Fines f JOIN Fines other ON other.issue_id = f.issue_id " +
+                           "AND ((other.status = 'Paid' AND f.status = 'Unpaid') OR (other.status = f.status AND other.fine_id > f.fine_id))"),
+                    uniqueIndex("Fines", "uq_fines_issue", "issue_id"),
+                    // Nightly fine accrual: WHERE status = 'Issued' AND due_date < ? in (due_date, issue_id) order
+                    index("IssuedBooks", "idx_issued_status_due", "status, due_date, issue_id"),
+                    table("FineMonthlyTotals", "fine_year SMALLINT NOT NULL, fine_month TINYINT NOT NULL, " +
+                          "total_amount DECIMAL(12, 2) NOT NULL DEFAULT 0.00, paid_amount DECIMAL(12, 2) NOT NULL DEFAULT 0.00, " +
+                          "fine_count INT NOT NULL DEFAULT 0, PRIMARY KEY (fine_year, fine_month)"),
+                    table("FineStudentMonthlyTotals", "student_id VARCHAR(10) NOT NULL, fine_year SMALLINT NOT NULL, fine_month TINYINT NOT NULL, " +
+                          "total_amount DECIMAL(12, 2) NOT NULL DEFAULT 0.00, paid_amount DECIMAL(12, 2) NOT NULL DEFAULT 0.00, " +
+                          "fine_count INT NOT NULL DEFAULT 0, PRIMARY KEY (student_id, fine_year, fine_month), " +
+                          "FOREIGN KEY (student_id) REFERENCES Students(student_id) ON DELETE CASCADE"),
+                    update("DELETE FROM FineStudentMonthlyTotals",
+                           "DELETE FROM FineMonthlyTotals",
+                           "INSERT INTO FineMonthlyTotals (fine_year, fine_month, total_amount, paid_amount, fine_count) " +
+                           "SELECT YEAR(fine_date), MONTH(fine_date), SUM(fine_amount), SUM(IF(status = 'Paid', fine_amount, 0)), COUNT(*) " +
+                           "FROM Fines WHERE fine_date IS NOT NULL GROUP BY YEAR(fine_date), MONTH(fine_date)",
+                           "INSERT INTO FineStudentMonthlyTotals (student_id, fine_year, fine_month, total_amount, paid_amount, fine_count) " +
+                           "SELECT student_id, YEAR(fine_date), MONTH(fine_date), SUM(fine_amount), SUM(IF(status = 'Paid', fine_amount, 0)), COUNT(*) " +
+                           "FROM Fines WHERE fine_date IS NOT NULL AND student_id IS NOT NULL GROUP BY student_id, YEAR(fine_date), MONTH(fine_date)")),
+            new Migration(5, "Pickup deadline and FIFO queue index for holds",
+                    column("IssuedBooks", "hold_expires_at", "DATETIME"),
+                    // A book's hold queue: WHERE book_id = ? AND status = 'HoldRequested' ORDER BY issue_id
+                    index("IssuedBooks", "idx_issued_book_status", "book_id, status, issue_id")),
+            new Migration(6, "Keyset paging indexes for the catalog, loan and user lists",
+                    index("Books", "idx_books_title_id", "title, book_id"),
+                    index("IssuedBooks", "idx_issued_due_id", "due_date, issue_id"),
+                    index("Users", "idx_users_role_username", "role, username")),
+            new Migration(7, "Change time on Books for the catalog index poll",
+                    column("Books", "updated_at", "TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3)"),
+                    // CatalogIndex.refresh: WHERE updated_at >= ?
+                    index("Books", "idx_books_updated_at", "updated_at"))
+    );
+
+    private SchemaMigrator() {}
+
+    public static List<Migration> getMigrations() { return MIGRATIONS; }
+
+    /** Applies every migration not yet recorded. Returns how many were applied. */
+    public static int migrate() throws SQLException {
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            if (conn == null || conn.isClosed()) { throw new SQLException("Database connection failed or is closed."); }
+            ensureTable(conn);
+            if (!acquireLock(conn)) {
+                throw new SQLException("Timed out after " + LOCK_WAIT_SECONDS + " s waiting for another instance to finish migrating the schema.");
+            }
+            try {
+                Set<Integer> applied = appliedVersions(conn);
+                int count = 0;
+                for (Migration migration : MIGRATIONS) {
+                    if (applied.contains(migration.version)) { continue; }
+                    System.out.println("Applying schema migration " + migration.version + ": " + migration.description + "...");
+                    long start = System.currentTimeMillis();
+                    for (Step step : migration.steps) { step.apply(conn); }
+                    long elapsed = System.currentTimeMillis() - start;
+                    record(conn, migration, elapsed);
+                    System.out.println("Schema migration " + migration.version + " applied in " + elapsed + " ms.");
+                    count++;
+                }
+                return count;
+            } finally {
+                releaseLock(conn);
+            }
+        } finally {
+            DatabaseConnection.release(conn);
+        }
+    }
+
+    /**
+     * Undoes {@code version} and forgets that it was applied, so the next {@link #migrate()} applies it again.
+     * Meant for before/after benchmarks on scratch databases, not for production use.
+     */
+    public static void revert(int version) throws SQLException {
+        Migration migration = MIGRATIONS.stream().filter(m -> m.version == version).findFirst()
+                .orElseThrow(() -> new SQLException("No schema migration " + version + "."));
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            ensureTable(conn);
+            for (Step step : migration.steps) { step.revert(conn); }
+            try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM SchemaMigrations WHERE version = ?")) {
+                pstmt.setInt(1, version);
+                pstmt.executeUpdate();
+            }
+        } finally {
+            DatabaseConnection.release(conn);
+        }
+    }
+
+    // --- Bookkeeping ---
+
+    private static void ensureTable(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS SchemaMigrations (" +
+                    "version INT PRIMARY KEY, " +
+                    "description VARCHAR(200) NOT NULL, " +
+                    "applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
+                    "duration_ms BIGINT)");
+        }
+    }
+
+    private static Set<Integer> appliedVersions(Connection conn) throws SQLException {
+        Set<Integer> versions = new HashSet<>();
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT version FROM SchemaMigrations");
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) { versions.add(rs.getInt(1)); }
+        }
+        return versions;
+    }
+
+    private static void record(Connection conn, Migration migration, long elapsedMillis) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO SchemaMigrations (version, description, duration_ms) VALUES (?, ?, ?)")) {
+            pstmt.setInt(1, migration.version);
+            pstmt.setString(2, migration.description);
+            pstmt.setLong(3, elapsedMillis);
+            pstmt.executeUpdate();
+        }
+    }
+
+    private static boolean acquireLock(Connection conn) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            pstmt.setString(1, LOCK_NAME);
+            pstmt.setInt(2, LOCK_WAIT_SECONDS);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    private static void releaseLock(Connection conn) {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            pstmt.setString(1, LOCK_NAME);
+            pstmt.executeQuery().close();
+        } catch (SQLException e) {
+            System.err.println("Could not release the schema migration lock: " + e.getMessage());
+        }
+    }
+
+    // --- Steps ---
+
+    static Step index(String table, String name, String columns) {
+        return index(table, "INDEX", name, columns);
+    }
+
+    static Step uniqueIndex(String table, String name, String columns) {
+        return index(table, "UNIQUE INDEX", name, columns);
+    }
+
+    private static Step index(String table, String kind, String name, String columns) {
+        return new Step() {
+            @Override
+            public void apply(Connection conn) throws SQLException {
+                if (indexExists(conn, table, name)) { return; }
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("ALTER TABLE " + table + " ADD " + kind + " " + name + " (" + columns + "), ALGORITHM=INPLACE, LOCK=NONE");
+                }
+            }
+
+            @Override
+            public void revert(Connection conn) throws SQLException {
+                if (!indexExists(conn, table, name)) { return; }
+                try (Statement stmt = conn.createStatement()) {
+                    try {
+                        stmt.execute("ALTER TABLE " + table + " DROP INDEX " + name);
+                    } catch (SQLException e) {
+                        if (e.getErrorCode() != ER_DROP_INDEX_FK) { throw e; }
+                        // MySQL dropped the foreign key's own index when this one was added; give it one back
+                        String leading = columns.split(",")[0].trim();
+                        stmt.execute("ALTER TABLE " + table + " ADD INDEX " + leading + " (" + leading + "), DROP INDEX " + name);
+                    }
+                }
+            }
+        };
+    }
+
+    static Step table(String table, String columns) {
+        return new Step() {
+            @Override
+            public void apply(Connection conn) throws SQLException {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("CREATE TABLE IF NOT EXISTS " + table + " (" + columns + ")");
+                }
+            }
+
+            @Override
+            public void revert(Connection conn) throws SQLException {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("DROP TABLE IF EXISTS " + table);
+                }
+            }
+        };
+    }
+
+    static Step column(String table, String name, String definition) {
+        return new Step() {
+            @Override
+            public void apply(Connection conn) throws SQLException {
+                if (columnExists(conn, table, name)) { return; }
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("ALTER TABLE " + table + " ADD COLUMN " + name + " " + definition);
+                }
+            }
+
+            @Override
+            public void revert(Connection conn) throws SQLException {
+                if (!columnExists(conn, table, name)) { return; }
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("ALTER TABLE " + table + " DROP COLUMN " + name);
+                }
+            }
+        };
+    }
+
+    /** A data change that gives the same result however often it runs. Reverting does nothing. */
+    static Step update(String... statements) {
+        return new Step() {
+            @Override
+            public void apply(Connection conn) throws SQLException {
+                try (Statement stmt = conn.createStatement()) {
+                    for (String sql : statements) { stmt.executeUpdate(sql); }
+                }
+            }
+
+            @Override
+            public void revert(Connection conn) {}
+        };
+    }
+
+    private static boolean columnExists(Connection conn, String table, String name) throws SQLException {
+        String sql = "SELECT 1 FROM information_schema.COLUMNS WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND COLUMN_NAME = ? LIMIT 1";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, table);
+            pstmt.setString(2, name);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static boolean indexExists(Connection conn, String table, String name) throws SQLException {
+        String sql = "SELECT 1 FROM information_schema.STATISTICS WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND INDEX_NAME = ? LIMIT 1";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, table);
+            pstmt.setString(2, name);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+}
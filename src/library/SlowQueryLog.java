@@ -0,0 +1,243 @@
+package library;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Logs SQL statements that run longer than a threshold and reports the most expensive query shapes.
+ * <p>
+ * Every execution timed by the pool's statement handles ({@link MetricsRegistry.SqlStats}) is added to
+ * the statistics of its <em>shape</em>: the SQL with string and number literals replaced by {@code ?}
+ * and {@code IN} lists collapsed, so the same query with different literals counts once. Bound
+ * parameter values are never logged. A statement slower than {@code library.db.slowQueryMillis}
+ * (default 200, negative disables) is logged as a {@code [slow-query]} line and, the first time a shape
+ * is slow, {@code EXPLAIN} is run for it on a background thread with the values that were bound, and
+ * the plan is logged once. Every {@code library.db.slowQueryReportSeconds} seconds (default 300, 0
+ * disables) the {@code library.db.slowQueryTopN} shapes (default 10) with the most total time in the
+ * interval are printed. Everything is also appended to {@code library.db.slowQueryLog} if it names a file.
+ */
+public final class SlowQueryLog {
+
+    private static final long THRESHOLD_MILLIS = Long.getLong("library.db.slowQueryMillis", 200L);
+    private static final boolean EXPLAIN = Boolean.parseBoolean(System.getProperty("library.db.slowQueryExplain", "true"));
+    private static final int REPORT_SECONDS = Integer.getInteger("library.db.slowQueryReportSeconds", 300);
+    private static final int TOP_N = Integer.getInteger("library.db.slowQueryTopN", 10);
+    private static final String LOG_FILE = System.getProperty("library.db.slowQueryLog");
+    private static final long THRESHOLD_NANOS = THRESHOLD_MILLIS < 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(THRESHOLD_MILLIS);
+    private static final int SHAPE_TEXT_LIMIT = 200;
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^'\\\\]|\\\\.|'')*'|\"(?:[^\"\\\\]|\\\\.|\"\")*\"");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?(?![\\w.])");
+    private static final Pattern IN_LIST = Pattern.compile("(?i)\\bIN\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Set<String> EXPLAINABLE = Set.of("SELECT", "WITH", "UPDATE", "DELETE", "INSERT", "REPLACE");
+
+    private static final SlowQueryLog INSTANCE = new SlowQueryLog();
+
+    /** Running totals of one query shape. */
+    public static final class Shape {
+        private final String text;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder slowCount = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final AtomicBoolean explained = new AtomicBoolean();
+        private volatile String plan = null; // Short summary of the EXPLAIN output, once there is one
+
+        private Shape(String text) { this.text = text; }
+
+        public String getText() { return text; }
+        public long getCount() { return count.sum(); }
+        public long getTotalNanos() { return totalNanos.sum(); }
+        public long getSlowCount() { return slowCount.sum(); }
+        public long getMaxNanos() { return maxNanos.get(); }
+        public String getPlan() { return plan; }
+    }
+
+    private final ConcurrentHashMap<String, Shape> shapes = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService worker;
+    private final Map<Shape, long[]> lastReported = new HashMap<>(); // Only touched by the worker thread
+    private boolean started = false;
+
+    private SlowQueryLog() {
+        worker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "slow-query-log");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public static SlowQueryLog getInstance() { return INSTANCE; }
+
+    /** Starts the periodic top-N report. Slow statements are logged whether or not this was called. */
+    public synchronized void start() {
+        if (started) { return; }
+        started = true;
+        if (REPORT_SECONDS > 0) {
+            worker.scheduleAtFixedRate(this::report, REPORT_SECONDS, REPORT_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /** The statistics of the shape {@code sql} belongs to. Called once per distinct SQL text. */
+    public Shape shape(String sql) {
+        return shapes.computeIfAbsent(shapeOf(sql), Shape::new);
+    }
+
+    /**
+     * Adds one execution of {@code statement} to {@code shape}. If it was slow it is logged, and the
+     * shape's plan is captured the first time. {@code statement} must still hold its parameters.
+     */
+    void record(Shape shape, String caller, String sql, PreparedStatement statement, long nanos) {
+        shape.count.increment();
+        shape.totalNanos.add(nanos);
+        shape.maxNanos.accumulate(nanos);
+        if (nanos < THRESHOLD_NANOS) { return; }
+        shape.slowCount.increment();
+        log(System.err, String.format(Locale.ROOT, "[slow-query] %d ms [%s] %s", nanos / 1_000_000, caller, abbreviate(shape.text)));
+        if (EXPLAIN && isExplainable(sql) && shape.explained.compareAndSet(false, true)) {
+            String bound = boundSql(statement);
+            if (bound == null) {
+                log(System.err, "[slow-query]   no EXPLAIN: the driver does not expose the bound statement");
+                return;
+            }
+            worker.execute(() -> explain(shape, bound));
+        }
+    }
+
+    // --- Shapes ---
+
+    /** Literals become {@code ?}, {@code IN (?, ?, ...)} becomes {@code IN (...)}, whitespace collapses. */
+    static String shapeOf(String sql) {
+        String shape = STRING_LITERAL.matcher(sql).replaceAll("?");
+        shape = NUMBER_LITERAL.matcher(shape).replaceAll("?");
+        shape = IN_LIST.matcher(shape).replaceAll("IN (...)");
+        return WHITESPACE.matcher(shape).replaceAll(" ").trim();
+    }
+
+    private static boolean isExplainable(String sql) {
+        String trimmed = sql.trim();
+        int end = 0;
+        while (end < trimmed.length() && Character.isLetter(trimmed.charAt(end))) { end++; }
+        return EXPLAINABLE.contains(trimmed.substring(0, end).toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * The statement's SQL with its current parameter values inlined. MySQL Connector/J prints it after the
+     * class name in {@code toString()}, for client-side and server-side prepared statements alike.
+     */
+    private static String boundSql(PreparedStatement statement) {
+        String text = statement.toString();
+        int start = text.indexOf(": ");
+        if (start < 0 || text.contains("** NOT SPECIFIED **")) { return null; }
+        return text.substring(start + 2);
+    }
+
+    // --- EXPLAIN, run on the worker thread ---
+
+    private void explain(Shape shape, String boundSql) {
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            StringBuilder out = new StringBuilder("[slow-query] EXPLAIN ").append(abbreviate(shape.text));
+            Set<String> fullScans = new LinkedHashSet<>();
+            try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("EXPLAIN " + boundSql)) {
+                ResultSetMetaData meta = rs.getMetaData();
+                while (rs.next()) {
+                    out.append("\n[slow-query]  ");
+                    for (int c = 1; c <= meta.getColumnCount(); c++) {
+                        String value = rs.getString(c);
+                        if (value != null) { out.append(' ').append(meta.getColumnLabel(c)).append('=').append(value); }
+                    }
+                    if ("ALL".equalsIgnoreCase(rs.getString("type"))) { fullScans.add(rs.getString("table")); }
+                }
+            }
+            shape.plan = fullScans.isEmpty() ? "indexed" : "full scan of " + String.join(", ", fullScans);
+            log(System.err, out.toString());
+        } catch (SQLException e) {
+            shape.plan = "EXPLAIN failed";
+            log(System.err, "[slow-query] EXPLAIN failed for " + abbreviate(shape.text)
+                    + ": error " + e.getErrorCode() + ", SQLState " + e.getSQLState()); // The message can quote the bound values
+        } finally {
+            DatabaseConnection.release(conn);
+        }
+    }
+
+    // --- Periodic report, run on the worker thread ---
+
+    private void report() {
+        try {
+            List<long[]> deltas = new ArrayList<>();
+            List<Shape> active = new ArrayList<>();
+            for (Shape shape : shapes.values()) {
+                long[] now = {shape.getCount(), shape.getTotalNanos(), shape.getSlowCount()};
+                long[] before = lastReported.put(shape, now);
+                long[] delta = before == null ? now : new long[]{now[0] - before[0], now[1] - before[1], now[2] - before[2]};
+                if (delta[0] > 0) {
+                    active.add(shape);
+                    deltas.add(delta);
+                }
+            }
+            if (active.isEmpty()) { return; }
+            List<Integer> order = new ArrayList<>();
+            for (int i = 0; i < active.size(); i++) { order.add(i); }
+            order.sort(Comparator.comparingLong((Integer i) -> deltas.get(i)[1]).reversed());
+
+            StringBuilder out = new StringBuilder();
+            out.append("[slow-query] ").append(LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")))
+                    .append(", top query shapes by total time in the last ").append(REPORT_SECONDS).append(" s");
+            for (int i : order.subList(0, Math.min(TOP_N, order.size()))) {
+                Shape shape = active.get(i);
+                long[] delta = deltas.get(i);
+                out.append(String.format(Locale.ROOT, "%n[slow-query]   total=%dms n=%d mean=%.1fms slow=%d%s %s",
+                        delta[1] / 1_000_000, delta[0], delta[1] / 1e6 / delta[0], delta[2],
+                        shape.plan == null ? "" : " (" + shape.plan + ")", abbreviate(shape.text)));
+            }
+            log(System.out, out.toString());
+        } catch (RuntimeException e) {
+            e.printStackTrace(); // Keep the schedule alive
+        }
+    }
+
+    private static String abbreviate(String shape) {
+        return shape.length() <= SHAPE_TEXT_LIMIT ? shape : shape.substring(0, SHAPE_TEXT_LIMIT - 3) + "...";
+    }
+
+    private static void log(PrintStream console, String text) {
+        console.println(text);
+        if (LOG_FILE != null && !LOG_FILE.isEmpty()) {
+            synchronized (SlowQueryLog.class) {
+                try (PrintWriter file = new PrintWriter(new FileWriter(LOG_FILE, true))) {
+                    file.println(text);
+                } catch (IOException e) {
+                    System.err.println("Could not write the slow query log " + LOG_FILE + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+}
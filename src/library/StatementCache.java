@@ -0,0 +1,161 @@
+package library;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-connection cache of prepared statements keyed by SQL text, with LRU eviction.
+ * <p>
+ * A statement is checked out while the caller uses it and checked back in when the
+ * caller closes it, so two open statements on one connection never share a handle.
+ * Hit, miss and eviction counters are kept globally across all pooled connections, and every
+ * execution is timed into the statement's {@link MetricsRegistry.SqlStats}.
+ */
+public class StatementCache {
+
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+    private static final LongAdder EVICTIONS = new LongAdder();
+
+    private final Connection physical;
+    private final int maxSize;
+    private final LinkedHashMap<String, PreparedStatement> idle;
+
+    public StatementCache(Connection physical, int maxSize) {
+        this.physical = physical;
+        this.maxSize = maxSize;
+        this.idle = new LinkedHashMap<>(16, 0.75f, true); // Access order gives LRU iteration
+    }
+
+    public static long getHits() { return HITS.sum(); }
+    public static long getMisses() { return MISSES.sum(); }
+    public static long getEvictions() { return EVICTIONS.sum(); }
+
+    /** Hit ratio across every pooled connection since startup, or 0 if nothing was prepared yet. */
+    public static double getHitRatio() {
+        long hits = HITS.sum();
+        long total = hits + MISSES.sum();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    public static void resetStatistics() { HITS.reset(); MISSES.reset(); EVICTIONS.reset(); }
+
+    /**
+     * Returns a prepared statement for {@code sql}. Closing the returned statement checks it back
+     * into the cache; {@code getConnection()} on it returns {@code owner}.
+     */
+    public synchronized PreparedStatement prepare(String sql, Connection owner) throws SQLException {
+        PreparedStatement statement = idle.remove(sql);
+        if (statement != null) {
+            HITS.increment();
+        } else {
+            MISSES.increment();
+            statement = physical.prepareStatement(sql);
+        }
+        return (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, new CachedStatement(sql, statement, owner));
+    }
+
+    private synchronized void checkIn(String sql, PreparedStatement statement) {
+        if (maxSize <= 0 || idle.containsKey(sql)) {
+            closeQuietly(statement); // A second copy of the same SQL was open at the same time
+            return;
+        }
+        idle.put(sql, statement);
+        if (idle.size() > maxSize) {
+            Iterator<Map.Entry<String, PreparedStatement>> eldest = idle.entrySet().iterator();
+            closeQuietly(eldest.next().getValue());
+            eldest.remove();
+            EVICTIONS.increment();
+        }
+    }
+
+    /** Closes every cached statement. Called when the physical connection leaves the pool. */
+    public synchronized void closeAll() {
+        List<PreparedStatement> statements = new ArrayList<>(idle.values());
+        idle.clear();
+        for (PreparedStatement statement : statements) { closeQuietly(statement); }
+    }
+
+    public synchronized int size() { return idle.size(); }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try { statement.close(); } catch (SQLException ignored) { /* Connection may already be gone */ }
+    }
+
+    /** Caller-facing handle: forwards everything except {@code close()}, which checks the statement back in. */
+    private final class CachedStatement implements InvocationHandler {
+        private final String sql;
+        private final PreparedStatement delegate;
+        private final Connection owner;
+        private final MetricsRegistry.SqlStats stats;
+        private boolean closed = false;
+
+        CachedStatement(String sql, PreparedStatement delegate, Connection owner) {
+            this.sql = sql;
+            this.delegate = delegate;
+            this.owner = owner;
+            this.stats = MetricsRegistry.SQL_ENABLED ? MetricsRegistry.getInstance().sql(sql) : null;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    release();
+                    return null;
+                case "isClosed":
+                    return closed || delegate.isClosed();
+                case "getConnection":
+                    return owner;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedStatement[" + sql + "]";
+                default:
+                    break;
+            }
+            if (closed) { throw new SQLException("Statement has already been closed."); }
+            if (stats != null) { return stats.invoke(delegate, method, args); }
+            try {
+                return method.invoke(delegate, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private void release() {
+            if (closed) { return; }
+            closed = true;
+            try {
+                ResultSet open = delegate.getResultSet();
+                if (open != null) { open.close(); }
+                delegate.clearParameters();
+                delegate.clearBatch();
+                delegate.clearWarnings();
+                // Limits a caller set must not leak into the next caller of the same SQL
+                delegate.setFetchSize(0);
+                delegate.setMaxRows(0);
+                delegate.setQueryTimeout(0);
+            } catch (SQLException e) {
+                closeQuietly(delegate); // Unusable statements are not worth caching
+                return;
+            }
+            checkIn(sql, delegate);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package library;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timer wheel for large numbers of coarse, mostly long-lived timeouts.
+ * <p>
+ * Time is cut into ticks of a fixed length and each timeout goes into the bucket of the tick it is due in
+ * ({@code tick % buckets}). A single daemon thread advances one tick at a time and runs the timeouts whose
+ * tick has come; timeouts that are due in a later revolution stay in their bucket. Scheduling is O(1).
+ * Cancelling removes the entry from its bucket, which is linear in that bucket's size, so it stays cheap
+ * while timeouts are spread over many buckets. Nothing is scanned except the bucket of the current tick.
+ * A timeout fires at most one tick late. If the thread falls behind (e.g. a task blocked), it catches up
+ * on the next tick.
+ * <p>
+ * Tasks run on the wheel's thread one after another, so they should be short.
+ */
+public class TimerWheel {
+
+    /** A scheduled task. */
+    public interface Timeout {
+        /** Stops the task from running; false if it already ran or was cancelled. */
+        boolean cancel();
+    }
+
+    private final class Entry implements Timeout {
+        private final Runnable task;
+        private final long deadlineTick;
+        private boolean done = false; // Guarded by TimerWheel.this
+
+        Entry(Runnable task, long deadlineTick) {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        @Override public boolean cancel() {
+            synchronized (TimerWheel.this) {
+                if (done) { return false; }
+                done = true;
+                buckets[(int) (deadlineTick & mask)].remove(this);
+                pending--;
+                return true;
+            }
+        }
+    }
+
+    private final String name;
+    private final long tickNanos;
+    private final ArrayDeque<Entry>[] buckets;
+    private final long mask;
+    private final long startNanos = System.nanoTime();
+    private long processedTick = 0; // Last tick whose bucket has been run
+    private int pending = 0;
+    private ScheduledExecutorService ticker;
+
+    /**
+     * @param tick         length of one tick; timeouts are rounded up to whole ticks.
+     * @param bucketCount  number of buckets, rounded up to a power of two.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"}) // Generic array creation
+    public TimerWheel(String name, long tick, TimeUnit unit, int bucketCount) {
+        if (tick <= 0) { throw new IllegalArgumentException("tick must be positive: " + tick); }
+        int size = Integer.highestOneBit(Math.max(1, bucketCount - 1)) << 1;
+        this.name = name;
+        this.tickNanos = unit.toNanos(tick);
+        this.buckets = new ArrayDeque[size];
+        for (int i = 0; i < size; i++) { buckets[i] = new ArrayDeque<>(); }
+        this.mask = size - 1;
+    }
+
+    /** Starts the thread that advances the wheel. */
+    public synchronized void start() {
+        if (ticker != null) { return; }
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        });
+        ticker.scheduleAtFixedRate(this::advance, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public synchronized void stop() {
+        if (ticker != null) { ticker.shutdownNow(); ticker = null; }
+    }
+
+    /** Runs {@code task} once {@code delay} has passed (on the next tick if the delay is zero or negative). */
+    public synchronized Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        long elapsed = System.nanoTime() - startNanos + Math.max(0, unit.toNanos(delay));
+        long deadlineTick = Math.max(processedTick + 1, (elapsed + tickNanos - 1) / tickNanos); // Round up
+        Entry entry = new Entry(task, deadlineTick);
+        buckets[(int) (deadlineTick & mask)].add(entry);
+        pending++;
+        return entry;
+    }
+
+    /** Number of timeouts scheduled and not yet run or cancelled. */
+    public synchronized int size() { return pending; }
+
+    /** Runs every bucket up to the current tick. Called by the wheel's thread. */
+    void advance() {
+        List<Entry> due = new ArrayList<>();
+        synchronized (this) {
+            long currentTick = (System.nanoTime() - startNanos) / tickNanos;
+            while (processedTick < currentTick) {
+                processedTick++;
+                Iterator<Entry> it = buckets[(int) (processedTick & mask)].iterator();
+                while (it.hasNext()) {
+                    Entry entry = it.next();
+                    if (entry.deadlineTick <= processedTick) { // Later revolutions stay put
+                        it.remove();
+                        entry.done = true;
+                        pending--;
+                        due.add(entry);
+                    }
+                }
+            }
+        }
+        for (Entry entry : due) {
+            try { entry.task.run(); }
+            catch (RuntimeException e) { System.err.println(name + ": timer task failed: " + e.getMessage()); e.printStackTrace(); }
+        }
+    }
+}
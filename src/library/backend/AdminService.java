@@ -14,6 +14,23 @@ import java.util.List;
  */
 public class AdminService {
 
+    // Report queries, shared with ReportExporter so an export has the same rows as the screen
+    static final String UNPAID_FINES_SQL =
+            "SELECT f.fine_id, f.student_id, s.name AS student_name, f.issue_id, b.title AS book_title, f.fine_amount, f.fine_date " +
+            "FROM Fines f LEFT JOIN Students s ON f.student_id = s.student_id " +
+            "LEFT JOIN IssuedBooks i ON f.issue_id = i.issue_id LEFT JOIN Books b ON i.book_id = b.book_id " +
+            "WHERE f.status = 'Unpaid' "; // Callers add the student filter and ORDER BY f.fine_date DESC, f.student_id
+    static final String AVAILABLE_BOOKS_REPORT_SQL =
+            "SELECT book_id, title, author, category, available_copies FROM Books WHERE available_copies > 0 ORDER BY title";
+    static final String BORROWED_BOOKS_REPORT_SQL =
+            "SELECT i.issue_id, i.book_id, b.title AS book_title, i.student_id, s.name AS student_name, i.issue_date, i.due_date, i.status " +
+            "FROM IssuedBooks i JOIN Books b ON i.book_id = b.book_id JOIN Students s ON i.student_id = s.student_id " +
+            "WHERE i.status IN ('Issued', 'Overdue') ORDER BY i.due_date ASC, s.name ASC";
+    static final String FINE_REPORT_BY_STUDENT_SQL =
+            "SELECT f.fine_id, f.issue_id, b.title AS book_title, f.fine_amount, f.fine_date, f.status " +
+            "FROM Fines f LEFT JOIN IssuedBooks i ON f.issue_id = i.issue_id LEFT JOIN Books b ON i.book_id = b.book_id " +
+            "WHERE f.student_id = ? ORDER BY f.fine_date DESC";
+
     // --- User Management Methods ---
 
     /**
@@ -25,11 +42,11 @@ public class AdminService {
     public List<Object[]> getAllUsers() throws SQLException {
         List<Object[]> users = new ArrayList<>();
         String sql = "SELECT username, role, status, email FROM Users ORDER BY role, username";
-        Connection conn = null; Statement stmt = null; ResultSet rs = null;
+        Connection conn = null; PreparedStatement stmt = null; ResultSet rs = null;
         try {
             conn = DatabaseConnection.getConnection();
             if (conn == null || conn.isClosed()) { throw new SQLException("Database connection failed."); }
-            stmt = conn.createStatement(); rs = stmt.executeQuery(sql);
+            stmt = conn.prepareStatement(sql); rs = stmt.executeQuery();
             while (rs.next()) {
                 users.add(new Object[]{
                     rs.getString("username"), rs.getString("role"),
@@ -40,11 +57,47 @@ public class AdminService {
             // Clean up resources
             if (rs != null) try { rs.close(); } catch (SQLException e) { e.printStackTrace(); }
             if (stmt != null) try { stmt.close(); } catch (SQLException e) { e.printStackTrace(); }
-            // Connection closing should be handled based on DatabaseConnection strategy
+            DatabaseConnection.release(conn);
         }
         return users;
     }
 
+    /**
+     * Keyset-paginated user listing ordered by role then username, optionally filtered on username or
+     * email. {@code after} is the cursor of the previous page ({role, username}), or null for the first
+     * page. The role ENUM is declared in alphabetical order, so comparing it as a string matches the
+     * order MySQL sorts it in.
+     */
+    public KeysetPage getUsersPage(String searchTerm, Object[] after, int pageSize) throws SQLException {
+        List<Object[]> fetched = new ArrayList<>();
+        List<Object[]> keys = new ArrayList<>();
+        String sql = "SELECT username, role, status, email FROM Users WHERE 1=1 ";
+        boolean searching = searchTerm != null && !searchTerm.trim().isEmpty();
+        if (searching) { sql += "AND (LOWER(username) LIKE LOWER(?) OR LOWER(email) LIKE LOWER(?)) "; }
+        if (after != null) { sql += "AND (role > ? OR (role = ? AND username > ?)) "; }
+        sql += "ORDER BY role, username LIMIT ?";
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            if (conn == null || conn.isClosed()) { throw new SQLException("Database connection failed."); }
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                int i = 1;
+                if (searching) { String pattern = "%" + searchTerm.trim() + "%"; pstmt.setString(i++, pattern); pstmt.setString(i++, pattern); }
+                if (after != null) { pstmt.setString(i++, (String) after[0]); pstmt.setString(i++, (String) after[0]); pstmt.setString(i++, (String) after[1]); }
+                pstmt.setInt(i, pageSize + 1);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        fetched.add(new Object[]{ rs.getString("username"), rs.getString("role"), rs.getString("status"), rs.getString("email") });
+                        keys.add(new Object[]{ rs.getString("role"), rs.getString("username") });
+                    }
+                }
+            }
+        } finally {
+            DatabaseConnection.release(conn);
+        }
+        return KeysetPage.of(fetched, keys, pageSize);
+    }
+
     /**
      * Sets the status (Active/Inactive) for a given user.
      *
@@ -65,7 +118,7 @@ public class AdminService {
                 pstmt.setString(2, username);
                 return pstmt.executeUpdate() > 0;
             }
-        } finally { /* Connection management */ }
+        } finally { DatabaseConnection.release(conn); }
     }
 
     // --- Librarian Management Methods ---
@@ -81,11 +134,11 @@ public class AdminService {
         String sql = "SELECT l.librarian_id, l.name, l.username, u.email " +
                      "FROM Librarians l JOIN Users u ON l.username = u.username " +
                      "ORDER BY l.librarian_id";
-        Connection conn = null; Statement stmt = null; ResultSet rs = null;
+        Connection conn = null; PreparedStatement stmt = null; ResultSet rs = null;
         try {
             conn = DatabaseConnection.getConnection();
              if (conn == null || conn.isClosed()) { throw new SQLException("Database connection failed."); }
-            stmt = conn.createStatement(); rs = stmt.executeQuery(sql);
+            stmt = conn.prepareStatement(sql); rs = stmt.executeQuery();
             while (rs.next()) {
                 librarians.add(new Object[]{
                     rs.getString("librarian_id"), rs.getString("name"),
@@ -95,6 +148,7 @@ public class AdminService {
         } finally {
              if (rs != null) try { rs.close(); } catch (SQLException e) { e.printStackTrace(); }
              if (stmt != null) try { stmt.close(); } catch (SQLException e) { e.printStackTrace(); }
+             DatabaseConnection.release(conn);
         }
         return librarians;
     }
@@ -140,7 +194,7 @@ public class AdminService {
             }
 
             // 2. Generate next Librarian ID
-            generatedLibrarianId = generateNextLibrarianId(conn); // Pass connection for transaction
+            generatedLibrarianId = IdSequences.getInstance().nextId(IdSequences.Sequence.LIBRARIAN);
 
             // 3. Insert into Librarians table
             String libSql = "INSERT INTO Librarians (librarian_id, username, name) VALUES (?, ?, ?)";
@@ -152,6 +206,7 @@ public class AdminService {
             }
 
             conn.commit(); // Commit transaction if both inserts succeed
+            AuditLog.getInstance().record(AuditLog.ADD_LIBRARIAN, "Librarian " + generatedLibrarianId + " (" + username + ")");
             return generatedLibrarianId;
 
         } catch (SQLException | AdminActionException ex) {
@@ -161,22 +216,10 @@ public class AdminService {
         } finally {
             // Ensure auto-commit is turned back on
             if (conn != null) { try { if (!conn.isClosed()) { conn.setAutoCommit(true); } } catch (SQLException e) { System.err.println("Failed to reset auto-commit: " + e.getMessage());} }
+            DatabaseConnection.release(conn);
         }
     }
 
-    /** Generates the next sequential librarian ID (e.g., L001, L002). */
-    private String generateNextLibrarianId(Connection conn) throws SQLException {
-        String query = "SELECT librarian_id FROM Librarians ORDER BY librarian_id DESC LIMIT 1";
-        String lastId = null; int nextNumericId = 1;
-        try (PreparedStatement pstmt = conn.prepareStatement(query); ResultSet rs = pstmt.executeQuery()) {
-            if (rs.next()) {
-                lastId = rs.getString("librarian_id");
-                try { nextNumericId = Integer.parseInt(lastId.substring(1)) + 1; }
-                catch (Exception e) { System.err.println("Warning: Could not parse last librarian ID '" + lastId + "'."); nextNumericId = 1; }
-            }
-        } return String.format("L%03d", nextNumericId);
-    }
-
     /** Deletes a librarian and their associated user account. Uses transaction. */
     public boolean deleteLibrarian(String librarianId) throws SQLException, AdminActionException {
         Connection conn = null; String usernameToDelete = null;
@@ -200,12 +243,14 @@ public class AdminService {
                 delUserPstmt.setString(1, usernameToDelete); rowsAffected = delUserPstmt.executeUpdate();
             }
             conn.commit(); // Commit if deletion successful
+            if (rowsAffected > 0) { AuditLog.getInstance().record(AuditLog.DELETE_LIBRARIAN, "Librarian " + librarianId + " (" + usernameToDelete + ")"); }
             return rowsAffected > 0;
         } catch (SQLException | AdminActionException ex) {
             if (conn != null) { try { if (!conn.isClosed()) { conn.rollback(); } } catch (SQLException e) { e.printStackTrace(); } }
             throw ex; // Re-throw
         } finally {
             if (conn != null) { try { if (!conn.isClosed()) { conn.setAutoCommit(true); } } catch (SQLException e) { e.printStackTrace(); } }
+            DatabaseConnection.release(conn);
         }
     }
 
@@ -214,10 +259,7 @@ public class AdminService {
     /** Retrieves all unpaid fines, optionally filtered by student ID. */
     public List<Object[]> getUnpaidFines(String studentIdFilter) throws SQLException {
         List<Object[]> fines = new ArrayList<>();
-        String sql = "SELECT f.fine_id, f.student_id, s.name AS student_name, f.issue_id, b.title AS book_title, f.fine_amount, f.fine_date " +
-                     "FROM Fines f LEFT JOIN Students s ON f.student_id = s.student_id " +
-                     "LEFT JOIN IssuedBooks i ON f.issue_id = i.issue_id LEFT JOIN Books b ON i.book_id = b.book_id " +
-                     "WHERE f.status = 'Unpaid' ";
+        String sql = UNPAID_FINES_SQL;
         boolean filtering = studentIdFilter != null && !studentIdFilter.trim().isEmpty();
         if (filtering) { sql += "AND f.student_id = ? "; }
         sql += "ORDER BY f.fine_date DESC, f.student_id";
@@ -236,22 +278,44 @@ public class AdminService {
                     }
                 }
             }
-        } finally { /* Connection management */ }
+        } finally { DatabaseConnection.release(conn); }
         return fines;
     }
 
     /** Waives a specific fine by setting its status to 'Paid'. */
     public boolean waiveFine(int fineId) throws SQLException {
+        String lockSql = "SELECT student_id, fine_amount, fine_date FROM Fines WHERE fine_id = ? AND status = 'Unpaid' FOR UPDATE";
         String sql = "UPDATE Fines SET status = 'Paid' WHERE fine_id = ? AND status = 'Unpaid'";
         Connection conn = null;
         try {
             conn = DatabaseConnection.getConnection();
             if (conn == null || conn.isClosed()) { throw new SQLException("Database connection failed."); }
+            conn.setAutoCommit(false); // Fine and rollups change together
+            FineLedger ledger = new FineLedger();
+            try (PreparedStatement lockPstmt = conn.prepareStatement(lockSql)) {
+                lockPstmt.setInt(1, fineId);
+                try (ResultSet rs = lockPstmt.executeQuery()) {
+                    if (!rs.next()) { conn.rollback(); return false; } // Already paid or no such fine
+                    ledger.remove(rs.getString("student_id"), rs.getDate("fine_date"), rs.getBigDecimal("fine_amount"), false);
+                    ledger.add(rs.getString("student_id"), rs.getDate("fine_date"), rs.getBigDecimal("fine_amount"), true);
+                }
+            }
+            boolean waived;
             try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
                 pstmt.setInt(1, fineId);
-                return pstmt.executeUpdate() > 0;
+                waived = pstmt.executeUpdate() > 0;
             }
-        } finally { /* Connection management */ }
+            ledger.flush(conn);
+            conn.commit();
+            if (waived) { AuditLog.getInstance().record(AuditLog.WAIVE_FINE, "Fine " + fineId); }
+            return waived;
+        } catch (SQLException ex) {
+            if (conn != null) { try { if (!conn.isClosed()) { conn.rollback(); } } catch (SQLException e) { e.printStackTrace(); } }
+            throw ex;
+        } finally {
+            if (conn != null) { try { if (!conn.isClosed()) { conn.setAutoCommit(true); } } catch (SQLException e) { e.printStackTrace(); } }
+            DatabaseConnection.release(conn);
+        }
     }
 
     // --- Report Methods ---
@@ -259,18 +323,26 @@ public class AdminService {
     /** Retrieves a report of all books currently available. */
     public List<Object[]> getAvailableBooksReport() throws SQLException {
         List<Object[]> books = new ArrayList<>();
-        String sql = "SELECT book_id, title, author, category, available_copies FROM Books WHERE available_copies > 0 ORDER BY title";
-        Connection conn = null; Statement stmt = null; ResultSet rs = null;
+        CatalogIndex index = CatalogIndex.getInstance();
+        if (index.isReady()) {
+            for (CatalogIndex.BookRecord book : index.search(null, true)) {
+                books.add(new Object[]{ book.getBookId(), book.getTitle(), book.getAuthor(), book.getCategory(), book.getAvailableCopies() });
+            }
+            return books;
+        }
+        String sql = AVAILABLE_BOOKS_REPORT_SQL;
+        Connection conn = null; PreparedStatement stmt = null; ResultSet rs = null;
         try {
             conn = DatabaseConnection.getConnection();
             if (conn == null || conn.isClosed()) { throw new SQLException("Database connection failed."); }
-            stmt = conn.createStatement(); rs = stmt.executeQuery(sql);
+            stmt = conn.prepareStatement(sql); rs = stmt.executeQuery();
             while (rs.next()) {
                 books.add(new Object[]{ rs.getString("book_id"), rs.getString("title"), rs.getString("author"), rs.getString("category"), rs.getInt("available_copies") });
             }
         } finally {
             if (rs != null) try { rs.close(); } catch (SQLException e) { e.printStackTrace(); }
             if (stmt != null) try { stmt.close(); } catch (SQLException e) { e.printStackTrace(); }
+            DatabaseConnection.release(conn);
         }
         return books;
     }
@@ -278,30 +350,60 @@ public class AdminService {
      /** Retrieves a report of all books currently issued or overdue. */
     public List<Object[]> getAllBorrowedBooksReport() throws SQLException {
         List<Object[]> borrowed = new ArrayList<>();
-        String sql = "SELECT i.issue_id, i.book_id, b.title AS book_title, i.student_id, s.name AS student_name, i.issue_date, i.due_date, i.status " +
-                     "FROM IssuedBooks i JOIN Books b ON i.book_id = b.book_id JOIN Students s ON i.student_id = s.student_id " +
-                     "WHERE i.status IN ('Issued', 'Overdue') ORDER BY i.due_date ASC, s.name ASC";
-        Connection conn = null; Statement stmt = null; ResultSet rs = null;
+        String sql = BORROWED_BOOKS_REPORT_SQL;
+        Connection conn = null; PreparedStatement stmt = null; ResultSet rs = null;
         try {
             conn = DatabaseConnection.getConnection();
             if (conn == null || conn.isClosed()) { throw new SQLException("Database connection failed."); }
-            stmt = conn.createStatement(); rs = stmt.executeQuery(sql);
+            stmt = conn.prepareStatement(sql); rs = stmt.executeQuery();
             while (rs.next()) {
                 borrowed.add(new Object[]{ rs.getInt("issue_id"), rs.getString("book_id"), rs.getString("book_title"), rs.getString("student_id"), rs.getString("student_name"), rs.getDate("issue_date"), rs.getDate("due_date"), rs.getString("status") });
             }
         } finally {
              if (rs != null) try { rs.close(); } catch (SQLException e) { e.printStackTrace(); }
              if (stmt != null) try { stmt.close(); } catch (SQLException e) { e.printStackTrace(); }
+             DatabaseConnection.release(conn);
         }
         return borrowed;
     }
 
+    /**
+     * Keyset-paginated variant of {@link #getAllBorrowedBooksReport()}, ordered by due date then issue ID.
+     * {@code after} is the cursor of the previous page ({due_date, issue_id}), or null for the first page.
+     */
+    public KeysetPage getBorrowedBooksReportPage(Object[] after, int pageSize) throws SQLException {
+        List<Object[]> fetched = new ArrayList<>();
+        List<Object[]> keys = new ArrayList<>();
+        String sql = "SELECT i.issue_id, i.book_id, b.title AS book_title, i.student_id, s.name AS student_name, i.issue_date, i.due_date, i.status " +
+                     "FROM IssuedBooks i JOIN Books b ON i.book_id = b.book_id JOIN Students s ON i.student_id = s.student_id " +
+                     "WHERE i.status IN ('Issued', 'Overdue') ";
+        if (after != null) { sql += "AND (i.due_date > ? OR (i.due_date = ? AND i.issue_id > ?)) "; } // Issued rows always carry a due date
+        sql += "ORDER BY i.due_date, i.issue_id LIMIT ?";
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            if (conn == null || conn.isClosed()) { throw new SQLException("Database connection failed."); }
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                int i = 1;
+                if (after != null) { pstmt.setDate(i++, (Date) after[0]); pstmt.setDate(i++, (Date) after[0]); pstmt.setInt(i++, (Integer) after[1]); }
+                pstmt.setInt(i, pageSize + 1);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        fetched.add(new Object[]{ rs.getInt("issue_id"), rs.getString("book_id"), rs.getString("book_title"), rs.getString("student_id"), rs.getString("student_name"), rs.getDate("issue_date"), rs.getDate("due_date"), rs.getString("status") });
+                        keys.add(new Object[]{ rs.getDate("due_date"), rs.getInt("issue_id") });
+                    }
+                }
+            }
+        } finally {
+            DatabaseConnection.release(conn);
+        }
+        return KeysetPage.of(fetched, keys, pageSize);
+    }
+
     /** Retrieves a fine report for a specific student. */
     public List<Object[]> getFineReportByStudent(String studentId) throws SQLException {
         List<Object[]> fines = new ArrayList<>();
-        String sql = "SELECT f.fine_id, f.issue_id, b.title AS book_title, f.fine_amount, f.fine_date, f.status " +
-                     "FROM Fines f LEFT JOIN IssuedBooks i ON f.issue_id = i.issue_id LEFT JOIN Books b ON i.book_id = b.book_id " +
-                     "WHERE f.student_id = ? ORDER BY f.fine_date DESC";
+        String sql = FINE_REPORT_BY_STUDENT_SQL;
         Connection conn = null;
         try {
             conn = DatabaseConnection.getConnection();
@@ -314,14 +416,14 @@ public class AdminService {
                     }
                 }
             }
-        } finally { /* Connection management */ }
+        } finally { DatabaseConnection.release(conn); }
         return fines;
     }
 
     /** Retrieves a summary report of total fines generated within a specific month and year. */
     public List<Object[]> getFineReportByMonth(int year, int month) throws SQLException {
         List<Object[]> report = new ArrayList<>();
-        String sql = "SELECT SUM(fine_amount) AS total_fine FROM Fines WHERE YEAR(fine_date) = ? AND MONTH(fine_date) = ?";
+        String sql = "SELECT total_amount FROM FineMonthlyTotals WHERE fine_year = ? AND fine_month = ?"; // Primary key lookup
         Connection conn = null;
         try {
             conn = DatabaseConnection.getConnection();
@@ -330,15 +432,54 @@ public class AdminService {
                 pstmt.setInt(1, year); pstmt.setInt(2, month);
                 try (ResultSet rs = pstmt.executeQuery()) {
                     if (rs.next()) {
-                        Object totalFine = rs.getObject("total_fine");
-                        report.add(new Object[]{ totalFine != null ? rs.getDouble("total_fine") : 0.0 });
+                        report.add(new Object[]{ rs.getDouble("total_amount") });
                     } else { report.add(new Object[]{ 0.0 }); }
                 }
             }
-        } finally { /* Connection management */ }
+        } finally { DatabaseConnection.release(conn); }
         return report;
     }
 
+    /**
+     * Month-by-month fine totals from {@code fromYear} to {@code toYear} inclusive, read from the rollup table.
+     * Each row is {year, month, total, paid, fine count}; months without fines are left out.
+     */
+    public List<Object[]> getFineTrend(int fromYear, int toYear) throws SQLException {
+        String sql = "SELECT fine_year, fine_month, total_amount, paid_amount, fine_count FROM FineMonthlyTotals " +
+                     "WHERE fine_year BETWEEN ? AND ? AND fine_count > 0 ORDER BY fine_year, fine_month";
+        return queryTrend(sql, pstmt -> { pstmt.setInt(1, fromYear); pstmt.setInt(2, toYear); });
+    }
+
+    /** A student's fine totals per month, newest first, in the same row shape as {@link #getFineTrend}. */
+    public List<Object[]> getStudentFineTrend(String studentId) throws SQLException {
+        String sql = "SELECT fine_year, fine_month, total_amount, paid_amount, fine_count FROM FineStudentMonthlyTotals " +
+                     "WHERE student_id = ? AND fine_count > 0 ORDER BY fine_year DESC, fine_month DESC";
+        return queryTrend(sql, pstmt -> pstmt.setString(1, studentId));
+    }
+
+    private interface ParameterSetter {
+        void set(PreparedStatement pstmt) throws SQLException;
+    }
+
+    private List<Object[]> queryTrend(String sql, ParameterSetter parameters) throws SQLException {
+        List<Object[]> rows = new ArrayList<>();
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            if (conn == null || conn.isClosed()) { throw new SQLException("Database connection failed."); }
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                parameters.set(pstmt);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        rows.add(new Object[]{ rs.getInt("fine_year"), rs.getInt("fine_month"), rs.getDouble("total_amount"),
+                                rs.getDouble("paid_amount"), rs.getInt("fine_count") });
+                    }
+                }
+            }
+        } finally { DatabaseConnection.release(conn); }
+        return rows;
+    }
+
 }
 
 class AdminActionException extends Exception {
@@ -0,0 +1,459 @@
+package library.backend;
+
+import library.DatabaseConnection;
+import library.MetricsRegistry;
+import library.UserSession;
+
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes the audit trail to {@code ActivityLog} without making the audited operation wait for it.
+ * <p>
+ * {@link #record} puts the event in a bounded lock-free ring buffer and returns; a single background
+ * thread drains the buffer and inserts the events as one JDBC batch once {@code library.audit.batchSize}
+ * events (default 200) are waiting or the oldest has waited {@code library.audit.flushMillis} ms (default
+ * 500). When the buffer ({@code library.audit.capacity}, default 8192) is full, callers wait up to
+ * {@code library.audit.offerTimeoutMillis} ms (default 100) for room; if there still is none, the event is
+ * written straight to the spill file, so nothing is dropped.
+ * <p>
+ * If the database can't be reached, batches are appended to the spill file ({@code library.audit.spillFile},
+ * default {@code audit-spill.log}) and forced to disk. The file is replayed into the table, oldest first and
+ * before any newer event, as soon as the database is back (retried every {@code library.audit.retryMillis}
+ * ms) and at the next start-up. A replay first renames the file to {@code <spillFile>.replay}, so events
+ * spilled while it talks to the database go to a fresh spill file without waiting for it. Delivery is at
+ * least once: a crash between committing a replay and deleting the file can repeat those events.
+ * <p>
+ * Only connection errors (SQLState {@code 08xxx}, or a {@link SQLTransientException} such as a pool
+ * timeout) are spilled and retried. Any other error means some event in the batch can never be written
+ * (a value too long for its column, say): the batch is then written one event at a time, and the events
+ * the database refuses go to {@code library.audit.rejectFile} (default {@code audit-rejected.log}) in the
+ * spill file's format, so they neither block the events after them nor get retried forever.
+ */
+public final class AuditLog {
+
+    public static final String LOGIN = "LOGIN";
+    public static final String LOGIN_FAILED = "LOGIN_FAILED";
+    public static final String ISSUE_BOOK = "ISSUE_BOOK";
+    public static final String RETURN_BOOK = "RETURN_BOOK";
+    public static final String WAIVE_FINE = "WAIVE_FINE";
+    public static final String ADD_LIBRARIAN = "ADD_LIBRARIAN";
+    public static final String DELETE_LIBRARIAN = "DELETE_LIBRARIAN";
+    public static final String IMPORT_CATALOG = "IMPORT_CATALOG";
+    public static final String EXPORT_REPORT = "EXPORT_REPORT";
+
+    private static final int CAPACITY = Integer.getInteger("library.audit.capacity", 8192);
+    private static final int BATCH_SIZE = Integer.getInteger("library.audit.batchSize", 200);
+    private static final long FLUSH_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("library.audit.flushMillis", 500L));
+    private static final long OFFER_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("library.audit.offerTimeoutMillis", 100L));
+    private static final long RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("library.audit.retryMillis", 30_000L));
+    private static final Path SPILL_FILE = Paths.get(System.getProperty("library.audit.spillFile", "audit-spill.log"));
+    private static final Path REPLAY_FILE = SPILL_FILE.resolveSibling(SPILL_FILE.getFileName() + ".replay");
+    private static final Path REJECT_FILE = Paths.get(System.getProperty("library.audit.rejectFile", "audit-rejected.log"));
+
+    // The actor must exist in Users (foreign key); unknown names, like a mistyped login, are stored as NULL
+    private static final String INSERT_SQL = "INSERT INTO ActivityLog (username, activity_type, details, activity_time) " +
+            "VALUES ((SELECT u.username FROM Users u WHERE u.username = ?), ?, ?, ?)";
+
+    private static final MetricsRegistry.Counter RECORDED = MetricsRegistry.getInstance().counter("audit.recorded");
+    private static final MetricsRegistry.Counter WRITTEN = MetricsRegistry.getInstance().counter("audit.written");
+    private static final MetricsRegistry.Counter SPILLED = MetricsRegistry.getInstance().counter("audit.spilled");
+    private static final MetricsRegistry.Counter REJECTED = MetricsRegistry.getInstance().counter("audit.rejected");
+    private static final MetricsRegistry.Counter FULL_WAITS = MetricsRegistry.getInstance().counter("audit.bufferFullWaits");
+    private static final MetricsRegistry.Timer FLUSH_TIMER = MetricsRegistry.getInstance().timer("audit.flush");
+
+    private static final AuditLog INSTANCE = new AuditLog();
+
+    /** One audit row. */
+    private static final class Event {
+        final long timeMillis;
+        final String username;
+        final String type;
+        final String details;
+
+        Event(long timeMillis, String username, String type, String details) {
+            this.timeMillis = timeMillis;
+            this.username = username;
+            this.type = type;
+            this.details = details;
+        }
+    }
+
+    /**
+     * Bounded multi-producer, single-consumer queue (Vyukov's sequence-numbered ring). A producer claims a
+     * slot with one CAS on the tail; each slot's sequence number tells the consumer when it has been
+     * filled and tells producers when it has been emptied, so neither side takes a lock.
+     */
+    private static final class RingBuffer {
+        private final int mask;
+        private final AtomicLongArray sequences;
+        private final AtomicReferenceArray<Event> slots;
+        private final AtomicLong tail = new AtomicLong();
+        private volatile long head; // Written by the consumer only
+
+        RingBuffer(int requestedCapacity) {
+            int capacity = Integer.highestOneBit(Math.max(2, requestedCapacity - 1)) << 1; // Next power of two
+            mask = capacity - 1;
+            sequences = new AtomicLongArray(capacity);
+            slots = new AtomicReferenceArray<>(capacity);
+            for (int i = 0; i < capacity; i++) { sequences.set(i, i); }
+        }
+
+        boolean offer(Event event) {
+            long position = tail.get();
+            while (true) {
+                int index = (int) (position & mask);
+                long difference = sequences.get(index) - position;
+                if (difference == 0) {
+                    if (tail.compareAndSet(position, position + 1)) {
+                        slots.set(index, event);
+                        sequences.set(index, position + 1); // Publishes the event to the consumer
+                        return true;
+                    }
+                    position = tail.get();
+                } else if (difference < 0) {
+                    return false; // The slot still holds an event from one lap ago: full
+                } else {
+                    position = tail.get(); // Another producer took this slot
+                }
+            }
+        }
+
+        Event poll() {
+            long position = head;
+            int index = (int) (position & mask);
+            if (sequences.get(index) != position + 1) { return null; }
+            Event event = slots.get(index);
+            slots.set(index, null);
+            sequences.set(index, position + mask + 1); // Free for the producer one lap ahead
+            head = position + 1;
+            return event;
+        }
+
+        int size() { return (int) Math.max(0, tail.get() - head); }
+    }
+
+    private final RingBuffer buffer = new RingBuffer(CAPACITY);
+    private final Object spillLock = new Object();
+    private final Thread writer;
+    private volatile boolean running = true;
+    private volatile boolean spillPending;
+    private long nextReplayAt = System.nanoTime(); // Writer thread only
+
+    private AuditLog() {
+        spillPending = Files.exists(SPILL_FILE) || Files.exists(REPLAY_FILE); // Left over from before the last shutdown
+        MetricsRegistry.getInstance().gauge("audit.queued", buffer::size);
+        writer = new Thread(this::drainLoop, "audit-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "audit-log-shutdown"));
+    }
+
+    public static AuditLog getInstance() { return INSTANCE; }
+
+    /** Records an action of the logged-in user (or of no one, outside a session). */
+    public void record(String activityType, String details) {
+        UserSession session = UserSession.getInstance();
+        record(session != null ? session.getUsername() : null, activityType, details);
+    }
+
+    /** Records an action of {@code username}. Returns at once; the row is written in the background. */
+    public void record(String username, String activityType, String details) {
+        Event event = new Event(System.currentTimeMillis(), username, activityType, details);
+        RECORDED.increment();
+        if (buffer.offer(event)) {
+            if (buffer.size() >= BATCH_SIZE) { LockSupport.unpark(writer); }
+            return;
+        }
+        // Full: wait for the writer to make room, then fall back to the spill file rather than drop the event
+        FULL_WAITS.increment();
+        LockSupport.unpark(writer);
+        long deadline = System.nanoTime() + OFFER_TIMEOUT_NANOS;
+        while (System.nanoTime() < deadline) {
+            LockSupport.parkNanos(100_000);
+            if (buffer.offer(event)) { return; }
+        }
+        List<Event> single = new ArrayList<>(1);
+        single.add(event);
+        spill(single);
+    }
+
+    /** Stops the writer after it has written (or spilled) every queued event. Called from a shutdown hook. */
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.NANOSECONDS.toMillis(FLUSH_NANOS) + 10_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // --- Writer thread ---
+
+    private void drainLoop() {
+        List<Event> batch = new ArrayList<>(BATCH_SIZE);
+        long oldestAt = 0;
+        while (true) {
+            Event event;
+            while (batch.size() < BATCH_SIZE && (event = buffer.poll()) != null) {
+                if (batch.isEmpty()) { oldestAt = System.nanoTime(); }
+                batch.add(event);
+            }
+            boolean stopping = !running;
+            if (!batch.isEmpty() && (batch.size() >= BATCH_SIZE || System.nanoTime() - oldestAt >= FLUSH_NANOS || stopping)) {
+                flush(batch);
+                batch.clear();
+                continue;
+            }
+            if (stopping) { return; } // Nothing left in the buffer or the batch
+            if (spillPending && System.nanoTime() - nextReplayAt >= 0) { replaySpill(); }
+            LockSupport.parkNanos(batch.isEmpty() ? FLUSH_NANOS : Math.max(1, oldestAt + FLUSH_NANOS - System.nanoTime()));
+        }
+    }
+
+    private void flush(List<Event> batch) {
+        if (spillPending && (System.nanoTime() - nextReplayAt < 0 || !replaySpill())) {
+            spill(batch); // Keep order: older spilled events go in first
+            return;
+        }
+        try {
+            insert(batch);
+        } catch (SQLException e) {
+            List<Event> unwritten = batch;
+            if (!isConnectionError(e)) {
+                System.err.println("Audit log: database refused a batch of " + batch.size() + " events, writing them one at a time: " + e.getMessage());
+                unwritten = insertOneByOne(batch);
+                if (unwritten.isEmpty()) { return; }
+            }
+            System.err.println("Audit log: database unavailable, spilling " + unwritten.size() + " events to " + SPILL_FILE + ": " + e.getMessage());
+            spill(unwritten);
+            nextReplayAt = System.nanoTime() + RETRY_NANOS;
+        }
+    }
+
+    /**
+     * Writes the events one at a time after the database refused them as a batch. Events it refuses again
+     * go to the reject file. Returns the events not tried because the connection failed, oldest first.
+     */
+    private List<Event> insertOneByOne(List<Event> events) {
+        List<Event> rejected = new ArrayList<>();
+        List<Event> unwritten = new ArrayList<>();
+        for (int i = 0; i < events.size(); i++) {
+            Event event = events.get(i);
+            try {
+                insert(List.of(event));
+            } catch (SQLException e) {
+                if (isConnectionError(e)) {
+                    unwritten.addAll(events.subList(i, events.size()));
+                    break;
+                }
+                System.err.println("Audit log: " + event.type + " event rejected, moving it to " + REJECT_FILE + ": " + e.getMessage());
+                rejected.add(event);
+            }
+        }
+        if (!rejected.isEmpty()) {
+            synchronized (spillLock) {
+                try {
+                    append(REJECT_FILE, rejected);
+                    REJECTED.add(rejected.size());
+                } catch (IOException e) {
+                    System.err.println("Audit log: could not write " + rejected.size() + " rejected events to " + REJECT_FILE + ", they are lost: " + e.getMessage());
+                }
+            }
+        }
+        return unwritten;
+    }
+
+    /** True if {@code e} means the database could not be reached, as opposed to refusing the data. */
+    static boolean isConnectionError(SQLException e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLTransientException) { return true; }
+            if (t instanceof SQLException) {
+                String state = ((SQLException) t).getSQLState();
+                if (state != null && state.startsWith("08")) { return true; }
+            }
+        }
+        return false;
+    }
+
+    private void insert(List<Event> events) throws SQLException {
+        long started = System.nanoTime();
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(INSERT_SQL)) {
+                for (int i = 0; i < events.size(); i++) {
+                    Event event = events.get(i);
+                    pstmt.setString(1, event.username);
+                    pstmt.setString(2, event.type);
+                    pstmt.setString(3, event.details);
+                    pstmt.setTimestamp(4, new Timestamp(event.timeMillis));
+                    pstmt.addBatch();
+                    if ((i + 1) % BATCH_SIZE == 0) { pstmt.executeBatch(); }
+                }
+                pstmt.executeBatch();
+            }
+            conn.commit();
+            WRITTEN.add(events.size());
+        } catch (SQLException e) {
+            if (conn != null) { try { conn.rollback(); } catch (SQLException ignored) { /* Connection is gone */ } }
+            throw e;
+        } finally {
+            DatabaseConnection.release(conn); // Resets auto-commit
+            FLUSH_TIMER.recordSince(started);
+        }
+    }
+
+    // --- Spill file ---
+
+    private void spill(List<Event> events) {
+        synchronized (spillLock) {
+            try {
+                append(SPILL_FILE, events);
+                spillPending = true;
+                SPILLED.add(events.size());
+            } catch (IOException e) {
+                System.err.println("Audit log: could not write " + events.size() + " events to " + SPILL_FILE + ", they are lost: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void append(Path file, List<Event> events) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (Event event : events) {
+            lines.append(event.timeMillis).append('\t').append(escape(event.username)).append('\t')
+                 .append(escape(event.type)).append('\t').append(escape(event.details)).append('\n');
+        }
+        try (FileOutputStream out = new FileOutputStream(file.toFile(), true)) {
+            out.write(lines.toString().getBytes(StandardCharsets.UTF_8));
+            out.getChannel().force(true); // Survive a crash, not just a database outage
+        }
+    }
+
+    /**
+     * Inserts every spilled event in one transaction and empties the spill. Returns false if the database is
+     * still down, or if more events were spilled while replaying (they go next, so callers must spill too).
+     * <p>
+     * Only moving the spill file aside for replay takes {@code spillLock}; the database work runs without it,
+     * so a caller spilling from a full buffer never waits on a JDBC round trip. The replay file belongs to
+     * the writer thread and is the head of the queue until it has been written.
+     */
+    private boolean replaySpill() {
+        synchronized (spillLock) {
+            try {
+                if (Files.exists(SPILL_FILE)) {
+                    if (Files.exists(REPLAY_FILE)) { // An earlier replay is unfinished: its events stay first
+                        appendFile(SPILL_FILE, REPLAY_FILE);
+                        Files.delete(SPILL_FILE);
+                    } else {
+                        Files.move(SPILL_FILE, REPLAY_FILE, StandardCopyOption.ATOMIC_MOVE);
+                    }
+                } else if (!Files.exists(REPLAY_FILE)) {
+                    spillPending = false;
+                    return true;
+                }
+            } catch (IOException e) {
+                System.err.println("Audit log: could not move " + SPILL_FILE + " aside for replay: " + e.getMessage());
+                nextReplayAt = System.nanoTime() + RETRY_NANOS;
+                return false;
+            }
+        }
+        List<Event> events = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(REPLAY_FILE, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 4) { continue; } // Torn last line after a crash
+                events.add(new Event(Long.parseLong(fields[0]), unescape(fields[1]), unescape(fields[2]), unescape(fields[3])));
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Audit log: could not read " + REPLAY_FILE + ": " + e.getMessage());
+            nextReplayAt = System.nanoTime() + RETRY_NANOS;
+            return false;
+        }
+        List<Event> unwritten = List.of();
+        try {
+            if (!events.isEmpty()) { insert(events); }
+        } catch (SQLException e) {
+            if (isConnectionError(e)) {
+                System.err.println("Audit log: replay of " + events.size() + " spilled events failed, retrying in "
+                        + TimeUnit.NANOSECONDS.toSeconds(RETRY_NANOS) + " s: " + e.getMessage());
+                nextReplayAt = System.nanoTime() + RETRY_NANOS;
+                return false;
+            }
+            System.err.println("Audit log: database refused the " + events.size() + " spilled events, writing them one at a time: " + e.getMessage());
+            unwritten = insertOneByOne(events);
+        }
+        try {
+            Files.delete(REPLAY_FILE);
+            if (!unwritten.isEmpty()) { append(REPLAY_FILE, unwritten); } // Connection lost part-way: keep the rest
+        } catch (IOException e) {
+            System.err.println("Audit log: could not rewrite " + REPLAY_FILE + ", its events may be written again: " + e.getMessage());
+            nextReplayAt = System.nanoTime() + RETRY_NANOS;
+            return false;
+        }
+        if (!unwritten.isEmpty()) {
+            nextReplayAt = System.nanoTime() + RETRY_NANOS;
+            return false;
+        }
+        System.out.println("Audit log: replayed " + events.size() + " spilled events.");
+        synchronized (spillLock) {
+            spillPending = Files.exists(SPILL_FILE); // Spilled during the replay: replayed next, before newer events
+            return !spillPending;
+        }
+    }
+
+    private static void appendFile(Path from, Path to) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(to.toFile(), true)) {
+            Files.copy(from, out);
+            out.getChannel().force(true);
+        }
+    }
+
+    private static String escape(String value) {
+        if (value == null) { return "\\N"; }
+        StringBuilder out = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': out.append("\\\\"); break;
+                case '\t': out.append("\\t"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                default: out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    private static String unescape(String value) {
+        if ("\\N".equals(value)) { return null; }
+        StringBuilder out = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                out.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+}
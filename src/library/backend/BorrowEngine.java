@@ -0,0 +1,128 @@
+package library.backend;
+
+import library.DatabaseConnection;
+import library.MetricsRegistry;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The one code path that lends a copy of a book, used by both the student and the librarian screens.
+ * <p>
+ * A borrow is a single transaction of two statements and no explicit locks:
+ * <pre>
+ * UPDATE Books SET available_copies = available_copies - 1 WHERE book_id = ? AND available_copies &gt; 0
+ * INSERT INTO IssuedBooks (...)
+ * </pre>
+ * The conditional UPDATE checks and takes the copy in one step, so two borrowers can never both get the
+ * last copy, and the row lock it takes is held only until the commit right after the INSERT. The UPDATE
+ * goes first on purpose: the INSERT's foreign-key check takes a shared lock on the book row, and taking
+ * it before the exclusive one would let two borrowers deadlock on the upgrade.
+ * <p>
+ * If MySQL still aborts the transaction (deadlock or lock wait timeout), it is retried up to
+ * {@code library.borrow.maxRetries} times with a short randomized backoff.
+ */
+public final class BorrowEngine {
+
+    public static final int MAX_RETRIES = Integer.getInteger("library.borrow.maxRetries", 3);
+
+    private static final int ER_LOCK_WAIT_TIMEOUT = 1205;
+    private static final int ER_LOCK_DEADLOCK = 1213;
+    private static final int ER_NO_REFERENCED_ROW = 1452;
+
+    private static final MetricsRegistry.Counter RETRIES = MetricsRegistry.getInstance().counter("borrow.retries");
+    private static final MetricsRegistry.Timer BORROW_TIMER = MetricsRegistry.getInstance().timer("borrow");
+
+    private BorrowEngine() {}
+
+    /** Transactions retried after a deadlock or lock wait timeout since start-up. */
+    public static long getRetryCount() { return RETRIES.get(); }
+
+    /**
+     * Lends one copy of {@code bookId} to {@code studentId} for {@code borrowPeriodDays} days.
+     *
+     * @return the due date.
+     * @throws BorrowException if the book or student doesn't exist or no copy is free.
+     */
+    public static LocalDate borrow(String studentId, String bookId, int borrowPeriodDays) throws SQLException, BorrowException {
+        LocalDate issueDate = LocalDate.now();
+        LocalDate dueDate = issueDate.plusDays(borrowPeriodDays);
+        long started = System.nanoTime();
+        try {
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    tryBorrow(studentId, bookId, issueDate, dueDate);
+                    CatalogIndex.getInstance().adjustAvailableCopies(bookId, -1);
+                    AuditLog.getInstance().record(AuditLog.ISSUE_BOOK, "Book " + bookId + " to student " + studentId + ", due " + dueDate);
+                    return dueDate;
+                } catch (SQLException e) {
+                    if (!isRetryable(e) || attempt >= MAX_RETRIES) { throw e; }
+                    RETRIES.increment();
+                    backoff(attempt);
+                }
+            }
+        } finally {
+            BORROW_TIMER.recordSince(started); // Includes retries and backoff, unlike the per-SQL timings
+        }
+    }
+
+    private static void tryBorrow(String studentId, String bookId, LocalDate issueDate, LocalDate dueDate) throws SQLException, BorrowException {
+        String takeCopySql = "UPDATE Books SET available_copies = available_copies - 1 WHERE book_id = ? AND available_copies > 0";
+        String insertIssueSql = "INSERT INTO IssuedBooks (student_id, book_id, issue_date, due_date, status, reissue_count) VALUES (?, ?, ?, ?, 'Issued', 0)";
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(takeCopySql)) {
+                pstmt.setString(1, bookId);
+                if (pstmt.executeUpdate() == 0) {
+                    conn.rollback();
+                    throw new BorrowException(bookExists(conn, bookId)
+                            ? "Sorry, this book is no longer available."
+                            : "Book ID " + bookId + " not found.");
+                }
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(insertIssueSql)) {
+                pstmt.setString(1, studentId);
+                pstmt.setString(2, bookId);
+                pstmt.setDate(3, Date.valueOf(issueDate));
+                pstmt.setDate(4, Date.valueOf(dueDate));
+                pstmt.executeUpdate();
+            } catch (SQLException e) {
+                if (e.getErrorCode() == ER_NO_REFERENCED_ROW) { // The Students foreign key; saves a lookup on the happy path
+                    throw new BorrowException("Student with ID " + studentId + " does not exist.");
+                }
+                throw e;
+            }
+            conn.commit();
+        } catch (SQLException | BorrowException ex) {
+            if (conn != null) { try { conn.rollback(); } catch (SQLException e) { e.printStackTrace(); } }
+            throw ex;
+        } finally {
+            if (conn != null) { try { conn.setAutoCommit(true); } catch (SQLException e) { e.printStackTrace(); } }
+            DatabaseConnection.release(conn);
+        }
+    }
+
+    private static boolean bookExists(Connection conn, String bookId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT 1 FROM Books WHERE book_id = ?")) {
+            pstmt.setString(1, bookId);
+            try (ResultSet rs = pstmt.executeQuery()) { return rs.next(); }
+        }
+    }
+
+    static boolean isRetryable(SQLException e) {
+        return e.getErrorCode() == ER_LOCK_DEADLOCK || e.getErrorCode() == ER_LOCK_WAIT_TIMEOUT
+                || "40001".equals(e.getSQLState());
+    }
+
+    private static void backoff(int attempt) {
+        long maxMillis = 5L << Math.min(attempt, 4); // 5, 10, 20, 40, 80 ms
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(1, maxMillis + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package library.backend;
+
+/** A borrow that cannot go ahead (no copy free, unknown book or student); the message is shown to the user. */
+class BorrowException extends Exception {
+    public BorrowException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,639 @@
+package library.backend;
+
+import library.DatabaseConnection;
+import library.MetricsRegistry;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Adds a whole file of books to the catalog.
+ * <p>
+ * Two formats are read: CSV with a header row naming the {@code title}, {@code author}, {@code category}
+ * and {@code copies} columns (only title and author are required; quoted fields may contain commas, quotes
+ * and line breaks), and MARC in the text ("mnemonic", {@code .mrk}) form, one record per blank-line
+ * separated block, taking the title from 245 $a $b, the author from 100 or 110 $a (245 $c if neither is
+ * there), the category from the first 650 $a and one copy per 852 holdings field.
+ * <p>
+ * The file is streamed: a reader thread parses it into batches of {@code library.import.batchSize} rows
+ * (default 1000), a pool of {@code library.import.threads} threads (default one per core) validates the
+ * batches, and the calling thread writes them in file order, so memory stays bounded whatever the file
+ * size. Each batch is one transaction. Books already in the catalog with the same title and author
+ * (compared like MySQL does, ignoring case and accents) and rows repeated within the batch get their
+ * copies added to {@code total_copies} and {@code available_copies}; the rest get IDs from
+ * {@link IdSequences} in a single reservation and are inserted with a plain batched {@code INSERT}, which
+ * {@code rewriteBatchedStatements} sends as a multi-row insert. Copies added to a book with waiting holds
+ * are offered to those holds ({@link HoldService#offerCopies}) in the same transaction.
+ * <p>
+ * Invalid rows are skipped and reported with their line number; they don't stop the import. A database
+ * error does: the batches written before it stay imported and the exception says where to resume. A MySQL
+ * named lock allows one import at a time, since two could each add the same new title.
+ */
+public final class CatalogImporter {
+
+    public static final int BATCH_SIZE = Math.max(1, Integer.getInteger("library.import.batchSize", 1000));
+    private static final int THREADS = Math.max(1, Integer.getInteger("library.import.threads", Runtime.getRuntime().availableProcessors()));
+    private static final int MAX_REPORTED_ERRORS = Integer.getInteger("library.import.maxErrors", 1000);
+    private static final String LOCK_NAME = "library.catalog_import";
+    private static final int MAX_TITLE_LENGTH = 255;
+    private static final int MAX_AUTHOR_LENGTH = 255;
+    private static final int MAX_CATEGORY_LENGTH = 100;
+
+    private static final MetricsRegistry.Counter ROWS = MetricsRegistry.getInstance().counter("import.rows");
+    private static final MetricsRegistry.Timer BATCH_TIMER = MetricsRegistry.getInstance().timer("import.batch");
+
+    public enum Format {
+        CSV, MARC;
+
+        /** MARC for {@code .mrk} files, CSV for anything else. */
+        public static Format of(Path file) {
+            return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".mrk") ? MARC : CSV;
+        }
+    }
+
+    /** A row that was not imported. */
+    public static final class RowError {
+        private final long line;
+        private final String message;
+
+        RowError(long line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        public long getLine() { return line; }
+        public String getMessage() { return message; }
+
+        @Override public String toString() { return "Line " + line + ": " + message; }
+    }
+
+    /** What an import did. */
+    public static final class Result {
+        private long rows;
+        private long booksAdded;
+        private long booksMerged;
+        private long copiesAdded;
+        private long rejected;
+        private long millis;
+        private final List<RowError> errors = new ArrayList<>();
+
+        public long getRows() { return rows; }
+        public long getBooksAdded() { return booksAdded; }
+        /** Rows whose copies went to a book that already existed (or appeared earlier in the same batch). */
+        public long getBooksMerged() { return booksMerged; }
+        public long getCopiesAdded() { return copiesAdded; }
+        public long getRejected() { return rejected; }
+        public long getMillis() { return millis; }
+        /** The first {@code library.import.maxErrors} rejected rows (default 1000); {@link #getRejected()} counts all. */
+        public List<RowError> getErrors() { return Collections.unmodifiableList(errors); }
+        public double getRowsPerSecond() { return millis == 0 ? rows : rows * 1000.0 / millis; }
+
+        @Override public String toString() {
+            return String.format(Locale.ROOT, "%d row(s) in %.1f s (%.0f rows/s): %d book(s) added, %d merged into existing books, %d copies, %d rejected",
+                    rows, millis / 1000.0, getRowsPerSecond(), booksAdded, booksMerged, copiesAdded, rejected);
+        }
+    }
+
+    /** One parsed record: title, author, category and copies as text, before validation. */
+    private static final class Row {
+        final long line;
+        final String[] values;
+        String title, author, category;
+        int copies;
+        String error; // Set by validation if the row is rejected
+
+        Row(long line, String[] values) {
+            this.line = line;
+            this.values = values;
+        }
+
+        String key() { return CatalogIndex.fold(title) + '\n' + CatalogIndex.fold(author); }
+    }
+
+    private static final class Batch {
+        final List<Row> rows;
+        final long bytesRead;
+        final boolean last;
+
+        Batch(List<Row> rows, long bytesRead, boolean last) {
+            this.rows = rows;
+            this.bytesRead = bytesRead;
+            this.last = last;
+        }
+    }
+
+    private CatalogImporter() {}
+
+    public static Result importFile(Path file, ProgressListener progress) throws IOException, SQLException {
+        return importFile(file, Format.of(file), progress);
+    }
+
+    /**
+     * Imports every book in {@code file}. Progress is reported after each batch as rows done of an
+     * estimated total (extrapolated from the bytes read so far).
+     *
+     * @throws IOException if the file can't be read or has no title/author columns.
+     * @throws SQLException if a batch can't be written; earlier batches stay imported.
+     */
+    public static Result importFile(Path file, Format format, ProgressListener progress) throws IOException, SQLException {
+        long started = System.nanoTime();
+        long fileSize = Files.size(file);
+        Result result = new Result();
+        ExecutorService validators = Executors.newFixedThreadPool(THREADS, daemonThreads("catalog-import-validator-"));
+        BlockingQueue<Future<Batch>> pending = new ArrayBlockingQueue<>(THREADS * 2); // Bounds how far reading runs ahead
+        Reader reader = new Reader(file, format, validators, pending);
+        Connection conn = null;
+        boolean autoCommitOriginal = true;
+        long lastCommittedLine = 0;
+        try {
+            conn = DatabaseConnection.getConnection();
+            if (conn == null || conn.isClosed()) { throw new SQLException("Database connection failed or is closed."); }
+            if (!acquireLock(conn)) { throw new SQLException("Another catalog import is already running."); }
+            autoCommitOriginal = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            reader.start();
+            while (true) {
+                Batch batch = take(pending);
+                if (batch.last) {
+                    reader.rethrow();
+                    break;
+                }
+                long batchStarted = System.nanoTime();
+                List<HoldService.Allocation> allocations = new ArrayList<>();
+                List<CatalogIndex.BookRecord> written = write(conn, batch.rows, result, allocations);
+                conn.commit();
+                for (CatalogIndex.BookRecord book : written) { CatalogIndex.getInstance().put(book); }
+                HoldService.getInstance().allocated(allocations);
+                BATCH_TIMER.recordSince(batchStarted);
+                ROWS.add(batch.rows.size());
+                lastCommittedLine = batch.rows.get(batch.rows.size() - 1).line;
+                long estimatedRows = batch.bytesRead <= 0 ? -1 : Math.max(result.rows, result.rows * fileSize / batch.bytesRead);
+                progress.progress(result.rows, estimatedRows);
+            }
+            progress.progress(result.rows, result.rows);
+        } catch (SQLException e) {
+            if (conn != null) {
+                try { conn.rollback(); } catch (SQLException ex) { System.err.println("Rollback failed: " + ex.getMessage()); }
+            }
+            throw new SQLException("Catalog import stopped: " + e.getMessage() + (lastCommittedLine > 0
+                    ? " Rows up to line " + lastCommittedLine + " were imported; resume after that line." : " Nothing was imported."), e);
+        } finally {
+            reader.stop();
+            validators.shutdownNow();
+            if (conn != null) {
+                try { conn.setAutoCommit(autoCommitOriginal); } catch (SQLException e) { e.printStackTrace(); }
+                releaseLock(conn);
+            }
+            DatabaseConnection.release(conn);
+        }
+        result.millis = (System.nanoTime() - started) / 1_000_000;
+        System.out.println("Imported " + file.getFileName() + ": " + result);
+        AuditLog.getInstance().record(AuditLog.IMPORT_CATALOG, file.getFileName() + ": " + result);
+        return result;
+    }
+
+    // --- Writing, on the calling thread ---
+
+    /**
+     * Writes one batch without committing it. Copies added to books that students are waiting for go to
+     * their holds, which are added to {@code allocations}. Returns the books' new state for the catalog
+     * index, before those holds take their copies.
+     */
+    private static List<CatalogIndex.BookRecord> write(Connection conn, List<Row> rows, Result result,
+                                                       List<HoldService.Allocation> allocations) throws SQLException {
+        // Rejected rows are reported; repeats within the batch are folded into their first row
+        Map<String, Row> books = new LinkedHashMap<>();
+        for (Row row : rows) {
+            result.rows++;
+            if (row.error != null) {
+                result.rejected++;
+                if (result.errors.size() < MAX_REPORTED_ERRORS) { result.errors.add(new RowError(row.line, row.error)); }
+                continue;
+            }
+            result.copiesAdded += row.copies;
+            Row first = books.putIfAbsent(row.key(), row);
+            if (first != null) {
+                first.copies += row.copies;
+                result.booksMerged++;
+            }
+        }
+        if (books.isEmpty()) { return List.of(); }
+
+        Map<String, CatalogIndex.BookRecord> existing = findExisting(conn, books.values());
+        int missing = 0;
+        for (String key : books.keySet()) { if (!existing.containsKey(key)) { missing++; } }
+        List<String> newIds = missing > 0 ? IdSequences.getInstance().nextIds(IdSequences.Sequence.BOOK, missing) : List.of();
+
+        List<CatalogIndex.BookRecord> written = new ArrayList<>(books.size());
+        List<String> mergedIds = new ArrayList<>();
+        // A plain INSERT: a new ID that is somehow taken fails the batch instead of adding copies to another book
+        String insertSql = "INSERT INTO Books (book_id, title, author, category, total_copies, available_copies) VALUES (?, ?, ?, ?, ?, ?)";
+        String mergeSql = "UPDATE Books SET total_copies = total_copies + ?, available_copies = available_copies + ? WHERE book_id = ?";
+        try (PreparedStatement insert = conn.prepareStatement(insertSql);
+             PreparedStatement merge = conn.prepareStatement(mergeSql)) {
+            int nextNew = 0;
+            for (Map.Entry<String, Row> entry : books.entrySet()) {
+                Row row = entry.getValue();
+                CatalogIndex.BookRecord old = existing.get(entry.getKey());
+                if (old != null) {
+                    result.booksMerged++;
+                    mergedIds.add(old.getBookId());
+                    written.add(new CatalogIndex.BookRecord(old.getBookId(), old.getTitle(), old.getAuthor(), old.getCategory(),
+                            old.getTotalCopies() + row.copies, old.getAvailableCopies() + row.copies, old.getAvgRating()));
+                    merge.setInt(1, row.copies);
+                    merge.setInt(2, row.copies);
+                    merge.setString(3, old.getBookId());
+                    merge.addBatch();
+                } else {
+                    String bookId = newIds.get(nextNew++);
+                    result.booksAdded++;
+                    written.add(new CatalogIndex.BookRecord(bookId, row.title, row.author, row.category, row.copies, row.copies, 0.0));
+                    insert.setString(1, bookId);
+                    insert.setString(2, row.title);
+                    insert.setString(3, row.author);
+                    insert.setString(4, row.category);
+                    insert.setInt(5, row.copies);
+                    insert.setInt(6, row.copies);
+                    insert.addBatch();
+                }
+            }
+            if (nextNew > 0) { insert.executeBatch(); }
+            if (!mergedIds.isEmpty()) { merge.executeBatch(); }
+        }
+        // New copies of a book with a queue go to the waiting holds first, as for any other copy put on the shelf
+        for (String bookId : withWaitingHolds(conn, mergedIds)) {
+            allocations.addAll(HoldService.offerCopies(conn, bookId));
+        }
+        return written;
+    }
+
+    /**
+     * The books among {@code bookIds} that have holds waiting. The rows are already locked by
+     * {@link #findExisting}, so no hold can be placed on them before the batch commits.
+     */
+    private static List<String> withWaitingHolds(Connection conn, List<String> bookIds) throws SQLException {
+        if (bookIds.isEmpty()) { return List.of(); }
+        StringBuilder sql = new StringBuilder("SELECT DISTINCT book_id FROM IssuedBooks WHERE status = 'HoldRequested' AND book_id IN (?");
+        for (int i = 1; i < BATCH_SIZE; i++) { sql.append(", ?"); }
+        sql.append(") ORDER BY book_id");
+        List<String> waiting = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+            for (int i = 0; i < BATCH_SIZE; i++) { pstmt.setString(i + 1, bookIds.get(Math.min(i, bookIds.size() - 1))); }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) { waiting.add(rs.getString("book_id")); }
+            }
+        }
+        return waiting;
+    }
+
+    /**
+     * The catalog's books with the same title and author as {@code rows}, by key, locked until commit. The
+     * IN list is padded to the batch size so the statement text never changes and stays in the statement cache.
+     */
+    private static Map<String, CatalogIndex.BookRecord> findExisting(Connection conn, Iterable<Row> rows) throws SQLException {
+        List<String> titles = new ArrayList<>();
+        Map<String, Boolean> seen = new HashMap<>();
+        for (Row row : rows) {
+            if (seen.putIfAbsent(row.title, Boolean.TRUE) == null) { titles.add(row.title); }
+        }
+        StringBuilder sql = new StringBuilder("SELECT book_id, title, author, category, total_copies, available_copies, avg_rating FROM Books WHERE title IN (?");
+        for (int i = 1; i < BATCH_SIZE; i++) { sql.append(", ?"); }
+        sql.append(") ORDER BY book_id FOR UPDATE");
+
+        Map<String, CatalogIndex.BookRecord> existing = new HashMap<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+            for (int i = 0; i < BATCH_SIZE; i++) { pstmt.setString(i + 1, titles.get(Math.min(i, titles.size() - 1))); }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    CatalogIndex.BookRecord book = new CatalogIndex.BookRecord(rs.getString("book_id"), rs.getString("title"),
+                            rs.getString("author"), rs.getString("category"), rs.getInt("total_copies"),
+                            rs.getInt("available_copies"), rs.getDouble("avg_rating"));
+                    // Several matching books: copies go to the oldest one
+                    existing.putIfAbsent(CatalogIndex.fold(book.getTitle()) + '\n' + CatalogIndex.fold(book.getAuthor()), book);
+                }
+            }
+        }
+        return existing;
+    }
+
+    private static boolean acquireLock(Connection conn) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT GET_LOCK(?, 0)")) {
+            pstmt.setString(1, LOCK_NAME);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    private static void releaseLock(Connection conn) {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            pstmt.setString(1, LOCK_NAME);
+            pstmt.executeQuery().close();
+        } catch (SQLException e) {
+            System.err.println("Could not release the catalog import lock: " + e.getMessage());
+        }
+    }
+
+    private static Batch take(BlockingQueue<Future<Batch>> pending) throws SQLException {
+        try {
+            return pending.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while importing.", e);
+        } catch (ExecutionException e) {
+            throw new SQLException("Validation failed: " + e.getCause(), e.getCause());
+        }
+    }
+
+    // --- Validation, on the pool ---
+
+    private static Batch validate(List<Row> rows, long bytesRead) {
+        for (Row row : rows) {
+            String[] v = row.values;
+            row.title = clean(v[0]);
+            row.author = clean(v[1]);
+            row.category = clean(v[2]);
+            if (row.title == null) { row.error = "Missing title."; }
+            else if (row.author == null) { row.error = "Missing author."; }
+            else if (row.title.length() > MAX_TITLE_LENGTH) { row.error = "Title is longer than " + MAX_TITLE_LENGTH + " characters."; }
+            else if (row.author.length() > MAX_AUTHOR_LENGTH) { row.error = "Author is longer than " + MAX_AUTHOR_LENGTH + " characters."; }
+            else if (row.category != null && row.category.length() > MAX_CATEGORY_LENGTH) { row.error = "Category is longer than " + MAX_CATEGORY_LENGTH + " characters."; }
+            else {
+                String copies = clean(v[3]);
+                try {
+                    row.copies = copies == null ? 1 : Integer.parseInt(copies);
+                    if (row.copies <= 0) { row.error = "Copies must be a positive whole number: " + copies; }
+                } catch (NumberFormatException e) {
+                    row.error = "Copies must be a positive whole number: " + copies;
+                }
+            }
+        }
+        return new Batch(rows, bytesRead, false);
+    }
+
+    /** Trimmed, with runs of whitespace collapsed; null if blank. */
+    private static String clean(String value) {
+        if (value == null) { return null; }
+        String cleaned = value.strip().replaceAll("\\s+", " ");
+        return cleaned.isEmpty() ? null : cleaned;
+    }
+
+    // --- Reading, on its own thread ---
+
+    /** Parses the file into batches and hands them to the validators, in order, through {@code pending}. */
+    private static final class Reader implements Runnable {
+        private final Path file;
+        private final Format format;
+        private final ExecutorService validators;
+        private final BlockingQueue<Future<Batch>> pending;
+        private final Thread thread;
+        private volatile boolean stopped = false;
+        private volatile Exception failure = null;
+
+        Reader(Path file, Format format, ExecutorService validators, BlockingQueue<Future<Batch>> pending) {
+            this.file = file;
+            this.format = format;
+            this.validators = validators;
+            this.pending = pending;
+            this.thread = daemonThreads("catalog-import-reader").newThread(this);
+        }
+
+        void start() { thread.start(); }
+
+        void stop() {
+            stopped = true;
+            thread.interrupt();
+        }
+
+        void rethrow() throws IOException, SQLException {
+            if (failure instanceof IOException) { throw (IOException) failure; }
+            if (failure != null) { throw new SQLException("Could not read " + file.getFileName() + ": " + failure.getMessage(), failure); }
+        }
+
+        @Override public void run() {
+            try (CountingInputStream in = new CountingInputStream(Files.newInputStream(file));
+                 BufferedReader lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16)) {
+                RecordParser parser = format == Format.MARC ? new MarcParser(lines) : new CsvParser(lines, file);
+                List<Row> rows = new ArrayList<>(BATCH_SIZE);
+                Row row;
+                while (!stopped && (row = parser.next()) != null) {
+                    rows.add(row);
+                    if (rows.size() == BATCH_SIZE) {
+                        submit(rows, in.count);
+                        rows = new ArrayList<>(BATCH_SIZE);
+                    }
+                }
+                if (!rows.isEmpty()) { submit(rows, in.count); }
+            } catch (InterruptedException e) {
+                return; // Stopped by the writer
+            } catch (IOException | RuntimeException e) {
+                failure = e;
+            }
+            try {
+                pending.put(CompletableFuture.completedFuture(new Batch(List.of(), 0, true)));
+            } catch (InterruptedException e) {
+                // Stopped by the writer, which no longer takes from the queue
+            }
+        }
+
+        private void submit(List<Row> rows, long bytesRead) throws InterruptedException {
+            pending.put(validators.submit(() -> validate(rows, bytesRead)));
+        }
+    }
+
+    private interface RecordParser {
+        /** The next record as {title, author, category, copies}, or null at the end of the file. */
+        Row next() throws IOException;
+    }
+
+    /** RFC 4180 CSV: comma separated, fields optionally in double quotes, {@code ""} for a quote inside one. */
+    private static final class CsvParser implements RecordParser {
+        private final BufferedReader lines;
+        private final int[] columns = {-1, -1, -1, -1}; // Column index of title, author, category, copies
+        private long lineNumber = 0;
+
+        CsvParser(BufferedReader lines, Path file) throws IOException {
+            this.lines = lines;
+            List<String> header = record();
+            if (header == null) { throw new IOException(file.getFileName() + " is empty."); }
+            for (int i = 0; i < header.size(); i++) {
+                switch (header.get(i).strip().toLowerCase(Locale.ROOT)) {
+                    case "title": columns[0] = i; break;
+                    case "author": columns[1] = i; break;
+                    case "category": case "subject": columns[2] = i; break;
+                    case "copies": case "total_copies": columns[3] = i; break;
+                    default: break; // Other columns are ignored
+                }
+            }
+            if (columns[0] < 0 || columns[1] < 0) {
+                throw new IOException(file.getFileName() + " needs a header row with 'title' and 'author' columns (and optionally 'category' and 'copies').");
+            }
+        }
+
+        @Override public Row next() throws IOException {
+            List<String> fields;
+            long line;
+            do {
+                line = lineNumber + 1;
+                fields = record();
+                if (fields == null) { return null; }
+            } while (fields.size() == 1 && fields.get(0).isEmpty()); // Skip blank lines
+            String[] values = new String[4];
+            for (int c = 0; c < 4; c++) { values[c] = columns[c] >= 0 && columns[c] < fields.size() ? fields.get(columns[c]) : null; }
+            return new Row(line, values);
+        }
+
+        /** The fields of the next record, which spans several lines if a quoted field contains line breaks. */
+        private List<String> record() throws IOException {
+            String text = lines.readLine();
+            if (text == null) { return null; }
+            if (lineNumber == 0 && text.startsWith("\uFEFF")) { text = text.substring(1); } // Byte order mark, e.g. Excel's "CSV UTF-8"
+            lineNumber++;
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            int i = 0;
+            while (true) {
+                if (i == text.length()) {
+                    if (!quoted) { break; }
+                    String more = lines.readLine(); // Line break inside quotes
+                    if (more == null) { throw new IOException("Line " + lineNumber + ": unterminated quoted field."); }
+                    lineNumber++;
+                    field.append('\n');
+                    text = more;
+                    i = 0;
+                    continue;
+                }
+                char ch = text.charAt(i++);
+                if (quoted) {
+                    if (ch != '"') { field.append(ch); }
+                    else if (i < text.length() && text.charAt(i) == '"') { field.append('"'); i++; }
+                    else { quoted = false; }
+                } else if (ch == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (ch == '"' && field.length() == 0) {
+                    quoted = true;
+                } else {
+                    field.append(ch);
+                }
+            }
+            fields.add(field.toString());
+            return fields;
+        }
+    }
+
+    /** MARC mnemonic text: {@code =TAG  II$aValue$bValue} lines, records separated by blank lines. */
+    private static final class MarcParser implements RecordParser {
+        private final BufferedReader lines;
+        private long lineNumber = 0;
+
+        MarcParser(BufferedReader lines) { this.lines = lines; }
+
+        @Override public Row next() throws IOException {
+            String title = null, subtitle = null, author = null, statement = null, category = null;
+            int holdings = 0;
+            long start = 0;
+            String text;
+            while ((text = lines.readLine()) != null) {
+                lineNumber++;
+                if (text.isBlank()) {
+                    if (start > 0) { break; }
+                    continue;
+                }
+                if (start == 0) { start = lineNumber; }
+                if (text.length() < 4 || text.charAt(0) != '=') { continue; }
+                switch (text.substring(1, 4)) {
+                    case "245":
+                        title = subfield(text, 'a');
+                        subtitle = subfield(text, 'b');
+                        statement = subfield(text, 'c');
+                        break;
+                    case "100": case "110":
+                        if (author == null) { author = subfield(text, 'a'); }
+                        break;
+                    case "650":
+                        if (category == null) { category = subfield(text, 'a'); }
+                        break;
+                    case "852":
+                        holdings++;
+                        break;
+                    default:
+                        break;
+                }
+            }
+            if (start == 0) { return null; }
+            String fullTitle = title == null ? null : subtitle == null ? trimPunctuation(title) : trimPunctuation(title) + ": " + trimPunctuation(subtitle);
+            return new Row(start, new String[]{fullTitle, trimPunctuation(author != null ? author : statement),
+                    trimPunctuation(category), String.valueOf(Math.max(1, holdings))});
+        }
+
+        /** The first {@code $code} subfield of a data field line, with {@code {dollar}} unescaped. */
+        private static String subfield(String text, char code) {
+            int at = text.indexOf("$" + code, 4);
+            if (at < 0) { return null; }
+            int end = text.indexOf('$', at + 2);
+            return text.substring(at + 2, end < 0 ? text.length() : end).replace("{dollar}", "$");
+        }
+
+        /** Drops the ISBD punctuation MARC leaves at the end of a subfield (" /", " :", ",", "."). */
+        private static String trimPunctuation(String value) {
+            if (value == null) { return null; }
+            String trimmed = value.strip();
+            while (!trimmed.isEmpty() && "/:;,.=".indexOf(trimmed.charAt(trimmed.length() - 1)) >= 0) {
+                trimmed = trimmed.substring(0, trimmed.length() - 1).strip();
+            }
+            return trimmed;
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count = 0; // Only the reader thread uses it
+
+        CountingInputStream(InputStream in) { super(in); }
+
+        @Override public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) { count++; }
+            return b;
+        }
+
+        @Override public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) { count += n; }
+            return n;
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix.endsWith("-") ? prefix + counter.incrementAndGet() : prefix);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
@@ -0,0 +1,661 @@
+package library.backend;
+
+import library.DatabaseConnection;
+import library.MetricsRegistry;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * In-memory search index over the {@code Books} catalog.
+ * <p>
+ * Title, author and category are case- and accent-folded. A search term is split on whitespace and a
+ * book matches when every word is found in it: words of three or more characters match anywhere
+ * inside the text (like the old {@code LIKE '%term%'}), shorter words must start one of the book's
+ * words. Long words are answered from a character-trigram index, short ones from a word-prefix
+ * index. Results come back ordered by title, then book ID.
+ * <p>
+ * The index is loaded once by {@link #load()} and then kept current by the service methods that
+ * add, change or remove books and by the borrow/return paths that move copies. Changes made by other
+ * terminals are picked up by {@link #refresh()}, which the poll started by {@link #startPolling(long)}
+ * runs: it re-reads the books whose {@code updated_at} is recent, and reloads everything when the
+ * number of books or an XOR of CRC-32s of their IDs no longer matches (a book was deleted elsewhere).
+ * Until the index is loaded, {@link #isReady()} is false and callers fall back to SQL.
+ */
+public class CatalogIndex {
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final int MIN_SUBSTRING_LENGTH = 3;
+    private static final char FIELD_SEPARATOR = '\n';
+    // A row's updated_at is set when it is written, not when it commits, so each poll looks back this far
+    private static final long POLL_OVERLAP_MILLIS = Long.getLong("library.catalog.pollOverlapSeconds", 60L) * 1000;
+    private static final String COLUMNS = "book_id, title, author, category, total_copies, available_copies, avg_rating";
+
+    /** Immutable copy of one Books row. */
+    public static final class BookRecord {
+        private final String bookId;
+        private final String title;
+        private final String author;
+        private final String category;
+        private final int totalCopies;
+        private final int availableCopies;
+        private final double avgRating;
+        private final String sortKey;
+        private final String searchText;
+        private final String[] tokens;
+
+        public BookRecord(String bookId, String title, String author, String category,
+                          int totalCopies, int availableCopies, double avgRating) {
+            this(bookId, title, author, category, totalCopies, availableCopies, avgRating, fold(title),
+                    fold(title) + FIELD_SEPARATOR + fold(author) + FIELD_SEPARATOR + fold(category),
+                    tokensOf(title, author, category));
+        }
+
+        private BookRecord(String bookId, String title, String author, String category, int totalCopies,
+                           int availableCopies, double avgRating, String sortKey, String searchText, String[] tokens) {
+            this.bookId = bookId;
+            this.title = title;
+            this.author = author;
+            this.category = category;
+            this.totalCopies = totalCopies;
+            this.availableCopies = availableCopies;
+            this.avgRating = avgRating;
+            this.sortKey = sortKey;
+            this.searchText = searchText;
+            this.tokens = tokens;
+        }
+
+        public String getBookId() { return bookId; }
+        public String getTitle() { return title; }
+        public String getAuthor() { return author; }
+        public String getCategory() { return category; }
+        public int getTotalCopies() { return totalCopies; }
+        public int getAvailableCopies() { return availableCopies; }
+        public double getAvgRating() { return avgRating; }
+
+        boolean sameAs(BookRecord other) {
+            return other != null && totalCopies == other.totalCopies && availableCopies == other.availableCopies
+                    && avgRating == other.avgRating && searchText.equals(other.searchText)
+                    && Objects.equals(title, other.title) && Objects.equals(author, other.author)
+                    && Objects.equals(category, other.category);
+        }
+
+        BookRecord withAvailableCopies(int available) {
+            return new BookRecord(bookId, title, author, category, totalCopies, available, avgRating, sortKey, searchText, tokens);
+        }
+
+        BookRecord withAvgRating(double rating) {
+            return new BookRecord(bookId, title, author, category, totalCopies, availableCopies, rating, sortKey, searchText, tokens);
+        }
+
+        /** True if any of this book's words starts with {@code prefix}. */
+        boolean hasTokenWithPrefix(String prefix) {
+            for (String token : tokens) {
+                if (token.startsWith(prefix)) { return true; }
+            }
+            return false;
+        }
+    }
+
+    private static final Comparator<BookRecord> TITLE_ORDER =
+            Comparator.comparing((BookRecord b) -> b.sortKey).thenComparing(b -> b.bookId);
+
+    /** Growable list of slot numbers; far smaller than a set of boxed IDs per posting. */
+    private static final class IntBag {
+        private int[] values = new int[4];
+        private int size = 0;
+
+        void add(int value) {
+            if (size == values.length) { values = Arrays.copyOf(values, size + (size >> 1) + 1); }
+            values[size++] = value;
+        }
+
+        void trim() { if (values.length > size) { values = Arrays.copyOf(values, size); } }
+    }
+
+    /**
+     * The index proper. Each book gets a slot number; postings hold slot numbers. Slots are never
+     * reused, so a posting can only point at the book it was written for or at a dead (null) slot.
+     * Dead slots are reclaimed by rebuilding once they make up a quarter of the table.
+     */
+    private static final class Postings {
+        final List<BookRecord> slots = new ArrayList<>();
+        final Map<String, Integer> slotById = new HashMap<>();
+        final TreeMap<String, IntBag> tokens = new TreeMap<>();
+        final Map<String, IntBag> trigrams = new HashMap<>();
+        final TreeSet<BookRecord> ordered = new TreeSet<>(TITLE_ORDER);
+        int deadSlots = 0;
+        long idChecksum = 0; // XOR of idChecksum(bookId) over the live books, see refresh()
+
+        void add(BookRecord book) {
+            remove(book.bookId);
+            int slot = slots.size();
+            slots.add(book);
+            slotById.put(book.bookId, slot);
+            idChecksum ^= idChecksum(book.bookId);
+            ordered.add(book);
+            for (String token : book.tokens) {
+                tokens.computeIfAbsent(token, k -> new IntBag()).add(slot);
+            }
+            for (String trigram : trigramsOf(book.searchText)) {
+                trigrams.computeIfAbsent(trigram, k -> new IntBag()).add(slot);
+            }
+        }
+
+        void remove(String bookId) {
+            Integer slot = slotById.remove(bookId);
+            if (slot == null) { return; }
+            idChecksum ^= idChecksum(bookId);
+            ordered.remove(slots.set(slot, null));
+            deadSlots++;
+        }
+
+        /** Swaps in a record whose indexed text is unchanged (e.g. only copies moved). */
+        void replace(BookRecord book) {
+            Integer slot = slotById.get(book.bookId);
+            if (slot == null) { return; }
+            ordered.remove(slots.set(slot, book));
+            ordered.add(book);
+        }
+
+        BookRecord get(String bookId) {
+            Integer slot = slotById.get(bookId);
+            return slot == null ? null : slots.get(slot);
+        }
+
+        boolean needsCompaction() { return deadSlots > 1024 && deadSlots * 4 > slots.size(); }
+
+        void trim() {
+            for (IntBag bag : tokens.values()) { bag.trim(); }
+            for (IntBag bag : trigrams.values()) { bag.trim(); }
+        }
+    }
+
+    private static final MetricsRegistry.Timer SEARCH_TIMER = MetricsRegistry.getInstance().timer("catalog.search");
+    private static final CatalogIndex INSTANCE = new CatalogIndex();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Postings data = new Postings();
+    private volatile boolean ready = false;
+    private Set<String> changedWhileLoading = null; // Non-null only while load() is reading the table
+    private volatile Timestamp pollFrom; // Database time just before the last load or refresh read Books
+    private ScheduledExecutorService poller;
+    private final List<Consumer<Set<String>>> remoteChangeListeners = new CopyOnWriteArrayList<>();
+
+    private CatalogIndex() {
+        MetricsRegistry.getInstance().gauge("catalog.books", () -> ready ? size() : -1);
+    }
+
+    public static CatalogIndex getInstance() { return INSTANCE; }
+
+    public boolean isReady() { return ready; }
+
+    public int size() {
+        lock.readLock().lock();
+        try { return data.slotById.size(); } finally { lock.readLock().unlock(); }
+    }
+
+    /** Reads the whole Books table and swaps in a freshly built index. */
+    public synchronized void load() throws SQLException {
+        lock.writeLock().lock();
+        try { changedWhileLoading = new HashSet<>(); } finally { lock.writeLock().unlock(); }
+
+        Postings loaded = new Postings();
+        String sql = "SELECT " + COLUMNS + " FROM Books";
+        Timestamp loadedAt;
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            if (conn == null || conn.isClosed()) { throw new SQLException("Database connection failed or is closed."); }
+            loadedAt = databaseTime(conn);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql); ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) { loaded.add(readRecord(rs)); }
+            }
+        } catch (SQLException e) {
+            lock.writeLock().lock();
+            try { changedWhileLoading = null; } finally { lock.writeLock().unlock(); }
+            throw e;
+        } finally {
+            DatabaseConnection.release(conn);
+        }
+        loaded.trim();
+
+        Set<String> stale;
+        lock.writeLock().lock();
+        try {
+            data = loaded;
+            stale = changedWhileLoading;
+            changedWhileLoading = null;
+            pollFrom = loadedAt;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        // Rows changed while the table was being read may be older in the new index than in the old one
+        for (String bookId : stale) { reloadBook(bookId); }
+        System.out.println("Catalog index loaded: " + loaded.slotById.size() + " books.");
+    }
+
+    /** Runs {@link #refresh()} every {@code pollSeconds} (0 disables polling). */
+    public synchronized void startPolling(long pollSeconds) {
+        if (pollSeconds <= 0 || poller != null) { return; }
+        poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "catalog-poller");
+            t.setDaemon(true);
+            return t;
+        });
+        poller.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (SQLException e) {
+                System.err.println("Catalog index not refreshed, will retry: " + e.getMessage());
+            }
+        }, pollSeconds, pollSeconds, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stopPolling() {
+        if (poller != null) { poller.shutdownNow(); poller = null; }
+    }
+
+    /**
+     * Registers a listener that {@link #refresh()} calls, after updating the index, with the IDs of the books
+     * written since the previous poll (whether or not their indexed fields changed), or with null after a
+     * full reload. Runs on the polling thread.
+     */
+    public void addRemoteChangeListener(Consumer<Set<String>> listener) {
+        remoteChangeListeners.add(listener);
+    }
+
+    private void notifyRemoteChanges(Set<String> bookIds) {
+        for (Consumer<Set<String>> listener : remoteChangeListeners) {
+            try {
+                listener.accept(bookIds);
+            } catch (RuntimeException e) {
+                System.err.println("Catalog change listener failed: " + e);
+            }
+        }
+    }
+
+    /**
+     * Brings the index up to date with changes committed by other terminals: books written since the
+     * previous poll (less {@code library.catalog.pollOverlapSeconds}) are re-read, and the whole table is
+     * reloaded if the number of books or the checksum of their IDs differs from the index (a book was
+     * deleted, possibly while another was added). Loads the index if it is not loaded yet.
+     *
+     * @return the number of entries that changed, or -1 after a full reload.
+     */
+    public synchronized int refresh() throws SQLException {
+        if (!ready || pollFrom == null) {
+            load();
+            notifyRemoteChanges(null);
+            return -1;
+        }
+        String changedSql = "SELECT " + COLUMNS + " FROM Books WHERE updated_at >= ?";
+        // Same checksum as Postings.idChecksum, so a delete is seen even when an insert keeps the count unchanged
+        String countSql = "SELECT COUNT(*), COALESCE(BIT_XOR(CRC32(book_id)), 0) FROM Books";
+        List<BookRecord> changed = new ArrayList<>();
+        Timestamp polledAt;
+        long books;
+        long checksum;
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            if (conn == null || conn.isClosed()) { throw new SQLException("Database connection failed or is closed."); }
+            polledAt = databaseTime(conn);
+            try (PreparedStatement pstmt = conn.prepareStatement(changedSql)) {
+                pstmt.setTimestamp(1, new Timestamp(pollFrom.getTime() - POLL_OVERLAP_MILLIS));
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) { changed.add(readRecord(rs)); }
+                }
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(countSql); ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                books = rs.getLong(1);
+                checksum = rs.getLong(2);
+            }
+        } finally {
+            DatabaseConnection.release(conn);
+        }
+
+        int updated = 0;
+        boolean complete;
+        Set<String> written = new HashSet<>();
+        lock.writeLock().lock();
+        try {
+            for (BookRecord book : changed) {
+                written.add(book.bookId);
+                if (book.sameAs(data.get(book.bookId))) { continue; }
+                putLocked(book);
+                updated++;
+            }
+            pollFrom = polledAt;
+            complete = books == data.slotById.size() && checksum == data.idChecksum;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (complete) {
+            notifyRemoteChanges(written);
+            return updated;
+        }
+        load(); // Books were deleted (or added in a way the poll missed) by another terminal
+        notifyRemoteChanges(null);
+        return -1;
+    }
+
+    /** Re-reads a single book from the database, or drops it from the index if it no longer exists. */
+    public void reloadBook(String bookId) {
+        String sql = "SELECT " + COLUMNS + " FROM Books WHERE book_id = ?";
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            if (conn == null || conn.isClosed()) { throw new SQLException("Database connection failed or is closed."); }
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, bookId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) { put(readRecord(rs)); } else { remove(bookId); }
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Could not refresh catalog entry " + bookId + ": " + e.getMessage());
+        } finally {
+            DatabaseConnection.release(conn);
+        }
+    }
+
+    /** Adds a book or replaces the existing entry with the same ID. */
+    public void put(BookRecord book) {
+        lock.writeLock().lock();
+        try {
+            putLocked(book);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void putLocked(BookRecord book) { // Write lock held
+        BookRecord old = data.get(book.bookId);
+        if (old != null && old.searchText.equals(book.searchText)) {
+            data.replace(book); // Text unchanged, the postings are still valid
+        } else {
+            data.add(book);
+        }
+        afterChange(book.bookId);
+    }
+
+    public void remove(String bookId) {
+        lock.writeLock().lock();
+        try {
+            data.remove(bookId);
+            afterChange(bookId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Applies a committed change to a book's available copies (negative when borrowed). */
+    public void adjustAvailableCopies(String bookId, int delta) {
+        lock.writeLock().lock();
+        try {
+            BookRecord old = data.get(bookId);
+            if (old != null) { data.replace(old.withAvailableCopies(old.availableCopies + delta)); }
+            afterChange(bookId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Applies a committed change to a book's average rating. */
+    public void setAvgRating(String bookId, double avgRating) {
+        lock.writeLock().lock();
+        try {
+            BookRecord old = data.get(bookId);
+            if (old != null) { data.replace(old.withAvgRating(avgRating)); }
+            afterChange(bookId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the books matching every word of {@code searchTerm}, ordered by title then book ID.
+     * A blank term returns the whole catalog.
+     *
+     * @param availableOnly if true, books with no available copies are skipped.
+     */
+    public List<BookRecord> search(String searchTerm, boolean availableOnly) {
+        return search(searchTerm, availableOnly, 0);
+    }
+
+    /**
+     * Like {@link #search(String, boolean)} but returns at most the first {@code limit} books in title
+     * order ({@code limit <= 0} means no limit). Broad type-ahead queries stay cheap because the whole
+     * match set is never materialised or sorted.
+     */
+    public List<BookRecord> search(String searchTerm, boolean availableOnly, int limit) {
+        return search(searchTerm, availableOnly, limit, null, null);
+    }
+
+    /**
+     * Keyset variant: only books ordered strictly after ({@code afterTitle}, {@code afterBookId}) are
+     * returned. Pass nulls for the first page.
+     */
+    public List<BookRecord> search(String searchTerm, boolean availableOnly, int limit, String afterTitle, String afterBookId) {
+        long started = System.nanoTime();
+        try {
+            return find(searchTerm, availableOnly, limit, afterTitle, afterBookId);
+        } finally {
+            SEARCH_TIMER.recordSince(started);
+        }
+    }
+
+    private List<BookRecord> find(String searchTerm, boolean availableOnly, int limit, String afterTitle, String afterBookId) {
+        int max = limit > 0 ? limit : Integer.MAX_VALUE;
+        BookRecord after = afterBookId == null ? null : new BookRecord(afterBookId, afterTitle, null, null, 0, 0, 0);
+        List<QueryWord> words = parseQuery(searchTerm);
+        lock.readLock().lock();
+        try {
+            Postings current = data;
+            List<BookRecord> results = new ArrayList<>();
+            NavigableSet<BookRecord> range = after == null ? current.ordered : current.ordered.tailSet(after, false);
+            if (words.isEmpty()) {
+                for (BookRecord book : range) {
+                    if (results.size() == max) { break; }
+                    if (!availableOnly || book.availableCopies > 0) { results.add(book); }
+                }
+                return results;
+            }
+
+            // Generate candidates from the most selective word only; check the others per candidate
+            Collection<IntBag> narrowest = null;
+            long narrowestCount = Long.MAX_VALUE;
+            for (QueryWord word : words) {
+                Collection<IntBag> candidates = word.candidates(current);
+                long count = 0;
+                for (IntBag bag : candidates) { count += bag.size; }
+                if (count == 0) { return results; }
+                if (count < narrowestCount) { narrowest = candidates; narrowestCount = count; }
+            }
+
+            if (narrowestCount * 4 > current.slotById.size()) {
+                // Broad match: walking the title order is cheaper than collecting and sorting most of it
+                for (BookRecord book : range) {
+                    if (results.size() == max) { break; }
+                    if (matchesAll(book, words, availableOnly)) { results.add(book); }
+                }
+                return results;
+            }
+
+            // Keep the first `max` matches in title order in a max-heap whose head is the last one kept
+            PriorityQueue<BookRecord> kept = new PriorityQueue<>(TITLE_ORDER.reversed());
+            BitSet seen = narrowest.size() > 1 ? new BitSet(current.slots.size()) : null; // One book can appear under several tokens
+            for (IntBag bag : narrowest) {
+                for (int i = 0; i < bag.size; i++) {
+                    int slot = bag.values[i];
+                    if (seen != null) {
+                        if (seen.get(slot)) { continue; }
+                        seen.set(slot);
+                    }
+                    BookRecord book = current.slots.get(slot);
+                    if (book == null || (after != null && TITLE_ORDER.compare(book, after) <= 0)) { continue; }
+                    if (kept.size() == max && TITLE_ORDER.compare(book, kept.peek()) > 0) { continue; }
+                    if (matchesAll(book, words, availableOnly)) {
+                        kept.add(book);
+                        if (kept.size() > max) { kept.poll(); }
+                    }
+                }
+            }
+            results.addAll(kept);
+            results.sort(TITLE_ORDER);
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // --- Query words ---
+
+    /** One whitespace-separated word of a search term. */
+    private static final class QueryWord {
+        final String text;           // Matched as a substring when long enough
+        final List<String> prefixes; // Otherwise every word-part must start one of the book's words
+
+        QueryWord(String text) {
+            this.text = text;
+            this.prefixes = text.length() >= MIN_SUBSTRING_LENGTH ? null : tokenize(text);
+        }
+
+        boolean isSubstring() { return prefixes == null; }
+
+        boolean matches(BookRecord book) {
+            if (isSubstring()) { return book.searchText.contains(text); }
+            for (String prefix : prefixes) {
+                if (!book.hasTokenWithPrefix(prefix)) { return false; }
+            }
+            return true;
+        }
+
+        /** Postings that together cover every book this word can match. */
+        Collection<IntBag> candidates(Postings postings) {
+            if (isSubstring()) {
+                IntBag smallest = null;
+                for (String trigram : trigramsOf(text)) {
+                    IntBag bag = postings.trigrams.get(trigram);
+                    if (bag == null) { return Collections.emptyList(); }
+                    if (smallest == null || bag.size < smallest.size) { smallest = bag; }
+                }
+                return Collections.singletonList(smallest);
+            }
+            String prefix = prefixes.get(0);
+            return postings.tokens.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values();
+        }
+    }
+
+    private static List<QueryWord> parseQuery(String searchTerm) {
+        List<QueryWord> words = new ArrayList<>();
+        if (searchTerm == null) { return words; }
+        for (String part : fold(searchTerm).trim().split("\\s+")) {
+            if (part.isEmpty()) { continue; }
+            QueryWord word = new QueryWord(part);
+            if (word.isSubstring() || !word.prefixes.isEmpty()) { words.add(word); } // Drop bare punctuation
+        }
+        return words;
+    }
+
+    private static boolean matchesAll(BookRecord book, List<QueryWord> words, boolean availableOnly) {
+        if (availableOnly && book.availableCopies <= 0) { return false; }
+        for (QueryWord word : words) {
+            if (!word.matches(book)) { return false; }
+        }
+        return true;
+    }
+
+    // --- Helpers ---
+
+    private void afterChange(String bookId) { // Write lock held
+        if (changedWhileLoading != null) { changedWhileLoading.add(bookId); }
+        if (data.needsCompaction()) {
+            Postings compacted = new Postings();
+            for (BookRecord book : data.slots) {
+                if (book != null) { compacted.add(book); }
+            }
+            compacted.trim();
+            data = compacted;
+        }
+    }
+
+    /** CRC-32 of the ID's UTF-8 bytes, as MySQL's {@code CRC32(book_id)} computes it for these ASCII IDs. */
+    private static long idChecksum(String bookId) {
+        CRC32 crc = new CRC32();
+        crc.update(bookId.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    private static Timestamp databaseTime(Connection conn) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT NOW(3)"); ResultSet rs = pstmt.executeQuery()) {
+            rs.next();
+            return rs.getTimestamp(1);
+        }
+    }
+
+    private static BookRecord readRecord(ResultSet rs) throws SQLException {
+        return new BookRecord(rs.getString("book_id"), rs.getString("title"), rs.getString("author"),
+                rs.getString("category"), rs.getInt("total_copies"), rs.getInt("available_copies"),
+                rs.getDouble("avg_rating"));
+    }
+
+    private static String[] tokensOf(String title, String author, String category) {
+        Set<String> tokens = new LinkedHashSet<>();
+        tokens.addAll(tokenize(title));
+        tokens.addAll(tokenize(author));
+        tokens.addAll(tokenize(category));
+        return tokens.toArray(new String[0]);
+    }
+
+    /** Distinct three-character windows of already-folded text that do not span whitespace or fields. */
+    static Set<String> trigramsOf(String folded) {
+        Set<String> trigrams = new HashSet<>();
+        int run = 0; // Length of the whitespace-free run ending at i
+        for (int i = 0; i < folded.length(); i++) {
+            run = Character.isWhitespace(folded.charAt(i)) ? 0 : run + 1;
+            if (run >= MIN_SUBSTRING_LENGTH) { trigrams.add(folded.substring(i - 2, i + 1)); }
+        }
+        return trigrams;
+    }
+
+    /** Splits text into lower-case, accent-free words. */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) { return tokens; }
+        String folded = fold(text);
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean wordChar = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    static String fold(String text) {
+        if (text == null) { return ""; }
+        boolean ascii = true;
+        for (int i = 0; i < text.length() && ascii; i++) { ascii = text.charAt(i) < 128; }
+        if (ascii) { return text.toLowerCase(Locale.ROOT); }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return COMBINING_MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,338 @@
+package library.backend;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A compressed column-oriented file for report exports.
+ * <p>
+ * Rows are buffered in groups of {@link #ROW_GROUP_SIZE}; each group is written column by column and
+ * deflated as one block, so a writer never holds more than one group. Within a group, integers, dates,
+ * timestamps and decimals are stored as zig-zag varint deltas from the previous value of the column,
+ * strings with a per-group dictionary when they repeat (statuses, names, titles) and as plain UTF-8
+ * otherwise, and nulls as one bit per row.
+ * <p>
+ * Layout, big-endian: the magic {@code LIBCOL} and a version byte; the column count, then each column's
+ * name (modified UTF-8), type byte and decimal scale byte; then the groups, each as row count, compressed
+ * length and the deflated bytes; then a row count of 0 and the total number of rows. Timestamps are the
+ * database's local date-time, stored as milliseconds since 1970-01-01T00:00 without a zone.
+ * <p>
+ * {@link #toCsv} reads a file back; {@code java -cp bin library.backend.ColumnarFile report.lcol [out.csv]}
+ * converts one to CSV for tools that don't read this format.
+ */
+public final class ColumnarFile {
+
+    public static final int ROW_GROUP_SIZE = 65_536;
+    private static final byte[] MAGIC = "LIBCOL".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int MAX_DICTIONARY_SIZE = 4096;
+
+    /** How a column's values are stored. */
+    public enum Type { LONG, DECIMAL, DOUBLE, DATE, TIMESTAMP, STRING }
+
+    private ColumnarFile() {}
+
+    /** Writes rows to a columnar file; call {@link #addRow} once per row, then {@link #close}. */
+    public static final class Builder implements Closeable {
+        private final DataOutputStream out;
+        private final Type[] types;
+        private final int[] scales;
+        private final Object[][] group; // [column][row], the current row group only
+        private int rows = 0;
+        private long totalRows = 0;
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream(1 << 20);
+        private byte[] compressed = new byte[1 << 16];
+
+        public Builder(OutputStream out, String[] names, Type[] types, int[] scales) throws IOException {
+            this.out = new DataOutputStream(out);
+            this.types = types.clone();
+            this.scales = scales.clone();
+            this.group = new Object[types.length][ROW_GROUP_SIZE];
+            this.out.write(MAGIC);
+            this.out.writeByte(VERSION);
+            this.out.writeInt(types.length);
+            for (int c = 0; c < types.length; c++) {
+                this.out.writeUTF(names[c]);
+                this.out.writeByte(types[c].ordinal());
+                this.out.writeByte(scales[c]);
+            }
+        }
+
+        /**
+         * Adds one row. Values are {@link Long} (LONG), {@link BigDecimal} (DECIMAL), {@link Double},
+         * {@link LocalDate}, {@link LocalDateTime} or {@link String}, or null.
+         */
+        public void addRow(Object[] values) throws IOException {
+            for (int c = 0; c < types.length; c++) { group[c][rows] = values[c]; }
+            if (++rows == ROW_GROUP_SIZE) { flushGroup(); }
+        }
+
+        public long getRowCount() { return totalRows + rows; }
+
+        @Override public void close() throws IOException {
+            try {
+                if (rows > 0) { flushGroup(); }
+                out.writeInt(0);
+                out.writeLong(totalRows);
+                out.close();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        private void flushGroup() throws IOException {
+            body.reset();
+            DataOutputStream data = new DataOutputStream(body);
+            for (int c = 0; c < types.length; c++) { writeColumn(data, c); }
+            data.flush();
+
+            deflater.reset();
+            deflater.setInput(body.toByteArray());
+            deflater.finish();
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == compressed.length) { compressed = Arrays.copyOf(compressed, compressed.length * 2); }
+                length += deflater.deflate(compressed, length, compressed.length - length);
+            }
+            out.writeInt(rows);
+            out.writeInt(length);
+            out.write(compressed, 0, length);
+            totalRows += rows;
+            for (Object[] column : group) { Arrays.fill(column, 0, rows, null); }
+            rows = 0;
+        }
+
+        private void writeColumn(DataOutputStream data, int c) throws IOException {
+            Object[] values = group[c];
+            byte[] nulls = new byte[(rows + 7) / 8];
+            for (int r = 0; r < rows; r++) { if (values[r] == null) { nulls[r >> 3] |= 1 << (r & 7); } }
+            data.write(nulls);
+            switch (types[c]) {
+                case DOUBLE:
+                    for (int r = 0; r < rows; r++) { if (values[r] != null) { data.writeDouble((Double) values[r]); } }
+                    break;
+                case STRING:
+                    writeStrings(data, values);
+                    break;
+                default:
+                    long previous = 0;
+                    for (int r = 0; r < rows; r++) {
+                        if (values[r] == null) { continue; }
+                        long value = toLong(types[c], scales[c], values[r]);
+                        writeVarLong(data, value - previous);
+                        previous = value;
+                    }
+                    break;
+            }
+        }
+
+        private void writeStrings(DataOutputStream data, Object[] values) throws IOException {
+            Map<String, Integer> dictionary = new HashMap<>();
+            int nonNull = 0;
+            for (int r = 0; r < rows && dictionary.size() <= MAX_DICTIONARY_SIZE; r++) {
+                if (values[r] == null) { continue; }
+                nonNull++;
+                dictionary.putIfAbsent((String) values[r], dictionary.size());
+            }
+            // A dictionary only pays off if values repeat
+            boolean useDictionary = dictionary.size() <= MAX_DICTIONARY_SIZE && dictionary.size() * 2 <= nonNull;
+            data.writeByte(useDictionary ? 1 : 0);
+            if (useDictionary) {
+                String[] entries = new String[dictionary.size()];
+                dictionary.forEach((value, index) -> entries[index] = value);
+                writeVarLong(data, entries.length);
+                for (String entry : entries) { writeString(data, entry); }
+                for (int r = 0; r < rows; r++) { if (values[r] != null) { writeVarLong(data, dictionary.get(values[r])); } }
+            } else {
+                for (int r = 0; r < rows; r++) { if (values[r] != null) { writeString(data, (String) values[r]); } }
+            }
+        }
+    }
+
+    /** Converts a columnar file to CSV with a header row, streaming one row group at a time. */
+    public static long toCsv(InputStream in, Writer csv) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+        byte[] magic = new byte[MAGIC.length];
+        data.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC) || data.readUnsignedByte() != VERSION) { throw new IOException("Not a version " + VERSION + " columnar report file."); }
+        int columns = data.readInt();
+        Type[] types = new Type[columns];
+        int[] scales = new int[columns];
+        String[] header = new String[columns];
+        for (int c = 0; c < columns; c++) {
+            header[c] = data.readUTF();
+            types[c] = Type.values()[data.readUnsignedByte()];
+            scales[c] = data.readUnsignedByte();
+        }
+        ReportExporter.writeCsvRow(csv, header);
+
+        Inflater inflater = new Inflater();
+        long total = 0;
+        try {
+            int rows;
+            while ((rows = data.readInt()) > 0) {
+                byte[] block = new byte[data.readInt()];
+                data.readFully(block);
+                DataInputStream group = new DataInputStream(new ByteArrayInputStream(inflate(inflater, block)));
+                String[][] text = new String[columns][];
+                for (int c = 0; c < columns; c++) { text[c] = readColumn(group, types[c], scales[c], rows); }
+                String[] row = new String[columns];
+                for (int r = 0; r < rows; r++) {
+                    for (int c = 0; c < columns; c++) { row[c] = text[c][r]; }
+                    ReportExporter.writeCsvRow(csv, row);
+                }
+                total += rows;
+            }
+            long expected = data.readLong();
+            if (expected != total) { throw new IOException("Truncated file: " + total + " of " + expected + " rows."); }
+        } catch (EOFException e) {
+            throw new IOException("Truncated file after " + total + " rows.", e);
+        } finally {
+            inflater.end();
+        }
+        csv.flush();
+        return total;
+    }
+
+    /** {@code ColumnarFile <file> [out.csv]}: converts to CSV, on standard output if no output file is given. */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java library.backend.ColumnarFile <report.lcol> [out.csv]");
+            System.exit(2);
+        }
+        try (InputStream in = Files.newInputStream(Paths.get(args[0]));
+             Writer out = new BufferedWriter(args.length > 1 ? Files.newBufferedWriter(Paths.get(args[1]), StandardCharsets.UTF_8)
+                     : new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16)) {
+            long rows = toCsv(in, out);
+            System.err.println(rows + " row(s) converted.");
+        }
+    }
+
+    // --- Encoding ---
+
+    private static long toLong(Type type, int scale, Object value) {
+        switch (type) {
+            case DECIMAL: return ((BigDecimal) value).setScale(scale, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+            case DATE: return ((LocalDate) value).toEpochDay();
+            case TIMESTAMP: return ((LocalDateTime) value).toInstant(ZoneOffset.UTC).toEpochMilli();
+            default: return (Long) value;
+        }
+    }
+
+    private static String toText(Type type, int scale, long value) {
+        switch (type) {
+            case DECIMAL: return BigDecimal.valueOf(value, scale).toPlainString();
+            case DATE: return LocalDate.ofEpochDay(value).toString();
+            case TIMESTAMP: return ReportExporter.formatTimestamp(LocalDateTime.ofEpochSecond(Math.floorDiv(value, 1000),
+                    Math.floorMod(value, 1000) * 1_000_000, ZoneOffset.UTC));
+            default: return Long.toString(value);
+        }
+    }
+
+    private static String[] readColumn(DataInputStream group, Type type, int scale, int rows) throws IOException {
+        byte[] nulls = new byte[(rows + 7) / 8];
+        group.readFully(nulls);
+        String[] values = new String[rows];
+        if (type == Type.STRING) {
+            String[] dictionary = null;
+            if (group.readUnsignedByte() == 1) {
+                dictionary = new String[(int) readVarLong(group)];
+                for (int i = 0; i < dictionary.length; i++) { dictionary[i] = readString(group); }
+            }
+            for (int r = 0; r < rows; r++) {
+                if (isNull(nulls, r)) { continue; }
+                values[r] = dictionary != null ? dictionary[(int) readVarLong(group)] : readString(group);
+            }
+            return values;
+        }
+        long previous = 0;
+        for (int r = 0; r < rows; r++) {
+            if (isNull(nulls, r)) { continue; }
+            if (type == Type.DOUBLE) {
+                values[r] = Double.toString(group.readDouble());
+            } else {
+                previous += readVarLong(group);
+                values[r] = toText(type, scale, previous);
+            }
+        }
+        return values;
+    }
+
+    private static boolean isNull(byte[] nulls, int row) { return (nulls[row >> 3] & (1 << (row & 7))) != 0; }
+
+    private static byte[] inflate(Inflater inflater, byte[] block) throws IOException {
+        inflater.reset();
+        inflater.setInput(block);
+        byte[] out = new byte[Math.max(1024, block.length * 4)];
+        int length = 0;
+        try {
+            while (!inflater.finished()) {
+                if (length == out.length) { out = Arrays.copyOf(out, out.length * 2); }
+                int n = inflater.inflate(out, length, out.length - length);
+                if (n == 0 && inflater.needsInput()) { throw new IOException("Corrupt row group."); }
+                length += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt row group: " + e.getMessage(), e);
+        }
+        return Arrays.copyOf(out, length);
+    }
+
+    /** Zig-zag, then 7 bits per byte with the high bit set on all but the last. */
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        long v = (value << 1) ^ (value >> 63);
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long v = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) { break; }
+        }
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[(int) readVarLong(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,291 @@
+package library.backend;
+
+import library.DatabaseConnection;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Daily job that keeps the {@code Fines} table up to date for books that are still out.
+ * <p>
+ * A run does two things:
+ * <ol>
+ *   <li>Finds loans still marked {@code 'Issued'} whose due date has passed, i.e. the ones that went
+ *       overdue since the last run. They are read in {@code (due_date, issue_id)} order in chunks; for each
+ *       chunk one transaction upserts their {@code Fines} rows in a JDBC batch, flips the loans to
+ *       {@code 'Overdue'} and saves the last key processed as the checkpoint. A run that dies part-way
+ *       resumes after that key instead of scanning {@code IssuedBooks} again.</li>
+ *   <li>Re-accrues the unpaid fines of loans that were already {@code 'Overdue'}, again in committed chunks,
+ *       skipping rows already brought up to today.</li>
+ * </ol>
+ * Every fine change goes through a {@link FineLedger}, so the monthly rollups move in the same transaction.
+ * The date of the last finished run and the checkpoint live in the {@code Settings} table. A MySQL
+ * named lock makes sure only one running copy of the application does the work. {@link #start(long)}
+ * checks every few minutes whether today's run is still due, so it also catches up after the machine
+ * was off at midnight.
+ */
+public class FineAccrualJob {
+
+    public static final int DEFAULT_CHUNK_SIZE = Integer.getInteger("library.fines.accrualChunkSize", 500);
+
+    // Checkpoint keys in the Settings table
+    static final String LAST_RUN_KEY = "FineAccrualLastRun";        // yyyy-mm-dd of the last finished run
+    static final String CHECKPOINT_KEY = "FineAccrualCheckpoint";   // runDate,dueDate,issueId of the last chunk committed
+
+    private static final String LOCK_NAME = "library.fine_accrual";
+
+    private static final FineAccrualJob INSTANCE = new FineAccrualJob();
+
+    private ScheduledExecutorService scheduler;
+
+    private FineAccrualJob() {}
+
+    public static FineAccrualJob getInstance() { return INSTANCE; }
+
+    /** Runs the job now if today's run is due, then re-checks every {@code checkMinutes} (0 disables the job). */
+    public synchronized void start(long checkMinutes) {
+        if (checkMinutes <= 0 || scheduler != null) { return; }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "fine-accrual");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                runIfDue(LocalDate.now(), DEFAULT_CHUNK_SIZE);
+            } catch (SQLException e) {
+                System.err.println("Fine accrual failed, will retry in " + checkMinutes + " min: " + e.getMessage());
+            } catch (RuntimeException e) {
+                e.printStackTrace(); // Keep the schedule alive
+            }
+        }, 0, checkMinutes, TimeUnit.MINUTES);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) { scheduler.shutdownNow(); scheduler = null; }
+    }
+
+    /**
+     * Accrues fines up to {@code today} unless that has already been done or another instance holds the job lock.
+     *
+     * @return true if this call did the run.
+     */
+    public boolean runIfDue(LocalDate today, int chunkSize) throws SQLException {
+        if (chunkSize <= 0) { throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize); }
+        Connection conn = null;
+        boolean autoCommitOriginal = true;
+        boolean locked = false;
+        try {
+            conn = DatabaseConnection.getConnection();
+            locked = acquireLock(conn);
+            if (!locked) { return false; } // Another instance is running it
+            if (today.toString().equals(readSetting(conn, LAST_RUN_KEY))) { return false; }
+
+            autoCommitOriginal = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            double finePerDay = SettingsRegistry.getInstance().snapshot().getFinePerDay();
+            int newlyOverdue = accrueNewlyOverdue(conn, today, finePerDay, chunkSize);
+            int reaccrued = reaccrueOverdue(conn, today, finePerDay, chunkSize);
+            writeSetting(conn, LAST_RUN_KEY, today.toString());
+            conn.commit();
+            System.out.println("Fine accrual for " + today + ": " + newlyOverdue + " loan(s) became overdue, "
+                    + reaccrued + " fine(s) re-accrued.");
+            return true;
+        } catch (SQLException e) {
+            if (conn != null) {
+                try { conn.rollback(); } catch (SQLException ex) { System.err.println("Rollback failed: " + ex.getMessage()); }
+            }
+            throw e;
+        } finally {
+            if (conn != null) {
+                try { conn.setAutoCommit(autoCommitOriginal); } catch (SQLException e) { e.printStackTrace(); }
+                if (locked) { releaseLock(conn); } // Must go before the connection returns to the pool
+            }
+            DatabaseConnection.release(conn);
+        }
+    }
+
+    /** Step 1: new overdue loans, chunk by chunk, each chunk committed together with the checkpoint. */
+    private int accrueNewlyOverdue(Connection conn, LocalDate today, double finePerDay, int chunkSize) throws SQLException {
+        String selectSql = "SELECT issue_id, student_id, due_date FROM IssuedBooks " +
+                           "WHERE status = 'Issued' AND due_date < ? AND (due_date, issue_id) > (?, ?) " +
+                           "ORDER BY due_date, issue_id LIMIT ?";
+        String upsertFineSql = "INSERT INTO Fines (student_id, issue_id, fine_amount, status, fine_date) VALUES (?, ?, ?, 'Unpaid', ?) " +
+                               "ON DUPLICATE KEY UPDATE " + // Leave paid fines alone
+                               "fine_amount = IF(status = 'Unpaid', VALUES(fine_amount), fine_amount), " +
+                               "fine_date = IF(status = 'Unpaid', VALUES(fine_date), fine_date)";
+        String flagOverdueSql = "UPDATE IssuedBooks SET status = 'Overdue' WHERE issue_id = ? AND status = 'Issued'";
+        String existingFinesSql = "SELECT f.issue_id, f.student_id, f.fine_amount, f.fine_date, f.status FROM Fines f " +
+                                  "JOIN IssuedBooks i ON f.issue_id = i.issue_id " +
+                                  "WHERE i.status = 'Issued' AND i.due_date < ? AND (i.due_date, i.issue_id) > (?, ?) " +
+                                  "AND (i.due_date, i.issue_id) <= (?, ?) FOR UPDATE";
+
+        // Resume after the last committed chunk if today's run was interrupted
+        Date afterDue = Date.valueOf(LocalDate.of(1970, 1, 1));
+        int afterId = 0;
+        String checkpoint = readSetting(conn, CHECKPOINT_KEY);
+        if (checkpoint != null) {
+            String[] parts = checkpoint.split(",");
+            if (parts.length == 3 && parts[0].equals(today.toString())) {
+                afterDue = Date.valueOf(parts[1]);
+                afterId = Integer.parseInt(parts[2]);
+                System.out.println("Resuming fine accrual after issue ID " + afterId + " (due " + parts[1] + ").");
+            }
+        }
+
+        int processed = 0;
+        try (PreparedStatement select = conn.prepareStatement(selectSql);
+             PreparedStatement upsertFine = conn.prepareStatement(upsertFineSql);
+             PreparedStatement flagOverdue = conn.prepareStatement(flagOverdueSql);
+             PreparedStatement existingFines = conn.prepareStatement(existingFinesSql)) {
+            FineLedger ledger = new FineLedger();
+            while (true) {
+                select.setDate(1, Date.valueOf(today));
+                select.setDate(2, afterDue);
+                select.setInt(3, afterId);
+                select.setInt(4, chunkSize);
+                List<Object[]> chunk = new ArrayList<>();
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        chunk.add(new Object[]{rs.getInt("issue_id"), rs.getString("student_id"), rs.getDate("due_date")});
+                    }
+                }
+                if (chunk.isEmpty()) { break; }
+                Object[] last = chunk.get(chunk.size() - 1);
+
+                // Rare: a loan that already has a fine (e.g. entered by hand). The upsert replaces unpaid ones
+                // and leaves paid ones as they are, so the ledger does the same.
+                Set<Integer> paidFineIssues = new HashSet<>();
+                Map<Integer, String> fineStudents = new HashMap<>(); // The upsert keeps an existing row's student_id
+                existingFines.setDate(1, Date.valueOf(today));
+                existingFines.setDate(2, afterDue);
+                existingFines.setInt(3, afterId);
+                existingFines.setDate(4, (Date) last[2]);
+                existingFines.setInt(5, (Integer) last[0]);
+                try (ResultSet rs = existingFines.executeQuery()) {
+                    while (rs.next()) {
+                        fineStudents.put(rs.getInt("issue_id"), rs.getString("student_id"));
+                        if ("Paid".equals(rs.getString("status"))) { paidFineIssues.add(rs.getInt("issue_id")); }
+                        else { ledger.remove(rs.getString("student_id"), rs.getDate("fine_date"), rs.getBigDecimal("fine_amount"), false); }
+                    }
+                }
+
+                for (Object[] loan : chunk) {
+                    int issueId = (Integer) loan[0];
+                    LocalDate dueDate = ((Date) loan[2]).toLocalDate();
+                    double amount = ChronoUnit.DAYS.between(dueDate, today) * finePerDay;
+                    upsertFine.setString(1, (String) loan[1]);
+                    upsertFine.setInt(2, issueId);
+                    upsertFine.setDouble(3, amount);
+                    upsertFine.setDate(4, Date.valueOf(today));
+                    upsertFine.addBatch();
+                    flagOverdue.setInt(1, issueId);
+                    flagOverdue.addBatch();
+                    if (!paidFineIssues.contains(issueId)) { ledger.add(fineStudents.getOrDefault(issueId, (String) loan[1]), today, amount, false); }
+                }
+                upsertFine.executeBatch();
+                flagOverdue.executeBatch();
+                ledger.flush(conn);
+
+                afterDue = (Date) last[2];
+                afterId = (Integer) last[0];
+                writeSetting(conn, CHECKPOINT_KEY, today + "," + afterDue + "," + afterId);
+                conn.commit();
+                processed += chunk.size();
+                if (chunk.size() < chunkSize) { break; }
+            }
+        }
+        return processed;
+    }
+
+    /** Step 2: bring the unpaid fines of loans that were already overdue up to today, chunk by chunk. */
+    private int reaccrueOverdue(Connection conn, LocalDate today, double finePerDay, int chunkSize) throws SQLException {
+        // Rows already dated today drop out of the WHERE once updated, so the scan needs no checkpoint of its own
+        String selectSql = "SELECT f.fine_id, f.student_id, f.fine_amount, f.fine_date, i.due_date " +
+                           "FROM Fines f JOIN IssuedBooks i ON f.issue_id = i.issue_id " +
+                           "WHERE i.status = 'Overdue' AND f.status = 'Unpaid' AND (f.fine_date IS NULL OR f.fine_date < ?) " +
+                           "AND f.fine_id > ? ORDER BY f.fine_id LIMIT ? FOR UPDATE";
+        String updateSql = "UPDATE Fines SET fine_amount = ?, fine_date = ? WHERE fine_id = ?";
+        int processed = 0;
+        int afterFineId = 0;
+        FineLedger ledger = new FineLedger();
+        try (PreparedStatement select = conn.prepareStatement(selectSql);
+             PreparedStatement update = conn.prepareStatement(updateSql)) {
+            while (true) {
+                select.setDate(1, Date.valueOf(today));
+                select.setInt(2, afterFineId);
+                select.setInt(3, chunkSize);
+                int rows = 0;
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        rows++;
+                        afterFineId = rs.getInt("fine_id");
+                        String studentId = rs.getString("student_id");
+                        double amount = Math.max(0, ChronoUnit.DAYS.between(rs.getDate("due_date").toLocalDate(), today)) * finePerDay;
+                        ledger.remove(studentId, rs.getDate("fine_date"), rs.getBigDecimal("fine_amount"), false);
+                        ledger.add(studentId, today, amount, false);
+                        update.setDouble(1, amount);
+                        update.setDate(2, Date.valueOf(today));
+                        update.setInt(3, afterFineId);
+                        update.addBatch();
+                    }
+                }
+                if (rows == 0) { break; }
+                update.executeBatch();
+                ledger.flush(conn);
+                conn.commit();
+                processed += rows;
+                if (rows < chunkSize) { break; }
+            }
+        }
+        return processed;
+    }
+
+    private static boolean acquireLock(Connection conn) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT GET_LOCK(?, 0)")) {
+            pstmt.setString(1, LOCK_NAME);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    private static void releaseLock(Connection conn) {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            pstmt.setString(1, LOCK_NAME);
+            pstmt.executeQuery().close();
+        } catch (SQLException e) {
+            System.err.println("Could not release the fine accrual lock: " + e.getMessage());
+        }
+    }
+
+    private static String readSetting(Connection conn, String key) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT setting_value FROM Settings WHERE setting_key = ?")) {
+            pstmt.setString(1, key);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getString("setting_value") : null;
+            }
+        }
+    }
+
+    /** Same upsert as {@link SettingsRegistry#update}, but on the job's connection so it joins its transaction. */
+    private static void writeSetting(Connection conn, String key, String value) throws SQLException {
+        String sql = "INSERT INTO Settings (setting_key, setting_value) VALUES (?, ?) " +
+                     "ON DUPLICATE KEY UPDATE setting_value = VALUES(setting_value)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, key);
+            pstmt.setString(2, value);
+            pstmt.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package library.backend;
+
+import library.DatabaseConnection;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps the fine rollup tables ({@code FineMonthlyTotals} and {@code FineStudentMonthlyTotals}) in step
+ * with {@code Fines}.
+ * <p>
+ * Code that changes a fine records the row's old state with {@link #remove} and its new state with
+ * {@link #add}, then calls {@link #flush(Connection)} on the same connection before committing, so the
+ * totals change in the same transaction as the fine. A fine counts towards the month of its
+ * {@code fine_date}; fines without a date are not counted, and fines without a student only count in the
+ * monthly totals. Deltas are written in key order, so two transactions touching the same months lock the
+ * rollup rows in the same order.
+ * <p>
+ * {@link #rebuild()} recomputes both tables from {@code Fines}, e.g. after loading data with plain SQL.
+ */
+public final class FineLedger {
+
+    private static final class Totals {
+        BigDecimal total = BigDecimal.ZERO;
+        BigDecimal paid = BigDecimal.ZERO;
+        int count = 0;
+
+        boolean isZero() { return count == 0 && total.signum() == 0 && paid.signum() == 0; }
+    }
+
+    private final Map<YearMonth, Totals> monthly = new TreeMap<>();
+    private final Map<String, Map<YearMonth, Totals>> byStudent = new TreeMap<>();
+
+    /** Takes a fine's previous state out of the totals. */
+    public void remove(String studentId, Date fineDate, BigDecimal amount, boolean paid) {
+        apply(studentId, fineDate, amount, paid, -1);
+    }
+
+    /** Adds a fine's new state to the totals. */
+    public void add(String studentId, Date fineDate, BigDecimal amount, boolean paid) {
+        apply(studentId, fineDate, amount, paid, 1);
+    }
+
+    public void add(String studentId, LocalDate fineDate, double amount, boolean paid) {
+        add(studentId, Date.valueOf(fineDate), money(amount), paid);
+    }
+
+    /** The amount as {@code Fines.fine_amount} stores it (two decimals). */
+    public static BigDecimal money(double amount) {
+        return BigDecimal.valueOf(amount).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private void apply(String studentId, Date fineDate, BigDecimal amount, boolean paid, int sign) {
+        if (fineDate == null) { return; }
+        YearMonth month = YearMonth.from(fineDate.toLocalDate());
+        BigDecimal signed = (amount != null ? amount : BigDecimal.ZERO).multiply(BigDecimal.valueOf(sign));
+        accumulate(monthly.computeIfAbsent(month, m -> new Totals()), signed, paid, sign);
+        if (studentId != null) {
+            accumulate(byStudent.computeIfAbsent(studentId, s -> new TreeMap<>()).computeIfAbsent(month, m -> new Totals()), signed, paid, sign);
+        }
+    }
+
+    private static void accumulate(Totals totals, BigDecimal signedAmount, boolean paid, int sign) {
+        totals.total = totals.total.add(signedAmount);
+        if (paid) { totals.paid = totals.paid.add(signedAmount); }
+        totals.count += sign;
+    }
+
+    /** Writes the collected deltas on {@code conn} (inside the caller's transaction) and clears them. */
+    public void flush(Connection conn) throws SQLException {
+        String monthlySql = "INSERT INTO FineMonthlyTotals (fine_year, fine_month, total_amount, paid_amount, fine_count) VALUES (?, ?, ?, ?, ?) " +
+                            "ON DUPLICATE KEY UPDATE total_amount = total_amount + VALUES(total_amount), " +
+                            "paid_amount = paid_amount + VALUES(paid_amount), fine_count = fine_count + VALUES(fine_count)";
+        String studentSql = "INSERT INTO FineStudentMonthlyTotals (student_id, fine_year, fine_month, total_amount, paid_amount, fine_count) VALUES (?, ?, ?, ?, ?, ?) " +
+                            "ON DUPLICATE KEY UPDATE total_amount = total_amount + VALUES(total_amount), " +
+                            "paid_amount = paid_amount + VALUES(paid_amount), fine_count = fine_count + VALUES(fine_count)";
+        try (PreparedStatement pstmt = conn.prepareStatement(monthlySql)) {
+            boolean pending = false;
+            for (Map.Entry<YearMonth, Totals> entry : monthly.entrySet()) {
+                if (entry.getValue().isZero()) { continue; }
+                setTotals(pstmt, 1, entry.getKey(), entry.getValue());
+                pstmt.addBatch();
+                pending = true;
+            }
+            if (pending) { pstmt.executeBatch(); }
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(studentSql)) {
+            boolean pending = false;
+            for (Map.Entry<String, Map<YearMonth, Totals>> student : byStudent.entrySet()) {
+                for (Map.Entry<YearMonth, Totals> entry : student.getValue().entrySet()) {
+                    if (entry.getValue().isZero()) { continue; }
+                    pstmt.setString(1, student.getKey());
+                    setTotals(pstmt, 2, entry.getKey(), entry.getValue());
+                    pstmt.addBatch();
+                    pending = true;
+                }
+            }
+            if (pending) { pstmt.executeBatch(); }
+        }
+        monthly.clear();
+        byStudent.clear();
+    }
+
+    private static void setTotals(PreparedStatement pstmt, int firstIndex, YearMonth month, Totals totals) throws SQLException {
+        pstmt.setInt(firstIndex, month.getYear());
+        pstmt.setInt(firstIndex + 1, month.getMonthValue());
+        pstmt.setBigDecimal(firstIndex + 2, totals.total);
+        pstmt.setBigDecimal(firstIndex + 3, totals.paid);
+        pstmt.setInt(firstIndex + 4, totals.count);
+    }
+
+    /** Recomputes both rollup tables from {@code Fines} in one transaction. */
+    public static void rebuild() throws SQLException {
+        String[] statements = {
+            "DELETE FROM FineStudentMonthlyTotals",
+            "DELETE FROM FineMonthlyTotals",
+            "INSERT INTO FineMonthlyTotals (fine_year, fine_month, total_amount, paid_amount, fine_count) " +
+                "SELECT YEAR(fine_date), MONTH(fine_date), SUM(fine_amount), SUM(IF(status = 'Paid', fine_amount, 0)), COUNT(*) " +
+                "FROM Fines WHERE fine_date IS NOT NULL GROUP BY YEAR(fine_date), MONTH(fine_date)",
+            "INSERT INTO FineStudentMonthlyTotals (student_id, fine_year, fine_month, total_amount, paid_amount, fine_count) " +
+                "SELECT student_id, YEAR(fine_date), MONTH(fine_date), SUM(fine_amount), SUM(IF(status = 'Paid', fine_amount, 0)), COUNT(*) " +
+                "FROM Fines WHERE fine_date IS NOT NULL AND student_id IS NOT NULL GROUP BY student_id, YEAR(fine_date), MONTH(fine_date)"
+        };
+        Connection conn = null;
+        boolean autoCommitOriginal = true;
+        try {
+            conn = DatabaseConnection.getConnection();
+            autoCommitOriginal = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement()) {
+                for (String sql : statements) { stmt.executeUpdate(sql); }
+            }
+            conn.commit();
+            System.out.println("Fine rollups rebuilt from Fines.");
+        } catch (SQLException e) {
+            if (conn != null) {
+                try { conn.rollback(); } catch (SQLException ex) { System.err.println("Rollback failed: " + ex.getMessage()); }
+            }
+            throw e;
+        } finally {
+            if (conn != null) {
+                try { conn.setAutoCommit(autoCommitOriginal); } catch (SQLException e) { e.printStackTrace(); }
+            }
+            DatabaseConnection.release(conn);
+        }
+    }
+}
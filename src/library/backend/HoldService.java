@@ -0,0 +1,421 @@
+package library.backend;
+
+import library.DatabaseConnection;
+import library.TimerWheel;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * First-come, first-served hold queue for books with no copy on the shelf.
+ * <p>
+ * A hold is an {@code IssuedBooks} row: {@code 'HoldRequested'} while the student waits, in
+ * {@code issue_id} order per book, then {@code 'HoldActive'} once a copy is set aside for them. Code that
+ * puts a copy back on the shelf (returns, edits of a book's copies, cancelled or expired holds) calls
+ * {@link #offerCopies(Connection, String)} in the same transaction; it hands free copies to the oldest
+ * waiting holds, takes them off {@code available_copies} and leaves a {@code HoldReady} notification, so
+ * a copy can never be borrowed by someone else in between. After committing, the caller passes the
+ * result to {@link #allocated(List)}.
+ * <p>
+ * An active hold must be collected within {@code library.holds.pickupHours} hours. Each active hold has
+ * a timeout on a {@link TimerWheel}; when it fires the hold is dropped and the copy is offered to the
+ * next student in line. {@link #start()} arms the holds already active; after that the table is not
+ * scanned. A hold activated by another terminal always changes its book's {@code available_copies}, so
+ * the {@link CatalogIndex} poll sees the book, and only the active holds of the books it reports are read
+ * and armed. Holds allocated by another terminal, or by one that has since exited, therefore still expire,
+ * at most one catalog poll late. Dropping a hold locks its
+ * row and re-checks the deadline, so several terminals expiring the same hold is harmless.
+ */
+public class HoldService {
+
+    public static final long PICKUP_HOURS = Long.getLong("library.holds.pickupHours", 48L);
+    private static final long WHEEL_TICK_SECONDS = Long.getLong("library.holds.wheelTickSeconds", 60L);
+    private static final int ARM_BATCH_SIZE = 50;
+
+    /** A copy set aside for a waiting hold by {@link #offerCopies}. */
+    public static final class Allocation {
+        private final int issueId;
+        private final String bookId;
+        private final String studentId;
+        private final long expiresInSeconds;
+
+        Allocation(int issueId, String bookId, String studentId, long expiresInSeconds) {
+            this.issueId = issueId;
+            this.bookId = bookId;
+            this.studentId = studentId;
+            this.expiresInSeconds = expiresInSeconds;
+        }
+
+        public int getIssueId() { return issueId; }
+        public String getBookId() { return bookId; }
+        public String getStudentId() { return studentId; }
+    }
+
+    private static final HoldService INSTANCE = new HoldService();
+
+    private final TimerWheel wheel = new TimerWheel("hold-expiry", WHEEL_TICK_SECONDS, TimeUnit.SECONDS, 512);
+    private final Map<Integer, TimerWheel.Timeout> expiries = new ConcurrentHashMap<>();
+
+    private HoldService() {}
+
+    public static HoldService getInstance() { return INSTANCE; }
+
+    /**
+     * Starts the expiry wheel, arms a timeout for every hold that is already active, and from then on arms
+     * the holds of the books the catalog poll sees another terminal write.
+     */
+    public void start() {
+        wheel.start();
+        armActiveHolds(null);
+        CatalogIndex.getInstance().addRemoteChangeListener(this::armActiveHolds);
+    }
+
+    /**
+     * Arms the active holds on {@code bookIds} (on every book if null) that have no timeout in this process.
+     * Reads that fail are retried a tick later.
+     */
+    private void armActiveHolds(Collection<String> bookIds) {
+        if (bookIds != null && bookIds.isEmpty()) { return; }
+        String sql = "SELECT issue_id, TIMESTAMPDIFF(SECOND, NOW(), hold_expires_at) AS remaining FROM IssuedBooks WHERE status = 'HoldActive'";
+        StringBuilder byBookSql = new StringBuilder(sql).append(" AND book_id IN (?");
+        for (int i = 1; i < ARM_BATCH_SIZE; i++) { byBookSql.append(", ?"); } // Padded so the text stays in the statement cache
+        byBookSql.append(')');
+        List<String> ids = bookIds == null ? null : new ArrayList<>(bookIds);
+        Connection conn = null;
+        int armed = 0;
+        try {
+            conn = DatabaseConnection.getConnection();
+            if (ids == null) {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql); ResultSet rs = pstmt.executeQuery()) {
+                    armed += armUnknown(rs);
+                }
+            } else {
+                try (PreparedStatement pstmt = conn.prepareStatement(byBookSql.toString())) {
+                    for (int from = 0; from < ids.size(); from += ARM_BATCH_SIZE) {
+                        int to = Math.min(ids.size(), from + ARM_BATCH_SIZE);
+                        for (int i = 0; i < ARM_BATCH_SIZE; i++) { pstmt.setString(i + 1, ids.get(Math.min(from + i, to - 1))); }
+                        try (ResultSet rs = pstmt.executeQuery()) { armed += armUnknown(rs); }
+                    }
+                }
+            }
+            if (armed > 0) { System.out.println("Armed " + armed + " active hold(s) found in the database."); }
+        } catch (SQLException e) {
+            System.err.println("Active holds not loaded, retrying in " + WHEEL_TICK_SECONDS + " s: " + e.getMessage());
+            wheel.schedule(() -> armActiveHolds(ids), WHEEL_TICK_SECONDS, TimeUnit.SECONDS);
+        } finally {
+            DatabaseConnection.release(conn);
+        }
+    }
+
+    private int armUnknown(ResultSet rs) throws SQLException {
+        int armed = 0;
+        while (rs.next()) {
+            int issueId = rs.getInt("issue_id");
+            if (expiries.containsKey(issueId)) { continue; }
+            scheduleExpiry(issueId, rs.getLong("remaining")); // Overdue ones fire on the next tick
+            armed++;
+        }
+        return armed;
+    }
+
+    public void stop() { wheel.stop(); }
+
+    /**
+     * Puts the student at the back of the book's queue.
+     *
+     * @return the student's place in the queue (1 = next).
+     */
+    public int placeHold(String studentId, String bookId) throws SQLException, HoldException {
+        String lockBookSql = "SELECT available_copies FROM Books WHERE book_id = ? FOR UPDATE";
+        String openSql = "SELECT status FROM IssuedBooks WHERE student_id = ? AND book_id = ? " +
+                         "AND status IN ('Issued', 'Overdue', 'HoldRequested', 'HoldActive') LIMIT 1";
+        String insertSql = "INSERT INTO IssuedBooks (student_id, book_id, status, reissue_count, hold_request_date) " +
+                           "VALUES (?, ?, 'HoldRequested', 0, CURRENT_DATE)";
+        String positionSql = "SELECT COUNT(*) FROM IssuedBooks WHERE book_id = ? AND status = 'HoldRequested' AND issue_id <= ?";
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(lockBookSql)) { // Serialises with borrows and returns
+                pstmt.setString(1, bookId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (!rs.next()) { throw new HoldException("Book ID " + bookId + " not found."); }
+                    if (rs.getInt("available_copies") > 0) { throw new HoldException("A copy is available, borrow it instead."); }
+                }
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(openSql)) {
+                pstmt.setString(1, studentId);
+                pstmt.setString(2, bookId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        String status = rs.getString("status");
+                        throw new HoldException(status.startsWith("Hold") ? "You already have a hold on this book." : "You already have this book.");
+                    }
+                }
+            }
+            int issueId;
+            try (PreparedStatement pstmt = conn.prepareStatement(insertSql, Statement.RETURN_GENERATED_KEYS)) {
+                pstmt.setString(1, studentId);
+                pstmt.setString(2, bookId);
+                pstmt.executeUpdate();
+                try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                    if (!keys.next()) { throw new SQLException("Failed to create hold."); }
+                    issueId = keys.getInt(1);
+                }
+            }
+            int position;
+            try (PreparedStatement pstmt = conn.prepareStatement(positionSql)) {
+                pstmt.setString(1, bookId);
+                pstmt.setInt(2, issueId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    rs.next();
+                    position = rs.getInt(1);
+                }
+            }
+            conn.commit();
+            return position;
+        } catch (SQLException | HoldException ex) {
+            if (conn != null) { try { conn.rollback(); } catch (SQLException e) { e.printStackTrace(); } }
+            throw ex;
+        } finally {
+            if (conn != null) { try { conn.setAutoCommit(true); } catch (SQLException e) { e.printStackTrace(); } }
+            DatabaseConnection.release(conn);
+        }
+    }
+
+    /**
+     * Turns the student's active hold into a normal loan. The copy was already taken off the shelf when
+     * the hold became active, so {@code available_copies} does not change.
+     *
+     * @return the due date of the loan.
+     */
+    public LocalDate collectHold(int issueId, String studentId) throws SQLException, HoldException {
+        LocalDate dueDate = LocalDate.now().plusDays(SettingsRegistry.getInstance().snapshot().getBorrowPeriodDays());
+        String sql = "UPDATE IssuedBooks SET status = 'Issued', issue_date = CURRENT_DATE, due_date = ?, hold_expires_at = NULL " +
+                     "WHERE issue_id = ? AND student_id = ? AND status = 'HoldActive' AND hold_expires_at > NOW()"; // Not once the deadline passed
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setDate(1, Date.valueOf(dueDate));
+                pstmt.setInt(2, issueId);
+                pstmt.setString(3, studentId);
+                if (pstmt.executeUpdate() == 0) { throw new HoldException("This hold is not ready for collection (it may have expired)."); }
+            }
+        } finally {
+            DatabaseConnection.release(conn);
+        }
+        cancelExpiry(issueId);
+        return dueDate;
+    }
+
+    /** Withdraws a waiting or active hold. An active hold's copy goes to the next student in line. */
+    public void cancelHold(int issueId, String studentId) throws SQLException, HoldException {
+        Dropped dropped;
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            conn.setAutoCommit(false);
+            dropped = dropHold(conn, issueId, studentId, false);
+            if (dropped == null) { throw new HoldException("No open hold with issue ID " + issueId + "."); }
+            conn.commit();
+        } catch (SQLException | HoldException ex) {
+            if (conn != null) { try { conn.rollback(); } catch (SQLException e) { e.printStackTrace(); } }
+            throw ex;
+        } finally {
+            if (conn != null) { try { conn.setAutoCommit(true); } catch (SQLException e) { e.printStackTrace(); } }
+            DatabaseConnection.release(conn);
+        }
+        cancelExpiry(issueId);
+        dropped(dropped);
+    }
+
+    /** What {@link #dropHold} did: whether a copy went back on the shelf, and who it was then offered to. */
+    private static final class Dropped {
+        final String bookId;
+        final boolean copyReleased;
+        final List<Allocation> allocations;
+
+        Dropped(String bookId, boolean copyReleased, List<Allocation> allocations) {
+            this.bookId = bookId;
+            this.copyReleased = copyReleased;
+            this.allocations = allocations;
+        }
+    }
+
+    /**
+     * Deletes a hold row and, if it held a copy, puts the copy back and offers it on.
+     *
+     * @param studentId owner to check, or null to skip the check.
+     * @param onlyIfExpired only drop an active hold whose pickup time has passed.
+     * @return what was done, or null if there was no such hold.
+     */
+    private static Dropped dropHold(Connection conn, int issueId, String studentId, boolean onlyIfExpired) throws SQLException {
+        String lockSql = "SELECT book_id, student_id, status, hold_expires_at <= NOW() AS expired FROM IssuedBooks " +
+                         "WHERE issue_id = ? AND status IN ('HoldRequested', 'HoldActive') FOR UPDATE";
+        String bookId;
+        boolean active;
+        try (PreparedStatement pstmt = conn.prepareStatement(lockSql)) {
+            pstmt.setInt(1, issueId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) { return null; }
+                if (studentId != null && !studentId.equals(rs.getString("student_id"))) { return null; }
+                active = "HoldActive".equals(rs.getString("status"));
+                if (onlyIfExpired && !(active && rs.getBoolean("expired"))) { return null; }
+                bookId = rs.getString("book_id");
+            }
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM IssuedBooks WHERE issue_id = ?")) {
+            pstmt.setInt(1, issueId);
+            pstmt.executeUpdate();
+        }
+        if (!active) { return new Dropped(bookId, false, Collections.emptyList()); }
+        try (PreparedStatement pstmt = conn.prepareStatement("UPDATE Books SET available_copies = available_copies + 1 WHERE book_id = ?")) {
+            pstmt.setString(1, bookId);
+            pstmt.executeUpdate();
+        }
+        return new Dropped(bookId, true, offerCopies(conn, bookId));
+    }
+
+    /** After a committed {@link #dropHold}: the released copy goes back into the index before it is handed on. */
+    private void dropped(Dropped dropped) {
+        if (dropped.copyReleased) { CatalogIndex.getInstance().adjustAvailableCopies(dropped.bookId, 1); }
+        allocated(dropped.allocations);
+    }
+
+    /**
+     * Hands the book's free copies to the oldest waiting holds. Call inside the transaction that made
+     * the copies free, after updating {@code available_copies}.
+     *
+     * @return the holds that became active; pass them to {@link #allocated(List)} after committing.
+     */
+    public static List<Allocation> offerCopies(Connection conn, String bookId) throws SQLException {
+        String lockBookSql = "SELECT available_copies FROM Books WHERE book_id = ? FOR UPDATE";
+        String nextSql = "SELECT issue_id, student_id FROM IssuedBooks WHERE book_id = ? AND status = 'HoldRequested' " +
+                         "ORDER BY issue_id LIMIT ? FOR UPDATE";
+        String activateSql = "UPDATE IssuedBooks SET status = 'HoldActive', hold_expires_at = NOW() + INTERVAL ? HOUR WHERE issue_id = ?";
+        String takeCopySql = "UPDATE Books SET available_copies = available_copies - ? WHERE book_id = ?";
+        String notifySql = "INSERT INTO Notifications (user_id, message, type) " +
+                           "SELECT s.username, CONCAT('Your hold on ''', b.title, ''' (', b.book_id, ') is ready. Collect it within ', ?, ' hours.'), 'HoldReady' " +
+                           "FROM Students s JOIN Books b ON b.book_id = ? WHERE s.student_id = ?";
+        int available;
+        try (PreparedStatement pstmt = conn.prepareStatement(lockBookSql)) {
+            pstmt.setString(1, bookId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) { return Collections.emptyList(); }
+                available = rs.getInt("available_copies");
+            }
+        }
+        if (available <= 0) { return Collections.emptyList(); }
+
+        List<Allocation> allocations = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(nextSql)) {
+            pstmt.setString(1, bookId);
+            pstmt.setInt(2, available);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    allocations.add(new Allocation(rs.getInt("issue_id"), bookId, rs.getString("student_id"), PICKUP_HOURS * 3600));
+                }
+            }
+        }
+        if (allocations.isEmpty()) { return allocations; }
+
+        try (PreparedStatement activate = conn.prepareStatement(activateSql);
+             PreparedStatement notify = conn.prepareStatement(notifySql)) {
+            for (Allocation allocation : allocations) {
+                activate.setLong(1, PICKUP_HOURS);
+                activate.setInt(2, allocation.issueId);
+                activate.addBatch();
+                notify.setLong(1, PICKUP_HOURS);
+                notify.setString(2, bookId);
+                notify.setString(3, allocation.studentId);
+                notify.addBatch();
+            }
+            activate.executeBatch();
+            notify.executeBatch();
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(takeCopySql)) {
+            pstmt.setInt(1, allocations.size());
+            pstmt.setString(2, bookId);
+            pstmt.executeUpdate();
+        }
+        return allocations;
+    }
+
+    /** After the transaction that called {@link #offerCopies} committed: updates the catalog index and arms the expiry timeouts. */
+    public void allocated(List<Allocation> allocations) {
+        for (Allocation allocation : allocations) {
+            CatalogIndex.getInstance().adjustAvailableCopies(allocation.bookId, -1);
+        }
+        armExpiries(allocations);
+    }
+
+    /** Like {@link #allocated} for callers that reload the book into the catalog index themselves. */
+    public void armExpiries(List<Allocation> allocations) {
+        for (Allocation allocation : allocations) {
+            scheduleExpiry(allocation.issueId, allocation.expiresInSeconds);
+            System.out.println("Hold " + allocation.issueId + " on " + allocation.bookId + " is ready for student " + allocation.studentId + ".");
+        }
+    }
+
+    private void scheduleExpiry(int issueId, long inSeconds) {
+        TimerWheel.Timeout previous = expiries.put(issueId, wheel.schedule(() -> expire(issueId), inSeconds, TimeUnit.SECONDS));
+        if (previous != null) { previous.cancel(); }
+    }
+
+    private void cancelExpiry(int issueId) {
+        TimerWheel.Timeout timeout = expiries.remove(issueId);
+        if (timeout != null) { timeout.cancel(); }
+    }
+
+    /** Runs on the wheel's thread when an active hold's pickup time is up. */
+    private void expire(int issueId) {
+        expiries.remove(issueId);
+        Dropped dropped;
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            conn.setAutoCommit(false);
+            dropped = dropHold(conn, issueId, null, true);
+            if (dropped == null) { // Collected or cancelled meanwhile, or the clocks disagree
+                conn.rollback();
+                rearmIfStillActive(conn, issueId);
+                return;
+            }
+            conn.commit();
+            System.out.println("Hold " + issueId + " expired uncollected.");
+        } catch (SQLException e) {
+            if (conn != null) { try { conn.rollback(); } catch (SQLException ex) { ex.printStackTrace(); } }
+            System.err.println("Could not expire hold " + issueId + ", retrying in a minute: " + e.getMessage());
+            scheduleExpiry(issueId, 60);
+            return;
+        } finally {
+            if (conn != null) { try { conn.setAutoCommit(true); } catch (SQLException e) { e.printStackTrace(); } }
+            DatabaseConnection.release(conn);
+        }
+        dropped(dropped);
+    }
+
+    private void rearmIfStillActive(Connection conn, int issueId) throws SQLException {
+        String sql = "SELECT TIMESTAMPDIFF(SECOND, NOW(), hold_expires_at) AS remaining FROM IssuedBooks WHERE issue_id = ? AND status = 'HoldActive'";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, issueId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) { scheduleExpiry(issueId, Math.max(1, rs.getLong("remaining"))); }
+            }
+        }
+    }
+}
+
+class HoldException extends Exception {
+    public HoldException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,150 @@
+package library.backend;
+
+import library.DatabaseConnection;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hands out book, librarian and student IDs ({@code B001}, {@code L001}, {@code S001}, ...) from the
+ * {@code IdSequences} table.
+ * <p>
+ * IDs are reserved in blocks of {@code library.ids.blockSize} (default 50) with a single
+ * {@code UPDATE ... SET next_value = LAST_INSERT_ID(next_value + n)} on its own autocommitted connection,
+ * so the reservation is one short transaction that never waits on the caller's, and the block is then
+ * handed out from memory. Numbers only grow: an ID whose insert is rolled back, or that was still unused
+ * in a block when the application stopped, is skipped, never reused. The numeric part is padded to three
+ * digits and simply gets longer after 999 (up to the ten characters the ID columns hold).
+ * <p>
+ * The first time a sequence is used it is seeded past the highest ID already in its table, so existing
+ * data (including IDs written by the old {@code ORDER BY ... LIMIT 1} generators) keeps its numbers.
+ */
+public final class IdSequences {
+
+    private static final int BLOCK_SIZE = Math.max(1, Integer.getInteger("library.ids.blockSize", 50));
+    private static final int MAX_ID_LENGTH = 10;
+
+    public enum Sequence {
+        BOOK("B", "Books", "book_id"),
+        LIBRARIAN("L", "Librarians", "librarian_id"),
+        STUDENT("S", "Students", "student_id");
+
+        private final String prefix;
+        private final String table;
+        private final String column;
+
+        Sequence(String prefix, String table, String column) {
+            this.prefix = prefix;
+            this.table = table;
+            this.column = column;
+        }
+
+        public String getPrefix() { return prefix; }
+    }
+
+    /** The unused part of the last block reserved for one sequence. */
+    private static final class Block {
+        long next = 0;
+        long limit = 0; // Exclusive
+    }
+
+    private static final IdSequences INSTANCE = new IdSequences();
+
+    private final Block[] blocks = new Block[Sequence.values().length];
+
+    private IdSequences() {
+        for (int i = 0; i < blocks.length; i++) { blocks[i] = new Block(); }
+    }
+
+    public static IdSequences getInstance() { return INSTANCE; }
+
+    /** The next ID of {@code sequence}. Only goes to the database when the current block is used up. */
+    public String nextId(Sequence sequence) throws SQLException {
+        return nextIds(sequence, 1).get(0);
+    }
+
+    /**
+     * {@code count} IDs of {@code sequence}, in increasing order: what is left of the current block
+     * first, then one reservation big enough for the rest (at least a normal block), so a bulk import
+     * costs one round trip however many rows it has.
+     */
+    public List<String> nextIds(Sequence sequence, int count) throws SQLException {
+        List<String> ids = new ArrayList<>(count);
+        Block block = blocks[sequence.ordinal()];
+        synchronized (block) {
+            while (ids.size() < count) {
+                if (block.next >= block.limit) {
+                    int size = Math.max(BLOCK_SIZE, count - ids.size());
+                    block.limit = reserve(sequence, size);
+                    block.next = block.limit - size;
+                }
+                ids.add(format(sequence, block.next++));
+            }
+        }
+        return ids;
+    }
+
+    /** Formats {@code number} as an ID of {@code sequence}, e.g. {@code B007} or {@code B1234}. */
+    public static String format(Sequence sequence, long number) throws SQLException {
+        String id = sequence.prefix + String.format("%03d", number);
+        if (id.length() > MAX_ID_LENGTH) {
+            throw new SQLException("The " + sequence.table + " ID sequence is exhausted (" + id + " does not fit in " + MAX_ID_LENGTH + " characters).");
+        }
+        return id;
+    }
+
+    // --- Database ---
+
+    /** Moves the sequence {@code size} numbers on and returns the new (exclusive) end of the reserved range. */
+    private static long reserve(Sequence sequence, int size) throws SQLException {
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            if (conn == null || conn.isClosed()) {
+                throw new SQLException("Database connection failed or is closed.");
+            }
+            conn.setAutoCommit(true);
+            for (int attempt = 0; attempt < 2; attempt++) {
+                try (PreparedStatement pstmt = conn.prepareStatement("UPDATE IdSequences SET next_value = LAST_INSERT_ID(next_value + ?) WHERE name = ?")) {
+                    pstmt.setInt(1, size);
+                    pstmt.setString(2, sequence.name());
+                    if (pstmt.executeUpdate() == 1) {
+                        try (PreparedStatement last = conn.prepareStatement("SELECT LAST_INSERT_ID()"); ResultSet rs = last.executeQuery()) {
+                            rs.next();
+                            return rs.getLong(1);
+                        }
+                    }
+                }
+                seed(conn, sequence);
+            }
+            throw new SQLException("Could not reserve IDs: no IdSequences row for " + sequence.name() + ".");
+        } catch (SQLException e) {
+            throw new SQLException("Failed to reserve " + sequence.table + " IDs: " + e.getMessage(), e);
+        } finally {
+            DatabaseConnection.release(conn);
+        }
+    }
+
+    /**
+     * Creates the sequence row, starting after the highest numeric ID in the sequence's table. Scans the
+     * table once; if another instance seeds at the same time the first row wins.
+     */
+    private static void seed(Connection conn, Sequence sequence) throws SQLException {
+        String maxSql = "SELECT COALESCE(MAX(CAST(SUBSTRING(" + sequence.column + ", 2) AS UNSIGNED)), 0) FROM " + sequence.table +
+                        " WHERE " + sequence.column + " REGEXP ?";
+        long max;
+        try (PreparedStatement pstmt = conn.prepareStatement(maxSql)) {
+            pstmt.setString(1, "^" + sequence.prefix + "[0-9]+$");
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                max = rs.getLong(1);
+            }
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement("INSERT IGNORE INTO IdSequences (name, next_value) VALUES (?, ?)")) {
+            pstmt.setString(1, sequence.name());
+            pstmt.setLong(2, max + 1);
+            pstmt.executeUpdate();
+        }
+    }
+}
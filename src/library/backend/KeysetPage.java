@@ -0,0 +1,43 @@
+package library.backend;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One page of a listing fetched with keyset (seek) pagination.
+ * <p>
+ * The cursor holds the sort-key values of the last row on the page. Passing it back as the
+ * {@code after} argument of the same listing method returns the rows that follow, so each page is
+ * an index range scan instead of an {@code OFFSET} that re-reads everything before it.
+ */
+public class KeysetPage {
+    private final List<Object[]> rows;
+    private final Object[] cursor;
+    private final boolean hasMore;
+
+    public KeysetPage(List<Object[]> rows, Object[] cursor, boolean hasMore) {
+        this.rows = rows;
+        this.cursor = cursor;
+        this.hasMore = hasMore;
+    }
+
+    /**
+     * Builds a page from rows fetched with {@code LIMIT pageSize + 1}: the extra row, if present, only
+     * signals that more rows exist and is dropped. {@code keys} holds the sort key of each fetched row.
+     */
+    static KeysetPage of(List<Object[]> fetched, List<Object[]> keys, int pageSize) {
+        boolean more = fetched.size() > pageSize;
+        List<Object[]> rows = more ? fetched.subList(0, pageSize) : fetched;
+        Object[] cursor = rows.isEmpty() ? null : keys.get(rows.size() - 1);
+        return new KeysetPage(new ArrayList<>(rows), cursor, more);
+    }
+
+    /** The rows of this page, in the same column layout as the matching {@code getAll...} method. */
+    public List<Object[]> getRows() { return rows; }
+
+    /** Sort-key values of the last row, or {@code null} if the page is empty. */
+    public Object[] getCursor() { return cursor; }
+
+    /** True if at least one more row exists after this page. */
+    public boolean hasMore() { return hasMore; }
+}
@@ -1,53 +1,34 @@
 package library.backend;
 import java.sql.*;
 import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.List;
 
 import library.DatabaseConnection;
 
-import javax.swing.*;
 
 public class LibrarianService {
 
-    private static String getSettingValue(String key, String defaultValue) {
-        String sql = "SELECT setting_value FROM Settings WHERE setting_key = ?";
-        Connection conn = null;
-        try {
-            conn = DatabaseConnection.getConnection(); // Should resolve now
-            if (conn == null || conn.isClosed()) { throw new SQLException("Database connection failed."); }
-            // ... rest of method ...
-            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-                pstmt.setString(1, key);
-                try (ResultSet rs = pstmt.executeQuery()) {
-                    if (rs.next()) {
-                        String value = rs.getString("setting_value");
-                        return (value != null) ? value : defaultValue;
-                    }
-                }
-            }
-        } catch (SQLException e) { System.err.println("DB Error retrieving setting '" + key + "'. Using default."); }
-        return defaultValue;
-    }
-
-    private static int getSettingValueInt(String key, int defaultValue) {
-        try { return Integer.parseInt(getSettingValue(key, String.valueOf(defaultValue))); }
-        catch (NumberFormatException e) { System.err.println("Invalid int format for setting '" + key + "'. Using default."); return defaultValue; }
-    }
-
-    private static double getSettingValueDouble(String key, double defaultValue) {
-        try { return Double.parseDouble(getSettingValue(key, String.valueOf(defaultValue))); }
-        catch (NumberFormatException e) { System.err.println("Invalid double format for setting '" + key + "'. Using default."); return defaultValue; }
-    }
-
     public static List<Object[]> getAllBooks(String searchTerm) throws SQLException {
         List<Object[]> books = new ArrayList<>();
-        // ... (rest of method implementation using DatabaseConnection) ...
+        CatalogIndex index = CatalogIndex.getInstance();
+        if (index.isReady()) {
+            for (CatalogIndex.BookRecord book : index.search(searchTerm, false)) {
+                books.add(new Object[]{
+                        book.getBookId(), book.getTitle(), book.getAuthor(),
+                        book.getCategory(), book.getTotalCopies(), book.getAvailableCopies()
+                });
+            }
+            return books;
+        }
+
+        // Index not loaded yet: fall back to scanning the table
         String sql = "SELECT book_id, title, author, category, total_copies, available_copies " +
                 "FROM Books ";
         boolean searching = searchTerm != null && !searchTerm.trim().isEmpty();
         if (searching) {
-            sql += "AND (LOWER(title) LIKE LOWER(?) OR LOWER(author) LIKE LOWER(?) OR LOWER(category) LIKE LOWER(?))";
+            sql += "WHERE (LOWER(title) LIKE LOWER(?) OR LOWER(author) LIKE LOWER(?) OR LOWER(category) LIKE LOWER(?))";
         }
         sql += " ORDER BY title";
 
@@ -69,7 +50,7 @@ public class LibrarianService {
                     while (rs.next()) {
                         books.add(new Object[]{
                                 rs.getString("book_id"), rs.getString("title"), rs.getString("author"),
-                                rs.getString("category"), rs.getDouble("total_copies"), rs.getInt("available_copies")
+                                rs.getString("category"), rs.getInt("total_copies"), rs.getInt("available_copies")
                         });
                     }
                 }
@@ -92,17 +73,85 @@ public class LibrarianService {
 
     }
 
+    /**
+     * Keyset-paginated variant of {@link #getAllBooks(String)}, ordered by title then book ID.
+     * {@code after} is the cursor of the previous page ({title, book_id}), or null for the first page.
+     */
+    public static KeysetPage getBooksPage(String searchTerm, Object[] after, int pageSize) throws SQLException {
+        List<Object[]> fetched = new ArrayList<>();
+        List<Object[]> keys = new ArrayList<>();
+        CatalogIndex index = CatalogIndex.getInstance();
+        if (index.isReady()) {
+            String afterTitle = after == null ? null : (String) after[0];
+            String afterId = after == null ? null : (String) after[1];
+            for (CatalogIndex.BookRecord book : index.search(searchTerm, false, pageSize + 1, afterTitle, afterId)) {
+                fetched.add(new Object[]{
+                        book.getBookId(), book.getTitle(), book.getAuthor(),
+                        book.getCategory(), book.getTotalCopies(), book.getAvailableCopies()
+                });
+                keys.add(new Object[]{book.getTitle(), book.getBookId()});
+            }
+            return KeysetPage.of(fetched, keys, pageSize);
+        }
+
+        String sql = "SELECT book_id, title, author, category, total_copies, available_copies FROM Books WHERE 1=1 ";
+        boolean searching = searchTerm != null && !searchTerm.trim().isEmpty();
+        if (searching) {
+            sql += "AND (LOWER(title) LIKE LOWER(?) OR LOWER(author) LIKE LOWER(?) OR LOWER(category) LIKE LOWER(?)) ";
+        }
+        if (after != null) {
+            sql += "AND (title > ? OR (title = ? AND book_id > ?)) ";
+        }
+        sql += "ORDER BY title, book_id LIMIT ?";
+
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            if (conn == null || conn.isClosed()) {
+                throw new SQLException("Database connection failed or is closed.");
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                int i = 1;
+                if (searching) {
+                    String searchPattern = "%" + searchTerm.trim() + "%";
+                    pstmt.setString(i++, searchPattern);
+                    pstmt.setString(i++, searchPattern);
+                    pstmt.setString(i++, searchPattern);
+                }
+                if (after != null) {
+                    pstmt.setString(i++, (String) after[0]);
+                    pstmt.setString(i++, (String) after[0]);
+                    pstmt.setString(i++, (String) after[1]);
+                }
+                pstmt.setInt(i, pageSize + 1);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        fetched.add(new Object[]{
+                                rs.getString("book_id"), rs.getString("title"), rs.getString("author"),
+                                rs.getString("category"), rs.getInt("total_copies"), rs.getInt("available_copies")
+                        });
+                        keys.add(new Object[]{rs.getString("title"), rs.getString("book_id")});
+                    }
+                }
+            }
+        } finally {
+            DatabaseConnection.release(conn);
+        }
+        return KeysetPage.of(fetched, keys, pageSize);
+    }
+
     public static List<Object[]> getAllIssuedBooks(String searchTerm) throws SQLException {
         List<Object[]> issuedBooks = new ArrayList<>();
 
         String sql = "SELECT b.book_id, b.title, i.student_id, " +
                 "i.issue_date, i.due_date, i.return_date, i.status " +
                 "FROM IssuedBooks i " +
-                "JOIN Books b ON i.book_id = b.book_id ";
+                "JOIN Books b ON i.book_id = b.book_id " +
+                "JOIN Students s ON i.student_id = s.student_id ";
 
         boolean searching = searchTerm != null && !searchTerm.trim().isEmpty();
         if (searching) {
-            sql += "AND (LOWER(b.title) LIKE LOWER(?) OR LOWER(b.author) LIKE LOWER(?) " +
+            sql += "WHERE (LOWER(b.title) LIKE LOWER(?) OR LOWER(b.author) LIKE LOWER(?) " +
                     "OR LOWER(s.student_id) LIKE LOWER(?) OR LOWER(s.name) LIKE LOWER(?)) ";
         }
 
@@ -153,106 +202,80 @@ public class LibrarianService {
         return issuedBooks;
     }
 
-    public static boolean issueBookToStudent(String bookId, String studentId) throws SQLException {
-        Connection conn = null;
-        int borrowingPeriodDays = getSettingValueInt("DefaultBorrowingPeriodDays",14);
-        boolean autoCommitOriginal = false;
+    /**
+     * Keyset-paginated variant of {@link #getAllIssuedBooks(String)}, ordered by due date then issue ID.
+     * {@code after} is the cursor of the previous page ({due_date, issue_id}), or null for the first page.
+     */
+    public static KeysetPage getIssuedBooksPage(String searchTerm, Object[] after, int pageSize) throws SQLException {
+        List<Object[]> fetched = new ArrayList<>();
+        List<Object[]> keys = new ArrayList<>();
+        String sql = "SELECT i.issue_id, b.book_id, b.title, i.student_id, " +
+                "i.issue_date, i.due_date, i.return_date, i.status " +
+                "FROM IssuedBooks i " +
+                "JOIN Books b ON i.book_id = b.book_id " +
+                "JOIN Students s ON i.student_id = s.student_id WHERE 1=1 ";
+        boolean searching = searchTerm != null && !searchTerm.trim().isEmpty();
+        if (searching) {
+            sql += "AND (LOWER(b.title) LIKE LOWER(?) OR LOWER(b.author) LIKE LOWER(?) " +
+                    "OR LOWER(s.student_id) LIKE LOWER(?) OR LOWER(s.name) LIKE LOWER(?)) ";
+        }
+        Date afterDue = after == null ? null : (Date) after[0];
+        if (after != null) {
+            // NULL due dates sort first, so a NULL cursor still has every dated row ahead of it
+            sql += afterDue == null
+                    ? "AND ((i.due_date IS NULL AND i.issue_id > ?) OR i.due_date IS NOT NULL) "
+                    : "AND (i.due_date > ? OR (i.due_date = ? AND i.issue_id > ?)) ";
+        }
+        sql += "ORDER BY i.due_date, i.issue_id LIMIT ?";
 
+        Connection conn = null;
         try {
             conn = DatabaseConnection.getConnection();
             if (conn == null || conn.isClosed()) {
                 throw new SQLException("Database connection failed or is closed.");
             }
-
-            // Save original auto-commit setting and disable it for transaction
-            autoCommitOriginal = conn.getAutoCommit();
-            conn.setAutoCommit(false);
-
-            // Check if book exists and is available
-            String checkBookSql = "SELECT available_copies FROM Books WHERE book_id = ?";
-            try (PreparedStatement checkBookStmt = conn.prepareStatement(checkBookSql)) {
-                checkBookStmt.setString(1, bookId);
-                try (ResultSet rs = checkBookStmt.executeQuery()) {
-                    if (!rs.next()) {
-                        throw new SQLException("Book with ID " + bookId + " does not exist.");
-                    }
-                    int availableCopies = rs.getInt("available_copies");
-                    if (availableCopies <= 0) {
-                        throw new SQLException("Book with ID " + bookId + " is not available for borrowing.");
-                    }
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                int i = 1;
+                if (searching) {
+                    String searchPattern = "%" + searchTerm.trim() + "%";
+                    for (int k = 0; k < 4; k++) { pstmt.setString(i++, searchPattern); }
                 }
-            }
-
-            // Check if student exists
-            String checkStudentSql = "SELECT 1 FROM Students WHERE student_id = ?";
-            try (PreparedStatement checkStudentStmt = conn.prepareStatement(checkStudentSql)) {
-                checkStudentStmt.setString(1, studentId);
-                try (ResultSet rs = checkStudentStmt.executeQuery()) {
-                    if (!rs.next()) {
-                        throw new SQLException("Student with ID " + studentId + " does not exist.");
+                if (after != null) {
+                    if (afterDue != null) {
+                        pstmt.setDate(i++, afterDue);
+                        pstmt.setDate(i++, afterDue);
                     }
+                    pstmt.setInt(i++, (Integer) after[1]);
                 }
-            }
-            String checkDuePeriodSql = "SELECT setting_value FROM Settings WHERE setting_key = 'DefaultBorrowingPeriodDays'";
-            //execute the query
-            try (PreparedStatement checkDuePeriodStmt = conn.prepareStatement(checkDuePeriodSql)) {
-                try (ResultSet rs = checkDuePeriodStmt.executeQuery()) {
-                    if (!rs.next()) {
-                        throw new SQLException("Default borrowing period not found.");
+                pstmt.setInt(i, pageSize + 1);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        fetched.add(new Object[]{
+                                rs.getString("book_id"),
+                                rs.getString("student_id"),
+                                rs.getString("title"),
+                                rs.getDate("issue_date"),
+                                rs.getDate("due_date"),
+                                rs.getDate("return_date"),
+                                rs.getString("status")
+                        });
+                        keys.add(new Object[]{rs.getDate("due_date"), rs.getInt("issue_id")});
                     }
-                    borrowingPeriodDays = rs.getInt("setting_value");
-
                 }
             }
+        } finally {
+            DatabaseConnection.release(conn);
+        }
+        return KeysetPage.of(fetched, keys, pageSize);
+    }
 
-
-            // Issue the book
-            String issueSql = "INSERT INTO IssuedBooks (book_id, student_id, issue_date, due_date, status,reissue_count) VALUES (?, ?, CURRENT_DATE, DATE_ADD(CURRENT_DATE, INTERVAL 14 DAY), 'Issued',0)";
-            try (PreparedStatement issueStmt = conn.prepareStatement(issueSql)) {
-                issueStmt.setString(1, bookId);
-                issueStmt.setString(2, studentId);
-                issueStmt.executeUpdate();
-            }
-
-
-            // Update the book availability
-            String updateBookSql = "UPDATE Books SET available_copies = available_copies - 1 WHERE book_id = ?";
-            try (PreparedStatement updateBookStmt = conn.prepareStatement(updateBookSql)) {
-                updateBookStmt.setString(1, bookId);
-                updateBookStmt.executeUpdate();
-            }
-
-
-            // If everything succeeded, commit the transaction
-            conn.commit();
+    public static boolean issueBookToStudent(String bookId, String studentId) throws SQLException {
+        int borrowingPeriodDays = SettingsRegistry.getInstance().snapshot().getBorrowPeriodDays();
+        try {
+            BorrowEngine.borrow(studentId, bookId, borrowingPeriodDays); // Same guarded path as student borrows
             return true;
-
-        } catch (SQLException ex) {
-            // If anything failed, roll back
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                }
-            }
-            throw ex; // Re-throw the exception
-        } finally {
-            // Restore original auto-commit setting and close connection
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(autoCommitOriginal);
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                }
-                try {
-                    if (!conn.isClosed()) {
-                        conn.close();
-                    }
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                }
-            }
+        } catch (BorrowException e) {
+            throw new SQLException(e.getMessage(), e);
         }
     }
 
@@ -270,8 +293,10 @@ public class LibrarianService {
             autoCommitOriginal = conn.getAutoCommit();
             conn.setAutoCommit(false);
             int issue_id;
+            LocalDate dueDate;
+            LocalDate returnDate = LocalDate.now();
             // Check if the book is issued to the student
-            String checkIssuedSql = "SELECT * FROM IssuedBooks WHERE book_id = ? AND student_id = ? AND status = 'Issued'";
+            String checkIssuedSql = "SELECT * FROM IssuedBooks WHERE book_id = ? AND student_id = ? AND status IN ('Issued', 'Overdue')";
             try (PreparedStatement checkIssuedStmt = conn.prepareStatement(checkIssuedSql)) {
                 checkIssuedStmt.setString(1, bookId);
                 checkIssuedStmt.setString(2, studentId);
@@ -280,16 +305,24 @@ public class LibrarianService {
                         throw new SQLException("Book with ID " + bookId + " is not issued to student with ID " + studentId + ".");
                     }
                     issue_id = rs.getInt("issue_id");
+                    Date due = rs.getDate("due_date");
+                    dueDate = due != null ? due.toLocalDate() : null;
                 }
             }
 
             // Update the status of the issued book to 'Returned'
-            String updateIssuedSql = "UPDATE IssuedBooks SET status = 'Returned', return_date = CURRENT_DATE WHERE  book_id = ? AND issue_id =? AND student_id = ?";
+            // Only the return that flips the status goes on; a concurrent return of the same loan finds nothing to update
+            String updateIssuedSql = "UPDATE IssuedBooks SET status = 'Returned', return_date = ? WHERE  book_id = ? AND issue_id =? AND student_id = ? " +
+                    "AND status IN ('Issued', 'Overdue')";
             try (PreparedStatement updateIssuedStmt = conn.prepareStatement(updateIssuedSql)) {
-                updateIssuedStmt.setString(1, bookId);
-                updateIssuedStmt.setString(2, String.valueOf(issue_id));
-                updateIssuedStmt.setString(3, studentId);
-                updateIssuedStmt.executeUpdate();
+                updateIssuedStmt.setDate(1, Date.valueOf(returnDate));
+                updateIssuedStmt.setString(2, bookId);
+                updateIssuedStmt.setString(3, String.valueOf(issue_id));
+                updateIssuedStmt.setString(4, studentId);
+                if (updateIssuedStmt.executeUpdate() != 1) {
+                    conn.rollback();
+                    return false;
+                }
             }
 
             // Update the available copies of the book
@@ -299,8 +332,22 @@ public class LibrarianService {
                 updateBookStmt.executeUpdate();
             }
 
+            // Hand the copy to the next student waiting for it, if any
+            List<HoldService.Allocation> allocations = HoldService.offerCopies(conn, bookId);
+
+            // Settle the final fine, as a student return does; the nightly accrual never revisits returned loans
+            double fineAmount = dueDate != null && returnDate.isAfter(dueDate)
+                    ? fineForOverdueDays((int) ChronoUnit.DAYS.between(dueDate, returnDate)) : 0.0;
+            if (fineAmount > 0) {
+                StudentService.upsertFine(conn, issue_id, studentId, fineAmount, returnDate);
+            }
+
             // If everything succeeded, commit the transaction
             conn.commit();
+            CatalogIndex.getInstance().adjustAvailableCopies(bookId, 1);
+            HoldService.getInstance().allocated(allocations);
+            AuditLog.getInstance().record(AuditLog.RETURN_BOOK, "Book " + bookId + " from student " + studentId + " (issue " + issue_id + ")"
+                    + (fineAmount > 0 ? String.format(", fine %.2f", fineAmount) : ""));
             return true;
 
         } catch (SQLException ex) {
@@ -335,6 +382,7 @@ public class LibrarianService {
     public static boolean reissueBook(String bookId, String studentId) throws SQLException {
         Connection conn = null;
         boolean autoCommitOriginal = false;
+        SettingsRegistry.Snapshot settings = SettingsRegistry.getInstance().snapshot();
 
         try {
             conn = DatabaseConnection.getConnection();
@@ -347,7 +395,7 @@ public class LibrarianService {
             conn.setAutoCommit(false);
 
             // Check if the book is issued to the student
-            String checkIssuedSql = "SELECT * FROM IssuedBooks WHERE book_id = ? AND student_id = ? AND status = 'Issued'";
+            String checkIssuedSql = "SELECT * FROM IssuedBooks WHERE book_id = ? AND student_id = ? AND status IN ('Issued', 'Overdue')";
             try (PreparedStatement checkIssuedStmt = conn.prepareStatement(checkIssuedSql)) {
                 checkIssuedStmt.setString(1, bookId);
                 checkIssuedStmt.setString(2, studentId);
@@ -359,7 +407,7 @@ public class LibrarianService {
             }
 
             // Check if the book is overdue
-            String checkOverdueSql = "SELECT DATEDIFF(CURRENT_DATE, due_date) AS overdue_days FROM IssuedBooks WHERE book_id = ? AND student_id = ? AND status = 'Issued'";
+            String checkOverdueSql = "SELECT DATEDIFF(CURRENT_DATE, due_date) AS overdue_days FROM IssuedBooks WHERE book_id = ? AND student_id = ? AND status IN ('Issued', 'Overdue')";
             try (PreparedStatement checkOverdueStmt = conn.prepareStatement(checkOverdueSql)) {
                 checkOverdueStmt.setString(1, bookId);
                 checkOverdueStmt.setString(2, studentId);
@@ -374,7 +422,7 @@ public class LibrarianService {
             }
 
             // check if it has reached maximum reissue count
-            String checkReissueCountSql = "SELECT reissue_count FROM IssuedBooks WHERE book_id = ? AND student_id = ?";
+            String checkReissueCountSql = "SELECT reissue_count FROM IssuedBooks WHERE book_id = ? AND student_id = ? AND status IN ('Issued', 'Overdue')";
             try (PreparedStatement checkReissueCountStmt = conn.prepareStatement(checkReissueCountSql)) {
                 checkReissueCountStmt.setString(1, bookId);
                 checkReissueCountStmt.setString(2, studentId);
@@ -382,7 +430,7 @@ public class LibrarianService {
                 try (ResultSet rs = checkReissueCountStmt.executeQuery()) {
                     if (rs.next()) {
                         int reissueCount = rs.getInt("reissue_count");
-                        if (reissueCount >= getSettingValueInt("MaxReissuesAllowed",2)) {
+                        if (reissueCount >= settings.getMaxReissues()) {
                             throw new SQLException("Book with ID " + bookId + " has reached the maximum reissue limit.");
                         }
                     }
@@ -392,10 +440,11 @@ public class LibrarianService {
             }
 
             // Update the due date of the issued book
-            String updateDueDateSql = "UPDATE IssuedBooks SET due_date = DATE_ADD(due_date, INTERVAL 14 DAY), reissue_count=reissue_count+1 WHERE book_id = ? AND student_id = ?";
+            String updateDueDateSql = "UPDATE IssuedBooks SET due_date = DATE_ADD(due_date, INTERVAL ? DAY), reissue_count=reissue_count+1 WHERE book_id = ? AND student_id = ? AND status IN ('Issued', 'Overdue')"; // Not past loans or holds
             try (PreparedStatement updateDueDateStmt = conn.prepareStatement(updateDueDateSql)) {
-                updateDueDateStmt.setString(1, bookId);
-                updateDueDateStmt.setString(2, studentId);
+                updateDueDateStmt.setInt(1, settings.getBorrowPeriodDays());
+                updateDueDateStmt.setString(2, bookId);
+                updateDueDateStmt.setString(3, studentId);
                 updateDueDateStmt.executeUpdate();
             }
 
@@ -432,56 +481,9 @@ public class LibrarianService {
         }
     }
 
-    private static String generateNextBookId() throws SQLException {
-        String lastId = null;
-        int nextNumericId = 1;
-
-        Connection conn = null;
-        try {
-            conn = DatabaseConnection.getConnection();
-            if (conn == null || conn.isClosed()) {
-                throw new SQLException("Database connection failed or is closed.");
-            }
-
-            String query = "SELECT book_id FROM Books ORDER BY book_id DESC LIMIT 1";
-            try (PreparedStatement pstmt = conn.prepareStatement(query);
-                 ResultSet rs = pstmt.executeQuery()) {
-
-                if (rs.next()) {
-                    lastId = rs.getString("book_id");
-                    if (lastId != null && lastId.matches("B\\d{3}")) {
-                        // Extract the numeric part and increment
-                        nextNumericId = Integer.parseInt(lastId.substring(1)) + 1;
-                    }
-                }
-            }
-        } catch (SQLException e) {
-            throw new SQLException("Failed to generate the next book ID: " + e.getMessage(), e);
-        } finally {
-            if (conn != null) {
-                try {
-                    if (!conn.isClosed()) {
-                        conn.close();
-                    }
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-
-        // Format new ID with leading zeros
-        return String.format("B%03d", nextNumericId);
-    }
-
     public static void addBook(String title, String author, String category, int totalCopies) throws SQLException {
-        System.out.println("Adding " + title + " to " + author + " by " + category);
         Connection conn = null;
-            String bookId;
-            try {
-                bookId = generateNextBookId();
-            } catch (SQLException e) {
-                throw new SQLException("Failed to generate the next book ID: " + e.getMessage(), e);
-            }
+        String bookId = IdSequences.getInstance().nextId(IdSequences.Sequence.BOOK);
 
         try {
             conn = DatabaseConnection.getConnection();
@@ -492,16 +494,14 @@ public class LibrarianService {
 
             String sql = "INSERT INTO Books (book_id, title, author, category, total_copies, available_copies) VALUES (?, ?, ?, ?, ?, ?)";
             try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-                System.out.println("Inside try block");
                 pstmt.setString(1, bookId);
                 pstmt.setString(2, title);
                 pstmt.setString(3, author);
                 pstmt.setString(4, category);
                 pstmt.setInt(5, totalCopies);
                 pstmt.setInt(6, totalCopies); // Initially available copies are the same as total copies
-                int rowsAffected = pstmt.executeUpdate();
-                System.out.println(rowsAffected);
+                pstmt.executeUpdate();
+                CatalogIndex.getInstance().put(new CatalogIndex.BookRecord(bookId, title, author, category, totalCopies, totalCopies, 0.0));
 
             }
             catch (SQLException ex) {
@@ -530,7 +530,7 @@ public class LibrarianService {
 
         boolean searching = searchTerm != null && !searchTerm.trim().isEmpty();
         if (searching) {
-            sql += "AND (LOWER(student_id) LIKE LOWER(?) OR LOWER(name) LIKE LOWER(?) OR LOWER(email) LIKE LOWER(?))";
+            sql += "WHERE (LOWER(s.student_id) LIKE LOWER(?) OR LOWER(s.name) LIKE LOWER(?) OR LOWER(u.email) LIKE LOWER(?)) ";
         }
         sql +=  "ORDER BY s.student_id";
         Connection conn = null;
@@ -539,12 +539,20 @@ public class LibrarianService {
             if (conn == null || conn.isClosed()) {
                 throw new SQLException("Database connection failed or is closed.");
             }
-            try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
-                while (rs.next()) {
-                    students.add(new Object[]{
-                            rs.getString("student_id"), rs.getString("name"),
-                            rs.getString("email")
-                    });
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                if (searching) {
+                    String searchPattern = "%" + searchTerm.trim() + "%";
+                    pstmt.setString(1, searchPattern);
+                    pstmt.setString(2, searchPattern);
+                    pstmt.setString(3, searchPattern);
+                }
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        students.add(new Object[]{
+                                rs.getString("student_id"), rs.getString("name"),
+                                rs.getString("email")
+                        });
+                    }
                 }
             }
         } finally {
@@ -561,49 +569,94 @@ public class LibrarianService {
         return students;
     }
 
-    public static double calculateFine(String bookId, String studentId) throws SQLException {
-        Connection conn = null;
-        double fine = 0.0;
+    /**
+     * Keyset-paginated variant of {@link #getAllStudents(String)}, ordered by student ID.
+     * {@code after} is the cursor of the previous page ({student_id}), or null for the first page.
+     */
+    public static KeysetPage getStudentsPage(String searchTerm, Object[] after, int pageSize) throws SQLException {
+        List<Object[]> fetched = new ArrayList<>();
+        List<Object[]> keys = new ArrayList<>();
+        String sql = "SELECT s.student_id, s.name, u.email " +
+                "FROM Students s JOIN Users u ON s.username = u.username WHERE 1=1 ";
+        boolean searching = searchTerm != null && !searchTerm.trim().isEmpty();
+        if (searching) {
+            sql += "AND (LOWER(s.student_id) LIKE LOWER(?) OR LOWER(s.name) LIKE LOWER(?) OR LOWER(u.email) LIKE LOWER(?)) ";
+        }
+        if (after != null) {
+            sql += "AND s.student_id > ? ";
+        }
+        sql += "ORDER BY s.student_id LIMIT ?";
 
+        Connection conn = null;
         try {
             conn = DatabaseConnection.getConnection();
             if (conn == null || conn.isClosed()) {
                 throw new SQLException("Database connection failed or is closed.");
             }
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                int i = 1;
+                if (searching) {
+                    String searchPattern = "%" + searchTerm.trim() + "%";
+                    pstmt.setString(i++, searchPattern);
+                    pstmt.setString(i++, searchPattern);
+                    pstmt.setString(i++, searchPattern);
+                }
+                if (after != null) {
+                    pstmt.setString(i++, (String) after[0]);
+                }
+                pstmt.setInt(i, pageSize + 1);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        fetched.add(new Object[]{
+                                rs.getString("student_id"), rs.getString("name"),
+                                rs.getString("email")
+                        });
+                        keys.add(new Object[]{rs.getString("student_id")});
+                    }
+                }
+            }
+        } finally {
+            DatabaseConnection.release(conn);
+        }
+        return KeysetPage.of(fetched, keys, pageSize);
+    }
 
-            String sql = "SELECT DATEDIFF(CURRENT_DATE, due_date) AS overdue_days " +
-                    "FROM IssuedBooks WHERE book_id = ? AND student_id = ? AND status = 'Issued'";
+    /** Fine owed so far for the student's current issue of the book (0 if it isn't overdue or not issued). */
+    public static double calculateFine(String bookId, String studentId) throws SQLException {
+        return fineForOverdueDays(getOverdueDays(bookId, studentId));
+    }
+
+    /** Days the student's current issue of the book is past its due date; 0 if not overdue or not issued. */
+    public static int getOverdueDays(String bookId, String studentId) throws SQLException {
+        Connection conn = null;
+        String sql = "SELECT DATEDIFF(CURRENT_DATE, due_date) AS overdue_days " +
+                "FROM IssuedBooks WHERE book_id = ? AND student_id = ? AND status IN ('Issued', 'Overdue')";
+        try {
+            conn = DatabaseConnection.getConnection();
+            if (conn == null || conn.isClosed()) {
+                throw new SQLException("Database connection failed or is closed.");
+            }
             try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
                 pstmt.setString(1, bookId);
                 pstmt.setString(2, studentId);
                 try (ResultSet rs = pstmt.executeQuery()) {
                     if (rs.next()) {
-                        int overdueDays = rs.getInt("overdue_days");
-                        if (overdueDays > 0) {
-                            double finePerDay = getSettingValueDouble("SETTING_FINE_PER_DAY", 1.0);
-                            fine = overdueDays * finePerDay;
-                            JOptionPane.showMessageDialog(null, "Book has been overdue for " + overdueDays+ " days.", "Overdue", JOptionPane.INFORMATION_MESSAGE);
-                        }
+                        return Math.max(0, rs.getInt("overdue_days"));
                     }
                 }
             }
         } finally {
-            if (conn != null) {
-                try {
-                    if (!conn.isClosed()) {
-                        conn.close();
-                    }
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                }
-            }
+            DatabaseConnection.release(conn);
         }
+        return 0;
+    }
 
-        return fine;
+    public static double fineForOverdueDays(int overdueDays) {
+        return overdueDays > 0 ? overdueDays * SettingsRegistry.getInstance().snapshot().getFinePerDay() : 0.0;
     }
 
     private static LocalDate calculateDueDate(LocalDate issueDate) {
-        int borrowPeriod = getSettingValueInt("SETTING_BORROW_PERIOD", 14 );
+        int borrowPeriod = SettingsRegistry.getInstance().snapshot().getBorrowPeriodDays();
         return issueDate.plusDays(borrowPeriod);
     }
 
@@ -677,7 +730,7 @@ public class LibrarianService {
 
     public static void sendNotifications(String studentId, String message, String type) throws SQLException {
 
-            Connection conn = DatabaseConnection.getConnection();
+            Connection conn = null;
 
             // Send notification to the student
 //            String message = "Dear Student, \n\nThe book '" + title + "' (ID: " + bookId + ") is overdue since " + dueDate + ". Please return it as soon as possible.\n\nThank you.";
@@ -714,6 +767,21 @@ public class LibrarianService {
                 System.out.println("Notification sent to student ID " + studentId + ": " + message);
         }
 
+    /**
+     * Sends one "DueDate" notification per row of {@link #getOverdueBooks()}, all in a single batched
+     * transaction (see {@link NotificationService#sendAll}).
+     *
+     * @return the number of notifications sent.
+     */
+    public static int sendOverdueNotifications(List<Object[]> overdueBooks, ProgressListener progress) throws SQLException {
+        List<NotificationService.Notification> notifications = new ArrayList<>(overdueBooks.size());
+        for (Object[] overdueBook : overdueBooks) {
+            String message = "Dear Student, \n\nThe book '" + overdueBook[1] + "' (ID: " + overdueBook[0] + ") is overdue since " + overdueBook[3] + ". Please return it as soon as possible.\n\nThank you.";
+            notifications.add(new NotificationService.Notification(overdueBook[2].toString(), message, "DueDate"));
+        }
+        return NotificationService.sendAll(notifications, NotificationService.DEFAULT_CHUNK_SIZE, progress);
+    }
+
     public static boolean updateBook(String bookId, String title, String author, String category, int totalCopies, int available_copies) throws SQLException {
         Connection conn = null;
         try {
@@ -721,8 +789,10 @@ public class LibrarianService {
             if (conn == null || conn.isClosed()) {
                 throw new SQLException("Database connection failed or is closed.");
             }
+            conn.setAutoCommit(false); // Added copies go to waiting holds in the same transaction
 
             String sql = "UPDATE Books SET title = ?, author = ?, category = ?, total_copies = ?, available_copies = ? WHERE book_id = ?";
+            int rowsAffected;
             try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
                 pstmt.setString(1, title);
                 pstmt.setString(2, author);
@@ -730,11 +800,31 @@ public class LibrarianService {
                 pstmt.setInt(4, totalCopies);
                 pstmt.setInt(5, available_copies);
                 pstmt.setString(6, bookId);
-                int rowsAffected = pstmt.executeUpdate();
-                return rowsAffected > 0;
+                rowsAffected = pstmt.executeUpdate();
             }
+            List<HoldService.Allocation> allocations = rowsAffected > 0 ? HoldService.offerCopies(conn, bookId) : new ArrayList<>();
+            conn.commit();
+            if (rowsAffected > 0) {
+                CatalogIndex.getInstance().reloadBook(bookId); // Picks up avg_rating, which is not passed in, and copies taken by holds
+                HoldService.getInstance().armExpiries(allocations);
+            }
+            return rowsAffected > 0;
+        } catch (SQLException ex) {
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+            throw ex;
         } finally {
             if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
                 try {
                     if (!conn.isClosed()) {
                         conn.close();
@@ -773,6 +863,9 @@ public class LibrarianService {
             try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
                 pstmt.setString(1, bookId);
                 int rowsAffected = pstmt.executeUpdate();
+                if (rowsAffected > 0) {
+                    CatalogIndex.getInstance().remove(bookId);
+                }
                 return rowsAffected > 0;
             }
         } finally {
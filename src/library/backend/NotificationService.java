@@ -0,0 +1,96 @@
+package library.backend;
+
+import library.DatabaseConnection;
+
+import java.sql.*;
+import java.util.Collection;
+
+/**
+ * Writes notifications to the {@code Notifications} table in bulk.
+ * <p>
+ * {@link #sendAll} uses one connection and one transaction for the whole collection. Rows are added to a
+ * JDBC batch and sent every {@code chunkSize} rows; with {@code rewriteBatchedStatements} on (see
+ * {@link DatabaseConnection}) each chunk reaches MySQL as a single multi-row INSERT. Either every
+ * notification is stored or, if any chunk fails, none are.
+ */
+public class NotificationService {
+
+    public static final int DEFAULT_CHUNK_SIZE = Integer.getInteger("library.notifications.chunkSize", 500);
+
+    /** One notification to send. {@code type} must be one of the {@code Notifications.type} ENUM values. */
+    public static final class Notification {
+        private final String userId;
+        private final String message;
+        private final String type;
+
+        public Notification(String userId, String message, String type) {
+            this.userId = userId;
+            this.message = message;
+            this.type = type;
+        }
+
+        public String getUserId() { return userId; }
+        public String getMessage() { return message; }
+        public String getType() { return type; }
+    }
+
+    private NotificationService() {}
+
+    public static int sendAll(Collection<Notification> notifications) throws SQLException {
+        return sendAll(notifications, DEFAULT_CHUNK_SIZE, ProgressListener.NONE);
+    }
+
+    /**
+     * Inserts every notification in one transaction, flushing the batch every {@code chunkSize} rows and
+     * reporting progress after each flush.
+     *
+     * @return the number of notifications stored.
+     * @throws SQLException if any insert fails; nothing is stored in that case.
+     */
+    public static int sendAll(Collection<Notification> notifications, int chunkSize, ProgressListener progress) throws SQLException {
+        if (notifications.isEmpty()) { return 0; }
+        if (chunkSize <= 0) { throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize); }
+        String sql = "INSERT INTO Notifications (user_id, message, type, created_at) VALUES (?, ?, ?, CURRENT_DATE)";
+        int total = notifications.size();
+        int sent = 0;
+        Connection conn = null;
+        boolean autoCommitOriginal = true;
+        try {
+            conn = DatabaseConnection.getConnection();
+            autoCommitOriginal = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                int pending = 0;
+                for (Notification notification : notifications) {
+                    pstmt.setString(1, notification.getUserId());
+                    pstmt.setString(2, notification.getMessage());
+                    pstmt.setString(3, notification.getType());
+                    pstmt.addBatch();
+                    if (++pending == chunkSize) {
+                        pstmt.executeBatch();
+                        sent += pending;
+                        pending = 0;
+                        progress.progress(sent, total);
+                    }
+                }
+                if (pending > 0) {
+                    pstmt.executeBatch();
+                    sent += pending;
+                }
+            }
+            conn.commit();
+            progress.progress(sent, total);
+            return sent;
+        } catch (SQLException e) {
+            if (conn != null) {
+                try { conn.rollback(); } catch (SQLException ex) { System.err.println("Rollback failed: " + ex.getMessage()); }
+            }
+            throw e;
+        } finally {
+            if (conn != null) {
+                try { conn.setAutoCommit(autoCommitOriginal); } catch (SQLException e) { e.printStackTrace(); }
+            }
+            DatabaseConnection.release(conn);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package library.backend;
+
+/** Receives progress from long-running backend work. Called on the worker thread. */
+@FunctionalInterface
+public interface ProgressListener {
+    ProgressListener NONE = (done, total) -> {};
+
+    /** {@code done} of {@code total} units are finished; {@code total} is -1 if unknown. */
+    void progress(long done, long total);
+
+    /** True once whoever started the work no longer wants it; long work should check this and stop. */
+    default boolean isCancelled() { return false; }
+}
@@ -0,0 +1,198 @@
+package library.backend;
+
+import library.DatabaseConnection;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Student ratings and reviews, one per student and book ({@code RatingsReviews.unique_review}).
+ * <p>
+ * {@code Books} keeps a running {@code rating_sum} and {@code rating_count} next to {@code avg_rating}.
+ * {@link #submitReview} locks the book row, writes the review and applies the difference to both totals
+ * in one transaction, so {@code avg_rating} is always the exact mean of the book's reviews and reading it
+ * never aggregates {@code RatingsReviews}. Locking the book row first serialises reviews of the same book
+ * (and takes the same first lock as borrows and returns), so two students rating at once cannot lose
+ * each other's update. {@link #rebuild()} recomputes the totals from {@code RatingsReviews}, e.g. after
+ * loading reviews with plain SQL.
+ */
+public class RatingService {
+
+    public static final int MAX_REVIEW_LENGTH = 2000;
+
+    /** A student's review of a book, as {@link #getReview} returns it. */
+    public static final class Review {
+        private final int rating;
+        private final String text;
+        private final Timestamp reviewDate;
+
+        Review(int rating, String text, Timestamp reviewDate) {
+            this.rating = rating;
+            this.text = text;
+            this.reviewDate = reviewDate;
+        }
+
+        public int getRating() { return rating; }
+        public String getText() { return text; }
+        public Timestamp getReviewDate() { return reviewDate; }
+    }
+
+    private static final RatingService INSTANCE = new RatingService();
+
+    private RatingService() {}
+
+    public static RatingService getInstance() { return INSTANCE; }
+
+    /**
+     * Adds the student's review of the book, or replaces the one they already wrote.
+     *
+     * @return the book's new average rating.
+     */
+    public double submitReview(String studentId, String bookId, int rating, String text) throws SQLException, ReviewException {
+        if (rating < 1 || rating > 5) { throw new ReviewException("Rating must be between 1 and 5."); }
+        String review = text == null || text.trim().isEmpty() ? null : text.trim();
+        if (review != null && review.length() > MAX_REVIEW_LENGTH) {
+            throw new ReviewException("Review is too long (maximum " + MAX_REVIEW_LENGTH + " characters).");
+        }
+        String lockBookSql = "SELECT rating_sum, rating_count FROM Books WHERE book_id = ? FOR UPDATE";
+        String borrowedSql = "SELECT 1 FROM IssuedBooks WHERE book_id = ? AND student_id = ? AND status IN ('Issued', 'Overdue', 'Returned') LIMIT 1";
+        String previousSql = "SELECT rating FROM RatingsReviews WHERE book_id = ? AND student_id = ? FOR UPDATE";
+        String upsertSql = "INSERT INTO RatingsReviews (book_id, student_id, rating, review) VALUES (?, ?, ?, ?) " +
+                           "ON DUPLICATE KEY UPDATE rating = VALUES(rating), review = VALUES(review), review_date = CURRENT_TIMESTAMP";
+        // MySQL assigns left to right, so avg_rating sees the new sum and count
+        String totalsSql = "UPDATE Books SET rating_sum = rating_sum + ?, rating_count = rating_count + ?, " +
+                           "avg_rating = IF(rating_count = 0, 0, ROUND(rating_sum / rating_count, 2)) WHERE book_id = ?";
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            if (conn == null || conn.isClosed()) { throw new SQLException("Database connection failed."); }
+            conn.setAutoCommit(false);
+            long sum;
+            int count;
+            try (PreparedStatement pstmt = conn.prepareStatement(lockBookSql)) {
+                pstmt.setString(1, bookId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (!rs.next()) { throw new ReviewException("Book ID " + bookId + " not found."); }
+                    sum = rs.getLong("rating_sum");
+                    count = rs.getInt("rating_count");
+                }
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(borrowedSql)) {
+                pstmt.setString(1, bookId);
+                pstmt.setString(2, studentId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (!rs.next()) { throw new ReviewException("You can only review books you have borrowed."); }
+                }
+            }
+            Integer previous = null;
+            try (PreparedStatement pstmt = conn.prepareStatement(previousSql)) {
+                pstmt.setString(1, bookId);
+                pstmt.setString(2, studentId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) { previous = rs.getInt("rating"); }
+                }
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(upsertSql)) {
+                pstmt.setString(1, bookId);
+                pstmt.setString(2, studentId);
+                pstmt.setInt(3, rating);
+                pstmt.setString(4, review);
+                pstmt.executeUpdate();
+            }
+            int sumDelta = previous == null ? rating : rating - previous;
+            int countDelta = previous == null ? 1 : 0;
+            try (PreparedStatement pstmt = conn.prepareStatement(totalsSql)) {
+                pstmt.setInt(1, sumDelta);
+                pstmt.setInt(2, countDelta);
+                pstmt.setString(3, bookId);
+                pstmt.executeUpdate();
+            }
+            conn.commit();
+            double average = average(sum + sumDelta, count + countDelta);
+            CatalogIndex.getInstance().setAvgRating(bookId, average);
+            return average;
+        } catch (SQLException | ReviewException ex) {
+            if (conn != null) { try { conn.rollback(); } catch (SQLException e) { e.printStackTrace(); } }
+            throw ex;
+        } finally {
+            if (conn != null) { try { conn.setAutoCommit(true); } catch (SQLException e) { e.printStackTrace(); } }
+            DatabaseConnection.release(conn);
+        }
+    }
+
+    /** The student's review of the book, or null if they have not written one. */
+    public Review getReview(String studentId, String bookId) throws SQLException {
+        String sql = "SELECT rating, review, review_date FROM RatingsReviews WHERE book_id = ? AND student_id = ?";
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            if (conn == null || conn.isClosed()) { throw new SQLException("Database connection failed."); }
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, bookId);
+                pstmt.setString(2, studentId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    return rs.next() ? new Review(rs.getInt("rating"), rs.getString("review"), rs.getTimestamp("review_date")) : null;
+                }
+            }
+        } finally {
+            DatabaseConnection.release(conn);
+        }
+    }
+
+    /** A book's reviews, newest first: student ID, rating, review text, review date. */
+    public List<Object[]> getReviews(String bookId, int limit) throws SQLException {
+        List<Object[]> reviews = new ArrayList<>();
+        String sql = "SELECT student_id, rating, review, review_date FROM RatingsReviews WHERE book_id = ? ORDER BY review_date DESC LIMIT ?";
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            if (conn == null || conn.isClosed()) { throw new SQLException("Database connection failed."); }
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, bookId);
+                pstmt.setInt(2, limit);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        reviews.add(new Object[]{rs.getString("student_id"), rs.getInt("rating"), rs.getString("review"), rs.getTimestamp("review_date")});
+                    }
+                }
+            }
+        } finally {
+            DatabaseConnection.release(conn);
+        }
+        return reviews;
+    }
+
+    /** The average as {@code Books.avg_rating} stores it (two decimals, 0 for no reviews). */
+    static double average(long sum, int count) {
+        if (count <= 0) { return 0; }
+        return BigDecimal.valueOf(sum).divide(BigDecimal.valueOf(count), 2, RoundingMode.HALF_UP).doubleValue();
+    }
+
+    /** Recomputes every book's rating totals and average from {@code RatingsReviews}. */
+    public static void rebuild() throws SQLException {
+        String sql = "UPDATE Books b LEFT JOIN (SELECT book_id, SUM(rating) AS total, COUNT(*) AS reviews FROM RatingsReviews GROUP BY book_id) r " +
+                     "ON r.book_id = b.book_id " +
+                     "SET b.rating_sum = COALESCE(r.total, 0), b.rating_count = COALESCE(r.reviews, 0), " +
+                     "b.avg_rating = IF(r.reviews IS NULL, 0, ROUND(r.total / r.reviews, 2))";
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            if (conn == null || conn.isClosed()) { throw new SQLException("Database connection failed."); }
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate(sql);
+            }
+            System.out.println("Book rating totals rebuilt from RatingsReviews.");
+        } finally {
+            DatabaseConnection.release(conn);
+        }
+    }
+}
+
+class ReviewException extends Exception {
+    public ReviewException(String message) {
+        super(message);
+    }
+}
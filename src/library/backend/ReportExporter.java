@@ -0,0 +1,290 @@
+package library.backend;
+
+import library.DatabaseConnection;
+import library.MetricsRegistry;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams admin reports from the database to a file in constant memory.
+ * <p>
+ * The report query runs on a forward-only, read-only statement with a fetch size of
+ * {@code library.export.fetchSize} rows (default 1000). With {@code useCursorFetch} on (see
+ * {@link DatabaseConnection}) MySQL keeps the result in a server-side cursor and sends it that many rows
+ * at a time, so a loan history of millions of rows never has to fit in the client; with it off, the
+ * driver streams the result row by row instead, which is just as lean but holds the connection's
+ * network stream until the last row is read (a cancelled streaming export therefore cancels its query
+ * before closing the result). Each row is written
+ * as soon as it is read, either as CSV (RFC 4180, UTF-8, header row, gzip-compressed if the file name
+ * ends in {@code .gz}) or as a {@link ColumnarFile}.
+ * <p>
+ * The file is written under a temporary name and moved into place when complete, so a failed or
+ * cancelled export never leaves a partial file behind. Progress is reported every
+ * {@value #PROGRESS_INTERVAL} rows, and the export stops with a {@link CancellationException} when
+ * {@link ProgressListener#isCancelled()} turns true.
+ */
+public final class ReportExporter {
+
+    private static final int FETCH_SIZE = Math.max(1, Integer.getInteger("library.export.fetchSize", 1000));
+    private static final int PROGRESS_INTERVAL = 10_000;
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final MetricsRegistry.Counter ROWS = MetricsRegistry.getInstance().counter("export.rows");
+
+    /** The reports that can be exported. Those with a parameter take a student ID. */
+    public enum Report {
+        AVAILABLE_BOOKS("Available books", AdminService.AVAILABLE_BOOKS_REPORT_SQL, false),
+        BORROWED_BOOKS("Borrowed books", AdminService.BORROWED_BOOKS_REPORT_SQL, false),
+        UNPAID_FINES("Unpaid fines", AdminService.UNPAID_FINES_SQL + "ORDER BY f.fine_date DESC, f.student_id", false),
+        FINES_BY_STUDENT("Fines of one student", AdminService.FINE_REPORT_BY_STUDENT_SQL, true),
+        LOAN_HISTORY("Loan history (every loan, with its fine)",
+                "SELECT i.issue_id, i.book_id, b.title AS book_title, i.student_id, s.name AS student_name, i.issue_date, i.due_date, " +
+                "i.return_date, i.status, i.reissue_count, f.fine_amount, f.status AS fine_status " +
+                "FROM IssuedBooks i LEFT JOIN Books b ON i.book_id = b.book_id LEFT JOIN Students s ON i.student_id = s.student_id " +
+                "LEFT JOIN Fines f ON f.issue_id = i.issue_id ORDER BY i.issue_id", false); // Primary key order: no sort on the server
+
+        private final String title;
+        private final String sql;
+        private final boolean needsStudentId;
+
+        Report(String title, String sql, boolean needsStudentId) {
+            this.title = title;
+            this.sql = sql;
+            this.needsStudentId = needsStudentId;
+        }
+
+        public boolean needsStudentId() { return needsStudentId; }
+
+        @Override public String toString() { return title; }
+    }
+
+    public enum Format {
+        CSV, COLUMNAR;
+
+        /** COLUMNAR for {@code .lcol} files, CSV for anything else. */
+        public static Format of(Path file) {
+            return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".lcol") ? COLUMNAR : CSV;
+        }
+    }
+
+    /** What an export wrote. */
+    public static final class Result {
+        private final Path file;
+        private final long rows;
+        private final long bytes;
+        private final long millis;
+
+        Result(Path file, long rows, long bytes, long millis) {
+            this.file = file;
+            this.rows = rows;
+            this.bytes = bytes;
+            this.millis = millis;
+        }
+
+        public Path getFile() { return file; }
+        public long getRows() { return rows; }
+        public long getBytes() { return bytes; }
+        public long getMillis() { return millis; }
+
+        @Override public String toString() {
+            return String.format(Locale.ROOT, "%d row(s), %.1f MB in %.1f s to %s", rows, bytes / 1e6, millis / 1000.0, file);
+        }
+    }
+
+    private ReportExporter() {}
+
+    /**
+     * Writes {@code report} to {@code file}, replacing it if it exists.
+     *
+     * @param studentId the student of {@link Report#FINES_BY_STUDENT}, or an optional filter for
+     *                  {@link Report#UNPAID_FINES}; ignored by the other reports.
+     * @throws CancellationException if {@code progress} reports cancellation; nothing is written then.
+     */
+    public static Result export(Report report, String studentId, Path file, Format format, ProgressListener progress)
+            throws SQLException, IOException {
+        String sql = report.sql;
+        boolean filtering = studentId != null && !studentId.trim().isEmpty();
+        if (report == Report.UNPAID_FINES && filtering) {
+            sql = AdminService.UNPAID_FINES_SQL + "AND f.student_id = ? ORDER BY f.fine_date DESC, f.student_id";
+        } else if (report.needsStudentId && !filtering) {
+            throw new IllegalArgumentException("The " + report + " report needs a student ID.");
+        }
+        long started = System.nanoTime();
+        Path target = file.toAbsolutePath();
+        Path temporary = target.resolveSibling(target.getFileName() + ".part");
+        Connection conn = null;
+        boolean done = false;
+        try {
+            conn = DatabaseConnection.getConnection();
+            if (conn == null || conn.isClosed()) { throw new SQLException("Database connection failed or is closed."); }
+            long rows;
+            try (PreparedStatement pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                pstmt.setFetchSize(DatabaseConnection.usesCursorFetch() ? FETCH_SIZE : Integer.MIN_VALUE);
+                if (filtering && (report.needsStudentId || report == Report.UNPAID_FINES)) { pstmt.setString(1, studentId.trim()); }
+                try (ResultSet rs = pstmt.executeQuery();
+                     OutputStream out = new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16)) {
+                    try {
+                        rows = format == Format.COLUMNAR ? writeColumnar(rs, out, progress) : writeCsv(rs, file, out, progress);
+                    } catch (CancellationException e) {
+                        // A streamed result would otherwise be read to the end by rs.close(); a cursor just closes
+                        if (!DatabaseConnection.usesCursorFetch()) { cancelQuietly(pstmt); }
+                        throw e;
+                    }
+                }
+            }
+            ROWS.add(rows % PROGRESS_INTERVAL);
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            done = true;
+            progress.progress(rows, rows);
+            Result result = new Result(target, rows, Files.size(target), (System.nanoTime() - started) / 1_000_000);
+            System.out.println("Exported " + report + ": " + result);
+            AuditLog.getInstance().record(AuditLog.EXPORT_REPORT, report.name() + (filtering ? " " + studentId.trim() : "") + ": " + result);
+            return result;
+        } finally {
+            DatabaseConnection.release(conn);
+            if (!done) {
+                try { Files.deleteIfExists(temporary); } catch (IOException e) { System.err.println("Could not delete " + temporary + ": " + e.getMessage()); }
+            }
+        }
+    }
+
+    private static long writeCsv(ResultSet rs, Path file, OutputStream out, ProgressListener progress) throws SQLException, IOException {
+        boolean gzip = file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".gz");
+        Writer csv = new BufferedWriter(new OutputStreamWriter(gzip ? new GZIPOutputStream(out, 1 << 16) : out, StandardCharsets.UTF_8), 1 << 16);
+        ResultSetMetaData meta = rs.getMetaData();
+        int columns = meta.getColumnCount();
+        String[] row = new String[columns];
+        for (int c = 0; c < columns; c++) { row[c] = meta.getColumnLabel(c + 1); }
+        writeCsvRow(csv, row);
+        long rows = 0;
+        while (rs.next()) {
+            for (int c = 0; c < columns; c++) { row[c] = text(rs.getObject(c + 1)); }
+            writeCsvRow(csv, row);
+            rows = advance(rows, progress);
+        }
+        csv.close(); // Finishes the gzip trailer; the caller's close of out is then a no-op
+        return rows;
+    }
+
+    private static long writeColumnar(ResultSet rs, OutputStream out, ProgressListener progress) throws SQLException, IOException {
+        ResultSetMetaData meta = rs.getMetaData();
+        int columns = meta.getColumnCount();
+        String[] names = new String[columns];
+        ColumnarFile.Type[] types = new ColumnarFile.Type[columns];
+        int[] scales = new int[columns];
+        for (int c = 0; c < columns; c++) {
+            names[c] = meta.getColumnLabel(c + 1);
+            types[c] = columnType(meta.getColumnType(c + 1));
+            scales[c] = types[c] == ColumnarFile.Type.DECIMAL ? Math.max(0, Math.min(meta.getScale(c + 1), 127)) : 0;
+        }
+        Object[] row = new Object[columns];
+        long rows = 0;
+        try (ColumnarFile.Builder builder = new ColumnarFile.Builder(out, names, types, scales)) {
+            while (rs.next()) {
+                for (int c = 0; c < columns; c++) { row[c] = value(rs, c + 1, types[c]); }
+                builder.addRow(row);
+                rows = advance(rows, progress);
+            }
+        }
+        return rows;
+    }
+
+    private static void cancelQuietly(Statement statement) {
+        try {
+            statement.cancel();
+        } catch (SQLException e) {
+            System.err.println("Could not cancel the export query: " + e.getMessage());
+        }
+    }
+
+    /** Counts a row, reporting progress and checking for cancellation every {@value #PROGRESS_INTERVAL} rows. */
+    private static long advance(long rows, ProgressListener progress) {
+        rows++;
+        if (rows % PROGRESS_INTERVAL == 0) {
+            ROWS.add(PROGRESS_INTERVAL);
+            if (progress.isCancelled()) { throw new CancellationException("Export cancelled after " + rows + " rows."); }
+            progress.progress(rows, -1);
+        }
+        return rows;
+    }
+
+    private static ColumnarFile.Type columnType(int sqlType) {
+        switch (sqlType) {
+            case Types.TINYINT: case Types.SMALLINT: case Types.INTEGER: case Types.BIGINT: case Types.BIT: case Types.BOOLEAN:
+                return ColumnarFile.Type.LONG;
+            case Types.DECIMAL: case Types.NUMERIC:
+                return ColumnarFile.Type.DECIMAL;
+            case Types.REAL: case Types.FLOAT: case Types.DOUBLE:
+                return ColumnarFile.Type.DOUBLE;
+            case Types.DATE:
+                return ColumnarFile.Type.DATE;
+            case Types.TIMESTAMP:
+                return ColumnarFile.Type.TIMESTAMP;
+            default:
+                return ColumnarFile.Type.STRING;
+        }
+    }
+
+    private static Object value(ResultSet rs, int column, ColumnarFile.Type type) throws SQLException {
+        Object value;
+        switch (type) {
+            case LONG: value = rs.getLong(column); break;
+            case DECIMAL: return rs.getBigDecimal(column); // null stays null
+            case DOUBLE: value = rs.getDouble(column); break;
+            case DATE: return rs.getObject(column, LocalDate.class);
+            case TIMESTAMP: return rs.getObject(column, LocalDateTime.class);
+            default: return rs.getString(column);
+        }
+        return rs.wasNull() ? null : value;
+    }
+
+    // --- CSV, shared with ColumnarFile ---
+
+    private static String text(Object value) {
+        if (value == null) { return null; }
+        if (value instanceof BigDecimal) { return ((BigDecimal) value).toPlainString(); }
+        if (value instanceof Timestamp) { return formatTimestamp(((Timestamp) value).toLocalDateTime()); }
+        if (value instanceof LocalDateTime) { return formatTimestamp((LocalDateTime) value); }
+        return value.toString(); // Dates print as yyyy-MM-dd
+    }
+
+    static String formatTimestamp(LocalDateTime value) { return value.format(TIMESTAMP_FORMAT); }
+
+    /** Writes one CSV record; null is an empty field, fields with commas, quotes or line breaks are quoted. */
+    static void writeCsvRow(Writer out, String[] fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) { out.write(','); }
+            String field = fields[i];
+            if (field == null) { continue; }
+            boolean quote = false;
+            for (int k = 0; k < field.length() && !quote; k++) {
+                char ch = field.charAt(k);
+                quote = ch == ',' || ch == '"' || ch == '\n' || ch == '\r';
+            }
+            if (quote) {
+                out.write('"');
+                out.write(field.replace("\"", "\"\""));
+                out.write('"');
+            } else {
+                out.write(field);
+            }
+        }
+        out.write("\r\n");
+    }
+}
@@ -0,0 +1,186 @@
+package library.backend;
+
+import library.DatabaseConnection;
+
+import java.sql.*;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * In-memory view of the {@code Settings} table.
+ * <p>
+ * Settings are loaded once into an immutable {@link Snapshot}; lookups are plain memory reads.
+ * The snapshot is replaced when {@link #refresh()} sees different values, either from the
+ * background poll started by {@link #start(long)} or after {@link #invalidate()} /
+ * {@link #update(String, String)}. Listeners are told whenever a new snapshot is published.
+ */
+public class SettingsRegistry {
+
+    // Canonical keys as stored in the Settings table
+    public static final String BORROW_PERIOD_DAYS = "DefaultBorrowingPeriodDays";
+    public static final String FINE_PER_DAY = "FinePerDay";
+    public static final String MAX_REISSUES = "MaxReissuesAllowed";
+
+    public static final int DEFAULT_BORROW_PERIOD_DAYS = 14;
+    public static final double DEFAULT_FINE_PER_DAY = 1.0;
+    public static final int DEFAULT_MAX_REISSUES = 2;
+
+    /** Immutable set of setting values with typed accessors. */
+    public static final class Snapshot {
+        private final Map<String, String> values;
+        private final long version;
+
+        private Snapshot(Map<String, String> values, long version) {
+            this.values = Collections.unmodifiableMap(values);
+            this.version = version;
+        }
+
+        public long getVersion() { return version; }
+        public int getBorrowPeriodDays() { return getInt(BORROW_PERIOD_DAYS, DEFAULT_BORROW_PERIOD_DAYS); }
+        public double getFinePerDay() { return getDouble(FINE_PER_DAY, DEFAULT_FINE_PER_DAY); }
+        public int getMaxReissues() { return getInt(MAX_REISSUES, DEFAULT_MAX_REISSUES); }
+
+        public String getString(String key, String defaultValue) {
+            String value = values.get(canonicalKey(key));
+            return value != null ? value : defaultValue;
+        }
+
+        public int getInt(String key, int defaultValue) {
+            String value = values.get(canonicalKey(key));
+            if (value == null) { return defaultValue; }
+            try { return Integer.parseInt(value.trim()); }
+            catch (NumberFormatException e) { System.err.println("Invalid int format for setting '" + key + "'. Using default."); return defaultValue; }
+        }
+
+        public double getDouble(String key, double defaultValue) {
+            String value = values.get(canonicalKey(key));
+            if (value == null) { return defaultValue; }
+            try { return Double.parseDouble(value.trim()); }
+            catch (NumberFormatException e) { System.err.println("Invalid double format for setting '" + key + "'. Using default."); return defaultValue; }
+        }
+
+        public Map<String, String> asMap() { return values; }
+    }
+
+    private static final SettingsRegistry INSTANCE = new SettingsRegistry();
+
+    private volatile Snapshot current = new Snapshot(new HashMap<>(), 0);
+    private volatile boolean stale = true;
+    private final CopyOnWriteArrayList<Consumer<Snapshot>> listeners = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService poller;
+
+    private SettingsRegistry() {}
+
+    public static SettingsRegistry getInstance() { return INSTANCE; }
+
+    /**
+     * Maps legacy key spellings used in older code (e.g. {@code SETTING_FINE_PER_DAY}) onto
+     * the keys actually stored in the table.
+     */
+    public static String canonicalKey(String key) {
+        if (key == null) { return null; }
+        switch (key) {
+            case "SETTING_FINE_PER_DAY":
+            case "SETTING_FINE_RATE":
+                return FINE_PER_DAY;
+            case "SETTING_BORROW_PERIOD":
+                return BORROW_PERIOD_DAYS;
+            case "SETTING_MAX_REISSUES":
+                return MAX_REISSUES;
+            default:
+                return key;
+        }
+    }
+
+    /** Returns the current snapshot, reloading first if it has never been loaded or was invalidated. */
+    public Snapshot snapshot() {
+        if (stale) { refresh(); }
+        return current;
+    }
+
+    /** Loads the settings now and re-checks the table every {@code pollSeconds} (0 disables polling). */
+    public synchronized void start(long pollSeconds) {
+        refresh();
+        if (pollSeconds > 0 && poller == null) {
+            poller = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "settings-poller");
+                t.setDaemon(true);
+                return t;
+            });
+            poller.scheduleWithFixedDelay(this::refresh, pollSeconds, pollSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    public synchronized void stop() {
+        if (poller != null) { poller.shutdownNow(); poller = null; }
+    }
+
+    /** Marks the snapshot stale so the next {@link #snapshot()} call reloads it. */
+    public void invalidate() { stale = true; }
+
+    public void addListener(Consumer<Snapshot> listener) { listeners.add(listener); }
+    public void removeListener(Consumer<Snapshot> listener) { listeners.remove(listener); }
+
+    /**
+     * Reloads the Settings table and publishes a new snapshot if any value changed.
+     *
+     * @return true if a new snapshot was published.
+     */
+    public boolean refresh() {
+        Map<String, String> loaded = new HashMap<>();
+        String sql = "SELECT setting_key, setting_value FROM Settings";
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            try (PreparedStatement pstmt = conn.prepareStatement(sql); ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    String value = rs.getString("setting_value");
+                    if (value != null) { loaded.put(rs.getString("setting_key"), value); }
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("DB Error loading settings. Keeping previous values: " + e.getMessage());
+            stale = false; // Don't retry on every lookup; the poller or the next invalidate() will
+            return false;
+        } finally {
+            DatabaseConnection.release(conn);
+        }
+
+        Snapshot published;
+        synchronized (this) {
+            stale = false;
+            if (loaded.equals(current.values)) { return false; }
+            published = new Snapshot(loaded, current.version + 1);
+            current = published;
+        }
+        for (Consumer<Snapshot> listener : listeners) {
+            try { listener.accept(published); }
+            catch (RuntimeException e) { System.err.println("Settings listener failed: " + e.getMessage()); }
+        }
+        return true;
+    }
+
+    /** Writes a setting and publishes the new value immediately. */
+    public void update(String key, String value) throws SQLException {
+        String sql = "INSERT INTO Settings (setting_key, setting_value) VALUES (?, ?) " +
+                     "ON DUPLICATE KEY UPDATE setting_value = VALUES(setting_value)";
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, canonicalKey(key));
+                pstmt.setString(2, value);
+                pstmt.executeUpdate();
+            }
+        } finally {
+            DatabaseConnection.release(conn);
+        }
+        refresh();
+    }
+}
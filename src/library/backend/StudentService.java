@@ -11,24 +11,39 @@ import java.util.List;
  */
 public class StudentService {
 
-    // Constants for Settings keys
-    private static final String SETTING_BORROW_PERIOD = "DefaultBorrowingPeriodDays";
-    private static final String SETTING_FINE_RATE = "FinePerDay";
-    private static final String SETTING_MAX_REISSUES = "MaxReissuesAllowed";
-    private static final int DEFAULT_BORROW_PERIOD = 14;
-    private static final double DEFAULT_FINE_RATE = 1.0;
-    private static final int DEFAULT_MAX_REISSUES = 2;
-
     // --- Methods like getAvailableBooks, getBorrowedBooks, getNotifications ---
     public List<Object[]> getAvailableBooks(String searchTerm) throws SQLException {
+        return getAvailableBooks(searchTerm, 0);
+    }
+
+    /** Available books matching {@code searchTerm} in title order, at most {@code limit} of them (0 = all). */
+    public List<Object[]> getAvailableBooks(String searchTerm, int limit) throws SQLException {
+        return searchBooks(searchTerm, limit, true);
+    }
+
+    /** Like {@link #getAvailableBooks(String, int)}; with {@code availableOnly} false, books with no free copy (which can be held) are included. */
+    public List<Object[]> searchBooks(String searchTerm, int limit, boolean availableOnly) throws SQLException {
         List<Object[]> books = new ArrayList<>();
+        CatalogIndex index = CatalogIndex.getInstance();
+        if (index.isReady()) {
+            for (CatalogIndex.BookRecord book : index.search(searchTerm, availableOnly, limit)) {
+                books.add(new Object[]{
+                    book.getBookId(), book.getTitle(), book.getAuthor(),
+                    book.getCategory(), book.getAvgRating(), book.getAvailableCopies()
+                });
+            }
+            return books;
+        }
+
+        // Index not loaded yet: fall back to scanning the table
         String sql = "SELECT book_id, title, author, category, avg_rating, available_copies " +
-                     "FROM Books WHERE available_copies > 0 ";
+                     "FROM Books WHERE " + (availableOnly ? "available_copies > 0 " : "1 = 1 ");
         boolean searching = searchTerm != null && !searchTerm.trim().isEmpty();
         if (searching) {
             sql += "AND (LOWER(title) LIKE LOWER(?) OR LOWER(author) LIKE LOWER(?) OR LOWER(category) LIKE LOWER(?))";
         }
         sql += " ORDER BY title";
+        if (limit > 0) { sql += " LIMIT " + limit; }
 
         Connection conn = null;
         try {
@@ -53,6 +68,8 @@ public class StudentService {
         } catch (SQLException e) {
             System.err.println("Error fetching available books: " + e.getMessage());
             throw e; 
+        } finally {
+            DatabaseConnection.release(conn);
         }
         return books;
 
@@ -61,7 +78,8 @@ public class StudentService {
      public List<Object[]> getBorrowedBooks(String studentId) throws SQLException {
         List<Object[]> borrowedBooks = new ArrayList<>();
         
-         String sql = "SELECT i.issue_id, i.book_id, b.title, i.issue_date, i.due_date, i.return_date, i.status, i.reissue_count, f.fine_amount " +
+         String sql = "SELECT i.issue_id, i.book_id, b.title, i.issue_date, COALESCE(i.due_date, DATE(i.hold_expires_at)) AS due_date, " + // Active holds: collect by
+                     "i.return_date, i.status, i.reissue_count, f.fine_amount " +
                      "FROM IssuedBooks i JOIN Books b ON i.book_id = b.book_id " +
                      "LEFT JOIN Fines f ON i.issue_id = f.issue_id AND f.status = 'Unpaid' " +
                      "WHERE i.student_id = ? ORDER BY i.status ASC, i.due_date ASC";
@@ -86,7 +104,7 @@ public class StudentService {
                 }
             }
         } finally {
-            // Manage connection if necessary
+            DatabaseConnection.release(conn);
         }
         return borrowedBooks;
     }
@@ -118,7 +136,7 @@ public class StudentService {
                 }
             }
         } finally {
-            // Manage connection if necessary
+            DatabaseConnection.release(conn);
         }
         return notifications;
     }
@@ -126,72 +144,27 @@ public class StudentService {
     // --- Action Methods (borrowBook, returnBook, etc.) ---
     // (Ensure they use DatabaseConnection correctly and throw the public exceptions)
      public String borrowBook(String studentId, String bookId) throws SQLException, BorrowException {
-        Connection conn = null;
-        LocalDate dueDate = null;
-        try {
-            conn = DatabaseConnection.getConnection(); // Should resolve now
-            if (conn == null || conn.isClosed()) { throw new SQLException("Database connection failed or is closed."); }
-             conn.setAutoCommit(false); // Start transaction
-
-            // 1. Check availability (lock row)
-            String checkSql = "SELECT available_copies FROM Books WHERE book_id = ? FOR UPDATE";
-            int availableCopies = 0;
-            try (PreparedStatement checkPstmt = conn.prepareStatement(checkSql)) {
-                checkPstmt.setString(1, bookId);
-                try (ResultSet rs = checkPstmt.executeQuery()) {
-                    if (rs.next()) {
-                        availableCopies = rs.getInt("available_copies");
-                    } else { throw new SQLException("Book ID " + bookId + " not found."); }
-                }
-            }
-
-            if (availableCopies <= 0) {
-                conn.rollback(); // Rollback before throwing custom exception
-                throw new BorrowException("Sorry, this book is no longer available.");
-            }
-
-            // 2. Decrement available_copies
-            String updateBookSql = "UPDATE Books SET available_copies = available_copies - 1 WHERE book_id = ? AND available_copies > 0";
-            try (PreparedStatement updateBookPstmt = conn.prepareStatement(updateBookSql)) {
-                updateBookPstmt.setString(1, bookId);
-                if (updateBookPstmt.executeUpdate() == 0) { throw new SQLException("Failed to update book copies (concurrent update?)."); }
-            }
-
-            // 3. Insert into IssuedBooks
-            String insertIssueSql = "INSERT INTO IssuedBooks (student_id, book_id, issue_date, due_date, status, reissue_count) VALUES (?, ?, ?, ?, 'Issued', 0)";
-            LocalDate issueDate = LocalDate.now();
-            dueDate = calculateDueDate(issueDate); // Calculate due date
-            try (PreparedStatement insertIssuePstmt = conn.prepareStatement(insertIssueSql)) {
-                insertIssuePstmt.setString(1, studentId);
-                insertIssuePstmt.setString(2, bookId);
-                insertIssuePstmt.setDate(3, Date.valueOf(issueDate));
-                insertIssuePstmt.setDate(4, Date.valueOf(dueDate));
-                if (insertIssuePstmt.executeUpdate() == 0) { throw new SQLException("Failed to insert book issue record."); }
-            }
-
-            conn.commit(); // Commit transaction
-            return "Book borrowed successfully! Due Date: " + dueDate;
-
-        } catch (SQLException | BorrowException ex) {
-            if (conn != null) { try { if (!conn.isClosed()) { conn.rollback(); } } catch (SQLException rollbackEx) { System.err.println("CRITICAL: Error during transaction rollback: " + rollbackEx.getMessage()); } }
-            throw ex; // Re-throw
-        } finally {
-            if (conn != null) { try { if (!conn.isClosed()) { conn.setAutoCommit(true); } } catch (SQLException closeEx) { System.err.println("Error resetting auto-commit: " + closeEx.getMessage()); } }
-        }
+        // Conditional decrement + insert, retried on deadlock; see BorrowEngine
+        LocalDate dueDate = BorrowEngine.borrow(studentId, bookId, SettingsRegistry.getInstance().snapshot().getBorrowPeriodDays());
+        return "Book borrowed successfully! Due Date: " + dueDate;
      }
 
      public String returnBook(int issueId, String bookId, String studentId, LocalDate dueDate) throws SQLException, ReturnException {
          Connection conn = null;
         String fineMessage = "";
+        LocalDate returnDate = LocalDate.now();
+        double fineAmount = 0;
+        if (dueDate != null && returnDate.isAfter(dueDate)) {
+            fineAmount = calculateFine(dueDate, returnDate);
+        }
         try {
             conn = DatabaseConnection.getConnection(); // Should resolve now
             if (conn == null || conn.isClosed()) { throw new SQLException("Database connection failed or is closed."); }
             conn.setAutoCommit(false); // Start transaction
 
-            LocalDate returnDate = LocalDate.now();
 
             // 1. Update IssuedBooks status
-            String updateIssueSql = "UPDATE IssuedBooks SET status = 'Returned', return_date = ? WHERE issue_id = ? AND status != 'Returned'"; // Prevent double returns
+            String updateIssueSql = "UPDATE IssuedBooks SET status = 'Returned', return_date = ? WHERE issue_id = ? AND status IN ('Issued', 'Overdue')"; // Prevent double returns; holds are cancelled, not returned
             try (PreparedStatement updateIssuePstmt = conn.prepareStatement(updateIssueSql)) {
                 updateIssuePstmt.setDate(1, Date.valueOf(returnDate));
                 updateIssuePstmt.setInt(2, issueId);
@@ -209,18 +182,20 @@ public class StudentService {
                  }
             }
 
-            // 3. Calculate and record fine if applicable
-            double fineAmount = 0;
-            if (dueDate != null && returnDate.isAfter(dueDate)) {
-                fineAmount = calculateFine(dueDate, returnDate);
-            }
+            // 2b. Hand the copy to the next student waiting for it, if any
+            List<HoldService.Allocation> allocations = HoldService.offerCopies(conn, bookId);
 
+            // 3. Record fine if applicable
             if (fineAmount > 0) {
                 upsertFine(conn, issueId, studentId, fineAmount, returnDate); // Use helper
                 fineMessage = String.format(" A fine of %.2f has been applied.", fineAmount);
             }
 
             conn.commit(); // Commit transaction
+            CatalogIndex.getInstance().adjustAvailableCopies(bookId, 1);
+            HoldService.getInstance().allocated(allocations);
+            AuditLog.getInstance().record(AuditLog.RETURN_BOOK, "Book " + bookId + " from student " + studentId + " (issue " + issueId + ")"
+                    + (fineAmount > 0 ? String.format(", fine %.2f", fineAmount) : ""));
             return "Book returned successfully!" + fineMessage;
 
         } catch (SQLException | ReturnException ex) {
@@ -228,6 +203,7 @@ public class StudentService {
             throw ex; // Re-throw
         } finally {
             if (conn != null) { try { if (!conn.isClosed()) { conn.setAutoCommit(true); } } catch (SQLException e) { e.printStackTrace(); } }
+            DatabaseConnection.release(conn);
         }
      }
 
@@ -236,7 +212,7 @@ public class StudentService {
         if (hasUnpaidFine(issueId)) {
             throw new ReissueException("Cannot reissue book with an outstanding fine.");
         }
-        int maxReissues = getSettingValueInt(SETTING_MAX_REISSUES, DEFAULT_MAX_REISSUES);
+        int maxReissues = SettingsRegistry.getInstance().snapshot().getMaxReissues();
         if (reissueCount >= maxReissues) {
             throw new ReissueException("Maximum reissue limit (" + maxReissues + ") reached.");
         }
@@ -263,6 +239,8 @@ public class StudentService {
             }
         } catch (SQLException | ReissueException ex) {
             throw ex; // Re-throw
+        } finally {
+            DatabaseConnection.release(conn);
         }
      }
 
@@ -288,20 +266,22 @@ public class StudentService {
                 }
             }
         } finally {
-            // Manage connection if necessary
+            DatabaseConnection.release(conn);
         }
         return fineDetails;
     }
 
      public int markFinesPaid(List<Integer> fineIds) throws SQLException {
          if (fineIds == null || fineIds.isEmpty()) { return 0; }
-         StringBuilder sqlBuilder = new StringBuilder("UPDATE Fines SET status = 'Paid' WHERE fine_id IN (");
+         StringBuilder placeholders = new StringBuilder("(");
         for (int i = 0; i < fineIds.size(); i++) {
-            sqlBuilder.append("?");
-            if (i < fineIds.size() - 1) { sqlBuilder.append(","); }
+            placeholders.append("?");
+            if (i < fineIds.size() - 1) { placeholders.append(","); }
         }
-        sqlBuilder.append(")");
-        String sql = sqlBuilder.toString();
+        placeholders.append(")");
+        String sql = "UPDATE Fines SET status = 'Paid' WHERE fine_id IN " + placeholders;
+        String lockSql = "SELECT f.student_id, f.fine_amount, f.fine_date, f.status, i.status AS loan_status " +
+                         "FROM Fines f LEFT JOIN IssuedBooks i ON f.issue_id = i.issue_id WHERE f.fine_id IN " + placeholders + " FOR UPDATE OF f"; // Only the fines: returns lock the loan before its fine
 
         Connection conn = null;
         int updatedCount = 0;
@@ -310,6 +290,26 @@ public class StudentService {
             if (conn == null || conn.isClosed()) { throw new SQLException("Database connection failed or is closed."); }
              conn.setAutoCommit(false); // Use transaction
 
+            // Lock the fines and note which are still unpaid; only those move into the rollups' paid column
+            FineLedger ledger = new FineLedger();
+            try (PreparedStatement lockPstmt = conn.prepareStatement(lockSql)) {
+                for (int i = 0; i < fineIds.size(); i++) {
+                    lockPstmt.setInt(i + 1, fineIds.get(i));
+                }
+                try (ResultSet rs = lockPstmt.executeQuery()) {
+                    while (rs.next()) {
+                        // A fine still accruing would be billed again on return, so it can only be paid once the book is back
+                        String loanStatus = rs.getString("loan_status");
+                        if ("Issued".equals(loanStatus) || "Overdue".equals(loanStatus)) {
+                            throw new SQLException("This fine is still growing. Return the book first, then pay the final amount.");
+                        }
+                        if (!"Unpaid".equals(rs.getString("status"))) { continue; }
+                        ledger.remove(rs.getString("student_id"), rs.getDate("fine_date"), rs.getBigDecimal("fine_amount"), false);
+                        ledger.add(rs.getString("student_id"), rs.getDate("fine_date"), rs.getBigDecimal("fine_amount"), true);
+                    }
+                }
+            }
+
             try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
                 for (int i = 0; i < fineIds.size(); i++) {
                     pstmt.setInt(i + 1, fineIds.get(i));
@@ -322,6 +322,7 @@ public class StudentService {
                  System.err.println("Warning: Expected to update " + fineIds.size() + " fines, but updated " + updatedCount + ". Rolling back.");
                  throw new SQLException("Failed to update all specified fines.");
             }
+            ledger.flush(conn);
             conn.commit(); // Commit if successful
             return updatedCount;
         } catch (SQLException ex) {
@@ -329,6 +330,7 @@ public class StudentService {
             throw ex; // Re-throw
         } finally {
             if (conn != null) { try { if (!conn.isClosed()) { conn.setAutoCommit(true); } } catch (SQLException e) { e.printStackTrace(); } }
+            DatabaseConnection.release(conn);
         }
      }
 
@@ -346,7 +348,7 @@ public class StudentService {
                 return pstmt.executeUpdate() > 0; // Return true if insert succeeded
             }
         } finally {
-            // Manage connection if necessary
+            DatabaseConnection.release(conn);
         }
     }
 
@@ -362,12 +364,12 @@ public class StudentService {
                 return pstmt.executeUpdate() > 0; // Return true if update succeeded
             }
         } finally {
-             // Manage connection if necessary
+            DatabaseConnection.release(conn);
         }
     }
 
 
-    // --- Helper Methods (calculateDueDate, calculateFine, hasUnpaidFine, getSettingValue...) ---
+    // --- Helper Methods (calculateDueDate, calculateFine, hasUnpaidFine) ---
     // (Ensure they use DatabaseConnection correctly)
      private boolean hasUnpaidFine(int issueId) {
         String sql = "SELECT 1 FROM Fines WHERE issue_id = ? AND status = 'Unpaid' LIMIT 1";
@@ -384,32 +386,47 @@ public class StudentService {
         } catch (SQLException e) {
             System.err.println("Error checking for unpaid fine: " + e.getMessage());
             return false;
+        } finally {
+            DatabaseConnection.release(conn);
         }
     }
      private LocalDate calculateDueDate(LocalDate issueDate) {
-        int borrowPeriod = getSettingValueInt(SETTING_BORROW_PERIOD, DEFAULT_BORROW_PERIOD);
+        int borrowPeriod = SettingsRegistry.getInstance().snapshot().getBorrowPeriodDays();
         return issueDate.plusDays(borrowPeriod);
     }
      private double calculateFine(LocalDate dueDate, LocalDate returnDate) {
         if (dueDate != null && returnDate != null && returnDate.isAfter(dueDate)) {
             long daysOverdue = ChronoUnit.DAYS.between(dueDate, returnDate);
-            double fineRate = getSettingValueDouble(SETTING_FINE_RATE, DEFAULT_FINE_RATE);
+            double fineRate = SettingsRegistry.getInstance().snapshot().getFinePerDay();
             return Math.max(0, daysOverdue * fineRate);
         }
         return 0.0;
     }
-    private void upsertFine(Connection conn, int issueId, String studentId, double fineAmount, LocalDate fineDate) throws SQLException {
-        // Using SELECT then INSERT/UPDATE for better DB compatibility
-        String checkFineSql = "SELECT fine_id FROM Fines WHERE issue_id = ?";
+    /**
+     * Sets the fine of a returned loan to {@code fineAmount} inside the caller's transaction, moving the rollups
+     * with it. Shared by the student and librarian return paths.
+     */
+    static void upsertFine(Connection conn, int issueId, String studentId, double fineAmount, LocalDate fineDate) throws SQLException {
+        // Using SELECT then INSERT/UPDATE for better DB compatibility; the row is locked so the rollup delta is exact.
+        // Like the accrual job, a fine that is already paid (e.g. waived by an admin) is left as it is.
+        String checkFineSql = "SELECT fine_id, student_id, fine_amount, fine_date, status FROM Fines WHERE issue_id = ? FOR UPDATE";
         String insertFineSql = "INSERT INTO Fines (student_id, issue_id, fine_amount, status, fine_date) VALUES (?, ?, ?, 'Unpaid', ?)";
         String updateFineSql = "UPDATE Fines SET fine_amount = ?, status = 'Unpaid', fine_date = ? WHERE fine_id = ?";
         Integer existingFineId = null;
+        String fineStudentId = studentId;
+        FineLedger ledger = new FineLedger();
     
         try (PreparedStatement checkPstmt = conn.prepareStatement(checkFineSql)) {
             checkPstmt.setInt(1, issueId);
             try (ResultSet rs = checkPstmt.executeQuery()) {
                 if (rs.next()) {
+                    if ("Paid".equals(rs.getString("status"))) {
+                        System.out.println("Fine for issue ID " + issueId + " is already paid, leaving it as it is.");
+                        return;
+                    }
                     existingFineId = rs.getInt("fine_id");
+                    fineStudentId = rs.getString("student_id"); // The update keeps the row's student
+                    ledger.remove(rs.getString("student_id"), rs.getDate("fine_date"), rs.getBigDecimal("fine_amount"), false);
                 }
             }
         }
@@ -434,34 +451,10 @@ public class StudentService {
                  }
             }
         }
+        ledger.add(fineStudentId, fineDate, fineAmount, false);
+        ledger.flush(conn);
          System.out.println("Fine recorded/updated for issue ID: " + issueId + ", Amount: " + fineAmount);
     }
-     private String getSettingValue(String key, String defaultValue) {
-        String sql = "SELECT setting_value FROM Settings WHERE setting_key = ?";
-        Connection conn = null;
-        try {
-             conn = DatabaseConnection.getConnection(); // Should resolve now
-             if (conn == null || conn.isClosed()) { throw new SQLException("Database connection failed."); }
-             try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-                pstmt.setString(1, key);
-                try (ResultSet rs = pstmt.executeQuery()) {
-                    if (rs.next()) {
-                        String value = rs.getString("setting_value");
-                        return (value != null) ? value : defaultValue;
-                    }
-                }
-            }
-        } catch (SQLException e) { System.err.println("DB Error retrieving setting '" + key + "'. Using default."); }
-        return defaultValue;
-    }
-     private int getSettingValueInt(String key, int defaultValue) {
-        try { return Integer.parseInt(getSettingValue(key, String.valueOf(defaultValue))); }
-        catch (NumberFormatException e) { System.err.println("Invalid int format for setting '" + key + "'. Using default."); return defaultValue; }
-    }
-     private double getSettingValueDouble(String key, double defaultValue) {
-         try { return Double.parseDouble(getSettingValue(key, String.valueOf(defaultValue))); }
-         catch (NumberFormatException e) { System.err.println("Invalid double format for setting '" + key + "'. Using default."); return defaultValue; }
-    }
 
 }
 
@@ -471,12 +464,6 @@ class ReturnException extends Exception {
     }
 }
 
-class BorrowException extends Exception { 
-    public BorrowException(String message) {
-        super(message);
-    }
-}
-
 class ReissueException extends Exception { 
     public ReissueException(String message) {
         super(message);
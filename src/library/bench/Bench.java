@@ -0,0 +1,134 @@
+package library.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A minimal microbenchmark harness for the benchmark mains in this package.
+ * <p>
+ * Each benchmark is an {@link Op} called {@code warmup} times untimed and then {@code iterations} times
+ * with every call timed on its own, so the result carries percentiles as well as the mean. Calls run
+ * one after another on the calling thread. Results are written as JSON, one file per run, so runs can
+ * be compared over time.
+ */
+public final class Bench {
+
+    /** One operation under test. {@code i} counts up from 0 across warm-up and measured calls. */
+    public interface Op {
+        void run(int i) throws Exception;
+    }
+
+    /** Timings of one benchmark at one dataset size, in microseconds. */
+    public static final class Result {
+        private final String name;
+        private final int size;
+        private final int iterations;
+        private final double meanMicros;
+        private final double p50Micros;
+        private final double p99Micros;
+        private final double maxMicros;
+        private final double opsPerSecond;
+
+        Result(String name, int size, long[] nanos) {
+            Arrays.sort(nanos);
+            long total = 0;
+            for (long n : nanos) { total += n; }
+            this.name = name;
+            this.size = size;
+            this.iterations = nanos.length;
+            this.meanMicros = nanos.length == 0 ? 0 : total / 1e3 / nanos.length;
+            this.p50Micros = percentile(nanos, 0.50) / 1e3;
+            this.p99Micros = percentile(nanos, 0.99) / 1e3;
+            this.maxMicros = nanos.length == 0 ? 0 : nanos[nanos.length - 1] / 1e3;
+            this.opsPerSecond = total == 0 ? 0 : nanos.length / (total / 1e9);
+        }
+
+        public String getName() { return name; }
+        public int getSize() { return size; }
+        public double getMeanMicros() { return meanMicros; }
+        public double getP50Micros() { return p50Micros; }
+        public double getP99Micros() { return p99Micros; }
+
+        @Override public String toString() {
+            return String.format("%-32s %10d %8d %12.1f %12.1f %12.1f %12.1f %10.1f",
+                    name, size, iterations, meanMicros, p50Micros, p99Micros, maxMicros, opsPerSecond);
+        }
+
+        String toJson() {
+            return String.format(Locale.ROOT,
+                    "{\"name\": %s, \"size\": %d, \"iterations\": %d, \"meanMicros\": %.2f, \"p50Micros\": %.2f, " +
+                    "\"p99Micros\": %.2f, \"maxMicros\": %.2f, \"opsPerSecond\": %.2f}",
+                    quote(name), size, iterations, meanMicros, p50Micros, p99Micros, maxMicros, opsPerSecond);
+        }
+    }
+
+    public static final String HEADER = String.format("%-32s %10s %8s %12s %12s %12s %12s %10s",
+            "benchmark", "size", "iters", "mean us", "p50 us", "p99 us", "max us", "ops/s");
+
+    private Bench() {}
+
+    /** Runs {@code op} {@code warmup} times, then times {@code iterations} calls and prints the result line. */
+    public static Result measure(String name, int size, int warmup, int iterations, Op op) throws Exception {
+        for (int i = 0; i < warmup; i++) { op.run(i); }
+        long[] nanos = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            op.run(warmup + i);
+            nanos[i] = System.nanoTime() - start;
+        }
+        Result result = new Result(name, size, nanos);
+        System.out.println(result);
+        return result;
+    }
+
+    /** Nearest-rank percentile of sorted values. */
+    static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) { return 0; }
+        int rank = (int) Math.ceil(fraction * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+
+    /** Writes {@code {"meta": {...}, "results": [...]}} to {@code file}, creating parent directories. */
+    public static void writeJson(Path file, Map<String, String> meta, List<Result> results) throws IOException {
+        StringBuilder json = new StringBuilder("{\n  \"meta\": {");
+        String separator = "\n";
+        for (Map.Entry<String, String> entry : meta.entrySet()) {
+            json.append(separator).append("    ").append(quote(entry.getKey())).append(": ").append(quote(entry.getValue()));
+            separator = ",\n";
+        }
+        json.append("\n  },\n  \"results\": [");
+        separator = "\n";
+        for (Result result : results) {
+            json.append(separator).append("    ").append(result.toJson());
+            separator = ",\n";
+        }
+        json.append("\n  ]\n}\n");
+        if (file.getParent() != null) { Files.createDirectories(file.getParent()); }
+        Files.write(file, json.toString().getBytes(StandardCharsets.UTF_8));
+        System.out.println("Results written to " + file);
+    }
+
+    static String quote(String value) {
+        if (value == null) { return "null"; }
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"': quoted.append("\\\""); break;
+                case '\\': quoted.append("\\\\"); break;
+                case '\n': quoted.append("\\n"); break;
+                case '\r': quoted.append("\\r"); break;
+                case '\t': quoted.append("\\t"); break;
+                default:
+                    if (c < 0x20) { quoted.append(String.format("\\u%04x", (int) c)); }
+                    else { quoted.append(c); }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
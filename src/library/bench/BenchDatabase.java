@@ -0,0 +1,75 @@
+package library.bench;
+
+import library.DatabaseConnection;
+import library.backend.SettingsRegistry;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.*;
+
+/**
+ * Creates and fills the scratch database the benchmarks run against.
+ * <p>
+ * {@link #reset()} drops and recreates every table from {@code src/sql/schemas.sql}. It refuses to run
+ * unless the connected database's name contains {@code bench} or {@code -Dlibrary.bench.allowReset=true}
+ * is set, so pointing a benchmark at the real library database by mistake can't wipe it.
+ * {@link #seed(int, long)} fills the tables with a reproducible {@link DataGenerator} library of a given catalog size.
+ */
+public final class BenchDatabase {
+
+    private static final String SCHEMA_FILE = System.getProperty("library.bench.schema", "src/sql/schemas.sql");
+
+    private BenchDatabase() {}
+
+    /** Number of students seeded for a catalog of {@code books} titles. */
+    public static int studentCount(int books) { return Math.max(50, books / 10); }
+
+    /** Drops and recreates every table from the schema file. */
+    public static void reset() throws SQLException, IOException {
+        String script = readSchema(Paths.get(SCHEMA_FILE));
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            String database = conn.getCatalog();
+            if ((database == null || !database.toLowerCase().contains("bench")) && !Boolean.getBoolean("library.bench.allowReset")) {
+                throw new SQLException("Refusing to reset database '" + database + "': benchmarks need a scratch database whose name contains 'bench' "
+                        + "(or -Dlibrary.bench.allowReset=true).");
+            }
+            try (Statement stmt = conn.createStatement()) {
+                for (String sql : script.split(";")) {
+                    if (!sql.isBlank()) { stmt.execute(sql.trim()); }
+                }
+            }
+        } finally {
+            DatabaseConnection.release(conn);
+        }
+        SettingsRegistry.getInstance().invalidate();
+    }
+
+    /** The schema script with {@code --} comments removed, so semicolons inside them don't split statements. */
+    private static String readSchema(Path file) throws IOException {
+        StringBuilder script = new StringBuilder();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            int comment = line.indexOf("--");
+            script.append(comment >= 0 ? line.substring(0, comment) : line).append('\n');
+        }
+        return script.toString();
+    }
+
+    /**
+     * Fills freshly reset tables with a {@link DataGenerator} library of {@code books} titles, {@link #studentCount}
+     * students and two loans per title, keeping a copy of every title on the shelf for the borrow benchmarks.
+     */
+    public static void seed(int books, long randomSeed) throws SQLException, IOException {
+        DataGenerator.Config config = new DataGenerator.Config();
+        config.books = books;
+        config.students = studentCount(books);
+        config.loans = 2L * books;
+        config.seed = randomSeed;
+        config.keepOneCopyFree = true;
+        new DataGenerator(config).generate();
+    }
+}
@@ -0,0 +1,227 @@
+package library.bench;
+
+import library.DatabaseConnection;
+import library.backend.BorrowEngine;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures borrow throughput on one hot title as the number of concurrent borrowers grows.
+ * <p>
+ * For each thread count the benchmark book is reset to {@code copies} free copies and that many threads
+ * borrow it as fast as they can until none are left. Two strategies are compared:
+ * <ul>
+ *   <li>{@code engine}: {@link BorrowEngine}, a conditional UPDATE plus an INSERT;</li>
+ *   <li>{@code rowlock}: the previous student path, {@code SELECT ... FOR UPDATE} then UPDATE and INSERT.</li>
+ * </ul>
+ * After each round it checks that exactly {@code copies} loans were created and none oversold. It needs
+ * a database created from {@code src/sql/schemas.sql} (the same {@code library.db.*} properties as the
+ * application). It adds a book {@code BENCH1} and students {@code BS0001...}, and removes them again
+ * when it finishes.
+ * <pre>
+ * java -cp bin:src/lib/mysql-connector-j-9.3.0.jar library.bench.BorrowContentionBenchmark [threads=1,2,4,8,16,32,64] [copies=2000]
+ * </pre>
+ */
+public class BorrowContentionBenchmark {
+
+    private static final String BOOK_ID = "BENCH1";
+
+    public static void main(String[] args) throws Exception {
+        int[] threadCounts = parseThreads(args.length > 0 ? args[0] : "1,2,4,8,16,32,64");
+        int copies = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int maxThreads = 0;
+        for (int threads : threadCounts) { maxThreads = Math.max(maxThreads, threads); }
+        if (System.getProperty("library.db.pool.maxSize") == null) { // One connection per borrower, or the pool becomes the bottleneck
+            System.setProperty("library.db.pool.maxSize", String.valueOf(maxThreads));
+        }
+
+        setUp(maxThreads);
+        try {
+            System.out.printf("%-8s %8s %10s %12s %8s %8s %s%n", "strategy", "threads", "loans", "loans/s", "retries", "errors", "check");
+            for (String strategy : new String[]{"engine", "rowlock"}) {
+                for (int threads : threadCounts) {
+                    runRound(strategy, threads, copies);
+                }
+            }
+        } finally {
+            tearDown();
+            DatabaseConnection.closeConnection();
+        }
+    }
+
+    private static void runRound(String strategy, int threads, int copies) throws Exception {
+        resetBook(copies);
+        long retriesBefore = BorrowEngine.getRetryCount();
+        AtomicInteger loans = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String studentId = studentId(t);
+            futures.add(pool.submit(() -> {
+                start.await();
+                while (true) {
+                    try {
+                        boolean borrowed = "engine".equals(strategy) ? borrowWithEngine(studentId) : borrowWithRowLock(studentId);
+                        if (!borrowed) { return null; } // Sold out
+                        loans.incrementAndGet();
+                    } catch (SQLException e) {
+                        errors.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        long startNanos = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) { future.get(); }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        pool.shutdown();
+
+        String check = verify(copies, loans.get());
+        System.out.printf("%-8s %8d %10d %12.1f %8d %8d %s%n", strategy, threads, loans.get(),
+                loans.get() / (elapsedNanos / 1e9), BorrowEngine.getRetryCount() - retriesBefore, errors.get(), check);
+    }
+
+    private static boolean borrowWithEngine(String studentId) throws SQLException {
+        try {
+            BorrowEngine.borrow(studentId, BOOK_ID, 14);
+            return true;
+        } catch (Exception e) { // BorrowException: no copy left
+            if (e instanceof SQLException) { throw (SQLException) e; }
+            return false;
+        }
+    }
+
+    /** The locking path StudentService.borrowBook used before BorrowEngine, kept as the baseline. */
+    private static boolean borrowWithRowLock(String studentId) throws SQLException {
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT available_copies FROM Books WHERE book_id = ? FOR UPDATE")) {
+                pstmt.setString(1, BOOK_ID);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (!rs.next() || rs.getInt(1) <= 0) { conn.rollback(); return false; }
+                }
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement("UPDATE Books SET available_copies = available_copies - 1 WHERE book_id = ? AND available_copies > 0")) {
+                pstmt.setString(1, BOOK_ID);
+                pstmt.executeUpdate();
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO IssuedBooks (student_id, book_id, issue_date, due_date, status, reissue_count) VALUES (?, ?, ?, ?, 'Issued', 0)")) {
+                pstmt.setString(1, studentId);
+                pstmt.setString(2, BOOK_ID);
+                pstmt.setDate(3, Date.valueOf(LocalDate.now()));
+                pstmt.setDate(4, Date.valueOf(LocalDate.now().plusDays(14)));
+                pstmt.executeUpdate();
+            }
+            conn.commit();
+            return true;
+        } catch (SQLException e) {
+            if (conn != null) { try { conn.rollback(); } catch (SQLException ex) { ex.printStackTrace(); } }
+            throw e;
+        } finally {
+            if (conn != null) { try { conn.setAutoCommit(true); } catch (SQLException e) { e.printStackTrace(); } }
+            DatabaseConnection.release(conn);
+        }
+    }
+
+    /** "ok" if the round lent exactly {@code copies} copies and the counter ended at zero. */
+    private static String verify(int copies, int loansCounted) throws SQLException {
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            int available;
+            int rows;
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT available_copies FROM Books WHERE book_id = ?")) {
+                pstmt.setString(1, BOOK_ID);
+                try (ResultSet rs = pstmt.executeQuery()) { rs.next(); available = rs.getInt(1); }
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT COUNT(*) FROM IssuedBooks WHERE book_id = ?")) {
+                pstmt.setString(1, BOOK_ID);
+                try (ResultSet rs = pstmt.executeQuery()) { rs.next(); rows = rs.getInt(1); }
+            }
+            if (available == 0 && rows == copies && loansCounted == copies) { return "ok"; }
+            return "MISMATCH (available=" + available + ", loan rows=" + rows + ", counted=" + loansCounted + ")";
+        } finally {
+            DatabaseConnection.release(conn);
+        }
+    }
+
+    private static void setUp(int students) throws SQLException {
+        tearDown(); // Leftovers from an interrupted run
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO Books (book_id, title, author, category, total_copies, available_copies) VALUES (?, 'Benchmark Title', 'Benchmark', 'Benchmark', 0, 0)")) {
+                pstmt.setString(1, BOOK_ID);
+                pstmt.executeUpdate();
+            }
+            try (PreparedStatement user = conn.prepareStatement("INSERT INTO Users (username, password, role, status) VALUES (?, 'bench', 'Student', 'Active')");
+                 PreparedStatement student = conn.prepareStatement("INSERT INTO Students (student_id, username, name) VALUES (?, ?, 'Benchmark Student')")) {
+                for (int i = 0; i < students; i++) {
+                    user.setString(1, username(i));
+                    user.addBatch();
+                    student.setString(1, studentId(i));
+                    student.setString(2, username(i));
+                    student.addBatch();
+                }
+                user.executeBatch();
+                student.executeBatch();
+            }
+        } finally {
+            DatabaseConnection.release(conn);
+        }
+    }
+
+    private static void resetBook(int copies) throws SQLException {
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM IssuedBooks WHERE book_id = ?")) {
+                pstmt.setString(1, BOOK_ID);
+                pstmt.executeUpdate();
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement("UPDATE Books SET total_copies = ?, available_copies = ? WHERE book_id = ?")) {
+                pstmt.setInt(1, copies);
+                pstmt.setInt(2, copies);
+                pstmt.setString(3, BOOK_ID);
+                pstmt.executeUpdate();
+            }
+        } finally {
+            DatabaseConnection.release(conn);
+        }
+    }
+
+    private static void tearDown() throws SQLException {
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM Books WHERE book_id = ?")) { // Cascades to IssuedBooks
+                pstmt.setString(1, BOOK_ID);
+                pstmt.executeUpdate();
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM Users WHERE username LIKE 'bench\\_student\\_%'")) { // Cascades to Students
+                pstmt.executeUpdate();
+            }
+        } finally {
+            DatabaseConnection.release(conn);
+        }
+    }
+
+    private static String studentId(int i) { return String.format("BS%04d", i + 1); }
+    private static String username(int i) { return "bench_student_" + (i + 1); }
+
+    private static int[] parseThreads(String list) {
+        String[] parts = list.split(",");
+        int[] counts = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) { counts[i] = Integer.parseInt(parts[i].trim()); }
+        return counts;
+    }
+}
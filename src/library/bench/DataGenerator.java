@@ -0,0 +1,458 @@
+package library.bench;
+
+import library.DatabaseConnection;
+import library.backend.FineLedger;
+import library.backend.SettingsRegistry;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.*;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Fills the library schema with a large, referentially valid synthetic dataset for scaling tests.
+ * <p>
+ * The data is shaped like a real library rather than uniform noise:
+ * <ul>
+ *   <li>book popularity follows a Zipf distribution ({@code --zipf}, default 1.0), so a few titles take
+ *       most loans, and copies are stocked in proportion to demand;</li>
+ *   <li>borrowing is seasonal: busy in term time, quiet in summer, December and at weekends;</li>
+ *   <li>most loans come back on time, but lateness has a long tail, and a small share is never returned.
+ *       Every late loan has a fine, and every overdue loan has a reminder notification;</li>
+ *   <li>students rate books they'd plausibly borrow, and each book has a quality around which its
+ *       ratings scatter. {@code avg_rating} is the exact mean of the generated ratings, and the
+ *       running {@code rating_sum} and {@code rating_count} behind it are filled in too.</li>
+ * </ul>
+ * Rows are generated in one pass with a fixed seed, so the same arguments always give the same data.
+ * They are loaded in one of two ways. By default they go in as batched INSERTs, which the driver sends
+ * as multi-row statements. With {@code --loadDataDir} they are written as tab-separated files and
+ * loaded with {@code LOAD DATA LOCAL INFILE}. That needs {@code allowLoadLocalInfile=true} in the JDBC
+ * URL and {@code local_infile=ON} on the server. A {@code load.sql} is left next to the files for
+ * reloading them with the mysql client. Foreign-key and unique checks are switched off for the load
+ * session, since the rows are consistent by construction. The fine rollups are rebuilt at the end.
+ * <pre>
+ * BENCH_MAIN=library.bench.DataGenerator ./bench.sh --loans=10000000 [--books=N] [--students=N] [--years=2]
+ *     [--zipf=1.0] [--seed=42] [--loadDataDir=generated-data] [--reset]
+ * </pre>
+ * Without {@code --books}/{@code --students}, a catalog of one title per 20 loans and one student per 50 loans is
+ * generated. {@code --reset} recreates the tables first (scratch databases only, see {@link BenchDatabase#reset()}).
+ */
+public class DataGenerator {
+
+    /** What to generate. */
+    public static final class Config {
+        public long loans = 1_000_000;
+        public int books = 0;                  // 0 = loans / 20
+        public int students = 0;               // 0 = loans / 50
+        public int years = 2;                  // Loan history reaches back this far
+        public double zipfExponent = 1.0;
+        public long seed = 42;
+        public boolean keepOneCopyFree = false; // Benchmarks borrow every title once, so none may be sold out
+        public Path loadDataDir = null;         // null = batched INSERTs
+
+        int bookCount() { return books > 0 ? books : (int) Math.max(100, loans / 20); }
+        int studentCount() { return students > 0 ? students : (int) Math.max(50, loans / 50); }
+    }
+
+    static final String[] TITLE_WORDS = {
+        "History", "Garden", "River", "Silent", "Empire", "Night", "Code", "Ocean", "Stone", "Winter",
+        "Light", "Machine", "Journey", "Shadow", "Kingdom", "Science", "Memory", "Fire", "Island", "Storm",
+        "Mountain", "Secret", "City", "Dream", "Glass", "Iron", "Paper", "Star", "Forest", "Letters"
+    };
+    static final String[] CATEGORIES = {
+        "Fiction", "Non-Fiction", "Science", "History", "Biography", "Fantasy", "Self-Help", "Finance", "Poetry", "Travel"
+    };
+    private static final String[] REVIEWS = {
+        "Couldn't put it down.", "Solid, if a little long.", "Not what I expected.", "Great for the course.",
+        "Would borrow again.", "Hard going in the middle.", "A classic for a reason.", "Too dry for me."
+    };
+    // Relative borrowing volume per month, January first: term time busy, summer and December quiet
+    private static final double[] MONTH_WEIGHT = {1.1, 1.2, 1.2, 1.1, 0.8, 0.5, 0.4, 0.7, 1.3, 1.3, 1.2, 0.7};
+    private static final double WEEKEND_WEIGHT = 0.4;
+    private static final double MAX_DAY_WEIGHT = 1.3;
+    private static final double LATE_SHARE = 0.15;       // Loans returned after the due date
+    private static final double LOST_SHARE = 0.005;      // Loans never returned
+    private static final double REISSUE_SHARE = 0.10;
+    private static final double PAID_SHARE = 0.70;       // Fines on returned loans that have been paid
+    private static final int BATCH_ROWS = 5_000;
+
+    public static String bookId(int i) { return zeroPadded('B', i + 1); }
+    public static String studentId(int i) { return zeroPadded('S', i + 1); }
+    public static String username(int i) { return "student" + (i + 1); }
+
+    /** {@code prefix} followed by {@code n} padded to 7 digits; String.format is too slow for 50M rows. */
+    private static String zeroPadded(char prefix, int n) {
+        String digits = Integer.toString(n);
+        return prefix + "0000000".substring(Math.min(7, digits.length())) + digits;
+    }
+
+    private final Config config;
+    private final Random random;
+    private final LocalDate today = LocalDate.now();
+    private final int books;
+    private final int students;
+    private final int borrowPeriodDays;
+    private final double finePerDay;
+    private final ZipfSampler bookPopularity;
+    private final ZipfSampler studentActivity;
+    private final int bookStride;
+    private final int studentStride;
+
+    public DataGenerator(Config config) {
+        this.config = config;
+        this.random = new Random(config.seed);
+        this.books = config.bookCount();
+        this.students = config.studentCount();
+        SettingsRegistry.Snapshot settings = SettingsRegistry.getInstance().snapshot();
+        this.borrowPeriodDays = settings.getBorrowPeriodDays();
+        this.finePerDay = settings.getFinePerDay();
+        this.bookPopularity = new ZipfSampler(books, config.zipfExponent);
+        this.studentActivity = new ZipfSampler(students, 0.5); // Some students read far more than others
+        this.bookStride = coprimeStride(books);
+        this.studentStride = coprimeStride(students);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Config config = new Config();
+        boolean reset = false;
+        for (String arg : args) {
+            String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+            String value = pair.length > 1 ? pair[1] : "";
+            switch (pair[0]) {
+                case "loans": config.loans = Long.parseLong(value.replace("_", "")); break;
+                case "books": config.books = Integer.parseInt(value.replace("_", "")); break;
+                case "students": config.students = Integer.parseInt(value.replace("_", "")); break;
+                case "years": config.years = Integer.parseInt(value); break;
+                case "zipf": config.zipfExponent = Double.parseDouble(value); break;
+                case "seed": config.seed = Long.parseLong(value); break;
+                case "loadDataDir": config.loadDataDir = Paths.get(value.isEmpty() ? "generated-data" : value); break;
+                case "reset": reset = true; break;
+                default: throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        try {
+            if (reset) { BenchDatabase.reset(); }
+            new DataGenerator(config).generate();
+        } finally {
+            DatabaseConnection.closeConnection();
+        }
+    }
+
+    /** Generates and loads the whole dataset into empty tables. */
+    public void generate() throws SQLException, IOException {
+        long startNanos = System.nanoTime();
+        System.out.printf("Generating %d loans over %d books and %d students (%s)...%n", config.loans, books, students,
+                config.loadDataDir == null ? "batched inserts" : "LOAD DATA files in " + config.loadDataDir);
+
+        int[] totalCopies = stockCopies();
+        int[] onLoan = new int[books];
+        long[] ratingSum = new long[books];
+        int[] ratingCount = new int[books];
+
+        Connection conn = null;
+        List<Table> tables = new ArrayList<>();
+        try {
+            conn = DatabaseConnection.getConnection();
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("SET FOREIGN_KEY_CHECKS = 0");
+                stmt.execute("SET UNIQUE_CHECKS = 0");
+            }
+            conn.setAutoCommit(false);
+
+            Table users = open(conn, tables, "Users", "username", "password", "role", "status", "email");
+            Table studentRows = open(conn, tables, "Students", "student_id", "username", "name");
+            Table loans = open(conn, tables, "IssuedBooks", "issue_id", "student_id", "book_id", "issue_date", "due_date", "return_date", "status", "reissue_count");
+            Table fines = open(conn, tables, "Fines", "fine_id", "student_id", "issue_id", "fine_amount", "status", "fine_date");
+            Table notifications = open(conn, tables, "Notifications", "user_id", "message", "type", "is_read", "created_at");
+            Table ratings = open(conn, tables, "RatingsReviews", "book_id", "student_id", "rating", "review", "review_date");
+            Table bookRows = open(conn, tables, "Books", "book_id", "title", "author", "category", "total_copies", "available_copies", "avg_rating", "rating_sum", "rating_count");
+
+            for (int i = 0; i < students; i++) {
+                users.add(username(i), "generated", "Student", random.nextInt(50) == 0 ? "Inactive" : "Active", username(i) + "@students.example");
+                studentRows.add(studentId(i), username(i), "Student " + (i + 1));
+            }
+
+            int fineId = 0;
+            for (long issueId = 1; issueId <= config.loans; issueId++) {
+                int book = pick(bookPopularity, bookStride);
+                int student = pick(studentActivity, studentStride);
+                LocalDate issued = seasonalDay();
+                int reissues = random.nextDouble() < REISSUE_SHARE ? 1 : 0;
+                LocalDate due = issued.plusDays((long) borrowPeriodDays * (1 + reissues));
+                LocalDate returned = returnDate(issued, due);
+
+                int keepFree = config.keepOneCopyFree ? 1 : 0;
+                if (returned == null && onLoan[book] >= totalCopies[book] - keepFree) {
+                    returned = today; // Every copy is out: it came back today instead
+                }
+                String status;
+                if (returned != null) { status = "Returned"; }
+                else { onLoan[book]++; status = due.isBefore(today) ? "Overdue" : "Issued"; }
+                loans.add(issueId, studentId(student), bookId(book), issued, due, returned, status, reissues);
+
+                LocalDate fineUntil = returned != null ? returned : today;
+                if (fineUntil.isAfter(due)) {
+                    long lateDays = fineUntil.toEpochDay() - due.toEpochDay();
+                    boolean paid = returned != null && random.nextDouble() < PAID_SHARE;
+                    fines.add(++fineId, studentId(student), issueId, FineLedger.money(lateDays * finePerDay), paid ? "Paid" : "Unpaid", fineUntil);
+                    if (returned == null) {
+                        notifications.add(username(student), "Book " + bookId(book) + " is " + lateDays + " days overdue. Please return it.",
+                                "DueDate", false, due.plusDays(1).atTime(9, 0));
+                    } else if (!paid) {
+                        notifications.add(username(student), "A fine of " + FineLedger.money(lateDays * finePerDay) + " is due for book " + bookId(book) + ".",
+                                "FineAlert", random.nextBoolean(), returned.atTime(17, 0));
+                    }
+                }
+                if (issueId % 1_000_000 == 0) { System.out.printf("  %,d loans%n", issueId); }
+            }
+
+            // Ratings: each student rates a few distinct books drawn by popularity, so (book, student) never repeats
+            List<Integer> rated = new ArrayList<>();
+            for (int student = 0; student < students; student++) {
+                int count = (int) Math.min(20, Math.floor(Math.log(1 - random.nextDouble()) / Math.log(0.6))); // Geometric, mean 1.5
+                rated.clear();
+                for (int attempt = 0; rated.size() < count && attempt < count * 4; attempt++) {
+                    int book = pick(bookPopularity, bookStride);
+                    if (rated.contains(book)) { continue; }
+                    rated.add(book);
+                    int rating = (int) Math.max(1, Math.min(5, Math.round(quality(book) + random.nextGaussian() * 0.8)));
+                    ratingSum[book] += rating;
+                    ratingCount[book]++;
+                    LocalDateTime reviewed = seasonalDay().atTime(8 + random.nextInt(14), random.nextInt(60));
+                    ratings.add(bookId(book), studentId(student), rating, random.nextBoolean() ? REVIEWS[random.nextInt(REVIEWS.length)] : null, reviewed);
+                }
+            }
+
+            int authors = Math.max(1, books / 5);
+            for (int book = 0; book < books; book++) {
+                String title = TITLE_WORDS[random.nextInt(TITLE_WORDS.length)] + " " + TITLE_WORDS[random.nextInt(TITLE_WORDS.length)] + " " + (book + 1);
+                double average = ratingCount[book] == 0 ? 0 : Math.round(100.0 * ratingSum[book] / ratingCount[book]) / 100.0;
+                bookRows.add(bookId(book), title, "Author " + (1 + random.nextInt(authors)), CATEGORIES[random.nextInt(CATEGORIES.length)],
+                        totalCopies[book], totalCopies[book] - onLoan[book], average, ratingSum[book], ratingCount[book]);
+            }
+
+            for (Table table : tables) { table.finish(); }
+            conn.commit();
+            if (config.loadDataDir != null) { loadFiles(conn, tables); }
+        } catch (SQLException | IOException e) {
+            if (conn != null) { try { conn.rollback(); } catch (SQLException ex) { ex.printStackTrace(); } }
+            throw e;
+        } finally {
+            for (Table table : tables) { table.closeQuietly(); }
+            if (conn != null) {
+                try (Statement stmt = conn.createStatement()) {
+                    conn.setAutoCommit(true);
+                    stmt.execute("SET UNIQUE_CHECKS = 1");
+                    stmt.execute("SET FOREIGN_KEY_CHECKS = 1");
+                } catch (SQLException e) { e.printStackTrace(); }
+            }
+            DatabaseConnection.release(conn);
+        }
+        FineLedger.rebuild();
+        SettingsRegistry.getInstance().invalidate();
+
+        long millis = Math.max(1, (System.nanoTime() - startNanos) / 1_000_000);
+        long rows = 0;
+        for (Table table : tables) {
+            System.out.printf("  %-16s %,14d rows%n", table.name, table.rows);
+            rows += table.rows;
+        }
+        System.out.printf("Generated %,d rows in %.1f s (%,d rows/s).%n", rows, millis / 1000.0, rows * 1000 / millis);
+    }
+
+    /** Copies per title: enough for the title's expected share of concurrent loans, plus a spare or two. */
+    private int[] stockCopies() {
+        double meanLoanDays = borrowPeriodDays * (1 + REISSUE_SHARE) + 3;
+        double concurrentLoans = config.loans * meanLoanDays / (config.years * 365.0);
+        int[] copies = new int[books];
+        for (int rank = 1; rank <= books; rank++) {
+            double expected = concurrentLoans * bookPopularity.probability(rank);
+            copies[index(rank, bookStride, books)] = 1 + (int) Math.ceil(expected * 1.2) + random.nextInt(2) + (config.keepOneCopyFree ? 1 : 0);
+        }
+        return copies;
+    }
+
+    /** Maps a popularity rank to a row index, so popular titles are scattered through the id range. */
+    private int pick(ZipfSampler sampler, int stride) {
+        return index(sampler.sample(random), stride, sampler.size());
+    }
+
+    static int index(int rank, int stride, int n) {
+        return (int) ((long) (rank - 1) * stride % n);
+    }
+
+    /** A step through {@code 0..n-1} that visits every index once. */
+    static int coprimeStride(int n) {
+        int stride = Math.max(1, (int) (n * 0.618));
+        while (gcd(stride, n) != 1) { stride++; }
+        return stride;
+    }
+
+    private static int gcd(int a, int b) { return b == 0 ? a : gcd(b, a % b); }
+
+    /** A day in the history window, weighted by month and weekday. */
+    private LocalDate seasonalDay() {
+        int window = config.years * 365;
+        while (true) {
+            LocalDate day = today.minusDays(random.nextInt(window));
+            double weight = MONTH_WEIGHT[day.getMonthValue() - 1];
+            if (day.getDayOfWeek() == DayOfWeek.SATURDAY || day.getDayOfWeek() == DayOfWeek.SUNDAY) { weight *= WEEKEND_WEIGHT; }
+            if (random.nextDouble() * MAX_DAY_WEIGHT < weight) { return day; }
+        }
+    }
+
+    /** When the loan comes back, or null if it is still out today. */
+    private LocalDate returnDate(LocalDate issued, LocalDate due) {
+        double draw = random.nextDouble();
+        if (draw < LOST_SHARE && issued.plusDays(30).isBefore(today)) {
+            return null; // Lost: never returned
+        }
+        LocalDate returned;
+        if (draw < LOST_SHARE + LATE_SHARE) {
+            long lateDays = (long) Math.ceil(Math.exp(1.5 + random.nextGaussian())); // Log-normal: median ~4.5 days, long tail
+            returned = due.plusDays(Math.min(365, lateDays));
+        } else {
+            long loanDays = due.toEpochDay() - issued.toEpochDay();
+            returned = issued.plusDays(1 + random.nextInt((int) loanDays));
+        }
+        return returned.isAfter(today) ? null : returned;
+    }
+
+    /** A book's underlying rating between 2.5 and 4.5, fixed by its index. */
+    private static double quality(int book) {
+        long h = book * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 29;
+        return 2.5 + 2.0 * ((h >>> 11) & 0xFFFF) / 65535.0;
+    }
+
+    // --- Loading ---
+
+    private Table open(Connection conn, List<Table> tables, String name, String... columns) throws SQLException, IOException {
+        Table table = config.loadDataDir == null ? new InsertTable(conn, name, columns) : new FileTable(config.loadDataDir, name, columns);
+        tables.add(table);
+        return table;
+    }
+
+    /** Loads every written file in the current (checks-off) session, and writes load.sql for the mysql client. */
+    private void loadFiles(Connection conn, List<Table> tables) throws SQLException, IOException {
+        StringBuilder script = new StringBuilder("-- mysql --local-infile=1 <database> < load.sql\nSET FOREIGN_KEY_CHECKS = 0;\nSET UNIQUE_CHECKS = 0;\n");
+        try (Statement stmt = conn.createStatement()) {
+            for (Table table : tables) {
+                String sql = ((FileTable) table).loadStatement();
+                script.append(sql).append(";\n");
+                long startNanos = System.nanoTime();
+                stmt.execute(sql);
+                conn.commit();
+                System.out.printf("  loaded %s in %.1f s%n", table.name, (System.nanoTime() - startNanos) / 1e9);
+            }
+        }
+        script.append("SET UNIQUE_CHECKS = 1;\nSET FOREIGN_KEY_CHECKS = 1;\n")
+              .append("-- Then rebuild the fine rollups: start the application once with -Dlibrary.fines.rebuildRollups=true\n");
+        Files.write(config.loadDataDir.resolve("load.sql"), script.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Rows for one table, in column order. */
+    private abstract static class Table {
+        final String name;
+        final String[] columns;
+        long rows = 0;
+
+        Table(String name, String[] columns) {
+            this.name = name;
+            this.columns = columns;
+        }
+
+        abstract void add(Object... values) throws SQLException, IOException;
+        abstract void finish() throws SQLException, IOException;
+        abstract void closeQuietly();
+    }
+
+    /** Batched INSERTs, committed every {@link #BATCH_ROWS} rows; the driver rewrites each batch into one multi-row INSERT. */
+    private static final class InsertTable extends Table {
+        private final Connection conn;
+        private final PreparedStatement pstmt;
+        private int pending = 0;
+
+        InsertTable(Connection conn, String name, String[] columns) throws SQLException {
+            super(name, columns);
+            this.conn = conn;
+            String placeholders = String.join(", ", Collections.nCopies(columns.length, "?"));
+            this.pstmt = conn.prepareStatement("INSERT INTO " + name + " (" + String.join(", ", columns) + ") VALUES (" + placeholders + ")");
+        }
+
+        @Override void add(Object... values) throws SQLException {
+            for (int i = 0; i < values.length; i++) {
+                Object value = values[i];
+                if (value instanceof LocalDate) { value = Date.valueOf((LocalDate) value); }
+                else if (value instanceof LocalDateTime) { value = Timestamp.valueOf((LocalDateTime) value); }
+                pstmt.setObject(i + 1, value);
+            }
+            pstmt.addBatch();
+            rows++;
+            if (++pending == BATCH_ROWS) { finish(); }
+        }
+
+        @Override void finish() throws SQLException {
+            if (pending == 0) { return; }
+            pstmt.executeBatch();
+            conn.commit();
+            pending = 0;
+        }
+
+        @Override void closeQuietly() {
+            try { pstmt.close(); } catch (SQLException e) { e.printStackTrace(); }
+        }
+    }
+
+    /** Tab-separated file in the default LOAD DATA format: backslash escapes, \N for NULL. */
+    private static final class FileTable extends Table {
+        private final Path file;
+        private final BufferedWriter writer;
+
+        FileTable(Path dir, String name, String[] columns) throws IOException {
+            super(name, columns);
+            Files.createDirectories(dir);
+            this.file = dir.resolve(name + ".tsv").toAbsolutePath();
+            this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        }
+
+        @Override void add(Object... values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) { writer.write('\t'); }
+                writer.write(format(values[i]));
+            }
+            writer.write('\n');
+            rows++;
+        }
+
+        private static String format(Object value) {
+            if (value == null) { return "\\N"; }
+            if (value instanceof Boolean) { return (Boolean) value ? "1" : "0"; }
+            if (value instanceof LocalDateTime) { return value.toString().replace('T', ' '); }
+            String text = value.toString();
+            if (text.indexOf('\\') < 0 && text.indexOf('\t') < 0 && text.indexOf('\n') < 0) { return text; }
+            return text.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n");
+        }
+
+        String loadStatement() {
+            return "LOAD DATA LOCAL INFILE '" + file.toString().replace("\\", "/").replace("'", "''") + "' INTO TABLE " + name
+                    + " CHARACTER SET utf8mb4 (" + String.join(", ", columns) + ")";
+        }
+
+        @Override void finish() throws IOException { writer.flush(); }
+
+        @Override void closeQuietly() {
+            try { writer.close(); } catch (IOException e) { e.printStackTrace(); }
+        }
+    }
+}
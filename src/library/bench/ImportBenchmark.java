@@ -0,0 +1,117 @@
+package library.bench;
+
+import library.DatabaseConnection;
+import library.SchemaMigrator;
+import library.backend.CatalogImporter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Times {@link CatalogImporter} on a generated CSV file and checks it against the 50k rows/s target.
+ * <p>
+ * The file has {@code --rows} books (default 200,000); about one row in ten repeats an earlier title and
+ * author, and one in a thousand is invalid, so merging and error reporting are part of the measurement.
+ * The file is imported {@code --runs} times (default 2): the first run inserts, later runs merge every
+ * row into the books the first one created.
+ * <pre>
+ * BENCH_MAIN=library.bench.ImportBenchmark ./bench.sh --reset --rows=200000 [--runs=2] [--seed=42]
+ *   -Dlibrary.import.batchSize=1000 -Dlibrary.import.threads=4 -Dlibrary.bench.out=path.json
+ * </pre>
+ */
+public class ImportBenchmark {
+
+    private static final double TARGET_ROWS_PER_SECOND = 50_000;
+
+    public static void main(String[] args) throws Exception {
+        int rows = 200_000;
+        int runs = 2;
+        long seed = 42;
+        boolean reset = false;
+        for (String arg : args) {
+            String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+            String value = pair.length > 1 ? pair[1] : "";
+            switch (pair[0]) {
+                case "rows": rows = Integer.parseInt(value.replace("_", "")); break;
+                case "runs": runs = Integer.parseInt(value); break;
+                case "seed": seed = Long.parseLong(value); break;
+                case "reset": reset = true; break;
+                default: throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        String stamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        Path out = Paths.get(System.getProperty("library.bench.out", "bench-results/import-" + stamp + ".json"));
+        Path file = Paths.get("generated-data", "catalog-" + rows + "-" + seed + ".csv");
+
+        writeCsv(file, rows, seed);
+        Map<String, String> meta = new LinkedHashMap<>();
+        meta.put("benchmark", "catalog-import");
+        meta.put("timestamp", LocalDateTime.now().toString());
+        meta.put("rows", String.valueOf(rows));
+        meta.put("fileBytes", String.valueOf(Files.size(file)));
+        meta.put("batchSize", String.valueOf(CatalogImporter.BATCH_SIZE));
+        meta.put("threads", System.getProperty("library.import.threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        List<Bench.Result> results = new ArrayList<>();
+        try {
+            if (reset) {
+                BenchDatabase.reset();
+                SchemaMigrator.migrate();
+            }
+            System.out.println(Bench.HEADER);
+            for (int run = 1; run <= runs; run++) {
+                long start = System.nanoTime();
+                CatalogImporter.Result result = CatalogImporter.importFile(file, (done, total) -> {});
+                Bench.Result timing = new Bench.Result("import/run" + run, rows, new long[]{System.nanoTime() - start});
+                System.out.println(timing);
+                System.out.println("  " + result);
+                results.add(timing);
+                meta.put("run" + run + ".rowsPerSecond", String.format(Locale.ROOT, "%.0f", result.getRowsPerSecond()));
+                meta.put("run" + run + ".booksAdded", String.valueOf(result.getBooksAdded()));
+                meta.put("run" + run + ".booksMerged", String.valueOf(result.getBooksMerged()));
+                meta.put("run" + run + ".rejected", String.valueOf(result.getRejected()));
+                String verdict = result.getRowsPerSecond() >= TARGET_ROWS_PER_SECOND ? "meets" : "MISSES";
+                System.out.println(String.format(Locale.ROOT, "  %s the %.0f rows/s target", verdict, TARGET_ROWS_PER_SECOND));
+            }
+        } finally {
+            DatabaseConnection.closeConnection();
+        }
+        meta.put("targetRowsPerSecond", String.format(Locale.ROOT, "%.0f", TARGET_ROWS_PER_SECOND));
+        meta.put("java", System.getProperty("java.version"));
+        meta.put("os", System.getProperty("os.name") + " " + System.getProperty("os.arch"));
+        meta.put("dbUrl", System.getProperty("library.db.url", "jdbc:mysql://localhost/library_db"));
+        Bench.writeJson(out, meta, results);
+    }
+
+    /** Writes the test file unless it is already there (the same rows and seed always give the same file). */
+    private static void writeCsv(Path file, int rows, long seed) throws IOException {
+        if (Files.exists(file)) { return; }
+        Files.createDirectories(file.getParent());
+        Random random = new Random(seed);
+        String[] categories = {"Fiction", "Science", "History", "Poetry", "Travel", "Biography"};
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("title,author,category,copies\n");
+            for (int i = 0; i < rows; i++) {
+                int book = i > 10 && random.nextInt(10) == 0 ? random.nextInt(i) : i; // Repeat an earlier book now and then
+                if (random.nextInt(1000) == 0) {
+                    writer.write("\"Broken " + i + "\",,Fiction,x\n"); // No author, bad copies
+                    continue;
+                }
+                writer.write("\"Imported Title " + book + ", Vol. " + (book % 7 + 1) + "\",Author " + (book % 5000) + ","
+                        + categories[book % categories.length] + "," + (1 + random.nextInt(5)) + "\n");
+            }
+        }
+        System.out.println("Wrote " + rows + " rows to " + file);
+    }
+}
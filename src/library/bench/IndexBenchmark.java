@@ -0,0 +1,178 @@
+package library.bench;
+
+import library.DatabaseConnection;
+import library.SchemaMigrator;
+import library.backend.AdminService;
+import library.backend.LibrarianService;
+import library.backend.StudentService;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures the lookups that schema migration 1 indexes, once without its indexes and once with them.
+ * <p>
+ * The migration is reverted, the tables are analyzed and every lookup is timed; then the migration is
+ * applied again (its duration is reported too, since that is what an upgrade costs), the tables are
+ * re-analyzed and the lookups are timed once more. Students and open loans are sampled from the data
+ * already in the database, so it works on any dataset; {@code --reset --loans=N} generates one first.
+ * <pre>
+ * BENCH_MAIN=library.bench.IndexBenchmark ./bench.sh --reset --loans=10000000 [--loadDataDir=generated-data]
+ *   -Dlibrary.bench.warmup=20 -Dlibrary.bench.iterations=100 -Dlibrary.bench.out=path.json
+ * </pre>
+ */
+public class IndexBenchmark {
+
+    private static final int WARMUP = Integer.getInteger("library.bench.warmup", 20);
+    private static final int ITERATIONS = Integer.getInteger("library.bench.iterations", 100);
+    private static final int MIGRATION = 1;
+    private static final int SAMPLES = 1000;
+
+    private final StudentService studentService = new StudentService();
+    private final AdminService adminService = new AdminService();
+    private final List<Bench.Result> results = new ArrayList<>();
+    private List<Object[]> students;
+    private List<Object[]> openLoans;
+    private int loans;
+
+    public static void main(String[] args) throws Exception {
+        DataGenerator.Config config = new DataGenerator.Config();
+        config.loans = 10_000_000L;
+        boolean reset = false;
+        for (String arg : args) {
+            String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+            String value = pair.length > 1 ? pair[1] : "";
+            switch (pair[0]) {
+                case "loans": config.loans = Long.parseLong(value.replace("_", "")); break;
+                case "seed": config.seed = Long.parseLong(value); break;
+                case "loadDataDir": config.loadDataDir = Paths.get(value.isEmpty() ? "generated-data" : value); break;
+                case "reset": reset = true; break;
+                default: throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        String stamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        Path out = Paths.get(System.getProperty("library.bench.out", "bench-results/indexes-" + stamp + ".json"));
+
+        IndexBenchmark benchmark = new IndexBenchmark();
+        long migrationMillis;
+        try {
+            if (reset) {
+                BenchDatabase.reset();
+                new DataGenerator(config).generate();
+            }
+            benchmark.sample();
+
+            System.out.println("== Without the migration " + MIGRATION + " indexes ==");
+            SchemaMigrator.revert(MIGRATION);
+            analyze();
+            benchmark.runAll("before");
+
+            System.out.println("== Applying migration " + MIGRATION + " ==");
+            long start = System.nanoTime();
+            SchemaMigrator.migrate();
+            migrationMillis = (System.nanoTime() - start) / 1_000_000;
+            analyze();
+            System.out.println("== With the indexes ==");
+            benchmark.runAll("after");
+        } finally {
+            DatabaseConnection.closeConnection();
+        }
+        benchmark.printComparison();
+
+        Map<String, String> meta = new LinkedHashMap<>();
+        meta.put("benchmark", "indexes");
+        meta.put("timestamp", LocalDateTime.now().toString());
+        meta.put("migration", String.valueOf(MIGRATION));
+        meta.put("migrationMillis", String.valueOf(migrationMillis));
+        meta.put("loans", String.valueOf(benchmark.loans));
+        meta.put("warmup", String.valueOf(WARMUP));
+        meta.put("iterations", String.valueOf(ITERATIONS));
+        meta.put("java", System.getProperty("java.version"));
+        meta.put("os", System.getProperty("os.name") + " " + System.getProperty("os.arch"));
+        meta.put("dbUrl", System.getProperty("library.db.url", "jdbc:mysql://localhost/library_db"));
+        Bench.writeJson(out, meta, benchmark.results);
+    }
+
+    private void sample() throws SQLException {
+        loans = ((Number) query("SELECT COUNT(*) FROM IssuedBooks").get(0)[0]).intValue();
+        students = query("SELECT student_id, username FROM Students ORDER BY RAND(42) LIMIT " + SAMPLES);
+        openLoans = query("SELECT book_id, student_id FROM IssuedBooks WHERE status IN ('Issued', 'Overdue') ORDER BY RAND(42) LIMIT " + SAMPLES);
+        if (students.isEmpty() || openLoans.isEmpty()) {
+            throw new SQLException("No students or open loans to sample; generate data with --reset --loans=N first.");
+        }
+        System.out.println(loans + " loans; sampled " + students.size() + " students and " + openLoans.size() + " open loans.");
+    }
+
+    private void runAll(String phase) throws Exception {
+        System.out.println(Bench.HEADER);
+        measure(phase + "/student.getBorrowedBooks", i -> studentService.getBorrowedBooks(student(i)));
+        measure(phase + "/student.getNotifications", i -> studentService.getNotifications((String) students.get(i % students.size())[1]));
+        measure(phase + "/admin.getFineReportByStudent", i -> adminService.getFineReportByStudent(student(i)));
+        measure(phase + "/admin.getUnpaidFines.student", i -> adminService.getUnpaidFines(student(i)));
+        measure(phase + "/librarian.calculateFine", i -> {
+            Object[] loan = openLoans.get(i % openLoans.size());
+            LibrarianService.calculateFine((String) loan[0], (String) loan[1]);
+        });
+    }
+
+    private String student(int i) { return (String) students.get(i % students.size())[0]; }
+
+    private void measure(String name, Bench.Op op) throws Exception {
+        results.add(Bench.measure(name, loans, WARMUP, ITERATIONS, op));
+    }
+
+    private void printComparison() {
+        System.out.println();
+        System.out.println(String.format("%-32s %14s %14s %10s", "lookup", "before p50 us", "after p50 us", "speed-up"));
+        int half = results.size() / 2;
+        for (int i = 0; i < half; i++) {
+            Bench.Result before = results.get(i);
+            Bench.Result after = results.get(half + i);
+            System.out.println(String.format("%-32s %14.1f %14.1f %9.1fx", before.getName().substring("before/".length()),
+                    before.getP50Micros(), after.getP50Micros(), before.getP50Micros() / Math.max(after.getP50Micros(), 0.001)));
+        }
+    }
+
+    /** Refreshes index statistics so the optimizer sees the indexes that were just added or dropped. */
+    private static void analyze() throws SQLException {
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("ANALYZE TABLE IssuedBooks, Fines, Notifications");
+            }
+        } finally {
+            DatabaseConnection.release(conn);
+        }
+    }
+
+    private static List<Object[]> query(String sql) throws SQLException {
+        List<Object[]> rows = new ArrayList<>();
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            try (PreparedStatement pstmt = conn.prepareStatement(sql); ResultSet rs = pstmt.executeQuery()) {
+                int columns = rs.getMetaData().getColumnCount();
+                while (rs.next()) {
+                    Object[] row = new Object[columns];
+                    for (int c = 0; c < columns; c++) { row[c] = rs.getObject(c + 1); }
+                    rows.add(row);
+                }
+            }
+        } finally {
+            DatabaseConnection.release(conn);
+        }
+        return rows;
+    }
+}
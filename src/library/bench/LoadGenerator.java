@@ -0,0 +1,422 @@
+package library.bench;
+
+import library.DatabaseConnection;
+import library.LatencyHistogram;
+import library.backend.AdminService;
+import library.backend.BorrowEngine;
+import library.backend.LibrarianService;
+import library.backend.SettingsRegistry;
+import library.backend.StudentService;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closed-loop load test: many simulated users drive the real service methods against one database.
+ * <p>
+ * Each user runs in its own thread. It picks an operation from the mix, calls the service, waits an
+ * exponentially distributed think time, and repeats until the run ends. Each user plays one student for
+ * student operations and picks students at random for desk operations. Titles are picked with the same
+ * Zipf popularity as {@link DataGenerator}, so hot titles see real contention. The operations:
+ * <ul>
+ *   <li>{@code search}: student catalog search;</li>
+ *   <li>{@code borrow}: a student borrows a title;</li>
+ *   <li>{@code issue}: the librarian issues a title to a student at the desk;</li>
+ *   <li>{@code return}: a student opens their loans and returns one;</li>
+ *   <li>{@code reissue}: a student opens their loans and reissues one;</li>
+ *   <li>{@code fines}: a student's unpaid fines;</li>
+ *   <li>{@code catalog}: a page of the librarian's catalog;</li>
+ *   <li>{@code report}: a page or rollup from the admin reports;</li>
+ *   <li>{@code overdue}: the librarian's full overdue list. It is expensive on large data and off by default.</li>
+ * </ul>
+ * Business refusals, such as a sold-out title or the reissue limit, count as "rejected", not as errors.
+ * At the end it prints throughput and p50/p99/p999 latency per operation. It flags MySQL deadlocks,
+ * lock wait timeouts, Java-level deadlocked threads, and any title whose active loans exceed its copies
+ * or whose counter drifted during the run.
+ * <p>
+ * Users run on virtual threads when the JVM has them (Java 21+), otherwise on platform threads. Every
+ * user shares the connection pool, so {@code -Dlibrary.db.pool.maxSize} is usually the knob being tested.
+ * <pre>
+ * BENCH_MAIN=library.bench.LoadGenerator ./bench.sh --users=2000 --duration=120 [--warmup=15] [--think=200]
+ *     [--mix=search=40,borrow=12,issue=6,return=18,reissue=4,fines=8,catalog=6,report=6] [--reset --loans=1000000]
+ * </pre>
+ */
+public class LoadGenerator {
+
+    enum Op { SEARCH, BORROW, ISSUE, RETURN, REISSUE, FINES, CATALOG, REPORT, OVERDUE }
+
+    enum Outcome { OK, REJECTED, DEADLOCK, LOCK_TIMEOUT, ERROR }
+
+    private static final String DEFAULT_MIX = "search=40,borrow=12,issue=6,return=18,reissue=4,fines=8,catalog=6,report=6";
+    private static final int ER_LOCK_WAIT_TIMEOUT = 1205;
+    private static final int ER_LOCK_DEADLOCK = 1213;
+
+    private static final class OpStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final Map<Outcome, LongAdder> outcomes = new EnumMap<>(Outcome.class);
+
+        OpStats() {
+            for (Outcome outcome : Outcome.values()) { outcomes.put(outcome, new LongAdder()); }
+        }
+
+        long count(Outcome outcome) { return outcomes.get(outcome).sum(); }
+    }
+
+    private final int users;
+    private final long warmupMillis;
+    private final long durationMillis;
+    private final long thinkMillis;
+    private final Op[] mixTable; // One entry per percent point of weight
+    private final String mix;
+    private final String[] bookIds;
+    private final String[] studentIds;
+    private final ZipfSampler bookPopularity;
+    private final int bookStride;
+    private final StudentService studentService = new StudentService();
+    private final AdminService adminService = new AdminService();
+    private final Map<Op, OpStats> stats = new EnumMap<>(Op.class);
+    private final LongAdder completed = new LongAdder();
+    private final AtomicBoolean javaDeadlockSeen = new AtomicBoolean();
+    private volatile boolean measuring = false;
+    private volatile boolean stopped = false;
+
+    LoadGenerator(int users, long warmupMillis, long durationMillis, long thinkMillis, String mix) throws SQLException {
+        this.users = users;
+        this.warmupMillis = warmupMillis;
+        this.durationMillis = durationMillis;
+        this.thinkMillis = thinkMillis;
+        this.mix = mix;
+        this.mixTable = parseMix(mix);
+        this.bookIds = loadIds("SELECT book_id FROM Books ORDER BY book_id");
+        this.studentIds = loadIds("SELECT student_id FROM Students ORDER BY student_id");
+        if (bookIds.length == 0 || studentIds.length == 0) {
+            throw new SQLException("The database has no books or students; generate data first (--reset --loans=N).");
+        }
+        this.bookPopularity = new ZipfSampler(bookIds.length, 1.0);
+        this.bookStride = DataGenerator.coprimeStride(bookIds.length);
+        for (Op op : Op.values()) { stats.put(op, new OpStats()); }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int users = 1000;
+        long warmupSeconds = 10;
+        long durationSeconds = 60;
+        long thinkMillis = 200;
+        String mix = DEFAULT_MIX;
+        long loans = 0;
+        boolean reset = false;
+        String stamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        Path out = Paths.get("bench-results/load-" + stamp + ".json");
+        for (String arg : args) {
+            String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+            String value = pair.length > 1 ? pair[1] : "";
+            switch (pair[0]) {
+                case "users": users = Integer.parseInt(value); break;
+                case "warmup": warmupSeconds = Long.parseLong(value); break;
+                case "duration": durationSeconds = Long.parseLong(value); break;
+                case "think": thinkMillis = Long.parseLong(value); break;
+                case "mix": mix = value; break;
+                case "loans": loans = Long.parseLong(value.replace("_", "")); break;
+                case "reset": reset = true; break;
+                case "out": out = Paths.get(value); break;
+                default: throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        try {
+            if (reset) { BenchDatabase.reset(); }
+            if (loans > 0) {
+                DataGenerator.Config config = new DataGenerator.Config();
+                config.loans = loans;
+                new DataGenerator(config).generate();
+            }
+            LoadGenerator generator = new LoadGenerator(users, warmupSeconds * 1000, durationSeconds * 1000, thinkMillis, mix);
+            generator.run(out);
+        } finally {
+            DatabaseConnection.closeConnection();
+        }
+    }
+
+    void run(Path out) throws Exception {
+        long[] before = checkCopies();
+        long retriesBefore = BorrowEngine.getRetryCount();
+        System.out.printf("%d users, mix %s, think %d ms, pool max %d connections, %d books, %d students%n",
+                users, mix, thinkMillis, DatabaseConnection.getDataSource().getMaxSize(), bookIds.length, studentIds.length);
+        if (before[0] > 0 || before[1] > 0) {
+            System.out.printf("Note: before the run %d titles were oversold and %d had a drifted counter.%n", before[0], before[1]);
+        }
+
+        ScheduledExecutorService monitor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "load-monitor");
+            t.setDaemon(true);
+            return t;
+        });
+        long[] lastCompleted = {0};
+        monitor.scheduleAtFixedRate(() -> {
+            long done = completed.sum();
+            System.out.printf("  %s %,8.0f ops/s, pool %d active / %d idle%n", measuring ? "measure" : "warm-up",
+                    (done - lastCompleted[0]) / 5.0, DatabaseConnection.getDataSource().getActiveConnections(),
+                    DatabaseConnection.getDataSource().getIdleConnections());
+            lastCompleted[0] = done;
+            if (ManagementFactory.getThreadMXBean().findDeadlockedThreads() != null) { javaDeadlockSeen.set(true); }
+        }, 5, 5, TimeUnit.SECONDS);
+
+        ExecutorService executor = newUserExecutor(users);
+        for (int u = 0; u < users; u++) {
+            String studentId = studentIds[u % studentIds.length];
+            executor.execute(() -> userLoop(studentId));
+        }
+        Thread.sleep(warmupMillis);
+        measuring = true;
+        long measureStart = System.nanoTime();
+        Thread.sleep(durationMillis);
+        measuring = false;
+        double seconds = (System.nanoTime() - measureStart) / 1e9;
+        stopped = true;
+        executor.shutdown();
+        if (!executor.awaitTermination(60, TimeUnit.SECONDS)) { System.err.println("Some users were still busy after 60 s."); }
+        monitor.shutdownNow();
+
+        long[] after = checkCopies();
+        report(seconds, after[0], after[1] - before[1], BorrowEngine.getRetryCount() - retriesBefore, out);
+    }
+
+    private void userLoop(String studentId) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (thinkMillis > 0) { sleep(random.nextLong(thinkMillis + 1)); } // Don't start every user at once
+        while (!stopped) {
+            Op op = mixTable[random.nextInt(mixTable.length)];
+            long start = System.nanoTime();
+            Outcome outcome;
+            try {
+                outcome = execute(op, studentId, random);
+            } catch (Exception e) {
+                outcome = classify(e);
+                if (outcome == Outcome.ERROR && measuring) { System.err.println(op + " failed: " + e.getMessage()); }
+            }
+            long nanos = System.nanoTime() - start;
+            completed.increment();
+            if (measuring) {
+                OpStats opStats = stats.get(op);
+                opStats.outcomes.get(outcome).increment();
+                if (outcome == Outcome.OK || outcome == Outcome.REJECTED) { opStats.latency.recordNanos(nanos); }
+            }
+            if (thinkMillis > 0) { sleep((long) (-Math.log(1 - random.nextDouble()) * thinkMillis)); }
+        }
+    }
+
+    private Outcome execute(Op op, String studentId, ThreadLocalRandom random) throws Exception {
+        switch (op) {
+            case SEARCH:
+                studentService.searchBooks(DataGenerator.TITLE_WORDS[random.nextInt(DataGenerator.TITLE_WORDS.length)], 50, false);
+                return Outcome.OK;
+            case BORROW:
+                studentService.borrowBook(studentId, pickBook(random));
+                return Outcome.OK;
+            case ISSUE:
+                LibrarianService.issueBookToStudent(pickBook(random), studentIds[random.nextInt(studentIds.length)]);
+                return Outcome.OK;
+            case RETURN: {
+                Object[] loan = activeLoan(studentId, false);
+                if (loan == null) { return Outcome.REJECTED; }
+                studentService.returnBook((Integer) loan[0], (String) loan[1], studentId, ((Date) loan[4]).toLocalDate());
+                return Outcome.OK;
+            }
+            case REISSUE: {
+                Object[] loan = activeLoan(studentId, true);
+                if (loan == null) { return Outcome.REJECTED; }
+                studentService.reissueBook((Integer) loan[0], (Integer) loan[7]);
+                return Outcome.OK;
+            }
+            case FINES:
+                adminService.getUnpaidFines(studentId);
+                return Outcome.OK;
+            case CATALOG:
+                LibrarianService.getBooksPage(DataGenerator.TITLE_WORDS[random.nextInt(DataGenerator.TITLE_WORDS.length)], null, 50);
+                return Outcome.OK;
+            case REPORT:
+                switch (random.nextInt(3)) {
+                    case 0: adminService.getBorrowedBooksReportPage(null, 50); break;
+                    case 1: adminService.getFineTrend(LocalDate.now().getYear() - 1, LocalDate.now().getYear()); break;
+                    default: adminService.getFineReportByStudent(studentIds[random.nextInt(studentIds.length)]);
+                }
+                return Outcome.OK;
+            case OVERDUE:
+                LibrarianService.getOverdueBooks();
+                return Outcome.OK;
+            default:
+                throw new IllegalStateException("Unhandled operation " + op);
+        }
+    }
+
+    /** The student's first loan that can be returned, or reissued if {@code forReissue}; the row shape of getBorrowedBooks. */
+    private Object[] activeLoan(String studentId, boolean forReissue) throws SQLException {
+        int maxReissues = SettingsRegistry.getInstance().snapshot().getMaxReissues();
+        for (Object[] row : studentService.getBorrowedBooks(studentId)) {
+            String status = (String) row[6];
+            if (!"Issued".equals(status) && !"Overdue".equals(status)) { continue; }
+            if (forReissue && ((Integer) row[7] >= maxReissues || !"N/A".equals(row[8]))) { continue; }
+            return row;
+        }
+        return null;
+    }
+
+    private String pickBook(ThreadLocalRandom random) {
+        return bookIds[DataGenerator.index(bookPopularity.sample(random), bookStride, bookIds.length)];
+    }
+
+    /** Deadlocks and lock waits anywhere in the cause chain; service exceptions that aren't SQL errors are refusals. */
+    static Outcome classify(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLException) {
+                int code = ((SQLException) t).getErrorCode();
+                if (code == ER_LOCK_DEADLOCK || "40001".equals(((SQLException) t).getSQLState())) { return Outcome.DEADLOCK; }
+                if (code == ER_LOCK_WAIT_TIMEOUT) { return Outcome.LOCK_TIMEOUT; }
+            }
+        }
+        if (e instanceof RuntimeException) { return Outcome.ERROR; }
+        if (!(e instanceof SQLException)) { return Outcome.REJECTED; } // BorrowException, ReturnException, ...
+        Throwable cause = e.getCause();
+        return cause instanceof Exception && !(cause instanceof SQLException) ? Outcome.REJECTED : Outcome.ERROR;
+    }
+
+    /** {titles whose active loans exceed their copies, titles whose counter doesn't match their loans}. */
+    private static long[] checkCopies() throws SQLException {
+        String sql = "SELECT COALESCE(SUM(COALESCE(l.on_loan, 0) > b.total_copies), 0), " +
+                     "COALESCE(SUM(b.available_copies + COALESCE(l.on_loan, 0) <> b.total_copies), 0) " +
+                     "FROM Books b LEFT JOIN (SELECT book_id, COUNT(*) AS on_loan FROM IssuedBooks " +
+                     "WHERE status IN ('Issued', 'Overdue', 'HoldActive') GROUP BY book_id) l ON l.book_id = b.book_id";
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            try (PreparedStatement pstmt = conn.prepareStatement(sql); ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                return new long[]{rs.getLong(1), rs.getLong(2)};
+            }
+        } finally {
+            DatabaseConnection.release(conn);
+        }
+    }
+
+    private void report(double seconds, long oversold, long drifted, long borrowRetries, Path out) throws Exception {
+        String format = "%-8s %10s %10s %9s %8s %9s %9s %10s %10s %10s %10s%n";
+        System.out.printf(format, "op", "ops", "ops/s", "rejected", "errors", "deadlock", "lockwait", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        StringBuilder json = new StringBuilder("{\n  \"meta\": {");
+        json.append(String.format(Locale.ROOT, "\n    \"benchmark\": \"load\", \"timestamp\": %s, \"users\": %d, \"seconds\": %.1f, \"thinkMillis\": %d, \"mix\": %s, \"poolMaxSize\": %d, \"java\": %s",
+                Bench.quote(LocalDateTime.now().toString()), users, seconds, thinkMillis, Bench.quote(mix),
+                DatabaseConnection.getDataSource().getMaxSize(), Bench.quote(System.getProperty("java.version"))));
+        json.append("\n  },\n  \"operations\": [");
+        String separator = "\n";
+        long totalDeadlocks = 0;
+        long total = 0;
+        for (Op op : Op.values()) {
+            OpStats s = stats.get(op);
+            long ok = s.count(Outcome.OK);
+            long rejected = s.count(Outcome.REJECTED);
+            long errors = s.count(Outcome.ERROR);
+            long deadlocks = s.count(Outcome.DEADLOCK);
+            long lockWaits = s.count(Outcome.LOCK_TIMEOUT);
+            long ops = ok + rejected + errors + deadlocks + lockWaits;
+            if (ops == 0) { continue; }
+            total += ops;
+            totalDeadlocks += deadlocks;
+            String name = op.name().toLowerCase(Locale.ROOT);
+            System.out.printf(format, name, ops, String.format("%.1f", ops / seconds), rejected, errors, deadlocks, lockWaits,
+                    millis(s.latency.percentileMicros(0.50)), millis(s.latency.percentileMicros(0.99)),
+                    millis(s.latency.percentileMicros(0.999)), millis(s.latency.maxMicros()));
+            json.append(separator).append(String.format(Locale.ROOT,
+                    "    {\"name\": \"%s\", \"ops\": %d, \"opsPerSecond\": %.2f, \"ok\": %d, \"rejected\": %d, \"errors\": %d, " +
+                    "\"deadlocks\": %d, \"lockWaitTimeouts\": %d, \"meanMicros\": %.1f, \"p50Micros\": %d, \"p99Micros\": %d, \"p999Micros\": %d, \"maxMicros\": %d}",
+                    name, ops, ops / seconds, ok, rejected, errors, deadlocks, lockWaits, s.latency.meanMicros(),
+                    s.latency.percentileMicros(0.50), s.latency.percentileMicros(0.99), s.latency.percentileMicros(0.999), s.latency.maxMicros()));
+            separator = ",\n";
+        }
+        json.append(String.format(Locale.ROOT, "\n  ],\n  \"totalOpsPerSecond\": %.2f, \"borrowRetries\": %d, \"oversoldTitles\": %d, \"driftedTitles\": %d, \"javaDeadlock\": %b\n}\n",
+                total / seconds, borrowRetries, oversold, drifted, javaDeadlockSeen.get()));
+        System.out.printf("Total %.1f ops/s; %d borrow retries absorbed.%n", total / seconds, borrowRetries);
+
+        List<String> flags = new ArrayList<>();
+        if (totalDeadlocks > 0) { flags.add(totalDeadlocks + " operations failed with a MySQL deadlock"); }
+        if (javaDeadlockSeen.get()) { flags.add("Java threads deadlocked during the run"); }
+        if (oversold > 0) { flags.add(oversold + " titles have more active loans than copies"); }
+        if (drifted > 0) { flags.add(drifted + " more titles have available_copies out of step with their loans than before the run"); }
+        for (String flag : flags) { System.out.println("FLAG: " + flag); }
+        if (flags.isEmpty()) { System.out.println("No deadlocks or oversold copies."); }
+
+        if (out.getParent() != null) { Files.createDirectories(out.getParent()); }
+        Files.write(out, json.toString().getBytes(StandardCharsets.UTF_8));
+        System.out.println("Results written to " + out);
+    }
+
+    private static String millis(long micros) { return String.format("%.2f", micros / 1000.0); }
+
+    static Op[] parseMix(String mix) {
+        List<Op> table = new ArrayList<>();
+        for (String entry : mix.split(",")) {
+            String[] pair = entry.trim().split("[=:]", 2);
+            Op op = Op.valueOf(pair[0].trim().toUpperCase(Locale.ROOT));
+            int weight = Integer.parseInt(pair[1].trim());
+            for (int i = 0; i < weight; i++) { table.add(op); }
+        }
+        if (table.isEmpty()) { throw new IllegalArgumentException("Empty operation mix: " + mix); }
+        return table.toArray(new Op[0]);
+    }
+
+    /** One virtual thread per user on Java 21+; a platform thread per user on older JVMs. */
+    private static ExecutorService newUserExecutor(int users) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            System.out.println("Virtual threads need Java 21+; running " + users + " platform threads instead.");
+            return Executors.newFixedThreadPool(users, r -> {
+                Thread t = new Thread(r, "load-user");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    private static String[] loadIds(String sql) throws SQLException {
+        List<String> ids = new ArrayList<>();
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            try (PreparedStatement pstmt = conn.prepareStatement(sql); ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) { ids.add(rs.getString(1)); }
+            }
+        } finally {
+            DatabaseConnection.release(conn);
+        }
+        return ids.toArray(new String[0]);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package library.bench;
+
+import library.DatabaseConnection;
+import library.backend.AdminService;
+import library.backend.CatalogIndex;
+import library.backend.LibrarianService;
+import library.backend.StudentService;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Latency benchmarks of the backend service calls the dashboards make, at several catalog sizes.
+ * <p>
+ * For every size the scratch database is reset and seeded by {@link BenchDatabase}, the catalog index is
+ * loaded, and then each call is measured with {@link Bench}: catalog search, the student's loan list,
+ * fine lookups and every admin report first, then borrow, reissue and return, which change the data.
+ * Results are printed as a table and written as JSON to {@code bench-results/}.
+ * <pre>
+ * bench.sh [sizes=1000,10000,100000]
+ *   -Dlibrary.bench.warmup=50 -Dlibrary.bench.iterations=200 -Dlibrary.bench.out=path.json
+ * </pre>
+ * Reports that read whole tables run a tenth as many iterations.
+ */
+public class ServiceBenchmarks {
+
+    private static final int WARMUP = Integer.getInteger("library.bench.warmup", 50);
+    private static final int ITERATIONS = Integer.getInteger("library.bench.iterations", 200);
+    private static final long SEED = Long.getLong("library.bench.seed", 42L);
+
+    private final StudentService studentService = new StudentService();
+    private final AdminService adminService = new AdminService();
+    private final List<Bench.Result> results = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        String sizes = args.length > 0 ? args[0] : System.getProperty("library.bench.sizes", "1000,10000,100000");
+        String stamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        Path out = Paths.get(System.getProperty("library.bench.out", "bench-results/services-" + stamp + ".json"));
+
+        ServiceBenchmarks benchmarks = new ServiceBenchmarks();
+        try {
+            for (String size : sizes.split(",")) {
+                benchmarks.runSize(Integer.parseInt(size.trim()));
+            }
+        } finally {
+            DatabaseConnection.closeConnection();
+        }
+
+        Map<String, String> meta = new LinkedHashMap<>();
+        meta.put("benchmark", "services");
+        meta.put("timestamp", LocalDateTime.now().toString());
+        meta.put("sizes", sizes);
+        meta.put("warmup", String.valueOf(WARMUP));
+        meta.put("iterations", String.valueOf(ITERATIONS));
+        meta.put("seed", String.valueOf(SEED));
+        meta.put("java", System.getProperty("java.version"));
+        meta.put("os", System.getProperty("os.name") + " " + System.getProperty("os.arch"));
+        meta.put("dbUrl", System.getProperty("library.db.url", "jdbc:mysql://localhost/library_db"));
+        Bench.writeJson(out, meta, benchmarks.results);
+    }
+
+    private void runSize(int books) throws Exception {
+        System.out.println("== " + books + " books ==");
+        BenchDatabase.reset();
+        BenchDatabase.seed(books, SEED);
+        CatalogIndex.getInstance().load();
+        int students = BenchDatabase.studentCount(books);
+        String[] words = DataGenerator.TITLE_WORDS;
+        int year = LocalDate.now().getYear();
+        int reportWarmup = Math.max(1, WARMUP / 10);
+        int reportIterations = Math.max(5, ITERATIONS / 10);
+        System.out.println(Bench.HEADER);
+
+        // --- Reads ---
+        measure("student.searchBooks", books, WARMUP, ITERATIONS, i -> studentService.searchBooks(words[i % words.length], 50, false));
+        measure("librarian.getBooksPage", books, WARMUP, ITERATIONS, i -> LibrarianService.getBooksPage(words[i % words.length], null, 50));
+        measure("student.getBorrowedBooks", books, WARMUP, ITERATIONS, i -> studentService.getBorrowedBooks(DataGenerator.studentId(i % students)));
+
+        List<Object[]> unpaid = query("SELECT issue_id, student_id FROM Fines WHERE status = 'Unpaid' ORDER BY fine_id LIMIT 1000");
+        List<Object[]> overdue = query("SELECT book_id, student_id FROM IssuedBooks WHERE status = 'Overdue' ORDER BY issue_id LIMIT 1000");
+        if (!unpaid.isEmpty()) {
+            measure("student.getUnpaidFineDetails", books, WARMUP, ITERATIONS, i -> studentService.getUnpaidFineDetails((Integer) unpaid.get(i % unpaid.size())[0]));
+            measure("admin.getUnpaidFines.student", books, WARMUP, ITERATIONS, i -> adminService.getUnpaidFines((String) unpaid.get(i % unpaid.size())[1]));
+        }
+        if (!overdue.isEmpty()) {
+            measure("librarian.calculateFine", books, WARMUP, ITERATIONS, i -> {
+                Object[] loan = overdue.get(i % overdue.size());
+                LibrarianService.calculateFine((String) loan[0], (String) loan[1]);
+            });
+        }
+
+        measure("admin.getFineReportByStudent", books, WARMUP, ITERATIONS, i -> adminService.getFineReportByStudent(DataGenerator.studentId(i % students)));
+        measure("admin.getStudentFineTrend", books, WARMUP, ITERATIONS, i -> adminService.getStudentFineTrend(DataGenerator.studentId(i % students)));
+        measure("admin.getFineReportByMonth", books, WARMUP, ITERATIONS, i -> adminService.getFineReportByMonth(year - i % 2, 1 + i % 12));
+        measure("admin.getFineTrend", books, WARMUP, ITERATIONS, i -> adminService.getFineTrend(year - 1, year));
+        measure("admin.getBorrowedBooksReportPage", books, WARMUP, ITERATIONS, i -> adminService.getBorrowedBooksReportPage(null, 50));
+        measure("admin.getUnpaidFines.all", books, reportWarmup, reportIterations, i -> adminService.getUnpaidFines(null));
+        measure("admin.getAvailableBooksReport", books, reportWarmup, reportIterations, i -> adminService.getAvailableBooksReport());
+        measure("admin.getAllBorrowedBooksReport", books, reportWarmup, reportIterations, i -> adminService.getAllBorrowedBooksReport());
+
+        // --- Writes: every seeded book has a free copy, so borrow each title at most once ---
+        int calls = Math.min(WARMUP + ITERATIONS, books);
+        int warmup = (int) ((long) calls * WARMUP / (WARMUP + ITERATIONS));
+        int lastIssueId = ((Number) query("SELECT COALESCE(MAX(issue_id), 0) FROM IssuedBooks").get(0)[0]).intValue();
+        measure("student.borrowBook", books, warmup, calls - warmup, i -> studentService.borrowBook(DataGenerator.studentId(i % students), DataGenerator.bookId(i)));
+
+        List<Object[]> borrowed = query("SELECT issue_id FROM IssuedBooks WHERE issue_id > " + lastIssueId + " ORDER BY issue_id");
+        measure("student.reissueBook", books, warmup, borrowed.size() - warmup, i -> studentService.reissueBook((Integer) borrowed.get(i)[0], 0));
+
+        List<Object[]> reissued = query("SELECT issue_id, book_id, student_id, due_date FROM IssuedBooks WHERE issue_id > " + lastIssueId + " ORDER BY issue_id");
+        measure("student.returnBook", books, warmup, reissued.size() - warmup, i -> {
+            Object[] loan = reissued.get(i);
+            studentService.returnBook((Integer) loan[0], (String) loan[1], (String) loan[2], ((Date) loan[3]).toLocalDate());
+        });
+    }
+
+    private void measure(String name, int size, int warmup, int iterations, Bench.Op op) throws Exception {
+        results.add(Bench.measure(name, size, warmup, iterations, op));
+    }
+
+    private static List<Object[]> query(String sql) throws SQLException {
+        List<Object[]> rows = new ArrayList<>();
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            try (PreparedStatement pstmt = conn.prepareStatement(sql); ResultSet rs = pstmt.executeQuery()) {
+                int columns = rs.getMetaData().getColumnCount();
+                while (rs.next()) {
+                    Object[] row = new Object[columns];
+                    for (int c = 0; c < columns; c++) { row[c] = rs.getObject(c + 1); }
+                    rows.add(row);
+                }
+            }
+        } finally {
+            DatabaseConnection.release(conn);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,72 @@
+package library.bench;
+
+import java.util.Random;
+
+/**
+ * Draws ranks {@code 1..n} with probability proportional to {@code 1 / rank^exponent}.
+ * <p>
+ * Uses rejection-inversion sampling (Hormann and Derflinger, 1996), so a draw costs O(1) time and the
+ * sampler holds no table, whatever the size of {@code n}. Rank 1 is the most popular;
+ * {@link #probability(int)} gives the exact share of a rank.
+ */
+final class ZipfSampler {
+
+    private final int n;
+    private final double exponent;
+    private final double hIntegralX1;
+    private final double hIntegralN;
+    private final double s;
+    private final double harmonic; // Sum of 1/k^exponent over 1..n, for probability()
+
+    ZipfSampler(int n, double exponent) {
+        if (n < 1) { throw new IllegalArgumentException("n must be positive: " + n); }
+        if (exponent <= 0) { throw new IllegalArgumentException("exponent must be positive: " + exponent); }
+        this.n = n;
+        this.exponent = exponent;
+        this.hIntegralX1 = hIntegral(1.5) - 1;
+        this.hIntegralN = hIntegral(n + 0.5);
+        this.s = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+        double sum = 0;
+        for (int k = n; k >= 1; k--) { sum += h(k); } // Smallest terms first for accuracy
+        this.harmonic = sum;
+    }
+
+    int size() { return n; }
+
+    /** A rank in {@code 1..n}. */
+    int sample(Random random) {
+        while (true) {
+            double u = hIntegralN + random.nextDouble() * (hIntegralX1 - hIntegralN);
+            double x = hIntegralInverse(u);
+            int k = (int) (x + 0.5);
+            if (k < 1) { k = 1; } else if (k > n) { k = n; }
+            if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) { return k; }
+        }
+    }
+
+    /** The probability of drawing {@code rank}. */
+    double probability(int rank) { return h(rank) / harmonic; }
+
+    private double h(double x) { return Math.exp(-exponent * Math.log(x)); }
+
+    private double hIntegral(double x) {
+        double logX = Math.log(x);
+        return helper2((1 - exponent) * logX) * logX;
+    }
+
+    private double hIntegralInverse(double x) {
+        double t = x * (1 - exponent);
+        if (t < -1) { t = -1; } // Guards against rounding at the lower end
+        return Math.exp(helper1(t) * x);
+    }
+
+    /** log(1 + x) / x, continuous at 0. */
+    private static double helper1(double x) {
+        return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+    }
+
+    /** (exp(x) - 1) / x, continuous at 0. */
+    private static double helper2(double x) {
+        return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1 + x * 0.5 * (1 + x / 3 * (1 + 0.25 * x));
+    }
+}
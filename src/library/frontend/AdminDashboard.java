@@ -1,10 +1,10 @@
 package library.frontend;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
-import javax.swing.table.TableRowSorter;
 import java.awt.*;
 import java.awt.event.*;
+import java.io.File;
+import java.nio.file.Path;
 import java.sql.SQLException; // Keep for catch blocks
 import java.time.LocalDate; // For month/year selection
 import java.time.Month; // For month names
@@ -15,6 +15,10 @@ import java.util.Vector; // For ComboBox model
 
 import library.UserSession;
 import library.backend.AdminService;
+import library.backend.ReportExporter;
+import library.frontend.ColumnarTableModel.ColumnType;
+
+import static library.frontend.ColumnarTableModel.ColumnType.*;
 
 /**
  * Admin Dashboard GUI. Provides administrative functions for managing users,
@@ -26,12 +30,13 @@ public class AdminDashboard extends JFrame implements ActionListener {
     private final UserSession session;
 
     // --- Main UI Components ---
-    private JTabbedPane mainTabs;
+    private LazyTabbedPane mainTabs;
 
     // --- User Management Tab Components ---
     private JPanel userManagementPanel;
     private JTable usersTable;
-    private DefaultTableModel usersTableModel;
+    private PagedTableModel usersTableModel;
+    private volatile String usersSearchTerm = "";
     private JButton activateUserButton;
     private JButton deactivateUserButton;
     private JTextField userSearchField;
@@ -50,28 +55,28 @@ public class AdminDashboard extends JFrame implements ActionListener {
     // View Table
     private JPanel viewLibrariansPanel;
     private JTable librariansTable;
-    private DefaultTableModel librariansTableModel;
+    private ColumnarTableModel librariansTableModel;
     private JButton deleteLibrarianButton;
 
     // --- Fine Management Tab Components ---
     private JPanel fineManagementPanel;
     private JTable finesTable;
-    private DefaultTableModel finesTableModel;
+    private ColumnarTableModel finesTableModel;
     private JButton waiveFineButton;
     private JTextField fineSearchStudentIdField;
     private JButton fineSearchButton;
 
     // --- Reports Tab Components ---
     private JPanel reportsPanel; // Main panel for the reports tab
-    private JTabbedPane reportsSubTabs; // Sub-tabs for different report types
+    private LazyTabbedPane reportsSubTabs; // Sub-tabs for different report types
     // Book Reports
     private JPanel availableBooksReportPanel;
     private JTable availableBooksReportTable;
-    private DefaultTableModel availableBooksReportModel;
+    private ColumnarTableModel availableBooksReportModel;
     private JButton refreshAvailButton; // Added refresh button
     private JPanel borrowedBooksReportPanel;
     private JTable borrowedBooksReportTable;
-    private DefaultTableModel borrowedBooksReportModel;
+    private PagedTableModel borrowedBooksReportModel;
     private JButton refreshBorrowedButton; // Added refresh button
     // Fine Reports
     private JPanel fineReportsPanel; // Panel to hold fine report sub-tabs
@@ -81,16 +86,22 @@ public class AdminDashboard extends JFrame implements ActionListener {
     private JTextField studentIdFineReportField;
     private JButton searchStudentFineReportButton;
     private JTable individualFineReportTable;
-    private DefaultTableModel individualFineReportModel;
+    private ColumnarTableModel individualFineReportModel;
+    private JLabel studentFineSummaryLabel;
     // Monthly Fine Report
     private JPanel monthlyFineReportPanel;
     private JComboBox<Integer> yearSelector;
+    private ColumnarTableModel fineTrendModel;
     private JComboBox<Month> monthSelector;
     private JButton searchMonthlyFineReportButton;
     private JLabel monthlyTotalLabel; // To display the total
 
+    // Export
+    private JPanel exportReportPanel;
+
     // --- Logout Components ---
     private JButton logoutButton;
+    private final TaskRunner tasks = new TaskRunner(this); // Report exports, with progress and Cancel
 
     private static final Color PRIMARY_COLOR = new Color(52, 152, 219);   // Blue
     private static final Color SECONDARY_COLOR = new Color(236, 240, 241); // Light Gray
@@ -99,6 +110,7 @@ public class AdminDashboard extends JFrame implements ActionListener {
     private static final Font TITLE_FONT = new Font("Segoe UI", Font.BOLD, 24);
     private static final Font SUBTITLE_FONT = new Font("Segoe UI", Font.BOLD, 16);
     private static final int BORDER_RADIUS = 8;
+    private static final int PAGE_SIZE = 200; // Rows fetched per scroll-triggered page
 
     private static class RoundedBorder implements javax.swing.border.Border {
         private int radius;
@@ -136,19 +148,15 @@ public class AdminDashboard extends JFrame implements ActionListener {
             @Override public void windowClosing(WindowEvent e) { performLogout(); }
         });
 
-        mainTabs = new JTabbedPane();
+        mainTabs = new LazyTabbedPane();
         mainTabs.setFont(MAIN_FONT);
         mainTabs.setBackground(SECONDARY_COLOR);
-        // Create and add tabs
-        createUserManagementTab();
-        createLibrarianManagementTab();
-        createFineManagementTab();
-        createReportsTab(); // Create the actual reports tab now
-
-        mainTabs.addTab("User Accounts", userManagementPanel);
-        mainTabs.addTab("Manage Librarians", librarianManagementPanel);
-        mainTabs.addTab("Fine Management", fineManagementPanel);
-        mainTabs.addTab("View Reports", reportsPanel); // Add reports tab
+        StartupTimer.watchFirstPaint(this, "Admin");
+        // Each tab is built, and its data loaded, the first time it is selected
+        mainTabs.addLazyTab("User Accounts", () -> { createUserManagementTab(); loadAllUsers(); return userManagementPanel; });
+        mainTabs.addLazyTab("Manage Librarians", () -> { createLibrarianManagementTab(); loadAllLibrarians(); return librarianManagementPanel; });
+        mainTabs.addLazyTab("Fine Management", () -> { createFineManagementTab(); loadUnpaidFines(); return fineManagementPanel; });
+        mainTabs.addLazyTab("View Reports", () -> { createReportsTab(); return reportsPanel; });
 
         JPanel topPanel = new JPanel(new BorderLayout());
         topPanel.setBackground(PRIMARY_COLOR);
@@ -169,18 +177,11 @@ public class AdminDashboard extends JFrame implements ActionListener {
         logoutButton.setFocusPainted(false);
         logoutButton.setBorder(new RoundedBorder(BORDER_RADIUS));
 
+        topPanel.add(tasks.getIndicator(), BorderLayout.CENTER);
         topPanel.add(logoutButton, BorderLayout.EAST);
 
         add(topPanel, BorderLayout.NORTH);
         add(mainTabs, BorderLayout.CENTER);
-
-        // Load initial data
-        loadAllUsers();
-        loadAllLibrarians();
-        loadUnpaidFines();
-        // Load initial reports (optional, or load on tab selection/button click)
-        loadAvailableBooksReport();
-        loadBorrowedBooksReport();
     }
 
     // --- Tab Creation Methods ---
@@ -204,11 +205,15 @@ public class AdminDashboard extends JFrame implements ActionListener {
         searchPanel.add(new JLabel("Search Username/Email:")); searchPanel.add(userSearchField); searchPanel.add(userSearchButton);
         userManagementPanel.add(searchPanel, BorderLayout.NORTH);
         String[] userColumns = {"Username", "Role", "Status", "Email"};
-        usersTableModel = new DefaultTableModel(userColumns, 0) { @Override public boolean isCellEditable(int r, int c) { return false; }};
+        // Search runs server-side and pages arrive in role/username order, so the table has no row sorter
+        usersTableModel = new PagedTableModel(userColumns, new ColumnType[]{STRING, STRING, STRING, STRING}, PAGE_SIZE, (after, pageSize) -> adminService.getUsersPage(usersSearchTerm, after, pageSize));
+        usersTableModel.setErrorHandler(e -> handleLoadingError(e, "users"));
+        usersTableModel.setPageLoadedHandler(StartupTimer::interactive); // The users tab is shown first
         usersTable = new JTable(usersTableModel); usersTable.setFont(MAIN_FONT);
-        usersTable.getTableHeader().setFont(MAIN_FONT); usersTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION); usersTable.setAutoCreateRowSorter(true);
+        usersTable.getTableHeader().setFont(MAIN_FONT); usersTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         JScrollPane userScrollPane = new JScrollPane(usersTable);
         userScrollPane.getViewport().setBackground(Color.WHITE); userManagementPanel.add(userScrollPane, BorderLayout.CENTER);
+        usersTableModel.attach(usersTable, userScrollPane);
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 5));
         buttonPanel.setBackground(SECONDARY_COLOR);
         activateUserButton = new JButton("Activate Selected"); activateUserButton.setFont(MAIN_FONT);
@@ -255,7 +260,7 @@ public class AdminDashboard extends JFrame implements ActionListener {
         viewLibrariansPanel = new JPanel(new BorderLayout(10, 10)); viewLibrariansPanel.setBorder(BorderFactory.createTitledBorder(BorderFactory.createLineBorder(PRIMARY_COLOR), "Current Librarians", 0, 0, SUBTITLE_FONT, PRIMARY_COLOR));
         viewLibrariansPanel.setBackground(SECONDARY_COLOR);
         String[] libColumns = {"Librarian ID", "Name", "Username", "Email"};
-        librariansTableModel = new DefaultTableModel(libColumns, 0) { @Override public boolean isCellEditable(int r, int c) { return false; }};
+        librariansTableModel = new ColumnarTableModel(libColumns, STRING, STRING, STRING, STRING);
         librariansTable = new JTable(librariansTableModel); librariansTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION); librariansTable.setAutoCreateRowSorter(true);
         librariansTable.setFont(MAIN_FONT);
         librariansTable.getTableHeader().setFont(MAIN_FONT);
@@ -289,7 +294,7 @@ public class AdminDashboard extends JFrame implements ActionListener {
         searchPanel.add(new JLabel("Filter by Student ID:")); searchPanel.add(fineSearchStudentIdField); searchPanel.add(fineSearchButton);
         fineManagementPanel.add(searchPanel, BorderLayout.NORTH);
         String[] fineColumns = {"Fine ID", "Student ID", "Student Name", "Issue ID", "Book Title", "Amount", "Fine Date"};
-        finesTableModel = new DefaultTableModel(fineColumns, 0) { @Override public boolean isCellEditable(int r, int c) { return false; }};
+        finesTableModel = new ColumnarTableModel(fineColumns, INT, STRING, STRING, INT, STRING, DOUBLE, DATE); // Issue ID may be "N/A"
         finesTable = new JTable(finesTableModel); finesTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION); finesTable.setAutoCreateRowSorter(true);
         finesTable.setFont(MAIN_FONT); finesTable.getTableHeader().setFont(MAIN_FONT);
         finesTable.getColumnModel().getColumn(0).setPreferredWidth(60); finesTable.getColumnModel().getColumn(1).setPreferredWidth(80); finesTable.getColumnModel().getColumn(2).setPreferredWidth(150); finesTable.getColumnModel().getColumn(3).setPreferredWidth(60); finesTable.getColumnModel().getColumn(4).setPreferredWidth(250); finesTable.getColumnModel().getColumn(5).setPreferredWidth(80); finesTable.getColumnModel().getColumn(6).setPreferredWidth(100);
@@ -310,18 +315,15 @@ public class AdminDashboard extends JFrame implements ActionListener {
         reportsPanel = new JPanel(new BorderLayout());
         reportsPanel.setBackground(SECONDARY_COLOR);
         reportsPanel.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
-        reportsSubTabs = new JTabbedPane();
+        reportsSubTabs = new LazyTabbedPane();
         reportsSubTabs.setFont(MAIN_FONT);
         reportsSubTabs.setBackground(SECONDARY_COLOR);
 
-        // Create and add sub-tabs
-        createAvailableBooksReportTab();
-        createBorrowedBooksReportTab();
-        createFineReportsTabContainer(); // Creates the container with its own sub-tabs
-
-        reportsSubTabs.addTab("Available Books", availableBooksReportPanel);
-        reportsSubTabs.addTab("Borrowed Books", borrowedBooksReportPanel);
-        reportsSubTabs.addTab("Fine Reports", fineReportsPanel); // Add the container panel
+        // Sub-tabs are built and loaded when first selected
+        reportsSubTabs.addLazyTab("Available Books", () -> { createAvailableBooksReportTab(); loadAvailableBooksReport(); return availableBooksReportPanel; });
+        reportsSubTabs.addLazyTab("Borrowed Books", () -> { createBorrowedBooksReportTab(); loadBorrowedBooksReport(); return borrowedBooksReportPanel; });
+        reportsSubTabs.addLazyTab("Fine Reports", () -> { createFineReportsTabContainer(); return fineReportsPanel; }); // Container with its own sub-tabs
+        reportsSubTabs.addLazyTab("Export", () -> { createExportReportTab(); return exportReportPanel; });
 
         reportsPanel.add(reportsSubTabs, BorderLayout.CENTER);
     }
@@ -331,7 +333,7 @@ public class AdminDashboard extends JFrame implements ActionListener {
         availableBooksReportPanel.setBackground(SECONDARY_COLOR);
         availableBooksReportPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
         String[] columns = {"Book ID", "Title", "Author", "Category", "Available Copies"};
-        availableBooksReportModel = new DefaultTableModel(columns, 0) { @Override public boolean isCellEditable(int r, int c) { return false; }};
+        availableBooksReportModel = new ColumnarTableModel(columns, STRING, STRING, STRING, STRING, INT);
         availableBooksReportTable = new JTable(availableBooksReportModel);
         availableBooksReportTable.setAutoCreateRowSorter(true);
         availableBooksReportPanel.add(new JScrollPane(availableBooksReportTable), BorderLayout.CENTER);
@@ -353,10 +355,12 @@ public class AdminDashboard extends JFrame implements ActionListener {
         borrowedBooksReportPanel.setBackground(SECONDARY_COLOR);
         borrowedBooksReportPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
         String[] columns = {"Issue ID", "Book ID", "Book Title", "Student ID", "Student Name", "Issue Date", "Due Date", "Status"};
-        borrowedBooksReportModel = new DefaultTableModel(columns, 0) { @Override public boolean isCellEditable(int r, int c) { return false; }};
-        borrowedBooksReportTable = new JTable(borrowedBooksReportModel);
-        borrowedBooksReportTable.setAutoCreateRowSorter(true);
-        borrowedBooksReportPanel.add(new JScrollPane(borrowedBooksReportTable), BorderLayout.CENTER);
+        borrowedBooksReportModel = new PagedTableModel(columns, new ColumnType[]{INT, STRING, STRING, STRING, STRING, DATE, DATE, STRING}, PAGE_SIZE, (after, pageSize) -> adminService.getBorrowedBooksReportPage(after, pageSize));
+        borrowedBooksReportModel.setErrorHandler(e -> handleLoadingError(e, "borrowed books report"));
+        borrowedBooksReportTable = new JTable(borrowedBooksReportModel); // Paged in due-date order, so no row sorter
+        JScrollPane borrowedScrollPane = new JScrollPane(borrowedBooksReportTable);
+        borrowedBooksReportPanel.add(borrowedScrollPane, BorderLayout.CENTER);
+        borrowedBooksReportModel.attach(borrowedBooksReportTable, borrowedScrollPane);
 
         refreshBorrowedButton = new JButton("Refresh");
         refreshAvailButton.setFont(MAIN_FONT);
@@ -408,10 +412,13 @@ public class AdminDashboard extends JFrame implements ActionListener {
         individualFineReportPanel.add(searchPanel, BorderLayout.NORTH);
         // Table
         String[] columns = {"Fine ID", "Issue ID", "Book Title", "Amount", "Fine Date", "Status"};
-        individualFineReportModel = new DefaultTableModel(columns, 0) { @Override public boolean isCellEditable(int r, int c) { return false; }};
+        individualFineReportModel = new ColumnarTableModel(columns, INT, INT, STRING, DOUBLE, DATE, STRING);
         individualFineReportTable = new JTable(individualFineReportModel);
         individualFineReportTable.setAutoCreateRowSorter(true);
         individualFineReportPanel.add(new JScrollPane(individualFineReportTable), BorderLayout.CENTER);
+        studentFineSummaryLabel = new JLabel(" ");
+        studentFineSummaryLabel.setFont(MAIN_FONT);
+        individualFineReportPanel.add(studentFineSummaryLabel, BorderLayout.SOUTH);
     }
 
     private void createMonthlyFineReportTab() {
@@ -448,7 +455,62 @@ public class AdminDashboard extends JFrame implements ActionListener {
         // Result Display
         monthlyTotalLabel = new JLabel("Total Fines for Selected Month: N/A", SwingConstants.CENTER);
         monthlyTotalLabel.setFont(new Font("Arial", Font.BOLD, 16));
-        monthlyFineReportPanel.add(monthlyTotalLabel, BorderLayout.CENTER);
+        // Trend over the five years ending at the selected year, read from the monthly rollup
+        fineTrendModel = new ColumnarTableModel(new String[]{"Year", "Month", "Total Fines", "Paid", "Fines Count"}, INT, STRING, DOUBLE, DOUBLE, INT);
+        JTable fineTrendTable = new JTable(fineTrendModel);
+        JPanel resultPanel = new JPanel(new BorderLayout(10, 10));
+        resultPanel.setOpaque(false);
+        resultPanel.add(monthlyTotalLabel, BorderLayout.NORTH);
+        resultPanel.add(new JScrollPane(fineTrendTable), BorderLayout.CENTER);
+        monthlyFineReportPanel.add(resultPanel, BorderLayout.CENTER);
+    }
+
+
+    private void createExportReportTab() {
+        exportReportPanel = new JPanel(new GridBagLayout());
+        exportReportPanel.setBackground(SECONDARY_COLOR);
+        exportReportPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.insets = new Insets(8, 8, 8, 8);
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        gbc.anchor = GridBagConstraints.WEST;
+
+        JComboBox<ReportExporter.Report> reportSelector = new JComboBox<>(ReportExporter.Report.values());
+        reportSelector.setFont(MAIN_FONT);
+        JTextField studentIdField = new JTextField(15);
+        studentIdField.setToolTipText("Required for a single student's fines; optional filter for unpaid fines.");
+        JComboBox<String> formatSelector = new JComboBox<>(new String[]{"CSV (.csv)", "Compressed CSV (.csv.gz)", "Compressed columnar (.lcol)"});
+        formatSelector.setFont(MAIN_FONT);
+        JButton exportButton = new JButton("Export...");
+        exportButton.setFont(MAIN_FONT);
+        exportButton.setBackground(PRIMARY_COLOR);
+        exportButton.setForeground(Color.WHITE);
+        exportButton.setFocusPainted(false);
+        exportButton.setBorder(new RoundedBorder(BORDER_RADIUS));
+
+        gbc.gridx = 0; gbc.gridy = 0; exportReportPanel.add(new JLabel("Report:"), gbc);
+        gbc.gridx = 1; exportReportPanel.add(reportSelector, gbc);
+        gbc.gridx = 0; gbc.gridy = 1; exportReportPanel.add(new JLabel("Student ID:"), gbc);
+        gbc.gridx = 1; exportReportPanel.add(studentIdField, gbc);
+        gbc.gridx = 0; gbc.gridy = 2; exportReportPanel.add(new JLabel("Format:"), gbc);
+        gbc.gridx = 1; exportReportPanel.add(formatSelector, gbc);
+        gbc.gridx = 1; gbc.gridy = 3; gbc.fill = GridBagConstraints.NONE; exportReportPanel.add(exportButton, gbc);
+
+        exportButton.addActionListener(e -> {
+            ReportExporter.Report report = (ReportExporter.Report) reportSelector.getSelectedItem();
+            String studentId = studentIdField.getText().trim().toUpperCase();
+            if (report.needsStudentId() && studentId.isEmpty()) { showWarning("Enter the student ID for this report."); return; }
+            String extension = new String[]{".csv", ".csv.gz", ".lcol"}[formatSelector.getSelectedIndex()];
+            JFileChooser chooser = new JFileChooser();
+            chooser.setSelectedFile(new File(report.name().toLowerCase() + "-" + LocalDate.now() + extension));
+            if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) { return; }
+            Path file = chooser.getSelectedFile().toPath();
+            if (!file.getFileName().toString().toLowerCase().endsWith(extension)) { file = file.resolveSibling(file.getFileName() + extension); }
+            Path target = file;
+            ReportExporter.Format format = extension.equals(".lcol") ? ReportExporter.Format.COLUMNAR : ReportExporter.Format.CSV;
+            tasks.runWithProgress("Exporting " + report.toString().toLowerCase(), progress -> ReportExporter.export(report, studentId, target, format, progress),
+                    result -> showSuccess("Exported " + result.getRows() + " row(s) to " + result.getFile() + "."), exportButton);
+        });
     }
 
 
@@ -519,64 +581,74 @@ public class AdminDashboard extends JFrame implements ActionListener {
     }
     private void performLogout() {
         int confirm = JOptionPane.showConfirmDialog(this, "Logout?", "Confirm", JOptionPane.YES_NO_OPTION);
-        if (confirm == JOptionPane.YES_OPTION) { UserSession.clearInstance(); this.dispose(); SwingUtilities.invokeLater(LoginFrame::new); }
+        if (confirm == JOptionPane.YES_OPTION) { tasks.cancelAll(); UserSession.clearInstance(); this.dispose(); SwingUtilities.invokeLater(LoginFrame::new); }
     }
 
     // --- Data Loading Methods ---
 
     private void loadAllUsers() {
-        String searchTerm = userSearchField != null ? userSearchField.getText().trim() : "";
-        usersTableModel.setRowCount(0); usersTableModel.addRow(new Object[]{"Loading...", "", "", ""});
-        SwingWorker<List<Object[]>, Void> worker = new SwingWorker<>() {
-            @Override protected List<Object[]> doInBackground() throws Exception { return adminService.getAllUsers(); }
-            @Override protected void done() { try { List<Object[]> users = get(); usersTableModel.setRowCount(0); if(users.isEmpty()){ System.out.println("No users."); } else { users.forEach(usersTableModel::addRow); } applyUserFilter(searchTerm); } catch (Exception e) { handleLoadingError(e, "users"); usersTableModel.setRowCount(0); } } }; worker.execute();
-    }
-    private void applyUserFilter(String searchTerm) {
-        TableRowSorter<DefaultTableModel> sorter = (TableRowSorter<DefaultTableModel>) usersTable.getRowSorter(); if (sorter == null) { sorter = new TableRowSorter<>(usersTableModel); usersTable.setRowSorter(sorter); } if (searchTerm.isEmpty()) { sorter.setRowFilter(null); } else { try { RowFilter<DefaultTableModel, Object> rf = RowFilter.regexFilter("(?i)" + searchTerm, 0, 3); sorter.setRowFilter(rf); } catch (java.util.regex.PatternSyntaxException e) { System.err.println("Invalid regex: " + searchTerm); sorter.setRowFilter(null); } }
+        usersSearchTerm = userSearchField != null ? userSearchField.getText().trim() : ""; // Read on the EDT; pages load in the background
+        usersTableModel.reload();
     }
     private void loadAllLibrarians() {
-        librariansTableModel.setRowCount(0); librariansTableModel.addRow(new Object[]{"Loading...", "", "", ""});
+        librariansTableModel.showLoadingIfEmpty();
         SwingWorker<List<Object[]>, Void> worker = new SwingWorker<>() {
             @Override protected List<Object[]> doInBackground() throws Exception { return adminService.getAllLibrarians(); }
-            @Override protected void done() { try { List<Object[]> librarians = get(); librariansTableModel.setRowCount(0); if(librarians.isEmpty()){ System.out.println("No librarians."); } else { librarians.forEach(librariansTableModel::addRow); } } catch (Exception e) { handleLoadingError(e, "librarians"); librariansTableModel.setRowCount(0); } } }; worker.execute();
+            @Override protected void done() { try { List<Object[]> librarians = get(); librariansTableModel.applyDiff(librarians, 0); if(librarians.isEmpty()){ System.out.println("No librarians."); } } catch (Exception e) { handleLoadingError(e, "librarians"); librariansTableModel.clear(); } } }; worker.execute();
     }
     private void loadUnpaidFines() {
         String studentIdFilter = fineSearchStudentIdField != null ? fineSearchStudentIdField.getText().trim() : "";
-        finesTableModel.setRowCount(0); finesTableModel.addRow(new Object[]{"Loading...", "", "", "", "", "", null});
+        finesTableModel.showLoadingIfEmpty();
         SwingWorker<List<Object[]>, Void> worker = new SwingWorker<>() {
             @Override protected List<Object[]> doInBackground() throws Exception { return adminService.getUnpaidFines(studentIdFilter); }
-            @Override protected void done() { try { List<Object[]> fines = get(); finesTableModel.setRowCount(0); if (fines.isEmpty()) { System.out.println("No unpaid fines."); } else { fines.forEach(finesTableModel::addRow); } } catch (Exception e) { handleLoadingError(e, "unpaid fines"); finesTableModel.setRowCount(0); } } }; worker.execute();
+            @Override protected void done() { try { List<Object[]> fines = get(); finesTableModel.applyDiff(fines, 0); if (fines.isEmpty()) { System.out.println("No unpaid fines."); } } catch (Exception e) { handleLoadingError(e, "unpaid fines"); finesTableModel.clear(); } } }; worker.execute();
     }
 
     // --- Report Loading Methods ---
     private void loadAvailableBooksReport() {
-        availableBooksReportModel.setRowCount(0); availableBooksReportModel.addRow(new Object[]{"Loading...", "", "", "", ""});
+        availableBooksReportModel.showLoadingIfEmpty();
         SwingWorker<List<Object[]>, Void> worker = new SwingWorker<>() {
             @Override protected List<Object[]> doInBackground() throws Exception { return adminService.getAvailableBooksReport(); }
-            @Override protected void done() { try { List<Object[]> books = get(); availableBooksReportModel.setRowCount(0); if(books.isEmpty()){ System.out.println("No available books."); } else { books.forEach(availableBooksReportModel::addRow); } } catch (Exception e) { handleLoadingError(e, "available books report"); availableBooksReportModel.setRowCount(0); } } }; worker.execute();
-    }
-    private void loadBorrowedBooksReport() {
-        borrowedBooksReportModel.setRowCount(0); borrowedBooksReportModel.addRow(new Object[]{"Loading...", "", "", "", "", null, null, ""});
-        SwingWorker<List<Object[]>, Void> worker = new SwingWorker<>() {
-            @Override protected List<Object[]> doInBackground() throws Exception { return adminService.getAllBorrowedBooksReport(); }
-            @Override protected void done() { try { List<Object[]> books = get(); borrowedBooksReportModel.setRowCount(0); if(books.isEmpty()){ System.out.println("No borrowed books."); } else { books.forEach(borrowedBooksReportModel::addRow); } } catch (Exception e) { handleLoadingError(e, "borrowed books report"); borrowedBooksReportModel.setRowCount(0); } } }; worker.execute();
+            @Override protected void done() { try { List<Object[]> books = get(); availableBooksReportModel.applyDiff(books, 0); if(books.isEmpty()){ System.out.println("No available books."); } } catch (Exception e) { handleLoadingError(e, "available books report"); availableBooksReportModel.clear(); } } }; worker.execute();
     }
+    private void loadBorrowedBooksReport() { borrowedBooksReportModel.reload(); }
     private void loadFineReportByStudent() {
         String studentId = studentIdFineReportField.getText().trim(); if (studentId.isEmpty()) { showWarning("Enter Student ID."); return; }
-        individualFineReportModel.setRowCount(0); individualFineReportModel.addRow(new Object[]{"Loading...", "", "", "", null, ""});
+        individualFineReportModel.showLoading();
         SwingWorker<List<Object[]>, Void> worker = new SwingWorker<>() {
             @Override protected List<Object[]> doInBackground() throws Exception { return adminService.getFineReportByStudent(studentId); }
-            @Override protected void done() { try { List<Object[]> fines = get(); individualFineReportModel.setRowCount(0); if(fines.isEmpty()){ showInfo("No fines for student " + studentId); } else { fines.forEach(individualFineReportModel::addRow); } } catch (Exception e) { handleLoadingError(e, "individual fine report"); individualFineReportModel.setRowCount(0); } } }; worker.execute();
+            @Override protected void done() { try { List<Object[]> fines = get(); individualFineReportModel.replaceAll(fines); if(fines.isEmpty()){ showInfo("No fines for student " + studentId); } } catch (Exception e) { handleLoadingError(e, "individual fine report"); individualFineReportModel.clear(); } } }; worker.execute();
+        studentFineSummaryLabel.setText(" ");
+        SwingWorker<List<Object[]>, Void> summaryWorker = new SwingWorker<>() {
+            @Override protected List<Object[]> doInBackground() throws Exception { return adminService.getStudentFineTrend(studentId); }
+            @Override protected void done() {
+                try {
+                    double total = 0, paid = 0; int count = 0;
+                    for (Object[] month : get()) { total += (double) month[2]; paid += (double) month[3]; count += (int) month[4]; }
+                    studentFineSummaryLabel.setText(count == 0 ? " " : String.format("%d fine(s) over %d month(s): total %.2f, paid %.2f, outstanding %.2f", count, get().size(), total, paid, total - paid));
+                } catch (Exception e) { studentFineSummaryLabel.setText(" "); System.err.println("Student fine summary failed: " + e.getMessage()); }
+            } }; summaryWorker.execute();
     }
     private void loadFineReportByMonth() {
         Integer selectedYear = (Integer) yearSelector.getSelectedItem(); Month selectedMonth = (Month) monthSelector.getSelectedItem();
         if (selectedYear == null || selectedMonth == null) { showWarning("Select year and month."); return; }
         int year = selectedYear; int month = selectedMonth.getValue();
         monthlyTotalLabel.setText("Loading total for " + selectedMonth + " " + year + "...");
+        loadFineTrend(year);
         SwingWorker<List<Object[]>, Void> worker = new SwingWorker<>() {
             @Override protected List<Object[]> doInBackground() throws Exception { return adminService.getFineReportByMonth(year, month); }
             @Override protected void done() { try { List<Object[]> result = get(); if (!result.isEmpty() && result.get(0) != null) { double total = (double) result.get(0)[0]; monthlyTotalLabel.setText(String.format("Total Fines for %s %d: %.2f", selectedMonth, year, total)); } else { monthlyTotalLabel.setText("No fines for " + selectedMonth + " " + year + "."); } } catch (Exception e) { handleLoadingError(e, "monthly fine report"); monthlyTotalLabel.setText("Error loading report."); } } }; worker.execute();
     }
+    private void loadFineTrend(int toYear) {
+        fineTrendModel.showLoadingIfEmpty();
+        SwingWorker<List<Object[]>, Void> worker = new SwingWorker<>() {
+            @Override protected List<Object[]> doInBackground() throws Exception {
+                List<Object[]> rows = adminService.getFineTrend(toYear - 4, toYear);
+                for (Object[] row : rows) { row[1] = Month.of((Integer) row[1]).toString(); } // Month number to name
+                return rows;
+            }
+            @Override protected void done() { try { fineTrendModel.replaceAll(get()); } catch (Exception e) { handleLoadingError(e, "fine trend"); fineTrendModel.clear(); } } }; worker.execute();
+    }
 
     // --- UI Helper Methods ---
     private void showMessage(String message, String title, int messageType){ SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, message, title, messageType)); }
@@ -0,0 +1,335 @@
+package library.frontend;
+
+import javax.swing.table.AbstractTableModel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Read-only table model that stores each column in its own array instead of one
+ * {@code Vector<Object>} per row like {@code DefaultTableModel}.
+ * <p>
+ * INT, DOUBLE and DATE columns are kept as primitive arrays with a null bitmap, so a row costs a few
+ * bytes per cell instead of a boxed object plus a reference. STRING columns share equal values while a
+ * column has few distinct values (statuses, roles, categories). A value that doesn't fit its declared
+ * type (for example "N/A" in an id column) turns that column into a plain OBJECT column.
+ * <p>
+ * {@link #replaceAll(List)} swaps the contents with a single {@code fireTableDataChanged}.
+ * {@link #applyDiff(List, int)} compares a fresh result with the current rows by a key column and fires
+ * only the inserts, deletes and updates needed, so refreshing after one change repaints one row.
+ * {@link #getColumnClass(int)} stays {@code Object} for every column, so tables render and sort exactly
+ * as they did with {@code DefaultTableModel}.
+ */
+public class ColumnarTableModel extends AbstractTableModel {
+
+    /** How a column's values are stored. */
+    public enum ColumnType { INT, DOUBLE, DATE, STRING, OBJECT }
+
+    public static final String LOADING_TEXT = "Loading...";
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MAX_INCREMENTAL_CHANGES = 64; // More inserts/deletes than this: one full replace instead
+    private static final int MAX_SHARED_STRINGS = 256; // Stop sharing equal strings once a column has this many distinct values
+
+    private final String[] columnNames;
+    private final Column[] columns;
+    private int size = 0;
+    private int capacity = 0;
+    private boolean loading = false;
+
+    public ColumnarTableModel(String[] columnNames, ColumnType... types) {
+        if (types.length != columnNames.length) { throw new IllegalArgumentException("Expected " + columnNames.length + " column types, got " + types.length); }
+        this.columnNames = columnNames;
+        this.columns = new Column[types.length];
+        for (int c = 0; c < types.length; c++) { columns[c] = newColumn(types[c]); }
+    }
+
+    /** Replaces every row and fires one {@code fireTableDataChanged}. */
+    public void replaceAll(List<Object[]> rows) {
+        loading = false;
+        size = 0;
+        for (Column column : columns) { column.reset(); }
+        if (capacity > Math.max(INITIAL_CAPACITY, rows.size() * 2)) { resize(Math.max(INITIAL_CAPACITY, rows.size())); } // Give back memory after a big result
+        ensureCapacity(rows.size());
+        for (Object[] row : rows) { writeRow(size++, row); }
+        fireTableDataChanged();
+    }
+
+    /** Removes every row, including the loading row. */
+    public void clear() {
+        replaceAll(List.of());
+    }
+
+    /**
+     * Shows a single "Loading..." row until the next {@link #replaceAll(List)} or {@link #applyDiff(List, int)}.
+     * Any current rows are dropped.
+     */
+    public void showLoading() {
+        clear();
+        loading = true;
+        fireTableRowsInserted(0, 0);
+    }
+
+    /** Shows the loading row only if nothing is shown yet, so a refresh keeps the old rows visible until the diff. */
+    public void showLoadingIfEmpty() {
+        if (size == 0 && !loading) { showLoading(); }
+    }
+
+    /** True while only the placeholder row from {@link #showLoading()} is shown. */
+    public boolean isLoading() { return loading; }
+
+    /** Appends rows to the end, firing one {@code fireTableRowsInserted}. */
+    public void appendRows(List<Object[]> rows) {
+        if (loading) { replaceAll(rows); return; }
+        if (rows.isEmpty()) { return; }
+        int first = size;
+        ensureCapacity(size + rows.size());
+        for (Object[] row : rows) { writeRow(size++, row); }
+        fireTableRowsInserted(first, size - 1);
+    }
+
+    /**
+     * Brings the model in line with {@code rows}, matching rows by the value in {@code keyColumn}.
+     * Rows whose values changed fire {@code fireTableRowsUpdated}; rows that appeared or disappeared fire
+     * inserts and deletes. Falls back to {@link #replaceAll(List)} when keys repeat, when the common rows
+     * changed order, or when there are too many inserts and deletes for patching to pay off.
+     */
+    public void applyDiff(List<Object[]> rows, int keyColumn) {
+        if (loading || size == 0 || rows.isEmpty()) { replaceAll(rows); return; }
+        Map<Object, Integer> newIndex = new HashMap<>(rows.size() * 2);
+        for (int i = 0; i < rows.size(); i++) {
+            if (newIndex.put(rows.get(i)[keyColumn], i) != null) { replaceAll(rows); return; }
+        }
+        boolean[] keep = new boolean[size];
+        int common = 0, lastIndex = -1;
+        for (int r = 0; r < size; r++) {
+            Integer i = newIndex.get(columns[keyColumn].get(r));
+            if (i == null) { continue; }
+            if (i <= lastIndex) { replaceAll(rows); return; } // Reordered or a repeated key
+            lastIndex = i;
+            keep[r] = true;
+            common++;
+        }
+        int deletes = size - common, inserts = rows.size() - common;
+        if (deletes + inserts > MAX_INCREMENTAL_CHANGES) { replaceAll(rows); return; }
+
+        // Delete bottom-up so the indices of rows still to be checked don't move
+        for (int r = size - 1; r >= 0; r--) {
+            if (keep[r]) { continue; }
+            int last = r;
+            while (r > 0 && !keep[r - 1]) { r--; }
+            removeRange(r, last + 1);
+            fireTableRowsDeleted(r, last);
+        }
+        // What's left are the common rows in the new order; walk the new list inserting around them
+        int updateFrom = -1;
+        for (int i = 0; i < rows.size(); i++) {
+            if (i < size && Objects.equals(columns[keyColumn].get(i), rows.get(i)[keyColumn])) {
+                if (rowMatches(i, rows.get(i))) {
+                    if (updateFrom >= 0) { fireTableRowsUpdated(updateFrom, i - 1); updateFrom = -1; }
+                } else {
+                    writeRow(i, rows.get(i));
+                    if (updateFrom < 0) { updateFrom = i; }
+                }
+                continue;
+            }
+            if (updateFrom >= 0) { fireTableRowsUpdated(updateFrom, i - 1); updateFrom = -1; }
+            Object nextKey = i < size ? columns[keyColumn].get(i) : null;
+            int end = i + 1;
+            while (end < rows.size() && (i >= size || !Objects.equals(rows.get(end)[keyColumn], nextKey))) { end++; }
+            insertRange(i, rows.subList(i, end));
+            fireTableRowsInserted(i, end - 1);
+            i = end - 1;
+        }
+        if (updateFrom >= 0) { fireTableRowsUpdated(updateFrom, size - 1); }
+    }
+
+    /** All values of a row, in column order. */
+    public Object[] getRow(int row) {
+        Object[] values = new Object[columns.length];
+        for (int c = 0; c < columns.length; c++) { values[c] = getValueAt(row, c); }
+        return values;
+    }
+
+    @Override public int getRowCount() { return loading ? 1 : size; }
+    @Override public int getColumnCount() { return columnNames.length; }
+    @Override public String getColumnName(int column) { return columnNames[column]; }
+    @Override public boolean isCellEditable(int row, int column) { return false; }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        if (loading) { return column == 0 ? LOADING_TEXT : null; }
+        if (row >= size) { throw new IndexOutOfBoundsException("Row " + row + " >= " + size); }
+        return columns[column].get(row);
+    }
+
+    // --- Storage ---
+
+    private void ensureCapacity(int needed) {
+        if (needed <= capacity) { return; }
+        resize(Math.max(needed, Math.max(INITIAL_CAPACITY, capacity + (capacity >> 1))));
+    }
+
+    private void resize(int newCapacity) {
+        for (Column column : columns) { column.grow(newCapacity); }
+        capacity = newCapacity;
+    }
+
+    private void writeRow(int row, Object[] values) {
+        for (int c = 0; c < columns.length; c++) {
+            Object value = c < values.length ? values[c] : null;
+            if (!columns[c].accepts(value)) { columns[c] = toObjectColumn(columns[c]); }
+            columns[c].set(row, value);
+        }
+    }
+
+    private boolean rowMatches(int row, Object[] values) {
+        for (int c = 0; c < columns.length; c++) {
+            if (!columns[c].matches(row, c < values.length ? values[c] : null)) { return false; }
+        }
+        return true;
+    }
+
+    private void removeRange(int from, int to) {
+        int count = to - from;
+        for (Column column : columns) {
+            column.move(to, from, size - to);
+            column.clearRange(size - count, size);
+        }
+        size -= count;
+    }
+
+    private void insertRange(int at, List<Object[]> rows) {
+        int count = rows.size();
+        ensureCapacity(size + count);
+        for (Column column : columns) { column.move(at, at + count, size - at); }
+        size += count;
+        for (int k = 0; k < count; k++) { writeRow(at + k, rows.get(k)); }
+    }
+
+    private Column toObjectColumn(Column typed) {
+        ObjectColumn column = new ObjectColumn();
+        column.grow(capacity);
+        for (int r = 0; r < size; r++) { column.set(r, typed.get(r)); }
+        return column;
+    }
+
+    private static Column newColumn(ColumnType type) {
+        switch (type) {
+            case INT: return new IntColumn();
+            case DOUBLE: return new DoubleColumn();
+            case DATE: return new DateColumn();
+            case STRING: return new StringColumn();
+            default: return new ObjectColumn();
+        }
+    }
+
+    private abstract static class Column {
+        abstract void grow(int capacity); // Also used to shrink
+        abstract boolean accepts(Object value);
+        abstract void set(int row, Object value);
+        abstract Object get(int row);
+        abstract void move(int from, int to, int length);
+        void reset() {}
+        void clearRange(int from, int to) {}
+        boolean matches(int row, Object value) { return Objects.equals(get(row), value); }
+    }
+
+    /** Primitive column; {@code nulls} has a bit set for every row holding null. */
+    private abstract static class PrimitiveColumn extends Column {
+        long[] nulls = new long[0];
+
+        void growNulls(int capacity) { nulls = Arrays.copyOf(nulls, (capacity + 63) >>> 6); }
+        boolean isNull(int row) { return (nulls[row >>> 6] & (1L << row)) != 0; }
+        void setNull(int row, boolean isNull) {
+            if (isNull) { nulls[row >>> 6] |= 1L << row; } else { nulls[row >>> 6] &= ~(1L << row); }
+        }
+        void moveNulls(int from, int to, int length) {
+            if (to < from) { for (int k = 0; k < length; k++) { setNull(to + k, isNull(from + k)); } }
+            else { for (int k = length - 1; k >= 0; k--) { setNull(to + k, isNull(from + k)); } }
+        }
+        @Override void reset() { Arrays.fill(nulls, 0L); }
+    }
+
+    private static final class IntColumn extends PrimitiveColumn {
+        int[] values = new int[0];
+
+        @Override void grow(int capacity) { values = Arrays.copyOf(values, capacity); growNulls(capacity); }
+        @Override boolean accepts(Object value) { return value == null || value instanceof Integer; }
+        @Override void set(int row, Object value) {
+            setNull(row, value == null);
+            values[row] = value == null ? 0 : (Integer) value;
+        }
+        @Override Object get(int row) { return isNull(row) ? null : values[row]; }
+        @Override boolean matches(int row, Object value) {
+            if (value == null || isNull(row)) { return value == null && isNull(row); }
+            return value instanceof Integer && values[row] == (Integer) value;
+        }
+        @Override void move(int from, int to, int length) { System.arraycopy(values, from, values, to, length); moveNulls(from, to, length); }
+    }
+
+    private static final class DoubleColumn extends PrimitiveColumn {
+        double[] values = new double[0];
+
+        @Override void grow(int capacity) { values = Arrays.copyOf(values, capacity); growNulls(capacity); }
+        @Override boolean accepts(Object value) { return value == null || value instanceof Double; }
+        @Override void set(int row, Object value) {
+            setNull(row, value == null);
+            values[row] = value == null ? 0 : (Double) value;
+        }
+        @Override Object get(int row) { return isNull(row) ? null : values[row]; }
+        @Override boolean matches(int row, Object value) {
+            if (value == null || isNull(row)) { return value == null && isNull(row); }
+            return value instanceof Double && Double.compare(values[row], (Double) value) == 0;
+        }
+        @Override void move(int from, int to, int length) { System.arraycopy(values, from, values, to, length); moveNulls(from, to, length); }
+    }
+
+    /** {@code java.sql.Date} values kept as epoch milliseconds; a new Date is built on each read. */
+    private static final class DateColumn extends PrimitiveColumn {
+        long[] values = new long[0];
+
+        @Override void grow(int capacity) { values = Arrays.copyOf(values, capacity); growNulls(capacity); }
+        @Override boolean accepts(Object value) { return value == null || value.getClass() == java.sql.Date.class; }
+        @Override void set(int row, Object value) {
+            setNull(row, value == null);
+            values[row] = value == null ? 0 : ((java.sql.Date) value).getTime();
+        }
+        @Override Object get(int row) { return isNull(row) ? null : new java.sql.Date(values[row]); }
+        @Override boolean matches(int row, Object value) {
+            if (value == null || isNull(row)) { return value == null && isNull(row); }
+            return value.getClass() == java.sql.Date.class && values[row] == ((java.sql.Date) value).getTime();
+        }
+        @Override void move(int from, int to, int length) { System.arraycopy(values, from, values, to, length); moveNulls(from, to, length); }
+    }
+
+    private static class ObjectColumn extends Column {
+        Object[] values = new Object[0];
+
+        @Override void grow(int capacity) { values = Arrays.copyOf(values, capacity); }
+        @Override boolean accepts(Object value) { return true; }
+        @Override void set(int row, Object value) { values[row] = value; }
+        @Override Object get(int row) { return values[row]; }
+        @Override void move(int from, int to, int length) { System.arraycopy(values, from, values, to, length); }
+        @Override void reset() { Arrays.fill(values, null); }
+        @Override void clearRange(int from, int to) { Arrays.fill(values, from, to, null); }
+    }
+
+    /** Object column for strings that stores one instance per distinct value while there are few of them. */
+    private static final class StringColumn extends ObjectColumn {
+        private Map<String, String> shared = new HashMap<>();
+
+        @Override boolean accepts(Object value) { return value == null || value instanceof String; }
+        @Override void set(int row, Object value) {
+            if (value != null && shared != null) {
+                String existing = shared.putIfAbsent((String) value, (String) value);
+                if (existing != null) { value = existing; }
+                else if (shared.size() > MAX_SHARED_STRINGS) { shared = null; } // Mostly unique values; sharing won't help
+            }
+            values[row] = value;
+        }
+        @Override void reset() { super.reset(); shared = new HashMap<>(); }
+    }
+}
@@ -0,0 +1,45 @@
+package library.frontend;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Tabbed pane whose tabs are built the first time they are selected.
+ * <p>
+ * {@link #addLazyTab(String, Supplier)} adds an empty placeholder; when the tab is first selected the
+ * supplier builds the real component (and typically starts loading its data), which then replaces the
+ * placeholder. Tabs the user never opens cost nothing, so a dashboard's start-up only pays for the tab
+ * shown first.
+ */
+public class LazyTabbedPane extends JTabbedPane {
+
+    private final Map<Component, Supplier<? extends Component>> pending = new HashMap<>();
+
+    public LazyTabbedPane() {
+        addChangeListener(e -> buildSelected());
+    }
+
+    /** Adds a tab built by {@code factory} when first selected; the first tab added is built right away. */
+    public void addLazyTab(String title, Supplier<? extends Component> factory) {
+        JPanel placeholder = new JPanel(new BorderLayout());
+        pending.put(placeholder, factory);
+        addTab(title, placeholder); // Selects the first tab, which fires the listener and builds it
+        buildSelected();
+    }
+
+    /** True once the tab at {@code index} has been built. */
+    public boolean isBuilt(int index) {
+        return !pending.containsKey(getComponentAt(index));
+    }
+
+    private void buildSelected() {
+        int index = getSelectedIndex();
+        if (index < 0) { return; }
+        Supplier<? extends Component> factory = pending.remove(getComponentAt(index));
+        if (factory == null) { return; }
+        setComponentAt(index, factory.get());
+    }
+}
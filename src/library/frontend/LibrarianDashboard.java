@@ -1,15 +1,20 @@
 package library.frontend;
 
+import library.backend.CatalogImporter;
 import library.backend.LibrarianService;
+import library.frontend.ColumnarTableModel.ColumnType;
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.nio.file.Path;
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.List;
 
+import static library.frontend.ColumnarTableModel.ColumnType.*;
+
 public class LibrarianDashboard extends JFrame implements ActionListener {
 
     private static final Color PRIMARY_COLOR = new Color(52, 152, 219);   // Blue
@@ -19,8 +24,10 @@ public class LibrarianDashboard extends JFrame implements ActionListener {
     private static final Font TITLE_FONT = new Font("Segoe UI", Font.BOLD, 20);
     private static final Font SUBTITLE_FONT = new Font("Segoe UI", Font.BOLD, 16);
     private static final int BORDER_RADIUS = 10;
+    private static final int PAGE_SIZE = 200; // Rows fetched per scroll-triggered page
 
     private JButton logoutButton;
+    private final TaskRunner tasks = new TaskRunner(this); // All database calls from this window go through here
 
     public LibrarianDashboard() {
         setTitle("Librarian Dashboard - Tabbed Version");
@@ -55,23 +62,26 @@ public class LibrarianDashboard extends JFrame implements ActionListener {
             }
         });
         topPanel.add(logoutButton, BorderLayout.EAST);
+        topPanel.add(tasks.getIndicator(), BorderLayout.CENTER);
 
         add(topPanel, BorderLayout.NORTH);
 
-        // Main TabbedPane
-        JTabbedPane mainTabbedPane = new JTabbedPane();
+        // Main TabbedPane; each tab is built, and its data loaded, the first time it is selected
+        LazyTabbedPane mainTabbedPane = new LazyTabbedPane();
         mainTabbedPane.setFont(MAIN_FONT);
         mainTabbedPane.setBackground(SECONDARY_COLOR);
 
         // Add all tabs
-        mainTabbedPane.addTab("Manage Books", createManageBooksTab());
-        mainTabbedPane.addTab("Issue Books", createIssueBooksTab());
-        mainTabbedPane.addTab("View Issued Books", createViewIssuedBooksTab());
-        mainTabbedPane.addTab("Return Books", createReturnBooksTab());
-        mainTabbedPane.addTab("Student Records", createStudentRecordsTab());
-        mainTabbedPane.addTab("Overdue Notifications", createOverdueNotificationsTab());
+        mainTabbedPane.addLazyTab("Manage Books", this::createManageBooksTab);
+        mainTabbedPane.addLazyTab("Issue Books", this::createIssueBooksTab);
+        mainTabbedPane.addLazyTab("View Issued Books", this::createViewIssuedBooksTab);
+        mainTabbedPane.addLazyTab("Return Books", this::createReturnBooksTab);
+        mainTabbedPane.addLazyTab("Student Records", this::createStudentRecordsTab);
+        mainTabbedPane.addLazyTab("Overdue Notifications", this::createOverdueNotificationsTab);
 
         add(mainTabbedPane, BorderLayout.CENTER);
+        StartupTimer.watchFirstPaint(this, "Librarian");
+        StartupTimer.interactive(); // The first tab opens on the Add Book form, which needs no data
         setVisible(true);
     }
 
@@ -99,7 +109,7 @@ public class LibrarianDashboard extends JFrame implements ActionListener {
 
     // Tab 1: Manage Books
     private JPanel createManageBooksTab() {
-        JTabbedPane manageBooksTabs = new JTabbedPane();
+        LazyTabbedPane manageBooksTabs = new LazyTabbedPane();
         manageBooksTabs.setFont(MAIN_FONT);
         manageBooksTabs.setBackground(SECONDARY_COLOR);
         manageBooksTabs.setBorder(BorderFactory.createEmptyBorder(20, 50, 20, 50));
@@ -153,86 +163,26 @@ public class LibrarianDashboard extends JFrame implements ActionListener {
         gbc.anchor = GridBagConstraints.CENTER;
         addBookPanel.add(addButton, gbc);
         // Add action listener to add book
-        addButton.addActionListener(e -> addBook(titleField.getText(), authorField.getText(),categoryField.getText(), Integer.parseInt(copiesField.getText())));
-
-
-        // Sub-tab: View Books
-        JPanel viewBooksPanel;
-        JTable booksTable;
-        DefaultTableModel booksTableModel;
-        JButton refreshButton;
-
-
-        viewBooksPanel = new JPanel(new BorderLayout(10, 10));
-        viewBooksPanel.setBackground(SECONDARY_COLOR);
-        viewBooksPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
-
-
-        String[] bookColumns = {"Book ID", "Title", "Author","Category", "Total Copies", "Available Copies"};
-        booksTableModel = new DefaultTableModel(bookColumns, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
-
-        try {
-            List<Object[]> books = LibrarianService.getAllBooks(null);
-            for (Object[] book : books) {
-                booksTableModel.addRow(book);
-            }
-        } catch (SQLException e) {
-            JOptionPane.showMessageDialog(this,
-                    "Error loading books: " + e.getMessage(),
-                    "Database Error",
-                    JOptionPane.ERROR_MESSAGE);
-        }
-
-        booksTable = new JTable(booksTableModel);
-        booksTable.setFont(MAIN_FONT);
-        booksTable.getTableHeader().setFont(MAIN_FONT);
-        booksTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
-        booksTable.setAutoCreateRowSorter(true);
-
-        // Customize table appearance
-        booksTable.getTableHeader().setReorderingAllowed(false);
-        booksTable.setRowHeight(25);
-        booksTable.setFillsViewportHeight(true);
-
-        JScrollPane scrollPane = new JScrollPane(booksTable);
-        scrollPane.getViewport().setBackground(Color.WHITE);
-        viewBooksPanel.add(scrollPane, BorderLayout.CENTER);
-
-        // Create action panel
-        JPanel actionPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 15, 5));
-
-        refreshButton = new JButton("Refresh");
-        refreshButton.setFont(MAIN_FONT);
-        refreshButton.setBackground(PRIMARY_COLOR);
-        refreshButton.setForeground(Color.WHITE);
-        refreshButton.setFocusPainted(false);
-        refreshButton.setBorder(new RoundedBorder(BORDER_RADIUS));
-
-
-        refreshButton.setToolTipText("Refresh all data");
-        refreshButton.addActionListener(e -> {
+        addButton.addActionListener(e -> {
+            int copies;
             try {
-                List<Object[]> books = LibrarianService.getAllBooks(null);
-                booksTableModel.setRowCount(0); // Clear existing rows
-                for (Object[] book : books) {
-                    booksTableModel.addRow(book);
-                }
-            } catch (SQLException ex) {
-                JOptionPane.showMessageDialog(this,
-                        "Error loading books: " + ex.getMessage(),
-                        "Database Error",
-                        JOptionPane.ERROR_MESSAGE);
+                copies = Integer.parseInt(copiesField.getText().trim());
+            } catch (NumberFormatException ex) {
+                JOptionPane.showMessageDialog(this, "Copies must be a whole number.", "Invalid Input", JOptionPane.WARNING_MESSAGE);
+                return;
             }
+            addBook(titleField.getText(), authorField.getText(), categoryField.getText(), copies, addButton);
         });
 
-        actionPanel.add(refreshButton);
-
-        viewBooksPanel.add(actionPanel, BorderLayout.SOUTH);
+        JButton importButton = new JButton("Import Books from File...");
+        importButton.setFont(MAIN_FONT);
+        importButton.setBackground(PRIMARY_COLOR);
+        importButton.setForeground(Color.WHITE);
+        importButton.setFocusPainted(false);
+        importButton.setBorder(new RoundedBorder(BORDER_RADIUS));
+        gbc.gridy = 4;
+        addBookPanel.add(importButton, gbc);
+        importButton.addActionListener(e -> importBooks(importButton));
 
 
         // Sub-tab: Delete Book
@@ -263,11 +213,11 @@ public class LibrarianDashboard extends JFrame implements ActionListener {
         deleteButton.setForeground(Color.WHITE);
         deleteButton.setFocusPainted(false);
         deleteButton.setBorder(new RoundedBorder(BORDER_RADIUS));
-        deleteButton.addActionListener(e -> deleteBook(bookIdField.getText()));
+        deleteButton.addActionListener(e -> deleteBook(bookIdField.getText(), deleteButton));
 
         // Add sub-tabs
         manageBooksTabs.addTab("Add Book", addBookPanel);
-        manageBooksTabs.addTab("View Books", viewBooksPanel);
+        manageBooksTabs.addLazyTab("View Books", this::createViewBooksPanel);
         manageBooksTabs.addTab("Delete Book", deleteBookPanel);
 
         JPanel panel = new JPanel(new BorderLayout());
@@ -277,31 +227,102 @@ public class LibrarianDashboard extends JFrame implements ActionListener {
 
 
     // Backend function: Add a new book to the database or list
-    private void addBook(String title, String author,String category, int copies) {
-
-        System.out.println("Adding Book");
-        try {
-            System.out.println("Inside try");
-            LibrarianService.addBook(title.toUpperCase(), author.toUpperCase(),category.toUpperCase(), copies); // Call the backend service to add the book
-        } catch (SQLException e) {
-            System.out.print(e.getMessage());
-        }
-        //popup to show book added successfully
-        JOptionPane.showMessageDialog(this, "Book added successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
-
+    private void addBook(String title, String author, String category, int copies, JButton addButton) {
         System.out.println("Adding Book: " + title + ", Author: " + author + ", Copies: " + copies);
+        tasks.runUpdate("Adding book", () -> {
+            LibrarianService.addBook(title.toUpperCase(), author.toUpperCase(), category.toUpperCase(), copies);
+            return null;
+        }, done -> JOptionPane.showMessageDialog(this, "Book added successfully!", "Success", JOptionPane.INFORMATION_MESSAGE), addButton);
+    }
+
+    // Backend function: Add every book in a CSV or MARC (.mrk) file
+    private void importBooks(JButton importButton) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new FileNameExtensionFilter("Catalog files (CSV, MARC text)", "csv", "mrk", "txt"));
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) { return; }
+        Path file = chooser.getSelectedFile().toPath();
+        tasks.runUpdateWithProgress("Importing books", progress -> CatalogImporter.importFile(file, progress), result -> {
+            StringBuilder message = new StringBuilder(result.toString());
+            if (result.getRejected() > 0) {
+                message.append("\n\nRejected rows:");
+                List<CatalogImporter.RowError> errors = result.getErrors();
+                for (CatalogImporter.RowError error : errors.subList(0, Math.min(20, errors.size()))) { message.append("\n").append(error); }
+                if (result.getRejected() > 20) { message.append("\n... and ").append(result.getRejected() - 20).append(" more (see the console)"); }
+                errors.forEach(error -> System.err.println("Import " + file.getFileName() + ": " + error));
+            }
+            JOptionPane.showMessageDialog(this, message.toString(), "Import Finished",
+                    result.getRejected() > 0 ? JOptionPane.WARNING_MESSAGE : JOptionPane.INFORMATION_MESSAGE);
+        }, importButton);
     }
 
     // Backend function: Delete a book from the database or list
-    private void deleteBook(String bookId) {
-        try{
-            LibrarianService.removeBook(bookId.toUpperCase()); // Call the backend service to delete the book
-        } catch (SQLException e) {
-            System.out.print(e.getMessage());
-        }
+    private void deleteBook(String bookId, JButton deleteButton) {
         System.out.println("Deleting Book with ID: " + bookId);
-        //popup to show book deleted successfully
-        JOptionPane.showMessageDialog(this, "Book deleted successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
+        tasks.runUpdate("Deleting book", () -> LibrarianService.removeBook(bookId.toUpperCase()), removed -> {
+            if (removed) {
+                JOptionPane.showMessageDialog(this, "Book deleted successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
+            } else {
+                JOptionPane.showMessageDialog(this, "No book found with ID " + bookId + ".", "Not Found", JOptionPane.WARNING_MESSAGE);
+            }
+        }, deleteButton);
+    }
+
+    // Sub-tab: View Books (built when first selected)
+    private JPanel createViewBooksPanel() {
+        JPanel viewBooksPanel;
+        JTable booksTable;
+        PagedTableModel booksTableModel;
+        JButton refreshButton;
+
+
+        viewBooksPanel = new JPanel(new BorderLayout(10, 10));
+        viewBooksPanel.setBackground(SECONDARY_COLOR);
+        viewBooksPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+
+
+        String[] bookColumns = {"Book ID", "Title", "Author","Category", "Total Copies", "Available Copies"};
+        booksTableModel = new PagedTableModel(bookColumns, new ColumnType[]{STRING, STRING, STRING, STRING, INT, INT}, PAGE_SIZE,
+                (after, pageSize) -> LibrarianService.getBooksPage(null, after, pageSize));
+        booksTableModel.setErrorHandler(e -> JOptionPane.showMessageDialog(this,
+                "Error loading books: " + e.getMessage(),
+                "Database Error",
+                JOptionPane.ERROR_MESSAGE));
+
+        booksTable = new JTable(booksTableModel);
+        booksTable.setFont(MAIN_FONT);
+        booksTable.getTableHeader().setFont(MAIN_FONT);
+        booksTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        // No row sorter: rows arrive page by page in title order, sorting would only reorder the loaded part
+
+        // Customize table appearance
+        booksTable.getTableHeader().setReorderingAllowed(false);
+        booksTable.setRowHeight(25);
+        booksTable.setFillsViewportHeight(true);
+
+        JScrollPane scrollPane = new JScrollPane(booksTable);
+        scrollPane.getViewport().setBackground(Color.WHITE);
+        viewBooksPanel.add(scrollPane, BorderLayout.CENTER);
+        booksTableModel.attach(booksTable, scrollPane);
+        booksTableModel.reload();
+
+        // Create action panel
+        JPanel actionPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 15, 5));
+
+        refreshButton = new JButton("Refresh");
+        refreshButton.setFont(MAIN_FONT);
+        refreshButton.setBackground(PRIMARY_COLOR);
+        refreshButton.setForeground(Color.WHITE);
+        refreshButton.setFocusPainted(false);
+        refreshButton.setBorder(new RoundedBorder(BORDER_RADIUS));
+
+
+        refreshButton.setToolTipText("Refresh all data");
+        refreshButton.addActionListener(e -> booksTableModel.reload());
+
+        actionPanel.add(refreshButton);
+
+        viewBooksPanel.add(actionPanel, BorderLayout.SOUTH);
+        return viewBooksPanel;
     }
 
     // Tab 2: Issue Books
@@ -351,53 +372,32 @@ public class LibrarianDashboard extends JFrame implements ActionListener {
         issuePanel.add(issueButton, gbc);
 
         // Add action listener to issue book
-        issueButton.addActionListener(e -> issueBook(studentIdField.getText().trim(),bookIdField.getText().trim()));
+        issueButton.addActionListener(e -> issueBook(studentIdField.getText().trim(),bookIdField.getText().trim(), issueButton));
 
         return issuePanel;
     }
 
-    // todo Backend function: Issue a book to a student
-    private void issueBook(String studentId, String bookId) {
-        // Placeholder for issuing a book
-        try {
-            System.out.println("Issuing Book with ID: " + bookId + " to Student with ID: " + studentId);
-            LibrarianService.issueBookToStudent( bookId.toUpperCase(),studentId.toUpperCase()); // Call the backend service to issue the book
-            //popup to show book issued successfully
-            JOptionPane.showMessageDialog(this, "Book issued successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
-        } catch (SQLException e) {
-            System.out.print(e.getMessage());
-            JOptionPane.showMessageDialog(null, e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-        }
+    // Backend function: Issue a book to a student
+    private void issueBook(String studentId, String bookId, JButton issueButton) {
         System.out.println("Issuing Book with ID: " + bookId + " to Student with ID: " + studentId);
+        tasks.runUpdate("Issuing book", () -> LibrarianService.issueBookToStudent(bookId.toUpperCase(), studentId.toUpperCase()),
+                issued -> JOptionPane.showMessageDialog(this, "Book issued successfully!", "Success", JOptionPane.INFORMATION_MESSAGE),
+                issueButton);
     }
 
     // Tab 3: View Issued Books
     private JPanel createViewIssuedBooksTab() {
-        List<Object[]> issuedBooks;
-        try {
-            issuedBooks = LibrarianService.getAllIssuedBooks(null);
-        } catch (SQLException e) {
-            JOptionPane.showMessageDialog(this,
-                    "Error loading issued books: " + e.getMessage(),
-                    "Database Error",
-                    JOptionPane.ERROR_MESSAGE);
-            return new JPanel();
-        }
-
         JPanel viewIssuedPanel = new JPanel(new BorderLayout());
         viewIssuedPanel.setBackground(SECONDARY_COLOR);
         viewIssuedPanel.setBorder(BorderFactory.createEmptyBorder(20, 50, 20, 50));
-        DefaultTableModel issuedBooksTableModel = new DefaultTableModel(new String[]{ "Book ID", "Student ID","Title","Issue Date", "Due Date","Return Date","Status"}, 0) {
-
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        PagedTableModel issuedBooksTableModel = new PagedTableModel(new String[]{ "Book ID", "Student ID","Title","Issue Date", "Due Date","Return Date","Status"},
+                new ColumnType[]{STRING, STRING, STRING, DATE, DATE, DATE, STRING}, PAGE_SIZE,
+                (after, pageSize) -> LibrarianService.getIssuedBooksPage(null, after, pageSize));
+        issuedBooksTableModel.setErrorHandler(e -> JOptionPane.showMessageDialog(this,
+                "Error loading issued books: " + e.getMessage(),
+                "Database Error",
+                JOptionPane.ERROR_MESSAGE));
 
-        for (Object[] issuedBook : issuedBooks) {
-            issuedBooksTableModel.addRow(issuedBook);
-        }
         // refresh button
         JButton refreshButton = new JButton("Refresh");
         refreshButton.setFont(MAIN_FONT);
@@ -405,20 +405,7 @@ public class LibrarianDashboard extends JFrame implements ActionListener {
         refreshButton.setForeground(Color.WHITE);
         refreshButton.setFocusPainted(false);
         refreshButton.setBorder(new RoundedBorder(BORDER_RADIUS));
-        refreshButton.addActionListener(e -> {
-            try {
-                List<Object[]> issued_Books = LibrarianService.getAllIssuedBooks(null);
-                issuedBooksTableModel.setRowCount(0); // Clear existing rows
-                for (Object[] issuedBook : issued_Books) {
-                    issuedBooksTableModel.addRow(issuedBook);
-                }
-            } catch (SQLException ex) {
-                JOptionPane.showMessageDialog(this,
-                        "Error loading issued books: " + ex.getMessage(),
-                        "Database Error",
-                        JOptionPane.ERROR_MESSAGE);
-            }
-        });
+        refreshButton.addActionListener(e -> issuedBooksTableModel.reload());
         viewIssuedPanel.add(refreshButton, BorderLayout.NORTH);
 
         JTable issuedBooksTable = new JTable(issuedBooksTableModel);
@@ -427,6 +414,8 @@ public class LibrarianDashboard extends JFrame implements ActionListener {
         JScrollPane issuedBooksScrollPane = new JScrollPane(issuedBooksTable);
         issuedBooksScrollPane.getViewport().setBackground(Color.WHITE);
         viewIssuedPanel.add(issuedBooksScrollPane, BorderLayout.CENTER);
+        issuedBooksTableModel.attach(issuedBooksTable, issuedBooksScrollPane);
+        issuedBooksTableModel.reload();
         return viewIssuedPanel;
     }
 
@@ -481,36 +470,33 @@ public class LibrarianDashboard extends JFrame implements ActionListener {
         gbc.anchor = GridBagConstraints.CENTER;
         returnPanel.add(returnButton, gbc);
 
-        calculateFineButton.addActionListener(e->{
-            try {
-                double fine = LibrarianService.calculateFine( bookIdField.getText().trim().toUpperCase(),studentIdField.getText().trim().toUpperCase());
-                fineLabel.setText("Fine: Rs. " + fine);
-            } catch (SQLException ex) {
-                JOptionPane.showMessageDialog(null, ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-            }
+        calculateFineButton.addActionListener(e -> {
+            String bookId = bookIdField.getText().trim().toUpperCase();
+            String studentId = studentIdField.getText().trim().toUpperCase();
+            tasks.run("Calculating fine", () -> LibrarianService.getOverdueDays(bookId, studentId), overdueDays -> {
+                fineLabel.setText("Fine: Rs. " + LibrarianService.fineForOverdueDays(overdueDays));
+                if (overdueDays > 0) {
+                    JOptionPane.showMessageDialog(this, "Book has been overdue for " + overdueDays + " days.", "Overdue", JOptionPane.INFORMATION_MESSAGE);
+                }
+            }, calculateFineButton);
         });
 
         // Add action listener to return book
-        returnButton.addActionListener(e -> returnBook(studentIdField.getText().trim(), bookIdField.getText().trim()));
+        returnButton.addActionListener(e -> returnBook(studentIdField.getText().trim(), bookIdField.getText().trim(), returnButton));
 
         return returnPanel;
     }
 
 
     // Backend function: Return a book and calculate fine
-    private void returnBook(String studentId, String bookId) {
-        try{
-            System.out.println("Returning Book with ID: " + bookId + " from Student with ID: " + studentId);
-            boolean success = LibrarianService.returnBook(bookId.toUpperCase(),studentId.toUpperCase());
-            if(success)
-                JOptionPane.showMessageDialog(null, "Book returned successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
-            else
+    private void returnBook(String studentId, String bookId, JButton returnButton) {
+        System.out.println("Returning Book with ID: " + bookId + " from Student with ID: " + studentId);
+        tasks.runUpdate("Returning book", () -> {
+            if (!LibrarianService.returnBook(bookId.toUpperCase(), studentId.toUpperCase())) {
                 throw new SQLException("Error Occured while returning book");
-        } catch (SQLException e) {
-            System.out.print(e.getMessage());
-            JOptionPane.showMessageDialog(null, e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-        }
-
+            }
+            return null;
+        }, done -> JOptionPane.showMessageDialog(this, "Book returned successfully!", "Success", JOptionPane.INFORMATION_MESSAGE), returnButton);
     }
 
     // Tab 5: Student Records
@@ -518,45 +504,28 @@ public class LibrarianDashboard extends JFrame implements ActionListener {
         JPanel studentRecordsPanel = new JPanel(new BorderLayout());
         studentRecordsPanel.setBackground(SECONDARY_COLOR);
         studentRecordsPanel.setBorder(BorderFactory.createEmptyBorder(20, 50, 20, 50));
-        JTable studentsTable = new JTable(new DefaultTableModel(new String[]{"Student ID", "Name", "Email"}, 0));
+        PagedTableModel studentsTableModel = new PagedTableModel(new String[]{"Student ID", "Name", "Email"},
+                new ColumnType[]{STRING, STRING, STRING}, PAGE_SIZE,
+                (after, pageSize) -> LibrarianService.getStudentsPage(null, after, pageSize));
+        studentsTableModel.setErrorHandler(e -> JOptionPane.showMessageDialog(this,
+                "Error loading students: " + e.getMessage(),
+                "Database Error",
+                JOptionPane.ERROR_MESSAGE));
+        JTable studentsTable = new JTable(studentsTableModel);
         studentsTable.setFont(MAIN_FONT);
         studentsTable.getTableHeader().setFont(MAIN_FONT);
-        try{
-            List<Object[]> students = LibrarianService.getAllStudents(null);
-            DefaultTableModel studentsTableModel = (DefaultTableModel) studentsTable.getModel();
-            for (Object[] student : students) {
-                studentsTableModel.addRow(student);
-            }
-        } catch (SQLException e) {
-            JOptionPane.showMessageDialog(this,
-                    "Error loading students: " + e.getMessage(),
-                    "Database Error",
-                    JOptionPane.ERROR_MESSAGE);
-        }
 
         // Create action panel
         JPanel actionPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 15, 5));
         JButton refreshButton = new JButton("Refresh");
         refreshButton.setToolTipText("Refresh all data");
-        refreshButton.addActionListener(e -> {
-            try {
-                List<Object[]> students = LibrarianService.getAllStudents(null);
-                DefaultTableModel studentsTableModel = (DefaultTableModel) studentsTable.getModel();
-                studentsTableModel.setRowCount(0); // Clear existing rows
-                for (Object[] student : students) {
-                    studentsTableModel.addRow(student);
-                }
-            } catch (SQLException ex) {
-                JOptionPane.showMessageDialog(this,
-                        "Error loading students: " + ex.getMessage(),
-                        "Database Error",
-                        JOptionPane.ERROR_MESSAGE);
-            }
-        });
+        refreshButton.addActionListener(e -> studentsTableModel.reload());
 
         JScrollPane studentsScrollPane = new JScrollPane(studentsTable);
         studentsScrollPane.getViewport().setBackground(Color.WHITE);
         studentRecordsPanel.add(studentsScrollPane, BorderLayout.CENTER);
+        studentsTableModel.attach(studentsTable, studentsScrollPane);
+        studentsTableModel.reload();
         return studentRecordsPanel;
     }
 
@@ -565,23 +534,19 @@ public class LibrarianDashboard extends JFrame implements ActionListener {
         JPanel overduePanel = new JPanel(new BorderLayout());
         overduePanel.setBackground(SECONDARY_COLOR);
         overduePanel.setBorder(BorderFactory.createEmptyBorder(20, 50, 20, 50));
-        JTable overdueTable = new JTable(new DefaultTableModel(new String[]{"Book ID", "Title","Student ID", "Due Date"}, 0));
+        ColumnarTableModel overdueTableModel = new ColumnarTableModel(new String[]{"Book ID", "Title","Student ID", "Due Date"}, STRING, STRING, STRING, DATE);
+        JTable overdueTable = new JTable(overdueTableModel);
         overdueTable.setFont(MAIN_FONT);
         overdueTable.getTableHeader().setFont(MAIN_FONT);
 
-        try {
-            List<Object[]> overdueBooks = LibrarianService.getOverdueBooks();
-            DefaultTableModel overdueTableModel = (DefaultTableModel) overdueTable.getModel();
-            for (Object[] overdueBook : overdueBooks) {
-                overdueTableModel.addRow(overdueBook);
-            }
-        } catch (SQLException e) {
+        overdueTableModel.showLoading();
+        tasks.run("Loading overdue books", LibrarianService::getOverdueBooks, overdueTableModel::replaceAll, e -> {
+            overdueTableModel.clear();
             JOptionPane.showMessageDialog(this,
                     "Error loading overdue books: " + e.getMessage(),
                     "Database Error",
                     JOptionPane.ERROR_MESSAGE);
-
-        }
+        });
         JButton sendNotificationButton = new JButton("Send Notification");
         sendNotificationButton.setFont(MAIN_FONT);
         sendNotificationButton.setBackground(ACCENT_COLOR);
@@ -595,28 +560,14 @@ public class LibrarianDashboard extends JFrame implements ActionListener {
 
         // Add action listener to send overdue notifications
 
-        sendNotificationButton.addActionListener(e -> {
-            try {
-                List<Object[]> overdueBooks = LibrarianService.getOverdueBooks();
-
-                for (Object[] overdueBook : overdueBooks) {
-                    System.out.println("Sending notification for overdue book with ID: " + overdueBook[0]);
-                    // Call the backend function to send notification
-                    String message = "Dear Student, \n\nThe book '" + overdueBook[1] + "' (ID: " + overdueBook[0] + ") is overdue since " + overdueBook[3] + ". Please return it as soon as possible.\n\nThank you.";
-
-                    LibrarianService.sendNotifications(overdueBook[2].toString(),message,"DueDate");
-
-                }
-
-                JOptionPane.showMessageDialog(this, "Overdue notifications sent successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
-            } catch (SQLException f) {
-                JOptionPane.showMessageDialog(this,
-                        "Error loading overdue books: " + f.getMessage(),
-                        "Database Error",
-                        JOptionPane.ERROR_MESSAGE);
-            }
-
-        });
+        sendNotificationButton.addActionListener(e -> tasks.runUpdateWithProgress("Sending overdue notifications", progress -> {
+            List<Object[]> overdueBooks = LibrarianService.getOverdueBooks();
+            LibrarianService.sendOverdueNotifications(overdueBooks, progress); // All or nothing, so every row was sent
+            return overdueBooks;
+        }, overdueBooks -> {
+            overdueTableModel.applyDiff(overdueBooks, 0);
+            JOptionPane.showMessageDialog(this, overdueBooks.size() + " overdue notification(s) sent successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
+        }, sendNotificationButton));
 
         return overduePanel;
     }
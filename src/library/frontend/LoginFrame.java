@@ -14,6 +14,7 @@ import java.awt.image.BufferedImage;
 
 import library.DatabaseConnection;
 import library.UserSession;
+import library.backend.AuditLog;
 
 public class LoginFrame extends JFrame implements ActionListener {
 
@@ -221,6 +222,7 @@ public class LoginFrame extends JFrame implements ActionListener {
 
         loginButton.setEnabled(false);
         showStatus("Authenticating...", false);
+        StartupTimer.loginSubmitted();
 
         String[] authResult = authenticateUser(username, plainPassword, selectedRole);
         loginButton.setEnabled(true);
@@ -261,21 +263,26 @@ public class LoginFrame extends JFrame implements ActionListener {
                         String status = rs.getString("status");
 
                         if (!actualRole.equalsIgnoreCase(selectedRole)) {
+                            AuditLog.getInstance().record(username, AuditLog.LOGIN_FAILED, "Role mismatch: " + selectedRole);
                             showStatus("Role mismatch.", true);
                             return null;
                         }
                         boolean passwordMatch = plainPassword.equals(storedPassword);
                         if (!passwordMatch) {
+                            AuditLog.getInstance().record(username, AuditLog.LOGIN_FAILED, "Invalid password");
                             showStatus("Invalid password.", true);
                             return null;
                         }
                         if (!"Active".equalsIgnoreCase(status)) {
+                            AuditLog.getInstance().record(username, AuditLog.LOGIN_FAILED, "Account inactive");
                             showStatus("Account inactive.", true);
                             return null;
                         }
                         userId = fetchSpecificUserId(conn, username, actualRole);
+                        AuditLog.getInstance().record(username, AuditLog.LOGIN, actualRole);
                         return new String[]{userId, actualRole};
                     } else {
+                        AuditLog.getInstance().record(null, AuditLog.LOGIN_FAILED, "Unknown username: " + username);
                         showStatus("Username not found.", true);
                         return null;
                     }
@@ -289,6 +296,8 @@ public class LoginFrame extends JFrame implements ActionListener {
             showStatus("Login error.", true);
             e.printStackTrace();
             return null;
+        } finally {
+            DatabaseConnection.release(conn);
         }
     }
 
@@ -320,6 +329,7 @@ public class LoginFrame extends JFrame implements ActionListener {
     }
 
     private void openDashboard(String role) {
+        StartupTimer.dashboardOpening();
         SwingUtilities.invokeLater(() -> {
             try {
                 JFrame dashboard = null;
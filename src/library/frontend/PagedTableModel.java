@@ -0,0 +1,99 @@
+package library.frontend;
+
+import library.backend.KeysetPage;
+
+import javax.swing.*;
+import java.util.function.Consumer;
+
+/**
+ * Read-only table model that fetches its rows a page at a time from a keyset-paginated service
+ * method. The first page is loaded by {@link #reload()}; further pages are loaded in the background
+ * when the user scrolls near the end of the table (see {@link #attach(JTable, JScrollPane)}).
+ * Rows stay in the order the service returns them, so attached tables should not sort them.
+ */
+public class PagedTableModel extends ColumnarTableModel {
+
+    /** Fetches the page after {@code after} (null for the first page). Called off the EDT. */
+    public interface PageLoader {
+        KeysetPage load(Object[] after, int pageSize) throws Exception;
+    }
+
+    private static final int PREFETCH_ROWS = 20; // Start fetching when this close to the last row
+
+    private final int pageSize;
+    private final PageLoader loader;
+    private Consumer<Exception> errorHandler = e -> e.printStackTrace();
+    private Runnable pageLoadedHandler = () -> {};
+    private Object[] cursor = null;
+    private boolean hasMore = false;
+    private boolean fetching = false;
+    private int generation = 0; // Bumped by reload(); pages from an older generation are dropped
+    private JTable table;
+    private JScrollPane scrollPane;
+
+    public PagedTableModel(String[] columns, ColumnType[] types, int pageSize, PageLoader loader) {
+        super(columns, types);
+        this.pageSize = pageSize;
+        this.loader = loader;
+    }
+
+    public void setErrorHandler(Consumer<Exception> errorHandler) { this.errorHandler = errorHandler; }
+
+    /** Called on the EDT after each page request finishes, whether it succeeded or failed. */
+    public void setPageLoadedHandler(Runnable pageLoadedHandler) { this.pageLoadedHandler = pageLoadedHandler; }
+
+    /** Loads the next page whenever the scroll position nears the end of what has been fetched. */
+    public void attach(JTable table, JScrollPane scrollPane) {
+        this.table = table;
+        this.scrollPane = scrollPane;
+        // Fires on scrolling and on resizing, including when a hidden tab is first shown
+        scrollPane.getViewport().addChangeListener(e -> loadMoreIfNeeded());
+    }
+
+    /** Drops every loaded row and fetches the first page again. */
+    public void reload() {
+        generation++;
+        clear();
+        cursor = null;
+        hasMore = true;
+        fetching = false;
+        loadNextPage();
+    }
+
+    /** True while a page request is in flight. */
+    public boolean isFetching() { return fetching; }
+    public boolean hasMore() { return hasMore; }
+
+    private void loadNextPage() {
+        if (fetching || !hasMore) { return; }
+        fetching = true;
+        final int requestGeneration = generation;
+        final Object[] after = cursor;
+        SwingWorker<KeysetPage, Void> worker = new SwingWorker<>() {
+            @Override protected KeysetPage doInBackground() throws Exception { return loader.load(after, pageSize); }
+            @Override protected void done() {
+                if (requestGeneration != generation) { return; } // Reloaded while this page was in flight
+                fetching = false;
+                try {
+                    KeysetPage page = get();
+                    appendRows(page.getRows());
+                    cursor = page.getCursor() != null ? page.getCursor() : cursor;
+                    hasMore = page.hasMore();
+                    SwingUtilities.invokeLater(PagedTableModel.this::loadMoreIfNeeded); // Keep filling a tall viewport
+                } catch (Exception e) {
+                    hasMore = false;
+                    errorHandler.accept(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+                }
+                pageLoadedHandler.run();
+            }
+        };
+        worker.execute();
+    }
+
+    private void loadMoreIfNeeded() {
+        if (fetching || !hasMore || table == null || !table.isShowing()) { return; } // Hidden tabs stay at one page
+        JScrollBar bar = scrollPane.getVerticalScrollBar();
+        int remaining = bar.getMaximum() - (bar.getValue() + bar.getVisibleAmount());
+        if (remaining <= PREFETCH_ROWS * table.getRowHeight()) { loadNextPage(); }
+    }
+}
@@ -1,6 +1,7 @@
 package library.frontend;
 
 import library.DatabaseConnection;
+import library.backend.IdSequences;
 
 import java.sql.*;
 import javax.swing.*;
@@ -223,12 +224,7 @@ public class SignUpFrame extends JFrame implements ActionListener {
                 userStmt.setString(6, answer);
                 userStmt.executeUpdate();
 
-                String newIdQuery = "SELECT COUNT(*) FROM Students";
-                PreparedStatement countStmt = conn.prepareStatement(newIdQuery);
-                ResultSet countRs = countStmt.executeQuery();
-                countRs.next();
-                int count = countRs.getInt(1) + 1;
-                String studentId = String.format("S%03d", count);
+                String studentId = IdSequences.getInstance().nextId(IdSequences.Sequence.STUDENT);
 
                 String insertStudent = "INSERT INTO Students (student_id, username, name) VALUES (?, ?, ?)";
                 PreparedStatement studentStmt = conn.prepareStatement(insertStudent);
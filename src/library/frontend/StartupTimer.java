@@ -0,0 +1,103 @@
+package library.frontend;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Measures how long it takes from pressing Login until a dashboard is usable.
+ * <p>
+ * Three points are recorded: the login submit ({@link #loginSubmitted()}), the first paint of the
+ * dashboard frame ({@link #watchFirstPaint(JFrame, String)}) and the moment the data of the tab shown
+ * first has arrived ({@link #interactive()}). Once all are in, one line is printed:
+ * <pre>[startup] Student dashboard: login to first paint 640 ms (auth 410 ms), first paint to interactive 180 ms</pre>
+ * If the {@code library.startup.log} system property names a file, the numbers are also appended to it as
+ * CSV ({@code timestamp,dashboard,auth_ms,login_to_paint_ms,paint_to_interactive_ms}) so they can be
+ * compared across releases. All methods are called on the EDT.
+ */
+public final class StartupTimer {
+
+    private static final String LOG_FILE = System.getProperty("library.startup.log");
+
+    private static long loginAt = -1;
+    private static long openingAt = -1;
+    private static long firstPaintAt = -1;
+    private static long interactiveAt = -1;
+    private static String dashboard;
+    private static boolean reported = true; // Nothing to report until a dashboard is being watched
+
+    private StartupTimer() {}
+
+    /** The user pressed Login. */
+    public static void loginSubmitted() {
+        loginAt = System.nanoTime();
+    }
+
+    /** Authentication succeeded and the dashboard is about to be built. */
+    public static void dashboardOpening() {
+        openingAt = System.nanoTime();
+    }
+
+    /**
+     * Records the first time {@code frame} paints. Call from the dashboard constructor; a 1x1 transparent
+     * probe on the frame's layered pane notes the first paint and then removes itself.
+     */
+    public static void watchFirstPaint(JFrame frame, String name) {
+        dashboard = name;
+        firstPaintAt = -1;
+        interactiveAt = -1;
+        reported = false;
+        if (openingAt < 0) { openingAt = System.nanoTime(); } // Opened directly, not through the login screen
+        JLayeredPane layeredPane = frame.getLayeredPane();
+        JComponent probe = new JComponent() {
+            @Override protected void paintComponent(Graphics g) {
+                if (firstPaintAt < 0) {
+                    firstPaintAt = System.nanoTime();
+                    SwingUtilities.invokeLater(() -> {
+                        layeredPane.remove(this);
+                        report();
+                    });
+                }
+            }
+        };
+        probe.setOpaque(false);
+        probe.setBounds(0, 0, 1, 1);
+        layeredPane.add(probe, JLayeredPane.DRAG_LAYER);
+    }
+
+    /** The first tab's data has loaded. Later calls are ignored. */
+    public static void interactive() {
+        if (interactiveAt < 0) {
+            interactiveAt = System.nanoTime();
+            report();
+        }
+    }
+
+    private static void report() {
+        if (reported || firstPaintAt < 0 || interactiveAt < 0) { return; }
+        reported = true;
+        long paintToInteractive = Math.max(0, ms(interactiveAt - firstPaintAt)); // Data can beat the first paint
+        long authMs = loginAt >= 0 ? ms(openingAt - loginAt) : -1;
+        long loginToPaint = ms(firstPaintAt - (loginAt >= 0 ? loginAt : openingAt));
+        String from = loginAt >= 0 ? "login" : "open";
+        System.out.println("[startup] " + dashboard + " dashboard: " + from + " to first paint " + loginToPaint + " ms"
+                + (authMs >= 0 ? " (auth " + authMs + " ms)" : "")
+                + ", first paint to interactive " + paintToInteractive + " ms");
+        if (LOG_FILE != null && !LOG_FILE.isEmpty()) {
+            try (PrintWriter out = new PrintWriter(new FileWriter(LOG_FILE, true))) {
+                out.println(LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) + "," + dashboard + ","
+                        + authMs + "," + loginToPaint + "," + paintToInteractive);
+            } catch (IOException e) {
+                System.err.println("Could not write startup timings to " + LOG_FILE + ": " + e.getMessage());
+            }
+        }
+        loginAt = -1;
+        openingAt = -1;
+    }
+
+    private static long ms(long nanos) { return nanos / 1_000_000; }
+}
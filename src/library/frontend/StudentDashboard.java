@@ -2,7 +2,8 @@ package library.frontend;
 
 // Necessary imports
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
 import java.awt.event.*;
 import java.sql.Date;
@@ -11,12 +12,16 @@ import java.util.ArrayList;
 import java.util.List;
 
 import library.UserSession;
+import library.backend.HoldService;
+import library.backend.RatingService;
 import library.backend.StudentService;
 
+import static library.frontend.ColumnarTableModel.ColumnType.*;
+
 public class StudentDashboard extends JFrame implements ActionListener {
 
     // --- GUI Components ---
-    private JTabbedPane mainTabbedPane;
+    private LazyTabbedPane mainTabbedPane;
     private JPanel borrowBooksPanel;
     private JPanel myBooksPanel;
     private JPanel requestBooksPanel;
@@ -24,20 +29,28 @@ public class StudentDashboard extends JFrame implements ActionListener {
     private JPanel logoutPanel;
     private JTextField searchField;
     private JButton searchButton;
+    private JLabel searchStatusLabel;
+    private JCheckBox includeUnavailableCheckBox;
+    private Timer searchDebounceTimer;
+    private SwingWorker<List<Object[]>, Void> availableBooksWorker; // Latest search still in flight
+    private int availableBooksGeneration = 0; // Bumped per search; older results are dropped
     private JTable availableBooksTable;
-    private DefaultTableModel availableBooksModel;
+    private ColumnarTableModel availableBooksModel;
     private JButton borrowButton;
     private JTable borrowedBooksTable;
-    private DefaultTableModel borrowedBooksModel;
+    private ColumnarTableModel borrowedBooksModel;
     private JButton returnButton;
     private JButton reissueButton;
     private JButton viewFineButton;
+    private JButton collectHoldButton;
+    private JButton cancelHoldButton;
+    private JButton rateButton;
     private JTextField requestTitleField;
     private JTextField requestAuthorField;
     private JTextArea requestReasonArea;
     private JButton submitRequestButton;
     private JTable notificationsTable;
-    private DefaultTableModel notificationsModel;
+    private ColumnarTableModel notificationsModel;
     private JButton markReadButton;
     private List<Integer> notificationIds; // Maps view row index to notification_id
     private JButton logoutButton;
@@ -53,6 +66,8 @@ public class StudentDashboard extends JFrame implements ActionListener {
     private static final Font TITLE_FONT = new Font("Segoe UI", Font.BOLD, 24);
     private static final Font SUBTITLE_FONT = new Font("Segoe UI", Font.BOLD, 16);
     private static final int BORDER_RADIUS = 8;
+    private static final int SEARCH_DEBOUNCE_MS = 150;
+    private static final int SEARCH_RESULT_LIMIT = 500;
 
     private static class RoundedBorder extends javax.swing.border.AbstractBorder {
         private int radius;
@@ -107,22 +122,17 @@ public class StudentDashboard extends JFrame implements ActionListener {
             }
         });
 
-        mainTabbedPane = new JTabbedPane();
+        mainTabbedPane = new LazyTabbedPane();
         mainTabbedPane.setFont(MAIN_FONT);
         mainTabbedPane.setBackground(SECONDARY_COLOR);
         notificationIds = new ArrayList<>(); // Initialize list
 
-        // Create UI tabs
-        createBorrowBooksTab();
-        createMyBooksTab();
-        createRequestBooksTab();
-        createNotificationsTab();
-
-        // Add tabs
-        mainTabbedPane.addTab("Borrow Books", borrowBooksPanel);
-        mainTabbedPane.addTab("My Borrowed Books", myBooksPanel);
-        mainTabbedPane.addTab("Request New Book", requestBooksPanel);
-        mainTabbedPane.addTab("Notifications", notificationsPanel);
+        StartupTimer.watchFirstPaint(this, "Student");
+        // Each tab is built, and its data loaded, the first time it is selected
+        mainTabbedPane.addLazyTab("Borrow Books", () -> { createBorrowBooksTab(); loadAvailableBooks(""); return borrowBooksPanel; });
+        mainTabbedPane.addLazyTab("My Borrowed Books", () -> { createMyBooksTab(); loadMyBorrowedBooks(); return myBooksPanel; });
+        mainTabbedPane.addLazyTab("Request New Book", () -> { createRequestBooksTab(); return requestBooksPanel; });
+        mainTabbedPane.addLazyTab("Notifications", () -> { createNotificationsTab(); loadNotifications(); return notificationsPanel; });
 
         JPanel topPanel = new JPanel(new BorderLayout());
         topPanel.setBackground(PRIMARY_COLOR);
@@ -146,9 +156,6 @@ public class StudentDashboard extends JFrame implements ActionListener {
 
         add(topPanel, BorderLayout.NORTH);
         add(mainTabbedPane, BorderLayout.CENTER);
-
-        // Load initial data
-        loadInitialData();
     }
 
     // --- Tab Creation Methods (GUI setup - unchanged) ---
@@ -165,12 +172,27 @@ public class StudentDashboard extends JFrame implements ActionListener {
         searchButton.setBorder(new RoundedBorder(BORDER_RADIUS));
         searchButton.addActionListener(this);
         searchField.addActionListener(e -> searchButton.doClick());
+        // Search as the user types, once typing pauses
+        searchDebounceTimer = new Timer(SEARCH_DEBOUNCE_MS, e -> handleSearchBooks());
+        searchDebounceTimer.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override public void insertUpdate(DocumentEvent e) { searchDebounceTimer.restart(); }
+            @Override public void removeUpdate(DocumentEvent e) { searchDebounceTimer.restart(); }
+            @Override public void changedUpdate(DocumentEvent e) { searchDebounceTimer.restart(); }
+        });
+        searchStatusLabel = new JLabel(" ");
+        searchStatusLabel.setFont(MAIN_FONT);
         searchPanel.add(new JLabel("Search by Title/Author/Category:"));
         searchPanel.add(searchField);
         searchPanel.add(searchButton);
+        includeUnavailableCheckBox = new JCheckBox("Include unavailable (place a hold)");
+        includeUnavailableCheckBox.setFont(MAIN_FONT);
+        includeUnavailableCheckBox.addActionListener(e -> handleSearchBooks());
+        searchPanel.add(includeUnavailableCheckBox);
+        searchPanel.add(searchStatusLabel);
         borrowBooksPanel.add(searchPanel, BorderLayout.NORTH);
         String[] availableBookColumns = {"Book ID", "Title", "Author", "Category", "Avg Rating", "Available"};
-        availableBooksModel = new DefaultTableModel(availableBookColumns, 0) { @Override public boolean isCellEditable(int r, int c){ return false; }};
+        availableBooksModel = new ColumnarTableModel(availableBookColumns, STRING, STRING, STRING, STRING, DOUBLE, INT);
         availableBooksTable = new JTable(availableBooksModel);
         availableBooksTable.setFont(MAIN_FONT);
         availableBooksTable.getTableHeader().setFont(MAIN_FONT);
@@ -181,7 +203,7 @@ public class StudentDashboard extends JFrame implements ActionListener {
         scrollPane.getViewport().setBackground(Color.WHITE);
         borrowBooksPanel.add(scrollPane, BorderLayout.CENTER);
         JPanel actionPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
-        borrowButton = new JButton("Borrow Selected Book");
+        borrowButton = new JButton("Borrow / Hold Selected Book");
         borrowButton.setBackground(PRIMARY_COLOR);
         borrowButton.setForeground(Color.WHITE);
         borrowButton.setFocusPainted(false);
@@ -194,7 +216,7 @@ public class StudentDashboard extends JFrame implements ActionListener {
         myBooksPanel = new JPanel(new BorderLayout(10, 10));
         myBooksPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
         String[] borrowedBookColumns = {"Issue ID", "Book ID", "Title", "Issue Date", "Due Date", "Return Date", "Status", "Reissues", "Fine (Unpaid)"};
-        borrowedBooksModel = new DefaultTableModel(borrowedBookColumns, 0){ @Override public boolean isCellEditable(int r, int c){ return false; }};
+        borrowedBooksModel = new ColumnarTableModel(borrowedBookColumns, INT, STRING, STRING, DATE, DATE, DATE, STRING, INT, DOUBLE);
         borrowedBooksTable = new JTable(borrowedBooksModel);
         borrowedBooksTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         borrowedBooksTable.setAutoCreateRowSorter(true);
@@ -219,15 +241,42 @@ public class StudentDashboard extends JFrame implements ActionListener {
         viewFineButton.setForeground(Color.WHITE);
         viewFineButton.setFocusPainted(false);
         viewFineButton.setBorder(new RoundedBorder(BORDER_RADIUS));
-        returnButton.setToolTipText("Mark the selected borrowed book as returned.");
         reissueButton.setToolTipText("Request to extend the due date for the selected book.");
         viewFineButton.setToolTipText("View details of any unpaid fines for the selected record.");
+        collectHoldButton = new JButton("Collect Hold");
+        collectHoldButton.setFont(MAIN_FONT);
+        collectHoldButton.setBackground(PRIMARY_COLOR);
+        collectHoldButton.setForeground(Color.WHITE);
+        collectHoldButton.setFocusPainted(false);
+        collectHoldButton.setBorder(new RoundedBorder(BORDER_RADIUS));
+        cancelHoldButton = new JButton("Cancel Hold");
+        cancelHoldButton.setFont(MAIN_FONT);
+        cancelHoldButton.setBackground(PRIMARY_COLOR);
+        cancelHoldButton.setForeground(Color.WHITE);
+        cancelHoldButton.setFocusPainted(false);
+        cancelHoldButton.setBorder(new RoundedBorder(BORDER_RADIUS));
+        rateButton = new JButton("Rate / Review");
+        rateButton.setFont(MAIN_FONT);
+        rateButton.setBackground(PRIMARY_COLOR);
+        rateButton.setForeground(Color.WHITE);
+        rateButton.setFocusPainted(false);
+        rateButton.setBorder(new RoundedBorder(BORDER_RADIUS));
+        rateButton.setToolTipText("Rate the selected book, or change the rating you gave it.");
+        returnButton.setToolTipText("Mark the selected borrowed book as returned.");
+        collectHoldButton.setToolTipText("Borrow the copy set aside for your ready hold (status HoldActive).");
+        cancelHoldButton.setToolTipText("Leave the hold queue for the selected book.");
         returnButton.addActionListener(this);
         reissueButton.addActionListener(this);
         viewFineButton.addActionListener(this);
+        collectHoldButton.addActionListener(this);
+        cancelHoldButton.addActionListener(this);
+        rateButton.addActionListener(this);
         actionPanel.add(returnButton);
         actionPanel.add(reissueButton);
         actionPanel.add(viewFineButton);
+        actionPanel.add(collectHoldButton);
+        actionPanel.add(cancelHoldButton);
+        actionPanel.add(rateButton);
         myBooksPanel.add(actionPanel, BorderLayout.SOUTH);
     }
     private void createRequestBooksTab() {
@@ -258,7 +307,7 @@ public class StudentDashboard extends JFrame implements ActionListener {
         notificationsPanel = new JPanel(new BorderLayout(10, 10));
         notificationsPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
         String[] notificationColumns = {"Date", "Type", "Message", "Read"};
-        notificationsModel = new DefaultTableModel(notificationColumns, 0){ @Override public boolean isCellEditable(int r, int c){ return false; }};
+        notificationsModel = new ColumnarTableModel(notificationColumns, STRING, STRING, STRING, STRING);
         notificationsTable = new JTable(notificationsModel);
         notificationsTable.setFont(MAIN_FONT);
         notificationsTable.getTableHeader().setFont(MAIN_FONT);
@@ -280,13 +329,6 @@ public class StudentDashboard extends JFrame implements ActionListener {
         notificationsPanel.add(actionPanel, BorderLayout.SOUTH);
     }
 
-    /** Loads initial data for all relevant tables. */
-    private void loadInitialData() {
-        loadAvailableBooks(""); // Load all initially
-        loadMyBorrowedBooks();
-        loadNotifications();
-    }
-
     // --- Action Listener Implementation (Calls handlers) ---
     @Override
     public void actionPerformed(ActionEvent e) {
@@ -297,6 +339,9 @@ public class StudentDashboard extends JFrame implements ActionListener {
             else if (source == returnButton) { handleReturnBook(); }
             else if (source == reissueButton) { handleReissueBook(); }
             else if (source == viewFineButton) { handleViewFine(); }
+            else if (source == collectHoldButton) { handleCollectHold(); }
+            else if (source == cancelHoldButton) { handleCancelHold(); }
+            else if (source == rateButton) { handleRateBook(); }
             else if (source == submitRequestButton) { handleSubmitRequest(); }
             else if (source == markReadButton) { handleMarkNotificationRead(); }
             else if (source == logoutButton) { performLogout(); }
@@ -309,7 +354,8 @@ public class StudentDashboard extends JFrame implements ActionListener {
     // --- UI Action Handlers (Delegate to Service) ---
 
     private void handleSearchBooks() {
-        loadAvailableBooks(searchField.getText().trim());
+        searchDebounceTimer.stop(); // Enter/button search supersedes a pending keystroke search
+        loadAvailableBooks(searchField.getText().trim(), false);
     }
 
     private void handleBorrowBook() {
@@ -317,6 +363,8 @@ public class StudentDashboard extends JFrame implements ActionListener {
         if (selectedRow == -1) { showWarning("Please select a book to borrow."); return; }
         int modelRow = availableBooksTable.convertRowIndexToModel(selectedRow);
         String bookId = (String) availableBooksModel.getValueAt(modelRow, 0);
+        Object available = availableBooksModel.getValueAt(modelRow, 5);
+        if (available instanceof Integer && (Integer) available <= 0) { handlePlaceHold(bookId); return; }
 
         borrowButton.setEnabled(false);
         SwingWorker<String, Void> worker = new SwingWorker<>() {
@@ -337,6 +385,89 @@ public class StudentDashboard extends JFrame implements ActionListener {
         worker.execute();
     }
 
+    private void handlePlaceHold(String bookId) {
+        int confirm = JOptionPane.showConfirmDialog(this, "No copy is free right now. Join the queue for this book?\nYou will be notified when a copy is set aside for you.", "Place Hold", JOptionPane.YES_NO_OPTION);
+        if (confirm != JOptionPane.YES_OPTION) return;
+
+        borrowButton.setEnabled(false);
+        SwingWorker<Integer, Void> worker = new SwingWorker<>() {
+            @Override protected Integer doInBackground() throws Exception {
+                return HoldService.getInstance().placeHold(session.getUserId(), bookId);
+            }
+            @Override protected void done() {
+                try {
+                    int position = get(); showSuccess("Hold placed. You are number " + position + " in the queue.");
+                    loadMyBorrowedBooks();
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    showError("Error placing hold: " + cause.getMessage());
+                    loadAvailableBooks(searchField.getText().trim());
+                } finally { borrowButton.setEnabled(true); }
+            }
+        };
+        worker.execute();
+    }
+
+    private void handleCollectHold() {
+        int selectedRow = borrowedBooksTable.getSelectedRow();
+        if (selectedRow == -1) { showWarning("Please select a hold to collect."); return; }
+        int modelRow = borrowedBooksTable.convertRowIndexToModel(selectedRow);
+
+        int issueId = (int) borrowedBooksModel.getValueAt(modelRow, 0);
+        String currentStatus = (String) borrowedBooksModel.getValueAt(modelRow, 6);
+        if (!"HoldActive".equalsIgnoreCase(currentStatus)) {
+            showWarning("Only holds with status 'HoldActive' are ready to collect."); return;
+        }
+
+        collectHoldButton.setEnabled(false);
+        SwingWorker<LocalDate, Void> worker = new SwingWorker<>() {
+            @Override protected LocalDate doInBackground() throws Exception {
+                return HoldService.getInstance().collectHold(issueId, session.getUserId());
+            }
+            @Override protected void done() {
+                try {
+                    LocalDate dueDate = get(); showSuccess("Book borrowed successfully! Due Date: " + dueDate);
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    showError("Error collecting hold: " + cause.getMessage());
+                } finally { collectHoldButton.setEnabled(true); loadMyBorrowedBooks(); }
+            }
+        };
+        worker.execute();
+    }
+
+    private void handleCancelHold() {
+        int selectedRow = borrowedBooksTable.getSelectedRow();
+        if (selectedRow == -1) { showWarning("Please select a hold to cancel."); return; }
+        int modelRow = borrowedBooksTable.convertRowIndexToModel(selectedRow);
+
+        int issueId = (int) borrowedBooksModel.getValueAt(modelRow, 0);
+        String currentStatus = (String) borrowedBooksModel.getValueAt(modelRow, 6);
+        if (!"HoldRequested".equalsIgnoreCase(currentStatus) && !"HoldActive".equalsIgnoreCase(currentStatus)) {
+            showWarning("The selected row is not a hold."); return;
+        }
+
+        int confirm = JOptionPane.showConfirmDialog(this, "Cancel this hold?", "Confirm Cancel", JOptionPane.YES_NO_OPTION);
+        if (confirm != JOptionPane.YES_OPTION) return;
+
+        cancelHoldButton.setEnabled(false);
+        SwingWorker<Void, Void> worker = new SwingWorker<>() {
+            @Override protected Void doInBackground() throws Exception {
+                HoldService.getInstance().cancelHold(issueId, session.getUserId());
+                return null;
+            }
+            @Override protected void done() {
+                try {
+                    get(); showSuccess("Hold cancelled.");
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    showError("Error cancelling hold: " + cause.getMessage());
+                } finally { cancelHoldButton.setEnabled(true); loadMyBorrowedBooks(); }
+            }
+        };
+        worker.execute();
+    }
+
     private void handleReturnBook() {
         int selectedRow = borrowedBooksTable.getSelectedRow();
         if (selectedRow == -1) { showWarning("Please select a book to return."); return; }
@@ -349,6 +480,7 @@ public class StudentDashboard extends JFrame implements ActionListener {
         LocalDate dueDate = (dueDateObj instanceof java.sql.Date) ? ((java.sql.Date) dueDateObj).toLocalDate() : null;
 
         if ("Returned".equalsIgnoreCase(currentStatus)) { showInfo("Book already returned."); return; }
+        if (currentStatus != null && currentStatus.startsWith("Hold")) { showInfo("This is a hold, not a loan. Use Cancel Hold to leave the queue."); return; }
 
         int confirm = JOptionPane.showConfirmDialog(this, "Return this book?", "Confirm Return", JOptionPane.YES_NO_OPTION);
         if (confirm != JOptionPane.YES_OPTION) return;
@@ -432,6 +564,65 @@ public class StudentDashboard extends JFrame implements ActionListener {
         worker.execute();
     }
 
+    private void handleRateBook() {
+        int selectedRow = borrowedBooksTable.getSelectedRow();
+        if (selectedRow == -1) { showWarning("Please select a book to rate."); return; }
+        int modelRow = borrowedBooksTable.convertRowIndexToModel(selectedRow);
+        String bookId = (String) borrowedBooksModel.getValueAt(modelRow, 1);
+        String title = (String) borrowedBooksModel.getValueAt(modelRow, 2);
+
+        rateButton.setEnabled(false);
+        SwingWorker<RatingService.Review, Void> worker = new SwingWorker<>() {
+            @Override protected RatingService.Review doInBackground() throws Exception {
+                return RatingService.getInstance().getReview(session.getUserId(), bookId);
+            }
+            @Override protected void done() {
+                try {
+                    showReviewDialog(bookId, title, get());
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    showError("Error loading your review: " + cause.getMessage());
+                    rateButton.setEnabled(true);
+                }
+            }
+        };
+        worker.execute();
+    }
+
+    private void showReviewDialog(String bookId, String title, RatingService.Review existing) {
+        JComboBox<Integer> ratingBox = new JComboBox<>(new Integer[]{5, 4, 3, 2, 1});
+        ratingBox.setSelectedItem(existing != null ? existing.getRating() : 5);
+        JTextArea reviewArea = new JTextArea(existing != null && existing.getText() != null ? existing.getText() : "", 5, 30);
+        reviewArea.setLineWrap(true); reviewArea.setWrapStyleWord(true);
+        JPanel panel = new JPanel(new BorderLayout(5, 5));
+        JPanel ratingPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        ratingPanel.add(new JLabel("Rating (1-5): ")); ratingPanel.add(ratingBox);
+        panel.add(ratingPanel, BorderLayout.NORTH);
+        panel.add(new JScrollPane(reviewArea), BorderLayout.CENTER);
+        int choice = JOptionPane.showConfirmDialog(this, panel, (existing != null ? "Update Review: " : "Review: ") + title,
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (choice != JOptionPane.OK_OPTION) { rateButton.setEnabled(true); return; }
+        int rating = (Integer) ratingBox.getSelectedItem();
+        String review = reviewArea.getText();
+
+        SwingWorker<Double, Void> worker = new SwingWorker<>() {
+            @Override protected Double doInBackground() throws Exception {
+                return RatingService.getInstance().submitReview(session.getUserId(), bookId, rating, review);
+            }
+            @Override protected void done() {
+                try {
+                    double average = get();
+                    showSuccess(String.format("Thank you for your review! '%s' is now rated %.2f.", title, average));
+                    loadAvailableBooks(searchField.getText().trim());
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    showError("Error saving review: " + cause.getMessage());
+                } finally { rateButton.setEnabled(true); }
+            }
+        };
+        worker.execute();
+    }
+
     private void showFineDetailsDialog(int issueId, List<Object[]> unpaidFines) {
         StringBuilder fineDetails = new StringBuilder("Unpaid Fine Details for Issue ID " + issueId + ":\n");
         double totalFine = 0; List<Integer> fineIds = new ArrayList<>();
@@ -526,47 +717,66 @@ public class StudentDashboard extends JFrame implements ActionListener {
     }
 
     // --- Data Loading Methods (Use SwingWorker) ---
-    private void loadAvailableBooks(String searchTerm) {
-        availableBooksModel.setRowCount(0); availableBooksModel.addRow(new Object[]{"Loading...", "", "", "", "", ""});
-        SwingWorker<List<Object[]>, Void> worker = new SwingWorker<>() {
-            @Override protected List<Object[]> doInBackground() throws Exception { return studentService.getAvailableBooks(searchTerm); }
+    private void loadAvailableBooks(String searchTerm) { loadAvailableBooks(searchTerm, true); }
+
+    /**
+     * Runs a catalog search. Each call supersedes the previous one: the older worker is cancelled and,
+     * should it still finish, its results are dropped, so only the newest query reaches the table.
+     */
+    private void loadAvailableBooks(String searchTerm, boolean showPlaceholder) {
+        final int generation = ++availableBooksGeneration;
+        if (availableBooksWorker != null) { availableBooksWorker.cancel(false); } // No interrupt: it may be mid-JDBC call
+        if (showPlaceholder) { availableBooksModel.showLoading(); }
+        final boolean availableOnly = includeUnavailableCheckBox == null || !includeUnavailableCheckBox.isSelected();
+        availableBooksWorker = new SwingWorker<>() {
+            @Override protected List<Object[]> doInBackground() throws Exception {
+                if (isCancelled()) { return null; }
+                return studentService.searchBooks(searchTerm, SEARCH_RESULT_LIMIT, availableOnly);
+            }
             @Override protected void done() {
+                if (isCancelled() || generation != availableBooksGeneration) { return; } // Superseded
+                StartupTimer.interactive(); // The Borrow Books tab is shown first
                 try {
-                    List<Object[]> books = get(); availableBooksModel.setRowCount(0);
-                    if(books.isEmpty()){ System.out.println("No available books found."); } else { books.forEach(availableBooksModel::addRow); }
-                } catch (Exception e) { handleLoadingError(e, "available books"); availableBooksModel.setRowCount(0); }
+                    List<Object[]> books = get(); availableBooksModel.applyDiff(books, 0); // Narrowing a search mostly removes rows
+                    if(books.isEmpty()){ System.out.println("No available books found."); }
+                    searchStatusLabel.setText(books.size() >= SEARCH_RESULT_LIMIT ? "Showing first " + SEARCH_RESULT_LIMIT + " matches, keep typing to narrow." : books.size() + " match(es)");
+                } catch (Exception e) { handleLoadingError(e, "available books"); availableBooksModel.clear(); searchStatusLabel.setText(" "); }
             }
         };
-        worker.execute();
+        availableBooksWorker.execute();
     }
     private void loadMyBorrowedBooks() {
-        borrowedBooksModel.setRowCount(0); borrowedBooksModel.addRow(new Object[]{"Loading...", "", "", null, null, null, "", "", ""});
+        if (borrowedBooksModel == null) { return; } // Tab not opened yet; it loads when first selected
+        borrowedBooksModel.showLoadingIfEmpty(); // After a return or reissue only the changed rows repaint
         SwingWorker<List<Object[]>, Void> worker = new SwingWorker<>() {
             @Override protected List<Object[]> doInBackground() throws Exception { return studentService.getBorrowedBooks(session.getUserId()); }
             @Override protected void done() {
                 try {
-                    List<Object[]> books = get(); borrowedBooksModel.setRowCount(0);
-                    if(books.isEmpty()){ System.out.println("No books currently borrowed."); } else { books.forEach(borrowedBooksModel::addRow); }
-                } catch (Exception e) { handleLoadingError(e, "borrowed books"); borrowedBooksModel.setRowCount(0); }
+                    List<Object[]> books = get(); borrowedBooksModel.applyDiff(books, 0);
+                    if(books.isEmpty()){ System.out.println("No books currently borrowed."); }
+                } catch (Exception e) { handleLoadingError(e, "borrowed books"); borrowedBooksModel.clear(); }
             }
         };
         worker.execute();
     }
     private void loadNotifications() {
-        notificationsModel.setRowCount(0); notificationIds.clear(); notificationsModel.addRow(new Object[]{"Loading...", "", "", ""});
+        if (notificationsModel == null) { return; } // Tab not opened yet; it loads when first selected
+        notificationsModel.showLoading(); notificationIds.clear();
         SwingWorker<List<Object[]>, Void> worker = new SwingWorker<>() {
             @Override protected List<Object[]> doInBackground() throws Exception { return studentService.getNotifications(session.getUsername()); }
             @Override protected void done() {
                 try {
-                    List<Object[]> notifications = get(); notificationsModel.setRowCount(0); notificationIds.clear();
+                    List<Object[]> notifications = get(); notificationIds.clear();
+                    List<Object[]> rows = new ArrayList<>(notifications.size());
                     if(notifications.isEmpty()){ System.out.println("No notifications found."); }
                     else {
                         for (Object[] data : notifications) {
                             notificationIds.add((Integer) data[0]); // Store ID
-                            notificationsModel.addRow(new Object[]{data[1], data[2], data[3], data[4]}); // Add display data
+                            rows.add(new Object[]{data[1], data[2], data[3], data[4]}); // Add display data
                         }
                     }
-                } catch (Exception e) { handleLoadingError(e, "notifications"); notificationsModel.setRowCount(0); notificationIds.clear(); }
+                    notificationsModel.replaceAll(rows);
+                } catch (Exception e) { handleLoadingError(e, "notifications"); notificationsModel.clear(); notificationIds.clear(); }
             }
         };
         worker.execute();
@@ -0,0 +1,236 @@
+package library.frontend;
+
+import library.MetricsRegistry;
+import library.backend.ProgressListener;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Runs a window's database work off the Event Dispatch Thread.
+ * <p>
+ * {@link #run} executes the work on a {@link SwingWorker} and hands the result (or the exception) back on
+ * the EDT. While anything is running, the indicator from {@link #getIndicator()} shows a progress bar with
+ * the task's description and a Cancel button, the window shows a wait cursor, and the components passed
+ * to {@code run} are disabled so the same action can't be started twice. Work started with
+ * {@link #runWithProgress} reports how far it is, and the progress bar shows it.
+ * <p>
+ * Cancelling stops the result from reaching the window and re-enables the UI at once. The worker thread
+ * is not interrupted: the JDBC call finishes on its own, since interrupting it can leave the pooled
+ * connection unusable. Work started with {@link #runWithProgress} can stop early by checking
+ * {@link ProgressListener#isCancelled()}. Because a cancelled write would still commit, work that changes
+ * data is started with {@link #runUpdate} or {@link #runUpdateWithProgress} instead: it cannot be
+ * cancelled, and its outcome is always shown. Cancel is only offered while a cancellable task runs.
+ * <p>
+ * Each task's background time is recorded in the {@link MetricsRegistry} as {@code task.<description>}.
+ * <p>
+ * All methods must be called on the EDT.
+ */
+public class TaskRunner {
+
+    /** Work to run in the background. */
+    public interface Work<T> {
+        T call() throws Exception;
+    }
+
+    /** Work that reports progress while it runs; the listener may be called from the worker thread. */
+    public interface ProgressWork<T> {
+        T call(ProgressListener progress) throws Exception;
+    }
+
+    /** A submitted task. */
+    public interface Handle {
+        /** Cancels the task; does nothing for updates. */
+        void cancel();
+        boolean isDone();
+    }
+
+    private final Component owner;
+    private final JPanel indicator;
+    private final JProgressBar progressBar;
+    private final JLabel statusLabel;
+    private final JButton cancelButton;
+    private final List<Task<?>> running = new ArrayList<>();
+    private final Map<JComponent, Integer> disabledCount = new HashMap<>(); // A component stays disabled until all its tasks end
+
+    public TaskRunner(Component owner) {
+        this.owner = owner;
+        progressBar = new JProgressBar(0, 1000);
+        progressBar.setIndeterminate(true);
+        progressBar.setPreferredSize(new Dimension(120, 16));
+        statusLabel = new JLabel();
+        statusLabel.setForeground(Color.WHITE);
+        cancelButton = new JButton("Cancel");
+        cancelButton.setFocusPainted(false);
+        cancelButton.addActionListener(e -> cancelAll());
+        indicator = new JPanel(new FlowLayout(FlowLayout.RIGHT, 8, 0));
+        indicator.setOpaque(false);
+        indicator.add(statusLabel);
+        indicator.add(progressBar);
+        indicator.add(cancelButton);
+        indicator.setVisible(false);
+    }
+
+    /** Busy indicator to place in the window; hidden while nothing is running. */
+    public JComponent getIndicator() { return indicator; }
+
+    public boolean isBusy() { return !running.isEmpty(); }
+
+    /** Runs {@code work} in the background; failures are shown in an error dialog. */
+    public <T> Handle run(String description, Work<T> work, Consumer<T> onSuccess, JComponent... disableWhileRunning) {
+        return run(description, work, onSuccess, e -> showError(description, e), disableWhileRunning);
+    }
+
+    /**
+     * Runs {@code work} in the background and passes its result to {@code onSuccess}, or its exception to
+     * {@code onError}, on the EDT. Neither is called if the task is cancelled first.
+     */
+    public <T> Handle run(String description, Work<T> work, Consumer<T> onSuccess, Consumer<Exception> onError,
+                          JComponent... disableWhileRunning) {
+        return runWithProgress(description, progress -> work.call(), onSuccess, onError, disableWhileRunning);
+    }
+
+    /** Like {@link #run(String, Work, Consumer, JComponent...)}, showing the progress the work reports. */
+    public <T> Handle runWithProgress(String description, ProgressWork<T> work, Consumer<T> onSuccess, JComponent... disableWhileRunning) {
+        return runWithProgress(description, work, onSuccess, e -> showError(description, e), disableWhileRunning);
+    }
+
+    public <T> Handle runWithProgress(String description, ProgressWork<T> work, Consumer<T> onSuccess, Consumer<Exception> onError,
+                                      JComponent... disableWhileRunning) {
+        return submit(description, work, onSuccess, onError, true, disableWhileRunning);
+    }
+
+    /** Runs work that changes data. It cannot be cancelled, so its result or error always reaches the window. */
+    public <T> Handle runUpdate(String description, Work<T> work, Consumer<T> onSuccess, JComponent... disableWhileRunning) {
+        return submit(description, progress -> work.call(), onSuccess, e -> showError(description, e), false, disableWhileRunning);
+    }
+
+    /** Like {@link #runUpdate}, showing the progress the work reports. */
+    public <T> Handle runUpdateWithProgress(String description, ProgressWork<T> work, Consumer<T> onSuccess, JComponent... disableWhileRunning) {
+        return submit(description, work, onSuccess, e -> showError(description, e), false, disableWhileRunning);
+    }
+
+    private <T> Handle submit(String description, ProgressWork<T> work, Consumer<T> onSuccess, Consumer<Exception> onError,
+                              boolean cancellable, JComponent... disableWhileRunning) {
+        Task<T> task = new Task<>(description, work, onSuccess, onError, cancellable, disableWhileRunning);
+        running.add(task);
+        for (JComponent component : disableWhileRunning) {
+            disabledCount.merge(component, 1, Integer::sum);
+            component.setEnabled(false);
+        }
+        updateIndicator();
+        task.execute();
+        return task;
+    }
+
+    /** Cancels every running task that can be cancelled; updates run to the end. */
+    public void cancelAll() {
+        for (Task<?> task : new ArrayList<>(running)) { task.cancel(); }
+    }
+
+    private void finished(Task<?> task) {
+        if (!running.remove(task)) { return; }
+        for (JComponent component : task.disabled) {
+            if (disabledCount.merge(component, -1, Integer::sum) <= 0) {
+                disabledCount.remove(component);
+                component.setEnabled(true);
+            }
+        }
+        updateIndicator();
+    }
+
+    private void updateIndicator() {
+        boolean busy = !running.isEmpty();
+        if (busy) {
+            Task<?> latest = running.get(running.size() - 1);
+            String text = latest.description;
+            if (latest.progressTotal > 0) {
+                text += " " + latest.progressDone + " / " + latest.progressTotal;
+                progressBar.setIndeterminate(false);
+                progressBar.setValue((int) (1000 * latest.progressDone / latest.progressTotal));
+            } else {
+                if (latest.progressDone > 0) { text += " " + latest.progressDone; } // Total unknown: just count
+                progressBar.setIndeterminate(true);
+            }
+            statusLabel.setText(running.size() > 1 ? text + " (+" + (running.size() - 1) + " more)..." : text + "...");
+        }
+        cancelButton.setVisible(running.stream().anyMatch(task -> task.cancellable));
+        indicator.setVisible(busy);
+        owner.setCursor(busy ? Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR) : Cursor.getDefaultCursor());
+        indicator.revalidate();
+        indicator.repaint();
+    }
+
+    private void showError(String description, Exception e) {
+        System.err.println(description + " failed: " + e.getMessage());
+        JOptionPane.showMessageDialog(owner, description + " failed:\n" + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+    }
+
+    private final class Task<T> extends SwingWorker<T, long[]> implements Handle {
+        private final String description;
+        private final ProgressWork<T> work;
+        private final Consumer<T> onSuccess;
+        private final Consumer<Exception> onError;
+        private final boolean cancellable;
+        private final JComponent[] disabled;
+        private long progressDone = 0;
+        private long progressTotal = -1;
+
+        Task(String description, ProgressWork<T> work, Consumer<T> onSuccess, Consumer<Exception> onError,
+             boolean cancellable, JComponent[] disabled) {
+            this.description = description;
+            this.work = work;
+            this.onSuccess = onSuccess;
+            this.onError = onError;
+            this.cancellable = cancellable;
+            this.disabled = disabled;
+        }
+
+        @Override protected T doInBackground() throws Exception {
+            long started = System.nanoTime();
+            try {
+                return work.call(new ProgressListener() {
+                    @Override public void progress(long done, long total) { publish(new long[]{done, total}); }
+                    @Override public boolean isCancelled() { return Task.this.isCancelled(); }
+                });
+            } finally {
+                MetricsRegistry.getInstance().timer("task." + description).recordSince(started);
+            }
+        }
+
+        @Override protected void process(List<long[]> updates) {
+            long[] latest = updates.get(updates.size() - 1); // Coalesced: only the newest matters
+            progressDone = latest[0];
+            progressTotal = latest[1];
+            if (running.contains(this)) { updateIndicator(); }
+        }
+
+        @Override public void cancel() {
+            if (!cancellable) { return; } // It commits anyway; hiding the outcome would only mislead
+            cancel(false); // No interrupt: it may be mid-JDBC call
+            finished(this);
+        }
+
+        @Override protected void done() {
+            finished(this);
+            if (isCancelled()) { return; }
+            T result;
+            try {
+                result = get();
+            } catch (ExecutionException e) {
+                onError.accept(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (onSuccess != null) { onSuccess.accept(result); }
+        }
+    }
+}
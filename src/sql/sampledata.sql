@@ -5,6 +5,8 @@ DELETE FROM Settings;
 DELETE FROM ActivityLog;
 DELETE FROM BookRequests;
 DELETE FROM Notifications;
+DELETE FROM FineStudentMonthlyTotals;
+DELETE FROM FineMonthlyTotals;
 DELETE FROM Fines;
 DELETE FROM IssuedBooks;
 DELETE FROM RatingsReviews;
@@ -87,6 +89,14 @@ INSERT INTO Fines (student_id, issue_id, fine_amount, status, fine_date) VALUES
 INSERT INTO Fines (student_id, issue_id, fine_amount, status, fine_date) VALUES
 ('S001', 3, 9.00, 'Unpaid', '2025-04-20');
 
+-- Fine rollups for the fines above (the application maintains these itself from here on)
+INSERT INTO FineMonthlyTotals (fine_year, fine_month, total_amount, paid_amount, fine_count)
+SELECT YEAR(fine_date), MONTH(fine_date), SUM(fine_amount), SUM(IF(status = 'Paid', fine_amount, 0)), COUNT(*)
+FROM Fines WHERE fine_date IS NOT NULL GROUP BY YEAR(fine_date), MONTH(fine_date);
+INSERT INTO FineStudentMonthlyTotals (student_id, fine_year, fine_month, total_amount, paid_amount, fine_count)
+SELECT student_id, YEAR(fine_date), MONTH(fine_date), SUM(fine_amount), SUM(IF(status = 'Paid', fine_amount, 0)), COUNT(*)
+FROM Fines WHERE fine_date IS NOT NULL AND student_id IS NOT NULL GROUP BY student_id, YEAR(fine_date), MONTH(fine_date);
+
 -- 8. Notifications (For student S001 / abhishek_stu)
 INSERT INTO Notifications (user_id, message, type, is_read, created_at) VALUES
 ('abhishek_stu', 'Book ''Sapiens: A Brief History of Humankind'' (B002) was due on 2025-04-24. Please return it soon.', 'DueDate', FALSE, '2025-04-25 09:00:00'),
@@ -100,4 +110,8 @@ INSERT INTO BookRequests (student_id, title, author, reason, status, request_dat
 -- 10. Ratings and Reviews (From student S001 / abhishek_stu for a returned book)
 INSERT INTO RatingsReviews (book_id, student_id, rating, review, review_date) VALUES
 ('B003', 'S001', 5, 'Excellent book on building good habits and breaking bad ones. Very practical advice.', '2025-04-21 14:00:00'); -- Review for 'Atomic Habits'
--- Note: Application logic should ideally update Books.avg_rating when a review is added/updated.
\ No newline at end of file
+-- Running rating totals for the reviews above (RatingService keeps them in step from here on)
+UPDATE Books b LEFT JOIN (SELECT book_id, SUM(rating) AS total, COUNT(*) AS reviews FROM RatingsReviews GROUP BY book_id) r
+ON r.book_id = b.book_id
+SET b.rating_sum = COALESCE(r.total, 0), b.rating_count = COALESCE(r.reviews, 0),
+    b.avg_rating = IF(r.reviews IS NULL, 0, ROUND(r.total / r.reviews, 2));
\ No newline at end of file
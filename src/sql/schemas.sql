@@ -2,9 +2,12 @@
 -- Disable checks temporarily if needed for dropping in specific order
 -- SET FOREIGN_KEY_CHECKS=0; -- Use with caution
 
+DROP TABLE IF EXISTS SchemaMigrations; -- Migration history describes the tables dropped below
 DROP TABLE IF EXISTS ActivityLog;
 DROP TABLE IF EXISTS BookRequests;
 DROP TABLE IF EXISTS Notifications;
+DROP TABLE IF EXISTS FineStudentMonthlyTotals;
+DROP TABLE IF EXISTS FineMonthlyTotals;
 DROP TABLE IF EXISTS Fines; -- Drop Fines before IssuedBooks if foreign key exists
 DROP TABLE IF EXISTS IssuedBooks;
 DROP TABLE IF EXISTS RatingsReviews; -- Drop RatingsReviews before Books/Students
@@ -13,6 +16,7 @@ DROP TABLE IF EXISTS Students; -- Drop Students before Users if foreign key exis
 DROP TABLE IF EXISTS Librarians; -- Drop Librarians before Users if foreign key exists
 DROP TABLE IF EXISTS Users;
 DROP TABLE IF EXISTS Settings;
+DROP TABLE IF EXISTS IdSequences;
 
 -- SET FOREIGN_KEY_CHECKS=1; -- Re-enable checks
 
@@ -24,7 +28,8 @@ CREATE TABLE Users (
     status ENUM('Active', 'Inactive') DEFAULT 'Active', -- For account management
     email VARCHAR(100) UNIQUE,
     security_question VARCHAR(255),             -- Optional: For password recovery
-    security_answer VARCHAR(255)                -- Optional: For password recovery
+    security_answer VARCHAR(255),               -- Optional: For password recovery
+    INDEX idx_users_role_username (role, username) -- Keyset paging of the user list
 );
 
 -- Librarians Table: Stores specific librarian details
@@ -51,7 +56,12 @@ CREATE TABLE Books (
     category VARCHAR(100),                      -- For search & filter
     total_copies INT DEFAULT 1 CHECK (total_copies >= 0),
     available_copies INT DEFAULT 1 CHECK (available_copies >= 0), -- Corrected CHECK constraint
-    avg_rating DECIMAL(3,2) DEFAULT 0.00        -- Average rating
+    avg_rating DECIMAL(3,2) DEFAULT 0.00,       -- rating_sum / rating_count, kept in step by RatingService
+    rating_sum INT NOT NULL DEFAULT 0,          -- Sum of the ratings in RatingsReviews
+    rating_count INT NOT NULL DEFAULT 0,        -- Number of reviews in RatingsReviews
+    updated_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3), -- Last change, polled by CatalogIndex
+    INDEX idx_books_title_id (title, book_id),  -- Keyset paging of the catalog in title order
+    INDEX idx_books_updated_at (updated_at)     -- Books changed since the catalog index last polled (schema migration 7)
 );
 
 -- Ratings and Reviews Table
@@ -78,8 +88,14 @@ CREATE TABLE IssuedBooks (
     status ENUM('Issued', 'Returned', 'Overdue', 'HoldRequested', 'HoldActive') DEFAULT 'Issued', -- Added Hold status
     reissue_count INT DEFAULT 0,                -- Track reissues
     hold_request_date DATE,                     -- Date hold was requested
+    hold_expires_at DATETIME,                   -- HoldActive: collect the set-aside copy before this
     FOREIGN KEY (student_id) REFERENCES Students(student_id) ON DELETE CASCADE,
-    FOREIGN KEY (book_id) REFERENCES Books(book_id) ON DELETE CASCADE
+    FOREIGN KEY (book_id) REFERENCES Books(book_id) ON DELETE CASCADE,
+    INDEX idx_issued_due_id (due_date, issue_id), -- Keyset paging of loans in due-date order
+    INDEX idx_issued_status_due (status, due_date, issue_id), -- Nightly fine accrual finds newly overdue loans
+    INDEX idx_issued_book_status (book_id, status, issue_id), -- Hold queue of a book in FIFO order
+    INDEX idx_issued_student_status (student_id, status, due_date), -- A student's loans (schema migration 1)
+    INDEX idx_issued_book_student (book_id, student_id, status) -- Open loan of a book by a student (schema migration 1)
 );
 
 -- Fines Table: Tracks fines owed by students
@@ -90,11 +106,34 @@ CREATE TABLE Fines (
     fine_amount DECIMAL(10, 2) DEFAULT 0.00,
     status ENUM('Paid', 'Unpaid') DEFAULT 'Unpaid',
     fine_date DATE,                             -- Date the fine was generated/updated
+    UNIQUE KEY uq_fines_issue (issue_id),       -- One fine per issue; lets the accrual job upsert
+    INDEX idx_fines_student_date (student_id, fine_date), -- A student's fines, newest first (schema migration 1)
     FOREIGN KEY (student_id) REFERENCES Students(student_id) ON DELETE SET NULL, -- Keep fine record even if student deleted? Or CASCADE? Decide policy.
     FOREIGN KEY (issue_id) REFERENCES IssuedBooks(issue_id) ON DELETE SET NULL -- Keep fine record even if issue deleted?
 );
 
 
+-- Fine rollups: running totals per month of fine_date, kept in step with Fines by the application (FineLedger)
+CREATE TABLE FineMonthlyTotals (
+    fine_year SMALLINT NOT NULL,
+    fine_month TINYINT NOT NULL,
+    total_amount DECIMAL(12, 2) NOT NULL DEFAULT 0.00, -- All fines dated in the month, paid or not
+    paid_amount DECIMAL(12, 2) NOT NULL DEFAULT 0.00,
+    fine_count INT NOT NULL DEFAULT 0,
+    PRIMARY KEY (fine_year, fine_month)
+);
+
+CREATE TABLE FineStudentMonthlyTotals (
+    student_id VARCHAR(10) NOT NULL,
+    fine_year SMALLINT NOT NULL,
+    fine_month TINYINT NOT NULL,
+    total_amount DECIMAL(12, 2) NOT NULL DEFAULT 0.00,
+    paid_amount DECIMAL(12, 2) NOT NULL DEFAULT 0.00,
+    fine_count INT NOT NULL DEFAULT 0,
+    PRIMARY KEY (student_id, fine_year, fine_month),
+    FOREIGN KEY (student_id) REFERENCES Students(student_id) ON DELETE CASCADE
+);
+
 -- Notifications Table: For reminders and alerts
 CREATE TABLE Notifications (
     notification_id INT PRIMARY KEY AUTO_INCREMENT, -- Changed to INT AUTO_INCREMENT
@@ -103,6 +142,7 @@ CREATE TABLE Notifications (
     type ENUM('DueDate', 'FineAlert', 'Approval', 'NewBook', 'HoldReady', 'General') DEFAULT 'General',
     is_read BOOLEAN DEFAULT FALSE,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    INDEX idx_notifications_user_created (user_id, created_at), -- A user's notifications, newest first (schema migration 1)
     FOREIGN KEY (user_id) REFERENCES Users(username) ON DELETE CASCADE -- Link to username for flexibility
 );
 
@@ -134,3 +174,9 @@ CREATE TABLE Settings (
     setting_key VARCHAR(50) PRIMARY KEY,        -- e.g., 'DarkMode', 'FinePerDay'
     setting_value VARCHAR(255)
 );
+
+-- ID Sequences Table: Next free number of the book, librarian and student IDs, reserved in blocks (IdSequences)
+CREATE TABLE IdSequences (
+    name VARCHAR(30) PRIMARY KEY,               -- BOOK, LIBRARIAN, STUDENT
+    next_value BIGINT NOT NULL                  -- First number not yet handed out
+);